@@ -248,9 +248,7 @@ public class ArgumentMap extends AbstractMap<String, Object>
             if (!entry.getKey().equals(oentry.getKey())) {
                 return false;
             }
-            _a1[0] = entry.getValue();
-            _a2[0] = oentry.getValue();
-            if (!Arrays.deepEquals(_a1, _a2)) {
+            if (!valueEquals(entry.getValue(), oentry.getValue())) {
                 return false;
             }
         }
@@ -263,8 +261,7 @@ public class ArgumentMap extends AbstractMap<String, Object>
         int hash = 0;
         for (int ii = 0, nn = _entries.size(); ii < nn; ii++) {
             Map.Entry<String, Object> entry = _entries.get(ii);
-            _a1[0] = entry.getValue();
-            hash += entry.getKey().hashCode() ^ Arrays.deepHashCode(_a1);
+            hash += entry.getKey().hashCode() ^ valueHashCode(entry.getValue());
         }
         return hash;
     }
@@ -275,6 +272,70 @@ public class ArgumentMap extends AbstractMap<String, Object>
         return (ArgumentMap) copy(null);
     }
 
+    /**
+     * Compares two argument values, comparing arrays by their contents as
+     * {@link Arrays#deepEquals} does, but without wrapping the values in arrays.
+     */
+    protected static boolean valueEquals (Object v1, Object v2)
+    {
+        if (v1 == v2) {
+            return true;
+        } else if (v1 == null || v2 == null) {
+            return false;
+        } else if (v1 instanceof Object[] && v2 instanceof Object[]) {
+            return Arrays.deepEquals((Object[])v1, (Object[])v2);
+        } else if (v1 instanceof boolean[] && v2 instanceof boolean[]) {
+            return Arrays.equals((boolean[])v1, (boolean[])v2);
+        } else if (v1 instanceof byte[] && v2 instanceof byte[]) {
+            return Arrays.equals((byte[])v1, (byte[])v2);
+        } else if (v1 instanceof char[] && v2 instanceof char[]) {
+            return Arrays.equals((char[])v1, (char[])v2);
+        } else if (v1 instanceof double[] && v2 instanceof double[]) {
+            return Arrays.equals((double[])v1, (double[])v2);
+        } else if (v1 instanceof float[] && v2 instanceof float[]) {
+            return Arrays.equals((float[])v1, (float[])v2);
+        } else if (v1 instanceof int[] && v2 instanceof int[]) {
+            return Arrays.equals((int[])v1, (int[])v2);
+        } else if (v1 instanceof long[] && v2 instanceof long[]) {
+            return Arrays.equals((long[])v1, (long[])v2);
+        } else if (v1 instanceof short[] && v2 instanceof short[]) {
+            return Arrays.equals((short[])v1, (short[])v2);
+        } else {
+            return v1.equals(v2);
+        }
+    }
+
+    /**
+     * Hashes an argument value, hashing arrays by their contents as {@link Arrays#deepHashCode}
+     * does, but without wrapping the value in an array.
+     */
+    protected static int valueHashCode (Object value)
+    {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Object[]) {
+            return Arrays.deepHashCode((Object[])value);
+        } else if (value instanceof boolean[]) {
+            return Arrays.hashCode((boolean[])value);
+        } else if (value instanceof byte[]) {
+            return Arrays.hashCode((byte[])value);
+        } else if (value instanceof char[]) {
+            return Arrays.hashCode((char[])value);
+        } else if (value instanceof double[]) {
+            return Arrays.hashCode((double[])value);
+        } else if (value instanceof float[]) {
+            return Arrays.hashCode((float[])value);
+        } else if (value instanceof int[]) {
+            return Arrays.hashCode((int[])value);
+        } else if (value instanceof long[]) {
+            return Arrays.hashCode((long[])value);
+        } else if (value instanceof short[]) {
+            return Arrays.hashCode((short[])value);
+        } else {
+            return value.hashCode();
+        }
+    }
+
     /**
      * Helper: create an Entry for the specified key/value, 
      */
@@ -309,7 +370,4 @@ public class ArgumentMap extends AbstractMap<String, Object>
 
     /** Dummy key used for searching. */
     protected transient Key _key = new Key();
-
-    /** Used for {@link Arrays#deepHashCode} and {@link Arrays#deepEquals}. */
-    protected transient Object[] _a1 = new Object[1], _a2 = new Object[1];
 }
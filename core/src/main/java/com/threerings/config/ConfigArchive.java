@@ -0,0 +1,314 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.config;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+
+import com.threerings.resource.ResourceManager;
+
+import com.threerings.export.BinaryExporter;
+import com.threerings.export.BinaryImporter;
+import com.threerings.export.Exporter;
+
+/**
+ * An archive of independently encoded configurations with a name index, allowing configs to be
+ * decoded individually as they are requested.  The archive consists of a header containing the
+ * name, offset, and length of each entry, followed by the entries themselves, each of which is a
+ * complete (compressed) {@link BinaryExporter} stream containing a single config.
+ */
+public class ConfigArchive
+{
+    /** The extension used for archive files. */
+    public static final String EXTENSION = ".cfga";
+
+    /** Identifies archive files. */
+    public static final int MAGIC_NUMBER = 0xC0F1A4C1;
+
+    /** The current archive version. */
+    public static final short VERSION = 0x0001;
+
+    /**
+     * Opens the identified archive resource, reading it through a file if possible so that
+     * entries can be read on demand.
+     *
+     * @return the opened archive, or <code>null</code> if the resource doesn't exist.
+     */
+    public static ConfigArchive open (ResourceManager rsrcmgr, String path)
+        throws IOException
+    {
+        File file = rsrcmgr.getResourceFile(path);
+        if (file != null && file.isFile()) {
+            return new ConfigArchive(file);
+        }
+        InputStream in;
+        try {
+            in = rsrcmgr.getResource(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            return new ConfigArchive(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes an archive containing the supplied configs to the specified file.
+     *
+     * @param replacer the replacer to use when writing the configs, or <code>null</code> for
+     * none.
+     */
+    public static void write (
+        File file, Iterable<? extends ManagedConfig> configs, Exporter.Replacer replacer)
+        throws IOException
+    {
+        Map<String, ManagedConfig> map = Maps.newLinkedHashMap();
+        for (ManagedConfig config : configs) {
+            map.put(config.getName(), config);
+        }
+        write(file, map, replacer);
+    }
+
+    /**
+     * Writes an archive containing the supplied configs, mapped by entry name, to the specified
+     * file.
+     *
+     * @param replacer the replacer to use when writing the configs, or <code>null</code> for
+     * none.
+     */
+    public static void write (
+        File file, Map<String, ? extends ManagedConfig> configs, Exporter.Replacer replacer)
+        throws IOException
+    {
+        // encode the entries so that we know their lengths
+        List<byte[]> entries = Lists.newArrayListWithCapacity(configs.size());
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        for (ManagedConfig config : configs.values()) {
+            bout.reset();
+            BinaryExporter out = new BinaryExporter(bout);
+            out.setReplacer(replacer);
+            out.writeObject(config);
+            out.close();
+            entries.add(bout.toByteArray());
+        }
+
+        // write the header followed by the entries
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(MAGIC_NUMBER);
+            out.writeShort(VERSION);
+            out.writeInt(configs.size());
+            int offset = 0, idx = 0;
+            for (String name : configs.keySet()) {
+                int length = entries.get(idx++).length;
+                out.writeUTF(name);
+                out.writeInt(offset);
+                out.writeInt(length);
+                offset += length;
+            }
+            for (byte[] entry : entries) {
+                out.write(entry);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Opens an archive file, reading only its index.  The entry data is mapped into memory and
+     * entries are decoded directly from the mapping as they are requested.
+     */
+    public ConfigArchive (File file)
+        throws IOException
+    {
+        long dataStart;
+        CountingInputStream in = new CountingInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        try {
+            readIndex(new DataInputStream(in));
+            dataStart = in.getCount();
+        } finally {
+            in.close();
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mapping remains valid after the file is closed
+            FileChannel channel = raf.getChannel();
+            _data = channel.map(
+                FileChannel.MapMode.READ_ONLY, dataStart, channel.size() - dataStart);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads an archive from a stream.  The entries are retained in their encoded form and
+     * decoded as they are requested.
+     */
+    public ConfigArchive (InputStream in)
+        throws IOException
+    {
+        DataInputStream din = new DataInputStream(in);
+        readIndex(din);
+        _data = ByteBuffer.wrap(ByteStreams.toByteArray(din));
+    }
+
+    /**
+     * Returns the names of the entries in the archive.
+     */
+    public Set<String> getNames ()
+    {
+        return Collections.unmodifiableSet(_entries.keySet());
+    }
+
+    /**
+     * Checks whether the archive contains the named entry.
+     */
+    public boolean contains (String name)
+    {
+        return _entries.containsKey(name);
+    }
+
+    /**
+     * Decodes the named config.  The config is not named or initialized.
+     *
+     * @return the decoded config, or <code>null</code> if there is no such entry.
+     */
+    public ManagedConfig read (String name)
+        throws IOException
+    {
+        Entry entry = _entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        BinaryImporter in = new BinaryImporter(getBuffer(entry));
+        try {
+            return (ManagedConfig)in.readObject();
+        } catch (ClassCastException e) {
+            throw (IOException)new IOException("Entry is not a config: " + name).initCause(e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Releases the entry data.  The mapping of an archive file is unmapped when it is garbage
+     * collected.
+     */
+    public void close ()
+        throws IOException
+    {
+        _data = null;
+    }
+
+    /**
+     * Reads the archive header.
+     */
+    protected void readIndex (DataInputStream in)
+        throws IOException
+    {
+        if (in.readInt() != MAGIC_NUMBER) {
+            throw new IOException("Invalid magic number.");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported archive version: " + version);
+        }
+        int count = in.readInt();
+        _entries = Maps.newHashMapWithExpectedSize(count);
+        for (int ii = 0; ii < count; ii++) {
+            String name = in.readUTF();
+            _entries.put(name, new Entry(in.readInt(), in.readInt()));
+        }
+    }
+
+    /**
+     * Returns a buffer containing the encoded contents of an entry.  Each call returns a new
+     * view of the shared data, so entries may be read from multiple threads at once.
+     */
+    protected ByteBuffer getBuffer (Entry entry)
+        throws IOException
+    {
+        ByteBuffer data = _data;
+        if (data == null) {
+            throw new IOException("Archive is closed.");
+        }
+        ByteBuffer buf = data.duplicate();
+        buf.position(entry.offset).limit(entry.offset + entry.length);
+        return buf.slice();
+    }
+
+    /**
+     * The location of an entry.
+     */
+    protected static class Entry
+    {
+        /** The offset of the entry from the start of the data. */
+        public final int offset;
+
+        /** The length of the entry. */
+        public final int length;
+
+        /**
+         * Constructor.
+         */
+        public Entry (int offset, int length)
+        {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /** The entries mapped by name. */
+    protected Map<String, Entry> _entries;
+
+    /** The entry data, mapped from the archive file or read from a stream. */
+    protected volatile ByteBuffer _data;
+}
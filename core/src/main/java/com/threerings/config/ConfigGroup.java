@@ -35,10 +35,12 @@ import java.lang.reflect.Array;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
 import com.google.common.io.Closer;
@@ -56,8 +58,8 @@ import com.threerings.export.BinaryImporter;
 import com.threerings.export.Exportable;
 import com.threerings.export.Exporter;
 import com.threerings.export.Importer;
-import com.threerings.export.XMLExporter;
-import com.threerings.export.XMLImporter;
+import com.threerings.export.StreamingXMLExporter;
+import com.threerings.export.StreamingXMLImporter;
 import com.threerings.export.util.LazyOutputStream;
 import com.threerings.util.Copyable;
 
@@ -110,20 +112,55 @@ public class ConfigGroup<T extends ManagedConfig>
      */
     public void init (ConfigManager cfgmgr, ConfigManager.Consumer<Exception> exceptionConsumer)
     {
-        _cfgmgr = cfgmgr;
+        init(cfgmgr, decodeConfigs(cfgmgr, exceptionConsumer));
+    }
 
-        // load the existing configurations (first checking for an xml file, then a binary file)
-        if (_cfgmgr.getConfigPath() != null &&
-                (readConfigs(true, exceptionConsumer) || readConfigs(false, exceptionConsumer))) {
+    /**
+     * Initializes this group with configurations previously obtained from
+     * {@link #decodeConfigs(ConfigManager, ConfigManager.Consumer)}.
+     *
+     * @param configs the decoded configurations, or <code>null</code> for none.
+     */
+    public void init (ConfigManager cfgmgr, ManagedConfig[] configs)
+    {
+        _cfgmgr = cfgmgr;
+        if (configs != null) {
+            initConfigs(configs);
             log.debug("Read configurations for group " + _name + ".");
         }
 
-        // provide the configurations with a reference to the manager
-        for (ManagedConfig config : getRawConfigs()) {
+        // provide the configurations with a reference to the manager (archived configs are
+        // initialized as they're decoded)
+        for (ManagedConfig config : _configsByName.values()) {
             initConfig(config);
         }
     }
 
+    /**
+     * Reads and decodes the existing configurations for this group (first checking for an xml
+     * file, then an archive, then a binary file) without adding them to the group or
+     * initializing them.  If an archive is found, its index is read and the configurations are
+     * decoded individually as they are requested.  The
+     * decoded configurations are referenced only by the returned array, so this may be called
+     * from a thread other than the one that later passes them to
+     * {@link #init(ConfigManager, ManagedConfig[])}.
+     *
+     * @return the decoded configurations, or <code>null</code> if none could be read.
+     */
+    public ManagedConfig[] decodeConfigs (
+        ConfigManager cfgmgr, ConfigManager.Consumer<Exception> exceptionConsumer)
+    {
+        _cfgmgr = cfgmgr;
+        if (_cfgmgr.getConfigPath() == null) {
+            return null;
+        }
+        ManagedConfig[] configs = decodeConfigs(true, exceptionConsumer);
+        if (configs == null && !openArchive(exceptionConsumer)) {
+            configs = decodeConfigs(false, exceptionConsumer);
+        }
+        return configs;
+    }
+
     /**
      * Returns the name of this group.
      */
@@ -167,7 +204,27 @@ public class ConfigGroup<T extends ManagedConfig>
      */
     public ManagedConfig getRawConfig (String name)
     {
-        return _configsByName.get(name);
+        ManagedConfig config = _configsByName.get(name);
+        if (config != null) {
+            return config;
+        }
+        ConcurrentMap<String, Object> pending = _pending;
+        Object lock = (pending == null) ? null : pending.get(name);
+        if (lock == null) {
+            // the config may have been decoded since we checked
+            return _configsByName.get(name);
+        }
+        // the first thread to get the lock decodes the config; any others wait for it and then
+        // find it in the map.  the name remains pending until the config has been added so that
+        // no thread can see it as neither pending nor present
+        synchronized (lock) {
+            config = _configsByName.get(name);
+            if (config == null && pending.get(name) == lock) {
+                config = decodeArchived(name);
+                pending.remove(name, lock);
+            }
+        }
+        return config;
     }
 
     /**
@@ -190,6 +247,13 @@ public class ConfigGroup<T extends ManagedConfig>
      */
     public Iterable<ManagedConfig> getRawConfigs ()
     {
+        ConcurrentMap<String, Object> pending = _pending;
+        if (pending != null) {
+            for (String name : Lists.newArrayList(pending.keySet())) {
+                getRawConfig(name);
+            }
+            _pending = null;
+        }
         return _configsByName.values();
     }
 
@@ -246,8 +310,13 @@ public class ConfigGroup<T extends ManagedConfig>
             Class<?> clazz = (config == null) ? null : config.getClass();
             throw new IllegalArgumentException(clazz + " is not of type " + _cclass);
         }
+        ConcurrentMap<String, Object> pending = _pending;
+        if (pending != null) {
+            pending.remove(config.getName());
+        }
         ManagedConfig oldCfg = _configsByName.put(config.getName(), config);
         initConfig(config);
+        invalidateInstances(config.getName());
         if (fireEvents) {
             if (oldCfg != null) {
                 // tell any listeners that the old one has changed. They should in turn end up
@@ -264,7 +333,13 @@ public class ConfigGroup<T extends ManagedConfig>
      */
     public void removeConfig (ManagedConfig config)
     {
+        // an archived config that hasn't been decoded yet must not be decoded later
+        ConcurrentMap<String, Object> pending = _pending;
+        if (pending != null) {
+            pending.remove(config.getName());
+        }
         ManagedConfig oldCfg = _configsByName.remove(config.getName());
+        invalidateInstances(config.getName());
         if (oldCfg != null) {
             // notify listeners that the config has "changed" and then remove it
             oldCfg.wasUpdated();
@@ -318,7 +393,7 @@ public class ConfigGroup<T extends ManagedConfig>
             try {
                 LazyOutputStream stream = closer.register(new LazyOutputStream(file));
                 Exporter xport = closer.register(
-                        xml ? new XMLExporter(stream) : new BinaryExporter(stream));
+                        xml ? new StreamingXMLExporter(stream) : new BinaryExporter(stream));
                 xport.setReplacer(_cfgmgr.getSaveReplacer(this));
                 xport.writeObject(array);
 
@@ -331,6 +406,23 @@ public class ConfigGroup<T extends ManagedConfig>
         }
     }
 
+    /**
+     * Saves this group's configurations to an archive file, from which they can be decoded
+     * individually on demand.
+     */
+    public void saveArchive (File file)
+    {
+        ManagedConfig[] array = toSaveableArray();
+        if (array == null) {
+            return; // nothing to do
+        }
+        try {
+            ConfigArchive.write(file, Arrays.asList(array), _cfgmgr.getSaveReplacer(this));
+        } catch (IOException e) {
+            log.warning("Error writing configuration archive [file=" + file + "].", e);
+        }
+    }
+
     /**
      * Return the raw configs as they should be saved, which may be an empty array,
      * or null if the entire group is stripped.
@@ -380,7 +472,7 @@ public class ConfigGroup<T extends ManagedConfig>
         // read in the array of configurations
         ManagedConfig[] array;
         try {
-            Importer in = new XMLImporter(new FileInputStream(file));
+            Importer in = new StreamingXMLImporter(new FileInputStream(file));
             array = (ManagedConfig[])in.readObject();
             in.close();
 
@@ -475,30 +567,100 @@ public class ConfigGroup<T extends ManagedConfig>
      * @return true if successful, false otherwise.
      */
     protected boolean readConfigs (boolean xml, ConfigManager.Consumer<Exception> exceptionConsumer)
+    {
+        ManagedConfig[] configs = decodeConfigs(xml, exceptionConsumer);
+        if (configs == null) {
+            return false;
+        }
+        initConfigs(configs);
+        return true;
+    }
+
+    /**
+     * Attempts to read and decode the initial set of configurations.
+     *
+     * @return the configurations read, or <code>null</code> if unsuccessful.
+     */
+    protected ManagedConfig[] decodeConfigs (
+        boolean xml, ConfigManager.Consumer<Exception> exceptionConsumer)
     {
         InputStream stream = getConfigStream(xml);
         if (stream == null) {
-            return false;
+            return null;
         }
         ManagedConfig[] configs;
         try {
-            Importer in = xml ? new XMLImporter(stream) : new BinaryImporter(stream);
+            Importer in = xml ? new StreamingXMLImporter(stream) : new BinaryImporter(stream);
             configs = (ManagedConfig[])in.readObject();
             in.close();
 
         } catch (Exception e) { // IOException, ClassCastException
             exceptionConsumer.accept(e);
             log.warning("Error reading configurations.", "group", _name, e);
-            return false;
+            return null;
         }
 
         if (xml) {
             validateOuters(configs);
         }
-        initConfigs(configs);
+        return configs;
+    }
+
+    /**
+     * Attempts to open the archive containing the initial set of configurations.
+     *
+     * @return true if successful, false otherwise.
+     */
+    protected boolean openArchive (ConfigManager.Consumer<Exception> exceptionConsumer)
+    {
+        try {
+            _archive = ConfigArchive.open(_cfgmgr.getResourceManager(), getArchivePath());
+        } catch (IOException e) {
+            exceptionConsumer.accept(e);
+            log.warning("Error opening configuration archive.", "group", _name, e);
+            return false;
+        }
+        if (_archive == null) {
+            return false;
+        }
+        initPending();
         return true;
     }
 
+    /**
+     * Marks all of the configs in the archive as pending.
+     */
+    protected void initPending ()
+    {
+        ConcurrentMap<String, Object> pending = new ConcurrentHashMap<String, Object>();
+        for (String name : _archive.getNames()) {
+            pending.put(name, new Object());
+        }
+        _pending = pending;
+    }
+
+    /**
+     * Decodes, initializes and adds the named config from the archive.  Called with the name's
+     * pending lock held.  If the config was added explicitly while it was being decoded, the
+     * added config is kept and returned.
+     *
+     * @return the decoded config, or <code>null</code> if it couldn't be decoded.
+     */
+    protected ManagedConfig decodeArchived (String name)
+    {
+        ManagedConfig config;
+        try {
+            config = _archive.read(name);
+        } catch (IOException e) {
+            log.warning("Error reading archived configuration.", "group", _name,
+                "name", name, e);
+            return null;
+        }
+        initConfig(config);
+        ManagedConfig oconfig = _configsByName.putIfAbsent(name, config);
+        return (oconfig == null) ? config : oconfig;
+    }
+
     /**
      * Returns the configuration stream, or <code>null</code> if it doesn't exist.
      */
@@ -527,6 +689,14 @@ public class ConfigGroup<T extends ManagedConfig>
         return _cfgmgr.getConfigPath() + _name + (xml ? ".xml" : ".dat");
     }
 
+    /**
+     * Returns the path of the config archive associated with this group.
+     */
+    protected String getArchivePath ()
+    {
+        return _cfgmgr.getConfigPath() + _name + ConfigArchive.EXTENSION;
+    }
+
     /**
      * Validates the outer object references of the supplied configs.
      */
@@ -618,6 +788,17 @@ public class ConfigGroup<T extends ManagedConfig>
         return _cclass.cast(val);
     }
 
+    /**
+     * Drops the manager's cached instances of the named config.  This is done whenever a config
+     * is added or removed, whether or not events are fired.
+     */
+    protected void invalidateInstances (String name)
+    {
+        if (_cfgmgr != null) {
+            _cfgmgr.invalidateInstances(name);
+        }
+    }
+
     /**
      * Fires a configuration added event.
      */
@@ -661,8 +842,17 @@ public class ConfigGroup<T extends ManagedConfig>
     /** The configuration class. */
     protected Class<T> _cclass;
 
-    /** Configurations mapped by name. */
-    protected HashMap<String, ManagedConfig> _configsByName = new HashMap<String, ManagedConfig>();
+    /** Configurations mapped by name.  Archived configs may be decoded and added from any
+     * thread. */
+    protected ConcurrentMap<String, ManagedConfig> _configsByName =
+        new ConcurrentHashMap<String, ManagedConfig>();
+
+    /** The archive from which configurations are decoded on demand, if any. */
+    protected ConfigArchive _archive;
+
+    /** The names of the archived configurations that have yet to be decoded, each mapped to the
+     * lock held while decoding it, or <code>null</code> once all have been decoded. */
+    protected volatile ConcurrentMap<String, Object> _pending;
 
     /** Configuration event listeners. */
     protected ObserverList<ConfigGroupListener> _listeners;
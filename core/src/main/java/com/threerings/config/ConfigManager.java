@@ -35,13 +35,28 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import com.samskivert.util.ArrayUtil;
 import com.samskivert.util.ListUtil;
@@ -75,6 +90,9 @@ public class ConfigManager
         public void accept (T t);
     }
 
+    /** The name of the archive of resource configs within the config directory. */
+    public static final String RESOURCE_ARCHIVE = "resources" + ConfigArchive.EXTENSION;
+
     /**
      * Creates a new global configuration manager.
      *
@@ -130,16 +148,26 @@ public class ConfigManager
         // create the resource cache
         _resources = CacheUtil.softValues();
 
+        // open the resource config archive, if any
+        try {
+            _resourceArchive = ConfigArchive.open(_rsrcmgr, _configPath + RESOURCE_ARCHIVE);
+        } catch (IOException e) {
+            exceptionConsumer.accept(e);
+            log.warning("Failed to open resource config archive.", e);
+        }
+
         // register the global groups
         Class<?>[] classes = _classes.get("global");
         if (classes == null) {
             return;
         }
+        List<ConfigGroup<?>> groups = Lists.newArrayListWithCapacity(classes.length);
         for (Class<?> clazz : classes) {
-            @SuppressWarnings("unchecked") Class<? extends ManagedConfig> cclass =
-                    (Class<? extends ManagedConfig>)clazz;
-            registerGroup(cclass, exceptionConsumer);
+            @SuppressWarnings("unchecked") Class<ManagedConfig> cclass =
+                    (Class<ManagedConfig>)clazz;
+            groups.add(new ConfigGroup<ManagedConfig>(cclass));
         }
+        registerGroups(groups, exceptionConsumer);
     }
 
     /**
@@ -152,7 +180,9 @@ public class ConfigManager
         _rsrcmgr = parent._rsrcmgr;
         _msgmgr = parent._msgmgr;
         _resources = parent._resources;
+        _resourceArchive = parent._resourceArchive;
         _classes = parent._classes;
+        clearInstances();
 
         // copy the groups over (any group not in the list will be silently discarded)
         HashMap<Class<?>, ConfigGroup<?>> ogroups = _groups;
@@ -324,7 +354,8 @@ public class ConfigManager
 
     /**
      * Retrieves a configuration by class, name, scope, and arguments.  If the configuration is not
-     * found in this manager, the request will be forwarded to the parent, and so on.
+     * found in this manager, the request will be forwarded to the parent, and so on.  Unscoped
+     * instances are cached (and may be retrieved concurrently) until their configs are updated.
      *
      * @param scope the scope in which to create the config, or <code>null</code> for none.
      * @param args the configuration arguments, or <code>null</code> for none.
@@ -338,6 +369,20 @@ public class ConfigManager
             return null;
         }
 
+        // unscoped instances are cached until their configs are updated
+        InstanceKey key = null;
+        int generation = 0;
+        if (scope == null) {
+            key = new InstanceKey(clazz, name, args);
+            ManagedConfig instance = _instances.get(key);
+            if (instance != null) {
+                _instanceHits.incrementAndGet();
+                return clazz.cast(instance);
+            }
+            _instanceMisses.incrementAndGet();
+            generation = _instanceGeneration.get();
+        }
+
         ManagedConfig cfg;
         // for resource-loaded configs, go through the cache
         if (isResourceClass(clazz)) {
@@ -346,9 +391,14 @@ public class ConfigManager
                 throw new ClassCastException("[config=" + name + ", expected=" + clazz +
                     ", actual=" + cfg.getClass() + "]");
             }
+            // resource configs report their updates to the root, so only it may cache them
+            if (_parent != null) {
+                key = null;
+            }
 
         } else {
-            // otherwise, look for a group of the desired type
+            // otherwise, look for a group of the desired type (which decodes archived configs
+            // under a per-name lock, so concurrent misses get the same config)
             ConfigGroup<T> group = getGroup(clazz);
             cfg = (group == null) ? null : group.getRawConfig(name); // TODO ??
             if (cfg == null) {
@@ -358,6 +408,9 @@ public class ConfigManager
 
         if (cfg != null) {
             cfg = cfg.getInstance(scope, args);
+            if (cfg != null && key != null) {
+                cacheInstance(key, cfg, generation);
+            }
         }
 
         return clazz.cast(cfg);
@@ -383,6 +436,41 @@ public class ConfigManager
         return (_parent == null) ? null : _parent.getRawConfig(clazz, name);
     }
 
+    /**
+     * Returns the number of {@link #getConfig} calls satisfied by the instance cache since the
+     * last call to {@link #resetInstanceCacheStats}.
+     */
+    public long getInstanceCacheHits ()
+    {
+        return _instanceHits.get();
+    }
+
+    /**
+     * Returns the number of {@link #getConfig} calls that missed the instance cache (including
+     * those forwarded to the parent) since the last call to {@link #resetInstanceCacheStats}.
+     */
+    public long getInstanceCacheMisses ()
+    {
+        return _instanceMisses.get();
+    }
+
+    /**
+     * Returns the number of instances currently cached.
+     */
+    public int getInstanceCacheSize ()
+    {
+        return _instances.size();
+    }
+
+    /**
+     * Resets the instance cache stats.
+     */
+    public void resetInstanceCacheStats ()
+    {
+        _instanceHits.set(0L);
+        _instanceMisses.set(0L);
+    }
+
     /**
      * Attempts to fetch a resource config through the cache.
      */
@@ -391,11 +479,16 @@ public class ConfigManager
         ManagedConfig config = _resources.get(name);
         if (config == null) {
             try {
-                BinaryImporter in = new BinaryImporter(_rsrcmgr.getResource(name));
-                _resources.put(name, config = (ManagedConfig)in.readObject());
+                if (_resourceArchive != null && _resourceArchive.contains(name)) {
+                    config = _resourceArchive.read(name);
+                } else {
+                    BinaryImporter in = new BinaryImporter(_rsrcmgr.getResource(name));
+                    config = (ManagedConfig)in.readObject();
+                    in.close();
+                }
+                _resources.put(name, config);
                 config.setName(name);
                 config.init(getRoot());
-                in.close();
 
             } catch (FileNotFoundException fnfe) {
                 return null;
@@ -408,6 +501,24 @@ public class ConfigManager
         return config;
     }
 
+    /**
+     * Writes the named resource configs to an archive file.  If placed in the config directory
+     * under the name {@link #RESOURCE_ARCHIVE}, the archive will be used in preference to the
+     * individual resources.
+     */
+    public void saveResourceArchive (File file, Iterable<String> names)
+        throws IOException
+    {
+        Map<String, ManagedConfig> configs = Maps.newLinkedHashMap();
+        for (String name : names) {
+            ManagedConfig config = getResourceConfig(name);
+            if (config != null) {
+                configs.put(name, config);
+            }
+        }
+        ConfigArchive.write(file, configs, null);
+    }
+
     /**
      * Retrieves the groups registered for the specified class in this manager and all of its
      * ancestors.
@@ -680,6 +791,7 @@ public class ConfigManager
         for (ConfigGroup<?> group : groups) {
             _groups.put(group.getConfigClass(), group);
         }
+        clearInstances();
     }
 
     // documentation inherited from interface Copyable
@@ -698,6 +810,7 @@ public class ConfigManager
             ConfigGroup<?> ogroup = other._groups.get(clazz);
             other._groups.put(clazz, (ConfigGroup<?>)group.copy(ogroup));
         }
+        other.clearInstances();
         return other;
     }
 
@@ -719,6 +832,11 @@ public class ConfigManager
 
         props.load(in);
 
+        // determine how many threads to use when loading groups
+        String threads = props.getProperty("loader_threads");
+        _loaderThreads = (threads == null) ?
+            Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads.trim());
+
         // initialize the types
         _classes = new HashMap<String, Class<?>[]>();
         String[] types = StringUtil.parseStringArray(props.getProperty("types", ""));
@@ -747,6 +865,68 @@ public class ConfigManager
         ConfigGroup<T> group = new ConfigGroup<T>(clazz);
         group.init(this, exceptionConsumer);
         _groups.put(clazz, group);
+        clearInstances();
+    }
+
+    /**
+     * Initializes and registers the supplied groups.  The groups' configurations are read and
+     * decoded on a pool of loader threads, then initialized and registered in order on the
+     * calling thread.
+     */
+    protected void registerGroups (
+            List<ConfigGroup<?>> groups, Consumer<Exception> exceptionConsumer)
+    {
+        long start = System.currentTimeMillis();
+        List<GroupDecoder> decoders = Lists.newArrayListWithCapacity(groups.size());
+        for (ConfigGroup<?> group : groups) {
+            decoders.add(new GroupDecoder(group));
+        }
+        int threads = Math.min(_loaderThreads, decoders.size());
+        ExecutorService executor = (threads > 1) ?
+            Executors.newFixedThreadPool(threads, LOADER_THREAD_FACTORY) : null;
+        try {
+            List<Future<ManagedConfig[]>> results = Lists.newArrayListWithCapacity(decoders.size());
+            if (executor != null) {
+                for (GroupDecoder decoder : decoders) {
+                    results.add(executor.submit(decoder));
+                }
+            }
+            for (int ii = 0, nn = decoders.size(); ii < nn; ii++) {
+                GroupDecoder decoder = decoders.get(ii);
+                ManagedConfig[] configs = null;
+                try {
+                    configs = (executor == null) ?
+                        decoder.call() : Uninterruptibles.getUninterruptibly(results.get(ii));
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error)cause;
+                    }
+                    decoder.accept((Exception)cause);
+                    log.warning("Error decoding configurations.",
+                        "group", decoder.group.getName(), cause);
+                }
+
+                // report any exceptions on this thread, then wire up the configs
+                for (Exception e : decoder.exceptions) {
+                    exceptionConsumer.accept(e);
+                }
+                long istart = System.currentTimeMillis();
+                decoder.group.init(this, configs);
+                _groups.put(decoder.group.getConfigClass(), decoder.group);
+                clearInstances();
+                log.info("Loaded config group.", "group", decoder.group.getName(),
+                    "configs", (configs == null) ? 0 : configs.length,
+                    "decodeMillis", decoder.millis,
+                    "initMillis", System.currentTimeMillis() - istart);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        log.info("Loaded config groups.", "groups", decoders.size(), "threads", threads,
+            "millis", System.currentTimeMillis() - start);
     }
 
     /**
@@ -768,6 +948,9 @@ public class ConfigManager
      */
     protected void fireConfigUpdated (ManagedConfig config)
     {
+        // drop the cached instances even when refreshing, since they may no longer be valid
+        invalidateInstances(config.getName());
+
         if (_updateListeners != null && !_ignoreUpdates) {
             final ConfigEvent<ManagedConfig> event = new ConfigEvent<ManagedConfig>(this, config);
             _updateListeners.apply(
@@ -780,6 +963,44 @@ public class ConfigManager
         }
     }
 
+    /**
+     * Adds an instance to the cache unless the cache was invalidated while it was being resolved.
+     */
+    protected void cacheInstance (InstanceKey key, ManagedConfig instance, int generation)
+    {
+        // the caller may modify its arguments after the call, so the key needs its own copy
+        if (key.args != null) {
+            key = new InstanceKey(key.clazz, key.name, key.args.clone());
+        }
+        _instances.put(key, instance);
+        if (_instanceGeneration.get() != generation) {
+            _instances.remove(key, instance);
+        }
+    }
+
+    /**
+     * Removes all cached instances of the named config.  Called when the config is updated and
+     * by the groups when it's added, replaced or removed.
+     */
+    protected void invalidateInstances (String name)
+    {
+        _instanceGeneration.incrementAndGet();
+        for (Iterator<InstanceKey> it = _instances.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().name.equals(name)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached instances.
+     */
+    protected void clearInstances ()
+    {
+        _instanceGeneration.incrementAndGet();
+        _instances.clear();
+    }
+
     /**
      * Converts the supplied collection of configs to a sorted array for saving, or returns
      * null to indicate that this group should not actually be saved in this instance.
@@ -812,6 +1033,95 @@ public class ConfigManager
         return null;
     }
 
+    /**
+     * Identifies a cached config instance.
+     */
+    protected static class InstanceKey
+    {
+        /** The requested config class. */
+        public final Class<?> clazz;
+
+        /** The name of the config. */
+        public final String name;
+
+        /** The config arguments, or <code>null</code> for none. */
+        public final ArgumentMap args;
+
+        /**
+         * Creates a new key.
+         */
+        public InstanceKey (Class<?> clazz, String name, ArgumentMap args)
+        {
+            this.clazz = clazz;
+            this.name = name;
+            this.args = (args == null || args.isEmpty()) ? null : args;
+            _hash = 31*(31*clazz.hashCode() + name.hashCode()) +
+                (this.args == null ? 0 : this.args.hashCode());
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof InstanceKey)) {
+                return false;
+            }
+            InstanceKey okey = (InstanceKey)other;
+            return _hash == okey._hash && clazz == okey.clazz && name.equals(okey.name) &&
+                (args == null ? okey.args == null : args.equals(okey.args));
+        }
+
+        /** The precomputed hash code. */
+        protected final int _hash;
+    }
+
+    /**
+     * Decodes the configurations of a single group, collecting any exceptions so that they can
+     * be reported on the initializing thread.
+     */
+    protected class GroupDecoder
+        implements Callable<ManagedConfig[]>, Consumer<Exception>
+    {
+        /** The group whose configs we decode. */
+        public final ConfigGroup<?> group;
+
+        /** The exceptions encountered while decoding. */
+        public final List<Exception> exceptions = Lists.newArrayList();
+
+        /** The time taken to decode the configs. */
+        public long millis;
+
+        /**
+         * Creates a new decoder for the specified group.
+         */
+        public GroupDecoder (ConfigGroup<?> group)
+        {
+            this.group = group;
+        }
+
+        // documentation inherited from interface Callable
+        public ManagedConfig[] call ()
+        {
+            long start = System.currentTimeMillis();
+            try {
+                return group.decodeConfigs(ConfigManager.this, this);
+            } finally {
+                millis = System.currentTimeMillis() - start;
+            }
+        }
+
+        // documentation inherited from interface Consumer
+        public void accept (Exception e)
+        {
+            exceptions.add(e);
+        }
+    }
+
     /** The type of this manager. */
     protected String _type;
 
@@ -841,4 +1151,24 @@ public class ConfigManager
 
     /** Set when we should ignore config updates because we're refreshing. */
     protected boolean _ignoreUpdates;
+
+    /** Resolved unscoped instances, mapped by class, name, and arguments. */
+    protected ConcurrentMap<InstanceKey, ManagedConfig> _instances =
+        CacheBuilder.newBuilder().softValues().<InstanceKey, ManagedConfig>build().asMap();
+
+    /** Incremented whenever cached instances are invalidated. */
+    protected AtomicInteger _instanceGeneration = new AtomicInteger();
+
+    /** The number of instance cache hits and misses. */
+    protected AtomicLong _instanceHits = new AtomicLong(), _instanceMisses = new AtomicLong();
+
+    /** The archive containing the resource configs, if any. */
+    protected ConfigArchive _resourceArchive;
+
+    /** The number of threads to use when loading the global groups. */
+    protected int _loaderThreads = 1;
+
+    /** Creates the threads used to decode groups. */
+    protected static final ThreadFactory LOADER_THREAD_FACTORY =
+        new ThreadFactoryBuilder().setNameFormat("config-loader-%d").setDaemon(true).build();
 }
@@ -96,19 +96,23 @@ public class ParameterizedConfig extends ManagedConfig
                 break;
             }
         }
-        if (_derived == null) {
-            _derived = CacheUtil.softValues(1);
-        }
-        ParameterizedConfig instance = _derived.get(filteredArgs);
-        if (instance == null) {
-            if (derivedArgs == null) {
-                derivedArgs = filteredArgs.clone();
+        // create the derived instance under the lock so that concurrent callers share it
+        ParameterizedConfig instance;
+        synchronized (this) {
+            if (_derived == null) {
+                _derived = CacheUtil.softValues(1);
+            }
+            instance = _derived.get(filteredArgs);
+            if (instance == null) {
+                if (derivedArgs == null) {
+                    derivedArgs = filteredArgs.clone();
+                }
+                _derived.put(derivedArgs, instance = (ParameterizedConfig)clone());
+                instance.init(_cfgmgr);
+                instance._base = this;
+                instance._args = derivedArgs;
+                applyArguments(instance, derivedArgs);
             }
-            _derived.put(derivedArgs, instance = (ParameterizedConfig)clone());
-            instance.init(_cfgmgr);
-            instance._base = this;
-            instance._args = derivedArgs;
-            applyArguments(instance, derivedArgs);
         }
         return instance.getBound(scope);
     }
@@ -125,15 +129,18 @@ public class ParameterizedConfig extends ManagedConfig
         super.wasUpdated();
 
         // update derived instances
-        if (_derived != null) {
-            for (Map.Entry<ArgumentMap, ParameterizedConfig> entry : _derived.entrySet()) {
+        Map<ArgumentMap, ParameterizedConfig> derived = _derived;
+        if (derived != null) {
+            for (Map.Entry<ArgumentMap, ParameterizedConfig> entry : derived.entrySet()) {
                 ParameterizedConfig instance = entry.getValue();
                 copy(instance);
                 applyArguments(instance, entry.getKey());
                 instance.wasUpdated();
             }
-            if (_derived.isEmpty()) {
-                _derived = null;
+            synchronized (this) {
+                if (_derived == derived && derived.isEmpty()) {
+                    _derived = null;
+                }
             }
         }
     }
@@ -241,7 +248,7 @@ public class ParameterizedConfig extends ManagedConfig
     @DeepOmit
     protected transient ArgumentMap _args;
 
-    /** Maps arguments to derived instances. */
+    /** Maps arguments to derived instances (created under the config's lock). */
     @DeepOmit
-    protected transient Map<ArgumentMap, ParameterizedConfig> _derived;
+    protected transient volatile Map<ArgumentMap, ParameterizedConfig> _derived;
 }
@@ -30,8 +30,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 
+import java.nio.channels.WritableByteChannel;
+
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -41,7 +44,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.EnumSet;
 
-import java.util.zip.DeflaterOutputStream;
 
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
@@ -72,6 +74,12 @@ public class BinaryExporter extends Exporter
     /** The compressed format flag. */
     public static final short COMPRESSED_FORMAT_FLAG = 0x1000;
 
+    /** The bits of the flags that hold the {@link ExportCodec} id of a compressed stream. */
+    public static final short CODEC_ID_MASK = 0x00FF;
+
+    /** Indicates that the stream was written with an {@link ExportDictionary}. */
+    public static final short DICTIONARY_FORMAT_FLAG = 0x0800;
+
     /** Indicates that a stored class is final. */
     public static final byte FINAL_CLASS_FLAG = (byte)(1 << 0);
 
@@ -110,8 +118,35 @@ public class BinaryExporter extends Exporter
      */
     public BinaryExporter (OutputStream out, boolean compress)
     {
-        _out = new DataOutputStream(_base = out);
-        _compress = compress;
+        this(out, compress ? ExportCodec.DEFLATE : null);
+    }
+
+    /**
+     * Creates an exporter to write to the specified channel through a direct buffer.  Primitive
+     * arrays and NIO buffers are copied into the buffer in bulk when the output is uncompressed.
+     *
+     * @param codec the codec with which to compress the output, or <code>null</code> to leave it
+     * uncompressed.
+     */
+    public BinaryExporter (WritableByteChannel channel, ExportCodec codec)
+    {
+        this(new BufferDataOutputStream(channel), codec);
+    }
+
+    /**
+     * Creates an exporter to write to the specified stream.  If the stream is a
+     * {@link BufferDataOutputStream}, primitive arrays and NIO buffers are copied into its buffer
+     * in bulk when the output is uncompressed.
+     *
+     * @param codec the codec with which to compress the output, or <code>null</code> to leave it
+     * uncompressed.
+     */
+    public BinaryExporter (OutputStream out, ExportCodec codec)
+    {
+        _base = out;
+        _out = (out instanceof BufferDataOutputStream) ?
+            (DataOutputStream)out : new DataOutputStream(out);
+        _codec = codec;
 
         // populate the class map with the bootstrap classes
         for (Class<?> clazz : BOOTSTRAP_CLASSES) {
@@ -119,6 +154,29 @@ public class BinaryExporter extends Exporter
         }
     }
 
+    /**
+     * Sets the dictionary with which to seed the id tables.  The dictionary must be registered
+     * with {@link ExportDictionary#register} wherever the stream is to be read.  This must be
+     * called before any objects are written.
+     *
+     * @return a reference to this exporter, for chaining.
+     */
+    public BinaryExporter setDictionary (ExportDictionary dictionary)
+    {
+        if (_objectIds != null || _dictionary != null) {
+            throw new IllegalStateException("Dictionary must be set once, before writing.");
+        }
+        _dictionary = dictionary;
+        for (ExportDictionary.ClassEntry entry : dictionary.getClasses()) {
+            // the ids of classes we don't have are reserved all the same
+            ++_lastClassId;
+            if (entry.clazz != null) {
+                _classIds.put(entry.clazz, _lastClassId);
+            }
+        }
+        return this;
+    }
+
     @Override
     public BinaryExporter setReplacer (Replacer replacer)
     {
@@ -134,16 +192,30 @@ public class BinaryExporter extends Exporter
             // write the preamble
             _out.writeInt(MAGIC_NUMBER);
             _out.writeShort(VERSION);
-            _out.writeShort(_compress ? COMPRESSED_FORMAT_FLAG : 0x0);
+            short flags = (_codec == null) ?
+                0x0 : (short)(COMPRESSED_FORMAT_FLAG | _codec.getId());
+            if (_dictionary != null) {
+                flags |= DICTIONARY_FORMAT_FLAG;
+            }
+            _out.writeShort(flags);
+            if (_dictionary != null) {
+                _out.writeInt(_dictionary.getId());
+                _out.writeInt(_dictionary.getChecksum());
+            }
 
             // everything thereafter will be compressed if so requested
-            if (_compress) {
-                _out = new DataOutputStream(_defout = new DeflaterOutputStream(_base));
+            if (_codec != null) {
+                _out = new DataOutputStream(_compout = _codec.compress(_base));
             }
 
             // initialize mapping
             _objectIds = new IdentityHashMap<Object, Integer>();
             _objectIds.put(null, 0);
+            if (_dictionary != null) {
+                for (String string : _dictionary.getStrings()) {
+                    _objectIds.put(string, ++_lastObjectId);
+                }
+            }
         }
         write(object, Object.class);
     }
@@ -224,7 +296,7 @@ public class BinaryExporter extends Exporter
     public void close ()
         throws IOException
     {
-        // close the underlying stream (automatically finishes the deflation)
+        // close the underlying stream (automatically finishes the compression)
         _out.close();
     }
 
@@ -232,10 +304,12 @@ public class BinaryExporter extends Exporter
     public void finish ()
         throws IOException
     {
-        // finish up the deflation, provided we ever started
-        if (_defout != null) {
-            _defout.finish();
+        // finish up the compression, provided we ever started
+        if (_compout != null) {
+            _compout.finish();
         }
+        // push out anything held in a buffered target
+        _base.flush();
     }
 
     /**
@@ -383,6 +457,18 @@ public class BinaryExporter extends Exporter
     protected void writeFields (Exportable object)
         throws IOException
     {
+        Class<?> clazz = object.getClass();
+        ClassData cdata = _classData.get(clazz);
+        if (cdata == null) {
+            _classData.put(clazz, cdata = new ClassData(clazz));
+        }
+
+        // without a custom writer or replacer, we can stream the fields directly
+        if (cdata.isCompiled() && _replacer == null) {
+            cdata.writeFields(object);
+            return;
+        }
+
         // populate the field map
         Map<String, FieldValue> fields = new HashMap<String, FieldValue>();
         _fields = fields;
@@ -390,11 +476,6 @@ public class BinaryExporter extends Exporter
         _fields = null;
 
         // write out the values
-        Class<?> clazz = object.getClass();
-        ClassData cdata = _classData.get(clazz);
-        if (cdata == null) {
-            _classData.put(clazz, cdata = new ClassData());
-        }
         cdata.writeFields(fields);
     }
 
@@ -505,6 +586,90 @@ public class BinaryExporter extends Exporter
      */
     protected class ClassData
     {
+        /**
+         * Creates the data for the specified class, resolving its fields if it uses the default
+         * write method.
+         */
+        public ClassData (Class<?> clazz)
+        {
+            // seed the field ids from the dictionary, if any
+            if (_dictionary != null) {
+                for (ExportDictionary.FieldEntry field : _dictionary.getFields(clazz.getName())) {
+                    int fieldId = _nextFieldId++;
+                    if (field.type.clazz != null) {
+                        _fieldIds.put(new FieldData(field.name, field.type.clazz), fieldId);
+                    }
+                }
+            }
+            ObjectMarshaller marshaller = ObjectMarshaller.getObjectMarshaller(clazz);
+            if (marshaller.hasCustomWriter()) {
+                return;
+            }
+            _prototype = marshaller.getPrototype();
+            int count = marshaller.getFieldCount();
+            _fields = new Field[count];
+            _names = new String[count];
+            _types = new int[count];
+            _ids = new int[count];
+            for (int ii = 0; ii < count; ii++) {
+                _fields[ii] = marshaller.getField(ii);
+                _names[ii] = marshaller.getFieldName(ii);
+                _types[ii] = getFieldType(_fields[ii].getType());
+            }
+            Arrays.fill(_ids, -1);
+        }
+
+        /**
+         * Checks whether the fields of the class can be written without going through the
+         * field map.
+         */
+        public boolean isCompiled ()
+        {
+            return _fields != null;
+        }
+
+        /**
+         * Writes the fields of the specified object that differ from the prototype's directly to
+         * the stream, in declaration order.
+         */
+        public void writeFields (Object object)
+            throws IOException
+        {
+            // find the fields to write, storing their indices in the array for this depth
+            if (_depth == _indices.length) {
+                int[][] nindices = new int[_depth * 2][];
+                System.arraycopy(_indices, 0, nindices, 0, _depth);
+                _indices = nindices;
+            }
+            int[] indices = _indices[_depth];
+            if (indices == null || indices.length < _fields.length) {
+                _indices[_depth] = indices = new int[Math.max(_fields.length, 8)];
+            }
+            int count = 0;
+            try {
+                for (int ii = 0; ii < _fields.length; ii++) {
+                    if (!isDefault(ii, object)) {
+                        indices[count++] = ii;
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw (IOException)new IOException("Error writing field.").initCause(e);
+            }
+
+            // write them out
+            Streams.writeVarInt(_out, count);
+            _depth++;
+            try {
+                for (int ii = 0; ii < count; ii++) {
+                    writeField(indices[ii], object);
+                }
+            } catch (IllegalAccessException e) {
+                throw (IOException)new IOException("Error writing field.").initCause(e);
+            } finally {
+                _depth--;
+            }
+        }
+
         /**
          * Writes out the field values in the supplied map.
          */
@@ -538,6 +703,117 @@ public class BinaryExporter extends Exporter
             writeNoReplace(value, clazz);
         }
 
+        /**
+         * Determines whether the value of the indexed field of the object is equal to that of
+         * the prototype.
+         */
+        protected boolean isDefault (int idx, Object object)
+            throws IllegalAccessException
+        {
+            Field field = _fields[idx];
+            switch (_types[idx]) {
+                case BOOLEAN_FIELD:
+                    return field.getBoolean(object) == field.getBoolean(_prototype);
+                case BYTE_FIELD:
+                    return field.getByte(object) == field.getByte(_prototype);
+                case CHAR_FIELD:
+                    return field.getChar(object) == field.getChar(_prototype);
+                case DOUBLE_FIELD:
+                    return field.getDouble(object) == field.getDouble(_prototype);
+                case FLOAT_FIELD:
+                    return field.getFloat(object) == field.getFloat(_prototype);
+                case INT_FIELD:
+                    return field.getInt(object) == field.getInt(_prototype);
+                case LONG_FIELD:
+                    return field.getLong(object) == field.getLong(_prototype);
+                case SHORT_FIELD:
+                    return field.getShort(object) == field.getShort(_prototype);
+                default:
+                    // use Arrays.deepEquals in order to compare arrays sensibly
+                    _a1[0] = field.get(object);
+                    _a2[0] = field.get(_prototype);
+                    return Arrays.deepEquals(_a1, _a2);
+            }
+        }
+
+        /**
+         * Writes out the id and value of the indexed field of the object.
+         */
+        protected void writeField (int idx, Object object)
+            throws IOException, IllegalAccessException
+        {
+            int fieldId = _ids[idx];
+            if (fieldId != -1) {
+                Streams.writeVarInt(_out, fieldId);
+            } else {
+                // go through the map in case the field has already been written through it
+                FieldData field = new FieldData(_names[idx], _fields[idx].getType());
+                Integer id = _fieldIds.get(field);
+                if (id == null) {
+                    _fieldIds.put(field, _ids[idx] = _nextFieldId++);
+                    Streams.writeVarInt(_out, _ids[idx]);
+                    writeNoReplace(field.name, String.class);
+                    writeClass(field.clazz);
+                } else {
+                    Streams.writeVarInt(_out, _ids[idx] = id);
+                }
+            }
+            writeFieldValue(idx, object);
+        }
+
+        /**
+         * Writes out the value of the indexed field of the object.
+         */
+        protected void writeFieldValue (int idx, Object object)
+            throws IOException, IllegalAccessException
+        {
+            Field field = _fields[idx];
+            switch (_types[idx]) {
+                case BOOLEAN_FIELD:
+                    _out.writeBoolean(field.getBoolean(object));
+                    break;
+                case BYTE_FIELD:
+                    _out.writeByte(field.getByte(object));
+                    break;
+                case CHAR_FIELD:
+                    _out.writeChar(field.getChar(object));
+                    break;
+                case DOUBLE_FIELD:
+                    _out.writeDouble(field.getDouble(object));
+                    break;
+                case FLOAT_FIELD:
+                    _out.writeFloat(field.getFloat(object));
+                    break;
+                case INT_FIELD:
+                    _out.writeInt(field.getInt(object));
+                    break;
+                case LONG_FIELD:
+                    _out.writeLong(field.getLong(object));
+                    break;
+                case SHORT_FIELD:
+                    _out.writeShort(field.getShort(object));
+                    break;
+                default:
+                    writeNoReplace(field.get(object), field.getType());
+                    break;
+            }
+        }
+
+        /** The prototype used to determine field defaults, if compiled. */
+        protected Object _prototype;
+
+        /** The fields of the class, if compiled. */
+        protected Field[] _fields;
+
+        /** The export names of the fields. */
+        protected String[] _names;
+
+        /** The type codes of the fields. */
+        protected int[] _types;
+
+        /** The ids assigned to the fields, or -1 for those not yet resolved. */
+        protected int[] _ids;
+
         /** Maps field name/class pairs to field ids. */
         protected Map<FieldData, Integer> _fieldIds = Maps.newHashMap();
 
@@ -545,6 +821,15 @@ public class BinaryExporter extends Exporter
         protected int _nextFieldId;
     }
 
+    /**
+     * Returns the type code for a field of the specified class.
+     */
+    protected static int getFieldType (Class<?> clazz)
+    {
+        Integer type = FIELD_TYPES.get(clazz);
+        return (type == null) ? OBJECT_FIELD : type;
+    }
+
     /**
      * Contains the value and class for a sub-field of an exportable object.
      */
@@ -609,11 +894,11 @@ public class BinaryExporter extends Exporter
     /** The stream that we use for writing data. */
     protected DataOutputStream _out;
 
-    /** Whether or not to compress the output. */
-    protected boolean _compress;
+    /** The codec with which to compress the output, or null for none. */
+    protected ExportCodec _codec;
 
-    /** The deflater stream between the data output and the underlying output. */
-    protected DeflaterOutputStream _defout;
+    /** The compressing stream between the data output and the underlying output. */
+    protected ExportCodec.CompressedOutputStream _compout;
 
     /** Maps objects written to their integer ids.  A null value indicates that the stream has not
      * yet been initialized. */
@@ -631,9 +916,38 @@ public class BinaryExporter extends Exporter
     /** Field values associated with the current object. */
     protected Map<String, FieldValue> _fields;
 
+    /** The dictionary used to seed the id tables, if any. */
+    protected ExportDictionary _dictionary;
+
     /** Class<?> data. */
     protected Map<Class<?>, ClassData> _classData = new HashMap<Class<?>, ClassData>();
 
+    /** Holds the indices of the fields to write at each level of nesting. */
+    protected int[][] _indices = new int[8][];
+
+    /** The current level of nesting of compiled field writes. */
+    protected int _depth;
+
+    /** Type code for object fields. */
+    protected static final int OBJECT_FIELD = 0;
+
+    /** Type codes for primitive fields. */
+    protected static final int BOOLEAN_FIELD = 1, BYTE_FIELD = 2, CHAR_FIELD = 3,
+        DOUBLE_FIELD = 4, FLOAT_FIELD = 5, INT_FIELD = 6, LONG_FIELD = 7, SHORT_FIELD = 8;
+
+    /** Maps primitive classes to their field type codes. */
+    protected static final Map<Class<?>, Integer> FIELD_TYPES =
+        ImmutableMap.<Class<?>, Integer>builder()
+            .put(Boolean.TYPE, BOOLEAN_FIELD)
+            .put(Byte.TYPE, BYTE_FIELD)
+            .put(Character.TYPE, CHAR_FIELD)
+            .put(Double.TYPE, DOUBLE_FIELD)
+            .put(Float.TYPE, FLOAT_FIELD)
+            .put(Integer.TYPE, INT_FIELD)
+            .put(Long.TYPE, LONG_FIELD)
+            .put(Short.TYPE, SHORT_FIELD)
+            .build();
+
     /** The singletons that are used in a type-erased manner, such that they're not really safe
      * to share if seen more than once. */
     protected static final Set<Object> TYPE_ERASED_SINGLETONS = Sets.newIdentityHashSet();
@@ -30,14 +30,18 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+
+import java.nio.ByteBuffer;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.EnumSet;
 
-import java.util.zip.InflaterInputStream;
 
 import com.google.common.base.Supplier;
 import com.google.common.collect.HashMultiset;
@@ -75,12 +79,24 @@ public class BinaryImporter extends Importer
 //        _staticMappings.put(arrayName, arrayWrapper);
 //    }
 
+    /**
+     * Creates an importer to read the remaining contents of the specified buffer (which may be a
+     * memory-mapped file).  Primitive arrays and NIO buffers are copied out of the buffer in bulk
+     * when the stream is uncompressed, and compressed data is decompressed directly from it.
+     */
+    public BinaryImporter (ByteBuffer buffer)
+    {
+        this(new BufferDataInputStream(buffer));
+    }
+
     /**
      * Creates an importer to read from the specified stream.
      */
     public BinaryImporter (InputStream in)
     {
-        _in = new DataInputStream(_base = in);
+        _base = in;
+        _in = (in instanceof BufferDataInputStream) ?
+            (DataInputStream)in : new DataInputStream(in);
 
         // populate the class map with the bootstrap classes
         for (int ii = 0; ii < BinaryExporter.BOOTSTRAP_CLASSES.length; ii++) {
@@ -133,9 +149,32 @@ public class BinaryImporter extends Importer
             short flags = _in.readShort();
             boolean compressed = (flags & BinaryExporter.COMPRESSED_FORMAT_FLAG) != 0;
 
+            // seed the class map from the dictionary, if one was used
+            if ((flags & BinaryExporter.DICTIONARY_FORMAT_FLAG) != 0) {
+                int id = _in.readInt(), checksum = _in.readInt();
+                _dictionary = ExportDictionary.get(id);
+                if (_dictionary == null) {
+                    throw new IOException(String.format("Unknown dictionary [id=%#x].", id));
+                }
+                if (_dictionary.getChecksum() != checksum) {
+                    throw new IOException(String.format(
+                        "Dictionary mismatch [id=%#x, checksum=%#x, expected=%#x].",
+                        id, _dictionary.getChecksum(), checksum));
+                }
+                int classId = BinaryExporter.BOOTSTRAP_CLASSES.length;
+                for (ExportDictionary.ClassEntry entry : _dictionary.getClasses()) {
+                    _classes.put(++classId, getClassWrapper(entry));
+                }
+            }
+
             // the rest of the stream may be compressed
             if (compressed) {
-                _in = new DataInputStream(new InflaterInputStream(_base));
+                int id = flags & BinaryExporter.CODEC_ID_MASK;
+                ExportCodec codec = ExportCodec.getCodec(id);
+                if (codec == null) {
+                    throw new IOException(String.format("Unknown codec [id=%d].", id));
+                }
+                _in = new DataInputStream(codec.decompress(_base));
             }
 
             _objectIdReader = _idReaderSupplier.get();
@@ -144,6 +183,12 @@ public class BinaryImporter extends Importer
             // initialize mapping
             _objects = new HashIntMap<Object>();
             _objects.put(0, NULL);
+            if (_dictionary != null) {
+                int objectId = 0;
+                for (String string : _dictionary.getStrings()) {
+                    _objects.put(++objectId, string);
+                }
+            }
         }
         return read(_objectClass);
     }
@@ -405,13 +450,18 @@ public class BinaryImporter extends Importer
         } else {
             ClassData cdata = _classData.get(cclazz);
             if (cdata == null) {
-                _classData.put(cclazz, cdata = new ClassData());
+                _classData.put(cclazz, cdata = new ClassData(cclazz));
             }
-            _fields = cdata.readFields();
-            if (value instanceof Exportable) {
-                readFields((Exportable)value);
+            if (cdata.isCompiled() && value instanceof Exportable) {
+                // assign the fields directly as we read them
+                cdata.readFields(value);
+            } else {
+                _fields = cdata.readFields();
+                if (value instanceof Exportable) {
+                    readFields((Exportable)value);
+                }
+                _fields = null;
             }
-            _fields = null;
         }
         return value;
     }
@@ -504,6 +554,16 @@ public class BinaryImporter extends Importer
         return wrapper;
     }
 
+    /**
+     * Returns a shared class wrapper instance for a dictionary class, using the flags recorded
+     * in the dictionary if the class can't be resolved.
+     */
+    protected ClassWrapper getClassWrapper (ExportDictionary.ClassEntry entry)
+    {
+        return (entry.clazz == null) ?
+            getClassWrapper(entry.name, entry.flags) : getClassWrapper(entry.clazz);
+    }
+
     /**
      * Returns a shared class wrapper instance.
      */
@@ -712,6 +772,99 @@ public class BinaryImporter extends Importer
      */
     protected class ClassData
     {
+        /**
+         * Creates the data for the specified class, resolving its fields if it could be resolved
+         * and uses the default read method.
+         */
+        public ClassData (ClassWrapper wrapper)
+        {
+            // seed the field data from the dictionary, if any
+            if (_dictionary != null) {
+                int fieldId = 0;
+                for (ExportDictionary.FieldEntry field :
+                        _dictionary.getFields(wrapper.getName())) {
+                    _fieldData.put(fieldId++,
+                        new FieldData(field.name, getClassWrapper(field.type)));
+                }
+            }
+            Class<?> clazz = wrapper.getWrappedClass();
+            if (clazz == null || !Exportable.class.isAssignableFrom(clazz)) {
+                return;
+            }
+            ObjectMarshaller marshaller = ObjectMarshaller.getObjectMarshaller(clazz);
+            if (marshaller.hasCustomReader()) {
+                return;
+            }
+            _prototype = marshaller.getPrototype();
+            int count = marshaller.getFieldCount();
+            _fields = new Field[count];
+            _types = new int[count];
+            _fieldIndices = Maps.newHashMapWithExpectedSize(count);
+            for (int ii = 0; ii < count; ii++) {
+                _fields[ii] = marshaller.getField(ii);
+                _types[ii] = BinaryExporter.getFieldType(_fields[ii].getType());
+                _fieldIndices.put(marshaller.getFieldName(ii), ii);
+            }
+        }
+
+        /**
+         * Checks whether the fields of the class can be assigned directly as they are read.
+         */
+        public boolean isCompiled ()
+        {
+            return _fields != null;
+        }
+
+        /**
+         * Reads the field values and assigns them to the fields of the supplied object.  Fields
+         * absent from the stream are treated as the map-based path treats them: primitives are
+         * set to the prototype's values and objects are left alone.  Values of unknown fields
+         * are read and discarded, and values whose types don't match are converted if possible.
+         */
+        public void readFields (Object object)
+            throws IOException
+        {
+            // get the array that tracks which fields were read at this depth
+            if (_depth == _present.length) {
+                boolean[][] npresent = new boolean[_depth * 2][];
+                System.arraycopy(_present, 0, npresent, 0, _depth);
+                _present = npresent;
+            }
+            boolean[] present = _present[_depth];
+            if (present == null || present.length < _fields.length) {
+                _present[_depth] = present = new boolean[Math.max(_fields.length, 8)];
+            }
+            _depth++;
+            try {
+                for (int ii = 0, nn = _fieldIdReader.readLength(); ii < nn; ii++) {
+                    int fieldId = _fieldIdReader.read();
+                    FieldData fieldData = getFieldData(fieldId);
+                    FieldTarget target = getFieldTarget(fieldId, fieldData);
+                    if (target == null) {
+                        read(fieldData.clazz);
+                    } else if (target.direct) {
+                        readDirect(target.index, object);
+                        present[target.index] = true;
+                    } else {
+                        present[target.index] = assign(
+                            target.index, object, fieldData.name, read(fieldData.clazz));
+                    }
+                }
+                for (int ii = 0; ii < _fields.length; ii++) {
+                    if (!present[ii] && _types[ii] != BinaryExporter.OBJECT_FIELD) {
+                        copyDefault(ii, object);
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw (IOException)new IOException("Error reading field.").initCause(e);
+            } finally {
+                // clear the flags even if the read failed, so that they don't leak into the
+                // next object read at this depth
+                Arrays.fill(present, 0, _fields.length, false);
+                _depth--;
+            }
+        }
+
         /**
          * Reads the field values in the supplied map.
          */
@@ -732,16 +885,201 @@ public class BinaryImporter extends Importer
         protected void readField (Map<String, Object> fields)
             throws IOException
         {
-            int fieldId = _fieldIdReader.read();
+            FieldData fieldData = getFieldData(_fieldIdReader.read());
+            fields.put(fieldData.name, read(fieldData.clazz));
+        }
+
+        /**
+         * Returns the data for the identified field, reading it from the stream if this is the
+         * first time we've seen the id.
+         */
+        protected FieldData getFieldData (int fieldId)
+            throws IOException
+        {
             FieldData fieldData = _fieldData.get(fieldId);
             if (fieldData == null) {
                 String name = (String)read(_stringClass);
                 ClassWrapper clazz = readClass();
                 _fieldData.put(fieldId, fieldData = new FieldData(name, clazz));
             }
-            fields.put(fieldData.name, read(fieldData.clazz));
+            return fieldData;
+        }
+
+        /**
+         * Returns the target for the identified field, or null if the class has no such field.
+         */
+        protected FieldTarget getFieldTarget (int fieldId, FieldData fieldData)
+        {
+            FieldTarget target = _targets.get(fieldId);
+            if (target == null) {
+                Integer idx = _fieldIndices.get(fieldData.name);
+                _targets.put(fieldId, target = (idx == null) ? UNKNOWN_FIELD :
+                    new FieldTarget(idx, fieldData.clazz.getWrappedClass() ==
+                        _fields[idx].getType() && _fields[idx].getType().isPrimitive()));
+            }
+            return (target == UNKNOWN_FIELD) ? null : target;
+        }
+
+        /**
+         * Reads a primitive value of the indexed field's type from the stream and assigns it.
+         */
+        protected void readDirect (int idx, Object object)
+            throws IOException, IllegalAccessException
+        {
+            Field field = _fields[idx];
+            switch (_types[idx]) {
+                case BinaryExporter.BOOLEAN_FIELD:
+                    field.setBoolean(object, _in.readBoolean());
+                    break;
+                case BinaryExporter.BYTE_FIELD:
+                    field.setByte(object, _in.readByte());
+                    break;
+                case BinaryExporter.CHAR_FIELD:
+                    field.setChar(object, _in.readChar());
+                    break;
+                case BinaryExporter.DOUBLE_FIELD:
+                    field.setDouble(object, _in.readDouble());
+                    break;
+                case BinaryExporter.FLOAT_FIELD:
+                    field.setFloat(object, _in.readFloat());
+                    break;
+                case BinaryExporter.INT_FIELD:
+                    field.setInt(object, _in.readInt());
+                    break;
+                case BinaryExporter.LONG_FIELD:
+                    field.setLong(object, _in.readLong());
+                    break;
+                case BinaryExporter.SHORT_FIELD:
+                    field.setShort(object, _in.readShort());
+                    break;
+            }
+        }
+
+        /**
+         * Assigns a value read from the stream to the indexed field, converting it in the same
+         * way as the read methods do.
+         *
+         * @return true if the value was assigned, false if it was of an incompatible type.
+         */
+        protected boolean assign (int idx, Object object, String name, Object value)
+            throws IllegalAccessException
+        {
+            Field field = _fields[idx];
+            switch (_types[idx]) {
+                case BinaryExporter.OBJECT_FIELD:
+                    if (value == null || field.getType().isInstance(value)) {
+                        field.set(object, value);
+                        return true;
+                    }
+                    log.warning("Read value is not the correct type.",
+                            "name", name, "expectedType", field.getType().getName(),
+                            "actualType", value.getClass().getName());
+                    return false;
+                case BinaryExporter.BOOLEAN_FIELD:
+                    if (value instanceof Boolean) {
+                        field.setBoolean(object, (Boolean)value);
+                        return true;
+                    }
+                    break;
+                case BinaryExporter.CHAR_FIELD:
+                    if (value instanceof Character) {
+                        field.setChar(object, (Character)value);
+                        return true;
+                    }
+                    break;
+                default:
+                    if (value instanceof Number) {
+                        assignNumber(idx, object, (Number)value);
+                        return true;
+                    }
+                    break;
+            }
+            if (value != null) {
+                log.warning("Can't convert field value.", "name", name,
+                    "type", field.getType(), "value", value);
+            }
+            return false;
+        }
+
+        /**
+         * Assigns a number to the indexed numeric field.
+         */
+        protected void assignNumber (int idx, Object object, Number value)
+            throws IllegalAccessException
+        {
+            Field field = _fields[idx];
+            switch (_types[idx]) {
+                case BinaryExporter.BYTE_FIELD:
+                    field.setByte(object, value.byteValue());
+                    break;
+                case BinaryExporter.DOUBLE_FIELD:
+                    field.setDouble(object, value.doubleValue());
+                    break;
+                case BinaryExporter.FLOAT_FIELD:
+                    field.setFloat(object, value.floatValue());
+                    break;
+                case BinaryExporter.INT_FIELD:
+                    field.setInt(object, value.intValue());
+                    break;
+                case BinaryExporter.LONG_FIELD:
+                    field.setLong(object, value.longValue());
+                    break;
+                case BinaryExporter.SHORT_FIELD:
+                    field.setShort(object, value.shortValue());
+                    break;
+            }
+        }
+
+        /**
+         * Sets the indexed primitive field to the value of the prototype's field.
+         */
+        protected void copyDefault (int idx, Object object)
+            throws IllegalAccessException
+        {
+            Field field = _fields[idx];
+            switch (_types[idx]) {
+                case BinaryExporter.BOOLEAN_FIELD:
+                    field.setBoolean(object, field.getBoolean(_prototype));
+                    break;
+                case BinaryExporter.BYTE_FIELD:
+                    field.setByte(object, field.getByte(_prototype));
+                    break;
+                case BinaryExporter.CHAR_FIELD:
+                    field.setChar(object, field.getChar(_prototype));
+                    break;
+                case BinaryExporter.DOUBLE_FIELD:
+                    field.setDouble(object, field.getDouble(_prototype));
+                    break;
+                case BinaryExporter.FLOAT_FIELD:
+                    field.setFloat(object, field.getFloat(_prototype));
+                    break;
+                case BinaryExporter.INT_FIELD:
+                    field.setInt(object, field.getInt(_prototype));
+                    break;
+                case BinaryExporter.LONG_FIELD:
+                    field.setLong(object, field.getLong(_prototype));
+                    break;
+                case BinaryExporter.SHORT_FIELD:
+                    field.setShort(object, field.getShort(_prototype));
+                    break;
+            }
         }
 
+        /** The prototype used to determine field defaults, if compiled. */
+        protected Object _prototype;
+
+        /** The fields of the class, if compiled. */
+        protected Field[] _fields;
+
+        /** The type codes of the fields. */
+        protected int[] _types;
+
+        /** Maps export names to field indices. */
+        protected Map<String, Integer> _fieldIndices;
+
+        /** Maps field ids to their targets in the class. */
+        protected HashIntMap<FieldTarget> _targets = new HashIntMap<FieldTarget>();
+
         /** Maps field ids to name/class pairs. */
         protected HashIntMap<FieldData> _fieldData = new HashIntMap<FieldData>();
 
@@ -770,6 +1108,27 @@ public class BinaryImporter extends Importer
         }
     }
 
+    /**
+     * Identifies the class field to which a stream field is assigned.
+     */
+    protected static class FieldTarget
+    {
+        /** The index of the field in the class. */
+        public final int index;
+
+        /** Whether the stream value is a primitive that can be read directly into the field. */
+        public final boolean direct;
+
+        /**
+         * Constructor.
+         */
+        public FieldTarget (int index, boolean direct)
+        {
+            this.index = index;
+            this.direct = direct;
+        }
+    }
+
     /**
      * Reads field, object, or class ids off the stream.
      */
@@ -882,6 +1241,15 @@ public class BinaryImporter extends Importer
     /** Field values associated with the current object. */
     protected Map<String, Object> _fields;
 
+    /** The dictionary with which the stream was written, if any. */
+    protected ExportDictionary _dictionary;
+
+    /** Tracks the fields read at each level of nesting of direct field reads. */
+    protected boolean[][] _present = new boolean[8][];
+
+    /** The current level of nesting of direct field reads. */
+    protected int _depth;
+
     /** Maps class names to wrapper objects (for classes identified in the stream). */
     protected Map<String, ClassWrapper> _wrappersByName = Maps.newHashMap(/*_staticMappings*/);
 
@@ -906,6 +1274,9 @@ public class BinaryImporter extends Importer
     /** Signifies a null entry in the object map. */
     protected static final Object NULL = new Object();
 
+    /** Signifies a stream field that doesn't exist in the class. */
+    protected static final FieldTarget UNKNOWN_FIELD = new FieldTarget(-1, false);
+
 //    /** Static mappings. */
 //    protected static Map<String, ClassWrapper> _staticMappings = Maps.newHashMap();
 }
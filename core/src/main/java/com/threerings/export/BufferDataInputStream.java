@@ -0,0 +1,135 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A data input stream that reads from a {@link ByteBuffer}, such as a memory-mapped file.  The
+ * {@link Streamer}s for primitive arrays and NIO buffers transfer their contents directly out of
+ * the buffer in bulk rather than reading them an element at a time.
+ */
+public class BufferDataInputStream extends DataInputStream
+{
+    /**
+     * Maps the specified file into memory and returns a stream that reads its contents.
+     */
+    public static BufferDataInputStream map (File file)
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mapping remains valid after the channel is closed
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+            return new BufferDataInputStream(buffer);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Creates a stream that reads the remaining contents of the supplied buffer.
+     */
+    public BufferDataInputStream (ByteBuffer buffer)
+    {
+        super(new BufferInputStream(buffer));
+        _buffer = buffer;
+    }
+
+    /**
+     * Returns a reference to the underlying buffer, whose position is that of the next byte to be
+     * read from the stream.
+     */
+    public ByteBuffer getBuffer ()
+    {
+        return _buffer;
+    }
+
+    /**
+     * Reads from a buffer.
+     */
+    protected static class BufferInputStream extends InputStream
+    {
+        /**
+         * Creates a new stream reading from the supplied buffer.
+         */
+        public BufferInputStream (ByteBuffer buffer)
+        {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read ()
+        {
+            return _buffer.hasRemaining() ? (_buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read (byte[] b, int off, int len)
+        {
+            if (len == 0) {
+                return 0;
+            }
+            int remaining = _buffer.remaining();
+            if (remaining == 0) {
+                return -1;
+            }
+            int count = Math.min(len, remaining);
+            _buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip (long n)
+        {
+            int count = (int)Math.max(0L, Math.min(n, _buffer.remaining()));
+            _buffer.position(_buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available ()
+        {
+            return _buffer.remaining();
+        }
+
+        /** The buffer from which we read. */
+        protected ByteBuffer _buffer;
+    }
+
+    /** The buffer from which we read. */
+    protected ByteBuffer _buffer;
+}
@@ -0,0 +1,201 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A data output stream that writes into a {@link ByteBuffer}, which is either flushed to a
+ * channel (such as a {@link java.nio.channels.FileChannel}) when full or grown as necessary to
+ * hold everything written.  The {@link Streamer}s for primitive arrays and NIO buffers transfer
+ * their contents directly into the buffer in bulk rather than writing them an element at a time.
+ */
+public class BufferDataOutputStream extends DataOutputStream
+{
+    /**
+     * Creates a stream that accumulates its output in memory, to be retrieved with
+     * {@link #getOutput}.
+     */
+    public BufferDataOutputStream ()
+    {
+        this(null, ByteBuffer.allocate(DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Creates a stream that writes to the specified channel through a direct buffer of the
+     * default size.
+     */
+    public BufferDataOutputStream (WritableByteChannel channel)
+    {
+        this(channel, ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Creates a stream that writes to the specified channel (or, if the channel is
+     * <code>null</code>, grows the buffer as necessary).  The data is always written in
+     * big-endian order, whatever the order of the supplied buffer.
+     */
+    public BufferDataOutputStream (WritableByteChannel channel, ByteBuffer buffer)
+    {
+        super(null);
+        out = new BufferOutputStream();
+        _channel = channel;
+        _buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Makes sure that the buffer has at least the specified number of bytes remaining (which
+     * must not exceed its capacity, if writing to a channel), flushing or growing it as necessary.
+     * Data written into the buffer directly must be reported with {@link #noteWritten} so that
+     * it's included in the {@link #size}.
+     *
+     * @return a reference to the buffer, into which data may be written directly.
+     */
+    public ByteBuffer reserve (int bytes)
+        throws IOException
+    {
+        if (_buffer.remaining() >= bytes) {
+            return _buffer;
+        }
+        if (_channel != null) {
+            drain();
+        } else {
+            int capacity = Math.max(_buffer.capacity() * 2, _buffer.position() + bytes);
+            ByteBuffer nbuffer = ByteBuffer.allocate(capacity).order(ByteOrder.BIG_ENDIAN);
+            _buffer.flip();
+            nbuffer.put(_buffer);
+            _buffer = nbuffer;
+        }
+        return _buffer;
+    }
+
+    /**
+     * Notes that the specified number of bytes were written directly into the buffer returned by
+     * {@link #reserve}.
+     */
+    public void noteWritten (int bytes)
+    {
+        written += bytes;
+        if (written < 0) {
+            written = Integer.MAX_VALUE; // as in DataOutputStream
+        }
+    }
+
+    /**
+     * Returns a buffer containing the data written so far, if accumulating output in memory.
+     */
+    public ByteBuffer getOutput ()
+    {
+        ByteBuffer output = _buffer.duplicate();
+        output.flip();
+        return output;
+    }
+
+    @Override
+    public void flush ()
+        throws IOException
+    {
+        if (_channel != null) {
+            drain();
+        }
+    }
+
+    @Override
+    public void close ()
+        throws IOException
+    {
+        if (_channel != null) {
+            try {
+                drain();
+            } finally {
+                _channel.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer out to the channel.
+     */
+    protected void drain ()
+        throws IOException
+    {
+        _buffer.flip();
+        while (_buffer.hasRemaining()) {
+            _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
+
+    /**
+     * Writes into the buffer.
+     */
+    protected class BufferOutputStream extends OutputStream
+    {
+        @Override
+        public void write (int b)
+            throws IOException
+        {
+            reserve(1).put((byte)b);
+        }
+
+        @Override
+        public void write (byte[] b, int off, int len)
+            throws IOException
+        {
+            if (_channel != null && len > _buffer.capacity()) {
+                // no point in copying large arrays into the buffer
+                drain();
+                ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+                while (buf.hasRemaining()) {
+                    _channel.write(buf);
+                }
+                return;
+            }
+            while (len > 0) {
+                ByteBuffer buffer = reserve(Math.min(len, _buffer.capacity()));
+                int count = Math.min(len, buffer.remaining());
+                buffer.put(b, off, count);
+                off += count;
+                len -= count;
+            }
+        }
+    }
+
+    /** The channel to which we write, if any. */
+    protected WritableByteChannel _channel;
+
+    /** The buffer into which we write. */
+    protected ByteBuffer _buffer;
+
+    /** The size of the buffer that we create by default. */
+    protected static final int DEFAULT_BUFFER_SIZE = 65536;
+}
@@ -0,0 +1,235 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A compression codec for the binary export format.  The id of the codec used to write a stream
+ * is recorded in the low bits of the header flags, so readers can find the matching codec in the
+ * registry.  Id zero is reserved for deflate, which is what older streams flagged as compressed
+ * use.  Additional codecs may be registered with ids up to {@link #MAX_ID}.
+ */
+public abstract class ExportCodec
+{
+    /**
+     * A stream that compresses its output and must be finished to write out any trailing data.
+     */
+    public static abstract class CompressedOutputStream extends FilterOutputStream
+    {
+        /**
+         * Creates a new stream writing to the specified underlying stream.
+         */
+        public CompressedOutputStream (OutputStream out)
+        {
+            super(out);
+        }
+
+        /**
+         * Writes out any remaining compressed data without closing the underlying stream.
+         */
+        public abstract void finish ()
+            throws IOException;
+
+        @Override
+        public void write (byte[] b, int off, int len)
+            throws IOException
+        {
+            out.write(b, off, len);
+        }
+    }
+
+    /** The largest codec id that may be recorded in the header. */
+    public static final int MAX_ID = 0xFF;
+
+    /** Deflate at the default level. */
+    public static final ExportCodec DEFLATE = deflate(Deflater.DEFAULT_COMPRESSION);
+
+    /** The fast in-project LZ codec. */
+    public static final ExportCodec LZ = new LZCodec();
+
+    /**
+     * Returns a deflate codec with the specified compression level.  All levels share the
+     * deflate id, since they use the same decoder.
+     */
+    public static ExportCodec deflate (int level)
+    {
+        return new DeflateCodec(level);
+    }
+
+    /**
+     * Registers a codec so that streams written with it can be read.  Registering another codec
+     * of the same class with an id already in use has no effect.
+     *
+     * @throws IllegalArgumentException if the id is invalid or already used by a codec of a
+     * different class.
+     */
+    public static void register (ExportCodec codec)
+    {
+        int id = codec.getId();
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("Invalid codec id [id=" + id + "].");
+        }
+        ExportCodec ocodec = _codecs.putIfAbsent(id, codec);
+        if (ocodec != null && ocodec.getClass() != codec.getClass()) {
+            throw new IllegalArgumentException("Duplicate codec id [id=" + id + "].");
+        }
+    }
+
+    /**
+     * Returns the registered codec with the specified id, or <code>null</code> if none.
+     */
+    public static ExportCodec getCodec (int id)
+    {
+        return _codecs.get(id);
+    }
+
+    /**
+     * Parses a codec description of the form used by the converter tools: "none", "lz",
+     * "deflate", or "deflate:&lt;level&gt;".
+     *
+     * @return the identified codec, or <code>null</code> for "none".
+     */
+    public static ExportCodec forName (String name)
+    {
+        if (name.equals("none")) {
+            return null;
+        } else if (name.equals("lz")) {
+            return LZ;
+        } else if (name.equals("deflate")) {
+            return DEFLATE;
+        } else if (name.startsWith("deflate:")) {
+            try {
+                return deflate(Integer.parseInt(name.substring(8)));
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        throw new IllegalArgumentException("Unknown codec: " + name);
+    }
+
+    /**
+     * Returns the id recorded in the header of streams written with this codec.
+     */
+    public abstract int getId ();
+
+    /**
+     * Wraps the supplied stream in one that compresses the data written to it.
+     */
+    public abstract CompressedOutputStream compress (OutputStream out);
+
+    /**
+     * Wraps the supplied stream in one that decompresses the data read from it.
+     */
+    public abstract InputStream decompress (InputStream in);
+
+    /**
+     * Returns a description of the codec.  The descriptions of the standard codecs are accepted
+     * by {@link #forName}.
+     */
+    @Override
+    public String toString ()
+    {
+        return getClass().getName() + ":" + getId();
+    }
+
+    /**
+     * Deflate with a configurable level.
+     */
+    protected static class DeflateCodec extends ExportCodec
+    {
+        /**
+         * Creates a codec that compresses at the specified level.
+         */
+        public DeflateCodec (int level)
+        {
+            _level = level;
+        }
+
+        @Override
+        public int getId ()
+        {
+            return 0;
+        }
+
+        @Override
+        public CompressedOutputStream compress (OutputStream out)
+        {
+            final Deflater deflater = new Deflater(_level);
+            return new CompressedOutputStream(new DeflaterOutputStream(out, deflater)) {
+                @Override
+                public void finish ()
+                    throws IOException
+                {
+                    ((DeflaterOutputStream)out).finish();
+                }
+                @Override
+                public void close ()
+                    throws IOException
+                {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress (InputStream in)
+        {
+            return new InflaterInputStream(in);
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "deflate:" + _level;
+        }
+
+        /** The compression level. */
+        protected int _level;
+    }
+
+    /** Registered codecs mapped by id. */
+    protected static ConcurrentMap<Integer, ExportCodec> _codecs =
+        new ConcurrentHashMap<Integer, ExportCodec>();
+    static {
+        register(DEFLATE);
+        register(LZ);
+    }
+}
@@ -0,0 +1,471 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import java.util.zip.CRC32;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * A pre-agreed set of classes, field names, and strings with which {@link BinaryExporter} and
+ * {@link BinaryImporter} seed their id tables, so that small payloads need not spell them out.
+ * The contents of a dictionary are pinned: they're recorded by name when the dictionary is
+ * created and thereafter read from its serialized form (see {@link #write} and {@link #read}),
+ * never reflected from the classes at hand, so the writer and the reader assign the same ids
+ * even after the classes change.  Streams written with a dictionary record its id and a
+ * checksum of its contents; the reader looks the dictionary up in the registry and refuses
+ * streams whose checksum doesn't match.  Dictionaries must therefore be given a new id whenever
+ * their contents change, and old dictionaries must remain registered for as long as data
+ * written with them is to be read.
+ */
+public class ExportDictionary
+{
+    /** Identifies serialized dictionaries. */
+    public static final int MAGIC_NUMBER = 0xFACED1C7;
+
+    /** The current serialized dictionary version. */
+    public static final short VERSION = 0x0001;
+
+    /**
+     * Registers a dictionary so that streams written with it can be read.  Registering another
+     * dictionary with the same id and contents has no effect.
+     */
+    public static void register (ExportDictionary dictionary)
+    {
+        ExportDictionary odict = _registry.putIfAbsent(dictionary.getId(), dictionary);
+        if (odict != null && odict.getChecksum() != dictionary.getChecksum()) {
+            throw new IllegalArgumentException(
+                "Duplicate dictionary id [id=" + dictionary.getId() + "].");
+        }
+    }
+
+    /**
+     * Unregisters a dictionary, if registered.
+     */
+    public static void unregister (ExportDictionary dictionary)
+    {
+        _registry.remove(dictionary.getId(), dictionary);
+    }
+
+    /**
+     * Returns the registered dictionary with the specified id, or <code>null</code> if none.
+     */
+    public static ExportDictionary get (int id)
+    {
+        return _registry.get(id);
+    }
+
+    /**
+     * Creates a new dictionary from the current definitions of the supplied classes.  The
+     * {@link Exportable} classes that use the default write method have the names and types of
+     * their fields added as well.  This is meant for generating dictionaries, which should then
+     * be {@link #write}ten out and {@link #read} back wherever they're used, so that their
+     * contents remain fixed as the classes change.
+     *
+     * @param id the dictionary id, which should change whenever the contents change.
+     * @param classes the classes to include.
+     * @param strings the strings to include.
+     */
+    public static ExportDictionary create (int id, Class<?>[] classes, String[] strings)
+    {
+        List<ClassEntry> centries = Lists.newArrayListWithCapacity(classes.length);
+        Map<String, List<FieldEntry>> fields = Maps.newLinkedHashMap();
+        for (Class<?> clazz : classes) {
+            centries.add(new ClassEntry(clazz));
+            if (!Exportable.class.isAssignableFrom(clazz) || clazz.isInterface()) {
+                continue;
+            }
+            ObjectMarshaller marshaller = ObjectMarshaller.getObjectMarshaller(clazz);
+            if (marshaller.hasCustomWriter()) {
+                continue;
+            }
+            List<FieldEntry> fentries = Lists.newArrayList();
+            for (int ii = 0, nn = marshaller.getFieldCount(); ii < nn; ii++) {
+                fentries.add(new FieldEntry(marshaller.getFieldName(ii),
+                    new ClassEntry(marshaller.getField(ii).getType())));
+            }
+            fields.put(clazz.getName(), fentries);
+        }
+        return new ExportDictionary(id, centries, fields, Lists.newArrayList(strings));
+    }
+
+    /**
+     * Reads a dictionary written with {@link #write}.
+     *
+     * @throws IOException if the stream couldn't be read or its contents don't match the
+     * checksum recorded with them.
+     */
+    public static ExportDictionary read (InputStream in)
+        throws IOException
+    {
+        DataInputStream din = new DataInputStream(in);
+        if (din.readInt() != MAGIC_NUMBER) {
+            throw new IOException("Invalid magic number.");
+        }
+        short version = din.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported dictionary version: " + version);
+        }
+        int id = din.readInt(), checksum = din.readInt();
+
+        List<ClassEntry> classes = Lists.newArrayList();
+        for (int ii = 0, nn = din.readInt(); ii < nn; ii++) {
+            classes.add(readClassEntry(din));
+        }
+        Map<String, List<FieldEntry>> fields = Maps.newLinkedHashMap();
+        for (int ii = 0, nn = din.readInt(); ii < nn; ii++) {
+            String cname = din.readUTF();
+            List<FieldEntry> fentries = Lists.newArrayList();
+            for (int jj = 0, mm = din.readInt(); jj < mm; jj++) {
+                String name = din.readUTF();
+                fentries.add(new FieldEntry(name, readClassEntry(din)));
+            }
+            fields.put(cname, fentries);
+        }
+        List<String> strings = Lists.newArrayList();
+        for (int ii = 0, nn = din.readInt(); ii < nn; ii++) {
+            strings.add(din.readUTF());
+        }
+
+        ExportDictionary dictionary;
+        try {
+            dictionary = new ExportDictionary(id, classes, fields, strings);
+        } catch (IllegalArgumentException e) {
+            throw (IOException)new IOException("Invalid dictionary.").initCause(e);
+        }
+        if (dictionary.getChecksum() != checksum) {
+            throw new IOException(String.format(
+                "Dictionary checksum mismatch [id=%#x, checksum=%#x, expected=%#x].",
+                id, dictionary.getChecksum(), checksum));
+        }
+        return dictionary;
+    }
+
+    /**
+     * Creates a new dictionary with the specified contents.
+     *
+     * @param id the dictionary id, which should change whenever the contents change.
+     * @param classes the classes to include, none of which may be a bootstrap class or appear
+     * more than once.
+     * @param fields the fields of the classes that use the default write method, mapped by class
+     * name.
+     * @param strings the strings to include.
+     */
+    public ExportDictionary (
+        int id, List<ClassEntry> classes, Map<String, List<FieldEntry>> fields,
+        List<String> strings)
+    {
+        Set<String> names = Sets.newHashSet();
+        for (Class<?> clazz : BinaryExporter.BOOTSTRAP_CLASSES) {
+            names.add(clazz.getName());
+        }
+        for (ClassEntry entry : classes) {
+            if (!names.add(entry.name)) {
+                throw new IllegalArgumentException(
+                    "Duplicate or bootstrap class in dictionary [name=" + entry.name + "].");
+            }
+        }
+        _id = id;
+        _classes = ImmutableList.copyOf(classes);
+        ImmutableMap.Builder<String, List<FieldEntry>> fbuilder = ImmutableMap.builder();
+        for (Map.Entry<String, List<FieldEntry>> entry : fields.entrySet()) {
+            fbuilder.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+        }
+        _fields = fbuilder.build();
+        ImmutableList.Builder<String> sbuilder = ImmutableList.builder();
+        for (String string : strings) {
+            sbuilder.add(string.intern());
+        }
+        _strings = sbuilder.build();
+
+        // compute the checksum from the contents as given
+        CRC32 crc = new CRC32();
+        update(crc, id);
+        update(crc, _classes.size());
+        for (ClassEntry entry : _classes) {
+            update(crc, entry);
+        }
+        update(crc, _fields.size());
+        for (Map.Entry<String, List<FieldEntry>> entry : _fields.entrySet()) {
+            update(crc, entry.getKey());
+            update(crc, entry.getValue().size());
+            for (FieldEntry field : entry.getValue()) {
+                update(crc, field.name);
+                update(crc, field.type);
+            }
+        }
+        update(crc, _strings.size());
+        for (String string : _strings) {
+            update(crc, string);
+        }
+        _checksum = (int)crc.getValue();
+    }
+
+    /**
+     * Returns the id of the dictionary.
+     */
+    public int getId ()
+    {
+        return _id;
+    }
+
+    /**
+     * Returns the checksum of the dictionary's contents.
+     */
+    public int getChecksum ()
+    {
+        return _checksum;
+    }
+
+    /**
+     * Returns the classes in the dictionary.
+     */
+    public List<ClassEntry> getClasses ()
+    {
+        return _classes;
+    }
+
+    /**
+     * Returns the fields of the named class, or an empty list if the class has none in the
+     * dictionary.
+     */
+    public List<FieldEntry> getFields (String cname)
+    {
+        List<FieldEntry> fields = _fields.get(cname);
+        return (fields == null) ? Collections.<FieldEntry>emptyList() : fields;
+    }
+
+    /**
+     * Returns the (interned) strings in the dictionary.
+     */
+    public List<String> getStrings ()
+    {
+        return _strings;
+    }
+
+    /**
+     * Writes the dictionary to a stream from which it can be {@link #read}.
+     */
+    public void write (OutputStream out)
+        throws IOException
+    {
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(MAGIC_NUMBER);
+        dout.writeShort(VERSION);
+        dout.writeInt(_id);
+        dout.writeInt(_checksum);
+        dout.writeInt(_classes.size());
+        for (ClassEntry entry : _classes) {
+            writeClassEntry(dout, entry);
+        }
+        dout.writeInt(_fields.size());
+        for (Map.Entry<String, List<FieldEntry>> entry : _fields.entrySet()) {
+            dout.writeUTF(entry.getKey());
+            dout.writeInt(entry.getValue().size());
+            for (FieldEntry field : entry.getValue()) {
+                dout.writeUTF(field.name);
+                writeClassEntry(dout, field.type);
+            }
+        }
+        dout.writeInt(_strings.size());
+        for (String string : _strings) {
+            dout.writeUTF(string);
+        }
+        dout.flush();
+    }
+
+    /**
+     * The name and flags of a class in the dictionary, along with the class itself if it can be
+     * resolved.
+     */
+    public static class ClassEntry
+    {
+        /** The name of the class. */
+        public final String name;
+
+        /** The flags of the class (for arrays, those of the inmost component type) as written
+         * to the stream. */
+        public final byte flags;
+
+        /** The class, or <code>null</code> if it couldn't be resolved. */
+        public final Class<?> clazz;
+
+        /**
+         * Creates an entry for the specified class.
+         */
+        public ClassEntry (Class<?> clazz)
+        {
+            this(clazz.getName(),
+                BinaryExporter.getFlags(BinaryExporter.getInmostComponentType(clazz)), clazz);
+        }
+
+        /**
+         * Creates an entry for the named class, resolving it if possible.
+         */
+        public ClassEntry (String name, byte flags)
+        {
+            this(name, flags, resolveClass(name));
+        }
+
+        /**
+         * Creates an entry with all of its fields.
+         */
+        protected ClassEntry (String name, byte flags, Class<?> clazz)
+        {
+            this.name = name;
+            this.flags = flags;
+            this.clazz = clazz;
+        }
+    }
+
+    /**
+     * The name and type of a field in the dictionary.
+     */
+    public static class FieldEntry
+    {
+        /** The export name of the field. */
+        public final String name;
+
+        /** The type of the field. */
+        public final ClassEntry type;
+
+        /**
+         * Constructor.
+         */
+        public FieldEntry (String name, ClassEntry type)
+        {
+            this.name = name;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Resolves the named class, which may be primitive.
+     *
+     * @return the class, or <code>null</code> if it couldn't be resolved.
+     */
+    protected static Class<?> resolveClass (String name)
+    {
+        for (Class<?> clazz : BinaryExporter.BOOTSTRAP_CLASSES) {
+            if (clazz.getName().equals(name)) {
+                return clazz;
+            }
+        }
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a class entry written by {@link #writeClassEntry}.
+     */
+    protected static ClassEntry readClassEntry (DataInputStream in)
+        throws IOException
+    {
+        String name = in.readUTF();
+        return new ClassEntry(name, in.readByte());
+    }
+
+    /**
+     * Writes a class entry.
+     */
+    protected static void writeClassEntry (DataOutputStream out, ClassEntry entry)
+        throws IOException
+    {
+        out.writeUTF(entry.name);
+        out.writeByte(entry.flags);
+    }
+
+    /**
+     * Adds a class entry to the checksum.
+     */
+    protected static void update (CRC32 crc, ClassEntry entry)
+    {
+        update(crc, entry.name);
+        crc.update(entry.flags);
+    }
+
+    /**
+     * Adds an integer to the checksum.
+     */
+    protected static void update (CRC32 crc, int value)
+    {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+
+    /**
+     * Adds a string to the checksum.
+     */
+    protected static void update (CRC32 crc, String value)
+    {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        update(crc, bytes.length);
+        crc.update(bytes);
+    }
+
+    /** The dictionary id. */
+    protected int _id;
+
+    /** The checksum of the dictionary contents. */
+    protected int _checksum;
+
+    /** The classes in the dictionary. */
+    protected List<ClassEntry> _classes;
+
+    /** The fields of the dictionary classes, mapped by class name. */
+    protected Map<String, List<FieldEntry>> _fields;
+
+    /** The strings in the dictionary. */
+    protected List<String> _strings;
+
+    /** Registered dictionaries mapped by id. */
+    protected static ConcurrentMap<Integer, ExportDictionary> _registry =
+        new ConcurrentHashMap<Integer, ExportDictionary>();
+}
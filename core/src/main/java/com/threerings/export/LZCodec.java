@@ -0,0 +1,456 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.Arrays;
+
+/**
+ * A fast LZ77 codec in the style of LZ4.  Data is split into blocks of up to 64K, each of which
+ * is preceded by its uncompressed and compressed lengths as varints (a compressed length of zero
+ * indicating that the block is stored uncompressed).  An uncompressed length of zero marks the
+ * end of the stream.  Within a compressed block, each sequence consists of a token byte holding
+ * the literal count and match length (less four) in its high and low nibbles (with values of
+ * fifteen extended by subsequent bytes), the literals, and then (except for the last sequence)
+ * the two-byte little-endian match offset and any match length extension.
+ *
+ * <p>Compression trades ratio for speed: it is typically several times faster than deflate to
+ * decode, at the cost of somewhat larger output.
+ */
+public class LZCodec extends ExportCodec
+{
+    /** The id of this codec. */
+    public static final int ID = 1;
+
+    @Override
+    public int getId ()
+    {
+        return ID;
+    }
+
+    @Override
+    public CompressedOutputStream compress (OutputStream out)
+    {
+        return new LZOutputStream(out);
+    }
+
+    @Override
+    public InputStream decompress (InputStream in)
+    {
+        return new LZInputStream(in);
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "lz";
+    }
+
+    /**
+     * Compresses a block of data.
+     *
+     * @param table the hash table to use, which will be overwritten.
+     * @param dest the destination array, which must have room for at least
+     * {@link #getMaxCompressedLength} bytes.
+     * @return the length of the compressed data.
+     */
+    public static int compress (byte[] src, int length, byte[] dest, int[] table)
+    {
+        Arrays.fill(table, -1);
+        int ip = 0, anchor = 0, op = 0, misses = 0;
+        for (int limit = length - MIN_MATCH; ip <= limit; ) {
+            int seq = readInt(src, ip);
+            int hash = (seq * HASH_MULTIPLIER) >>> (32 - HASH_BITS);
+            int ref = table[hash];
+            table[hash] = ip;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                // skip ahead faster through incompressible data
+                ip += 1 + (misses++ >> SKIP_SHIFT);
+                continue;
+            }
+            misses = 0;
+            int len = MIN_MATCH;
+            while (ip + len < length && src[ref + len] == src[ip + len]) {
+                len++;
+            }
+            op = writeSequence(src, anchor, ip - anchor, ip - ref, len, dest, op);
+            ip += len;
+            anchor = ip;
+        }
+        return writeSequence(src, anchor, length - anchor, 0, 0, dest, op);
+    }
+
+    /**
+     * Decompresses a block of data.
+     *
+     * @param length the uncompressed length, which must be known.
+     */
+    public static void decompress (byte[] src, int srcLength, byte[] dest, int length)
+        throws IOException
+    {
+        int ip = 0, op = 0;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 0x0F) {
+                    int b;
+                    do {
+                        literals += (b = src[ip++] & 0xFF);
+                    } while (b == 0xFF);
+                }
+                if (ip + literals > srcLength || op + literals > length) {
+                    throw new IOException("Literals exceed block.");
+                }
+                System.arraycopy(src, ip, dest, op, literals);
+                ip += literals;
+                op += literals;
+                if (op == length) {
+                    return;
+                }
+                int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+                int len = (token & 0x0F);
+                if (len == 0x0F) {
+                    int b;
+                    do {
+                        len += (b = src[ip++] & 0xFF);
+                    } while (b == 0xFF);
+                }
+                len += MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < 0 || op + len > length) {
+                    throw new IOException("Invalid match.");
+                }
+                if (offset >= len) {
+                    System.arraycopy(dest, ref, dest, op, len);
+                    op += len;
+                } else {
+                    for (int end = op + len; op < end; ) {
+                        dest[op++] = dest[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw (IOException)new IOException("Corrupt block.").initCause(e);
+        }
+    }
+
+    /**
+     * Returns the maximum length of the compressed form of a block of the given length.
+     */
+    public static int getMaxCompressedLength (int length)
+    {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Writes out a sequence.
+     *
+     * @param mlen the match length, or zero for the final sequence.
+     * @return the new position in the destination array.
+     */
+    protected static int writeSequence (
+        byte[] src, int anchor, int literals, int offset, int mlen, byte[] dest, int op)
+    {
+        int tpos = op++;
+        int token = Math.min(literals, 0x0F) << 4;
+        if (literals >= 0x0F) {
+            op = writeLength(literals - 0x0F, dest, op);
+        }
+        System.arraycopy(src, anchor, dest, op, literals);
+        op += literals;
+        if (mlen > 0) {
+            dest[op++] = (byte)offset;
+            dest[op++] = (byte)(offset >>> 8);
+            int mcode = mlen - MIN_MATCH;
+            token |= Math.min(mcode, 0x0F);
+            if (mcode >= 0x0F) {
+                op = writeLength(mcode - 0x0F, dest, op);
+            }
+        }
+        dest[tpos] = (byte)token;
+        return op;
+    }
+
+    /**
+     * Writes a length extension as a run of 255s followed by the remainder.
+     */
+    protected static int writeLength (int length, byte[] dest, int op)
+    {
+        for (; length >= 0xFF; length -= 0xFF) {
+            dest[op++] = (byte)0xFF;
+        }
+        dest[op++] = (byte)length;
+        return op;
+    }
+
+    /**
+     * Reads a little-endian int from the specified array.
+     */
+    protected static int readInt (byte[] buf, int idx)
+    {
+        return (buf[idx] & 0xFF) | (buf[idx + 1] & 0xFF) << 8 |
+            (buf[idx + 2] & 0xFF) << 16 | (buf[idx + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Buffers and compresses blocks of data.
+     */
+    protected static class LZOutputStream extends CompressedOutputStream
+    {
+        /**
+         * Creates a new stream writing to the specified underlying stream.
+         */
+        public LZOutputStream (OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write (int b)
+            throws IOException
+        {
+            if (_length == BLOCK_SIZE) {
+                writeBlock();
+            }
+            _block[_length++] = (byte)b;
+        }
+
+        @Override
+        public void write (byte[] b, int off, int len)
+            throws IOException
+        {
+            while (len > 0) {
+                if (_length == BLOCK_SIZE) {
+                    writeBlock();
+                }
+                int count = Math.min(len, BLOCK_SIZE - _length);
+                System.arraycopy(b, off, _block, _length, count);
+                _length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void finish ()
+            throws IOException
+        {
+            if (!_finished) {
+                writeBlock();
+                Streams.writeVarInt(out, 0);
+                out.flush();
+                _finished = true;
+            }
+        }
+
+        @Override
+        public void close ()
+            throws IOException
+        {
+            try {
+                finish();
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Compresses and writes out the buffered block, if any.
+         */
+        protected void writeBlock ()
+            throws IOException
+        {
+            if (_length == 0) {
+                return;
+            }
+            int clength = compress(_block, _length, _compressed, _table);
+            Streams.writeVarInt(out, _length);
+            if (clength < _length) {
+                Streams.writeVarInt(out, clength);
+                out.write(_compressed, 0, clength);
+            } else {
+                Streams.writeVarInt(out, 0);
+                out.write(_block, 0, _length);
+            }
+            _length = 0;
+        }
+
+        /** The block being accumulated. */
+        protected byte[] _block = new byte[BLOCK_SIZE];
+
+        /** The length of the data in the block. */
+        protected int _length;
+
+        /** Holds the compressed block. */
+        protected byte[] _compressed = new byte[getMaxCompressedLength(BLOCK_SIZE)];
+
+        /** The match hash table. */
+        protected int[] _table = new int[1 << HASH_BITS];
+
+        /** Set when the stream has been finished. */
+        protected boolean _finished;
+    }
+
+    /**
+     * Reads and decompresses blocks of data.
+     */
+    protected static class LZInputStream extends InputStream
+    {
+        /**
+         * Creates a new stream reading from the specified underlying stream.
+         */
+        public LZInputStream (InputStream in)
+        {
+            _in = in;
+        }
+
+        @Override
+        public int read ()
+            throws IOException
+        {
+            return (_pos < _length || readBlock()) ? (_block[_pos++] & 0xFF) : -1;
+        }
+
+        @Override
+        public int read (byte[] b, int off, int len)
+            throws IOException
+        {
+            if (len == 0) {
+                return 0;
+            }
+            if (_pos == _length && !readBlock()) {
+                return -1;
+            }
+            int count = Math.min(len, _length - _pos);
+            System.arraycopy(_block, _pos, b, off, count);
+            _pos += count;
+            return count;
+        }
+
+        @Override
+        public int available ()
+        {
+            return _length - _pos;
+        }
+
+        @Override
+        public void close ()
+            throws IOException
+        {
+            _in.close();
+        }
+
+        /**
+         * Reads the next block.
+         *
+         * @return true if a block was read, false if we reached the end of the stream.
+         */
+        protected boolean readBlock ()
+            throws IOException
+        {
+            if (_ended) {
+                return false;
+            }
+            int length = Streams.readVarInt(_in);
+            if (length <= 0) {
+                if (length < 0) {
+                    throw new EOFException("Missing end of stream marker.");
+                }
+                _ended = true;
+                return false;
+            }
+            int clength = Streams.readVarInt(_in);
+            if (length > BLOCK_SIZE || clength < 0 || clength >= length) {
+                throw new IOException("Invalid block header.");
+            }
+            if (clength == 0) {
+                readFully(_block, length);
+            } else {
+                if (_compressed == null) {
+                    _compressed = new byte[BLOCK_SIZE];
+                }
+                readFully(_compressed, clength);
+                decompress(_compressed, clength, _block, length);
+            }
+            _pos = 0;
+            _length = length;
+            return true;
+        }
+
+        /**
+         * Reads the specified number of bytes from the underlying stream.
+         */
+        protected void readFully (byte[] buf, int length)
+            throws IOException
+        {
+            for (int off = 0; off < length; ) {
+                int read = _in.read(buf, off, length - off);
+                if (read < 0) {
+                    throw new EOFException("Truncated block.");
+                }
+                off += read;
+            }
+        }
+
+        /** The underlying stream. */
+        protected InputStream _in;
+
+        /** The current decompressed block. */
+        protected byte[] _block = new byte[BLOCK_SIZE];
+
+        /** Holds compressed blocks, created on first use. */
+        protected byte[] _compressed;
+
+        /** The position within and length of the current block. */
+        protected int _pos, _length;
+
+        /** Set when we've read the end of stream marker. */
+        protected boolean _ended;
+    }
+
+    /** The maximum size of a block. */
+    protected static final int BLOCK_SIZE = 1 << 16;
+
+    /** The maximum distance back to a match. */
+    protected static final int MAX_OFFSET = 0xFFFF;
+
+    /** The minimum length of a match. */
+    protected static final int MIN_MATCH = 4;
+
+    /** The number of bits in the match hash. */
+    protected static final int HASH_BITS = 14;
+
+    /** The Knuth multiplicative hash constant. */
+    protected static final int HASH_MULTIPLIER = -1640531535;
+
+    /** Controls how quickly we skip ahead through incompressible data. */
+    protected static final int SKIP_SHIFT = 6;
+}
@@ -32,9 +32,10 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Set;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.google.common.collect.Sets;
 
 import com.threerings.util.ReflectionUtil;
@@ -64,6 +65,46 @@ public class ObjectMarshaller
         return _prototype;
     }
 
+    /**
+     * Checks whether the class defines a custom read method.
+     */
+    public boolean hasCustomReader ()
+    {
+        return _reader != null;
+    }
+
+    /**
+     * Checks whether the class defines a custom write method.
+     */
+    public boolean hasCustomWriter ()
+    {
+        return _writer != null;
+    }
+
+    /**
+     * Returns the number of fields written by default.
+     */
+    public int getFieldCount ()
+    {
+        return _fields.length;
+    }
+
+    /**
+     * Returns the field at the specified index.
+     */
+    public Field getField (int idx)
+    {
+        return _fields[idx]._field;
+    }
+
+    /**
+     * Returns the export name of the field at the specified index.
+     */
+    public String getFieldName (int idx)
+    {
+        return _fields[idx]._name;
+    }
+
     /**
      * Reads the fields of an object from the specified importer.
      */
@@ -238,6 +279,6 @@ public class ObjectMarshaller
     protected Object _prototype;
 
     /** Maps classes to created marshallers. */
-    protected static HashMap<Class<?>, ObjectMarshaller> _marshallers =
-        new HashMap<Class<?>, ObjectMarshaller>();
+    protected static ConcurrentHashMap<Class<?>, ObjectMarshaller> _marshallers =
+        new ConcurrentHashMap<Class<?>, ObjectMarshaller>();
 }
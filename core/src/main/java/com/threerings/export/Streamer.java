@@ -27,10 +27,13 @@ package com.threerings.export;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
@@ -38,7 +41,7 @@ import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.base.Charsets;
 
@@ -128,9 +131,183 @@ public abstract class Streamer<T>
     public abstract T read (DataInputStream in)
         throws IOException, ClassNotFoundException;
 
+    /**
+     * Writes the contents of a buffer (from zero to its limit) in bulk, directly into the
+     * underlying buffer if the stream is a {@link BufferDataOutputStream}.
+     *
+     * @param size the size of each element in bytes.
+     */
+    protected static void writeBulk (Buffer src, int size, DataOutputStream out)
+        throws IOException
+    {
+        int length = src.limit();
+        if (out instanceof BufferDataOutputStream) {
+            BufferDataOutputStream bout = (BufferDataOutputStream)out;
+            for (int idx = 0; idx < length; ) {
+                ByteBuffer dest = bout.reserve(size);
+                int count = Math.min(length - idx, dest.remaining() / size);
+                put(src, idx, count, dest);
+                bout.noteWritten(count * size);
+                idx += count;
+            }
+            return;
+        }
+        ByteBuffer scratch = ByteBuffer.allocate((int)Math.min((long)length * size, BULK_SIZE));
+        for (int idx = 0; idx < length; ) {
+            scratch.clear();
+            int count = Math.min(length - idx, BULK_SIZE / size);
+            put(src, idx, count, scratch);
+            out.write(scratch.array(), 0, count * size);
+            idx += count;
+        }
+    }
+
+    /**
+     * Fills a buffer (from zero to its limit) in bulk, directly from the underlying buffer if the
+     * stream is a {@link BufferDataInputStream}.
+     *
+     * @param size the size of each element in bytes.
+     */
+    protected static void readBulk (DataInputStream in, Buffer dest, int size)
+        throws IOException
+    {
+        int length = dest.limit();
+        if (in instanceof BufferDataInputStream) {
+            ByteBuffer src = ((BufferDataInputStream)in).getBuffer();
+            if ((long)length * size > src.remaining()) {
+                throw new EOFException();
+            }
+            get(src, dest, 0, length);
+            return;
+        }
+        ByteBuffer scratch = ByteBuffer.allocate((int)Math.min((long)length * size, BULK_SIZE));
+        for (int idx = 0; idx < length; ) {
+            int count = Math.min(length - idx, BULK_SIZE / size);
+            in.readFully(scratch.array(), 0, count * size);
+            scratch.clear();
+            get(scratch, dest, idx, count);
+            idx += count;
+        }
+    }
+
+    /**
+     * Copies elements from a buffer into a byte buffer (in big-endian order, like the scalar
+     * values written through {@link DataOutputStream}), advancing the position of the byte buffer.
+     */
+    protected static void put (Buffer src, int idx, int count, ByteBuffer dest)
+    {
+        int position = dest.position();
+        ByteBuffer bdest = bigEndian(dest);
+        if (src instanceof ByteBuffer) {
+            ByteBuffer buf = ((ByteBuffer)src).duplicate();
+            buf.limit(idx + count).position(idx);
+            dest.put(buf);
+        } else if (src instanceof CharBuffer) {
+            CharBuffer buf = ((CharBuffer)src).duplicate();
+            buf.limit(idx + count).position(idx);
+            bdest.asCharBuffer().put(buf);
+            dest.position(position + count * 2);
+        } else if (src instanceof DoubleBuffer) {
+            DoubleBuffer buf = ((DoubleBuffer)src).duplicate();
+            buf.limit(idx + count).position(idx);
+            bdest.asDoubleBuffer().put(buf);
+            dest.position(position + count * 8);
+        } else if (src instanceof FloatBuffer) {
+            FloatBuffer buf = ((FloatBuffer)src).duplicate();
+            buf.limit(idx + count).position(idx);
+            bdest.asFloatBuffer().put(buf);
+            dest.position(position + count * 4);
+        } else if (src instanceof IntBuffer) {
+            IntBuffer buf = ((IntBuffer)src).duplicate();
+            buf.limit(idx + count).position(idx);
+            bdest.asIntBuffer().put(buf);
+            dest.position(position + count * 4);
+        } else if (src instanceof LongBuffer) {
+            LongBuffer buf = ((LongBuffer)src).duplicate();
+            buf.limit(idx + count).position(idx);
+            bdest.asLongBuffer().put(buf);
+            dest.position(position + count * 8);
+        } else {
+            ShortBuffer buf = ((ShortBuffer)src).duplicate();
+            buf.limit(idx + count).position(idx);
+            bdest.asShortBuffer().put(buf);
+            dest.position(position + count * 2);
+        }
+    }
+
+    /**
+     * Copies elements from a byte buffer (in big-endian order, regardless of the byte buffer's
+     * order) into a buffer, advancing the position of the byte buffer.
+     */
+    protected static void get (ByteBuffer src, Buffer dest, int idx, int count)
+    {
+        int position = src.position();
+        ByteBuffer bsrc = bigEndian(src);
+        if (dest instanceof ByteBuffer) {
+            ByteBuffer buf = ((ByteBuffer)dest).duplicate();
+            buf.position(idx);
+            ByteBuffer view = src.duplicate();
+            view.limit(position + count);
+            buf.put(view);
+            src.position(position + count);
+        } else if (dest instanceof CharBuffer) {
+            CharBuffer buf = ((CharBuffer)dest).duplicate();
+            buf.position(idx);
+            CharBuffer view = bsrc.asCharBuffer();
+            view.limit(count);
+            buf.put(view);
+            src.position(position + count * 2);
+        } else if (dest instanceof DoubleBuffer) {
+            DoubleBuffer buf = ((DoubleBuffer)dest).duplicate();
+            buf.position(idx);
+            DoubleBuffer view = bsrc.asDoubleBuffer();
+            view.limit(count);
+            buf.put(view);
+            src.position(position + count * 8);
+        } else if (dest instanceof FloatBuffer) {
+            FloatBuffer buf = ((FloatBuffer)dest).duplicate();
+            buf.position(idx);
+            FloatBuffer view = bsrc.asFloatBuffer();
+            view.limit(count);
+            buf.put(view);
+            src.position(position + count * 4);
+        } else if (dest instanceof IntBuffer) {
+            IntBuffer buf = ((IntBuffer)dest).duplicate();
+            buf.position(idx);
+            IntBuffer view = bsrc.asIntBuffer();
+            view.limit(count);
+            buf.put(view);
+            src.position(position + count * 4);
+        } else if (dest instanceof LongBuffer) {
+            LongBuffer buf = ((LongBuffer)dest).duplicate();
+            buf.position(idx);
+            LongBuffer view = bsrc.asLongBuffer();
+            view.limit(count);
+            buf.put(view);
+            src.position(position + count * 8);
+        } else {
+            ShortBuffer buf = ((ShortBuffer)dest).duplicate();
+            buf.position(idx);
+            ShortBuffer view = bsrc.asShortBuffer();
+            view.limit(count);
+            buf.put(view);
+            src.position(position + count * 2);
+        }
+    }
+
+    /**
+     * Returns the supplied buffer if it's big-endian, otherwise a big-endian duplicate sharing
+     * its contents and position.
+     */
+    protected static ByteBuffer bigEndian (ByteBuffer buf)
+    {
+        return (buf.order() == ByteOrder.BIG_ENDIAN) ?
+            buf : buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
     /** Registered streamers. */
-    protected static HashMap<Class<?>, Streamer<?>> _streamers =
-            new HashMap<Class<?>, Streamer<?>>();
+    protected static ConcurrentHashMap<Class<?>, Streamer<?>> _streamers =
+            new ConcurrentHashMap<Class<?>, Streamer<?>>();
     static {
         // register basic streamers for wrapper types, primitive arrays
         Streamer<?> streamer = new Streamer<Boolean>() {
@@ -256,105 +433,77 @@ public abstract class Streamer<T>
         _streamers.put(byte[].class, new Streamer<byte[]>() {
             public void write (byte[] value, DataOutputStream out) throws IOException {
                 out.writeInt(value.length);
-                for (byte val : value) {
-                    out.writeByte(val);
-                }
+                out.write(value);
             }
             public byte[] read (DataInputStream in) throws IOException {
                 byte[] value = new byte[in.readInt()];
-                for (int ii = 0; ii < value.length; ii++) {
-                    value[ii] = in.readByte();
-                }
+                in.readFully(value);
                 return value;
             }
         });
         _streamers.put(char[].class, new Streamer<char[]>() {
             public void write (char[] value, DataOutputStream out) throws IOException {
                 out.writeInt(value.length);
-                for (char val : value) {
-                    out.writeChar(val);
-                }
+                writeBulk(CharBuffer.wrap(value), 2, out);
             }
             public char[] read (DataInputStream in) throws IOException {
                 char[] value = new char[in.readInt()];
-                for (int ii = 0; ii < value.length; ii++) {
-                    value[ii] = in.readChar();
-                }
+                readBulk(in, CharBuffer.wrap(value), 2);
                 return value;
             }
         });
         _streamers.put(double[].class, new Streamer<double[]>() {
             public void write (double[] value, DataOutputStream out) throws IOException {
                 out.writeInt(value.length);
-                for (double val : value) {
-                    out.writeDouble(val);
-                }
+                writeBulk(DoubleBuffer.wrap(value), 8, out);
             }
             public double[] read (DataInputStream in) throws IOException {
                 double[] value = new double[in.readInt()];
-                for (int ii = 0; ii < value.length; ii++) {
-                    value[ii] = in.readDouble();
-                }
+                readBulk(in, DoubleBuffer.wrap(value), 8);
                 return value;
             }
         });
         _streamers.put(float[].class, new Streamer<float[]>() {
             public void write (float[] value, DataOutputStream out) throws IOException {
                 out.writeInt(value.length);
-                for (float val : value) {
-                    out.writeFloat(val);
-                }
+                writeBulk(FloatBuffer.wrap(value), 4, out);
             }
             public float[] read (DataInputStream in) throws IOException {
                 float[] value = new float[in.readInt()];
-                for (int ii = 0; ii < value.length; ii++) {
-                    value[ii] = in.readFloat();
-                }
+                readBulk(in, FloatBuffer.wrap(value), 4);
                 return value;
             }
         });
         _streamers.put(int[].class, new Streamer<int[]>() {
             public void write (int[] value, DataOutputStream out) throws IOException {
                 out.writeInt(value.length);
-                for (int val : value) {
-                    out.writeInt(val);
-                }
+                writeBulk(IntBuffer.wrap(value), 4, out);
             }
             public int[] read (DataInputStream in) throws IOException {
                 int[] value = new int[in.readInt()];
-                for (int ii = 0; ii < value.length; ii++) {
-                    value[ii] = in.readInt();
-                }
+                readBulk(in, IntBuffer.wrap(value), 4);
                 return value;
             }
         });
         _streamers.put(long[].class, new Streamer<long[]>() {
             public void write (long[] value, DataOutputStream out) throws IOException {
                 out.writeInt(value.length);
-                for (long val : value) {
-                    out.writeLong(val);
-                }
+                writeBulk(LongBuffer.wrap(value), 8, out);
             }
             public long[] read (DataInputStream in) throws IOException {
                 long[] value = new long[in.readInt()];
-                for (int ii = 0; ii < value.length; ii++) {
-                    value[ii] = in.readLong();
-                }
+                readBulk(in, LongBuffer.wrap(value), 8);
                 return value;
             }
         });
         _streamers.put(short[].class, new Streamer<short[]>() {
             public void write (short[] value, DataOutputStream out) throws IOException {
                 out.writeInt(value.length);
-                for (short val : value) {
-                    out.writeShort(val);
-                }
+                writeBulk(ShortBuffer.wrap(value), 2, out);
             }
             public short[] read (DataInputStream in) throws IOException {
                 short[] value = new short[in.readInt()];
-                for (int ii = 0; ii < value.length; ii++) {
-                    value[ii] = in.readShort();
-                }
+                readBulk(in, ShortBuffer.wrap(value), 2);
                 return value;
             }
         });
@@ -373,107 +522,82 @@ public abstract class Streamer<T>
         _streamers.put(ByteBuffer.class, new Streamer<ByteBuffer>() {
             public void write (ByteBuffer value, DataOutputStream out) throws IOException {
                 out.writeInt(value.limit());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    out.writeByte(value.get(ii));
-                }
+                writeBulk(value, 1, out);
             }
             public ByteBuffer read (DataInputStream in) throws IOException {
                 ByteBuffer value = BufferUtils.createByteBuffer(in.readInt());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    value.put(ii, in.readByte());
-                }
+                readBulk(in, value, 1);
                 return value;
             }
         });
         _streamers.put(CharBuffer.class, new Streamer<CharBuffer>() {
             public void write (CharBuffer value, DataOutputStream out) throws IOException {
                 out.writeInt(value.limit());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    out.writeChar(value.get(ii));
-                }
+                writeBulk(value, 2, out);
             }
             public CharBuffer read (DataInputStream in) throws IOException {
                 CharBuffer value = BufferUtils.createCharBuffer(in.readInt());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    value.put(ii, in.readChar());
-                }
+                readBulk(in, value, 2);
                 return value;
             }
         });
         _streamers.put(DoubleBuffer.class, new Streamer<DoubleBuffer>() {
             public void write (DoubleBuffer value, DataOutputStream out) throws IOException {
                 out.writeInt(value.limit());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    out.writeDouble(value.get(ii));
-                }
+                writeBulk(value, 8, out);
             }
             public DoubleBuffer read (DataInputStream in) throws IOException {
                 DoubleBuffer value = BufferUtils.createDoubleBuffer(in.readInt());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    value.put(ii, in.readDouble());
-                }
+                readBulk(in, value, 8);
                 return value;
             }
         });
         _streamers.put(FloatBuffer.class, new Streamer<FloatBuffer>() {
             public void write (FloatBuffer value, DataOutputStream out) throws IOException {
                 out.writeInt(value.limit());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    out.writeFloat(value.get(ii));
-                }
+                writeBulk(value, 4, out);
             }
             public FloatBuffer read (DataInputStream in) throws IOException {
                 FloatBuffer value = BufferUtils.createFloatBuffer(in.readInt());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    value.put(ii, in.readFloat());
-                }
+                readBulk(in, value, 4);
                 return value;
             }
         });
         _streamers.put(IntBuffer.class, new Streamer<IntBuffer>() {
             public void write (IntBuffer value, DataOutputStream out) throws IOException {
                 out.writeInt(value.limit());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    out.writeInt(value.get(ii));
-                }
+                writeBulk(value, 4, out);
             }
             public IntBuffer read (DataInputStream in) throws IOException {
                 IntBuffer value = BufferUtils.createIntBuffer(in.readInt());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    value.put(ii, in.readInt());
-                }
+                readBulk(in, value, 4);
                 return value;
             }
         });
         _streamers.put(LongBuffer.class, new Streamer<LongBuffer>() {
             public void write (LongBuffer value, DataOutputStream out) throws IOException {
                 out.writeInt(value.limit());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    out.writeLong(value.get(ii));
-                }
+                writeBulk(value, 8, out);
             }
             public LongBuffer read (DataInputStream in) throws IOException {
                 LongBuffer value = BufferUtils.createLongBuffer(in.readInt());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    value.put(ii, in.readLong());
-                }
+                readBulk(in, value, 8);
                 return value;
             }
         });
         _streamers.put(ShortBuffer.class, new Streamer<ShortBuffer>() {
             public void write (ShortBuffer value, DataOutputStream out) throws IOException {
                 out.writeInt(value.limit());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    out.writeShort(value.get(ii));
-                }
+                writeBulk(value, 2, out);
             }
             public ShortBuffer read (DataInputStream in) throws IOException {
                 ShortBuffer value = BufferUtils.createShortBuffer(in.readInt());
-                for (int ii = 0, nn = value.limit(); ii < nn; ii++) {
-                    value.put(ii, in.readShort());
-                }
+                readBulk(in, value, 2);
                 return value;
             }
         });
     }
+
+    /** The maximum number of bytes to transfer at once when bulk copying through a stream. */
+    protected static final int BULK_SIZE = 8192;
 }
@@ -0,0 +1,592 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+
+import com.threerings.util.ReflectionUtil;
+
+/**
+ * Exports to the same XML format as {@link XMLExporter}, but writes it out incrementally with
+ * StAX rather than building a DOM of the entire document.
+ *
+ * <p>The DOM exporter decorates earlier elements with reference ids and depths when it encounters
+ * a later reference to the same object.  To produce identical output without holding the
+ * document in memory, this exporter makes two passes over the objects when it is finished: one
+ * to find the objects that are referenced more than once, and another to write them out.
+ * Objects passed to {@link #writeObject} must therefore not be modified until the exporter has
+ * been finished or closed, and custom <code>writeFields</code> methods, which are called once on
+ * each pass, must write the same values both times.  The replacer, if any, is consulted only on
+ * the first pass; its replacements are recorded and reused on the second.  Unlike the DOM
+ * exporter, writing the same field name twice within an object writes two elements rather than
+ * replacing the first.
+ */
+public class StreamingXMLExporter extends Exporter
+{
+    /**
+     * Creates an exporter to write to the specified stream.
+     */
+    public StreamingXMLExporter (OutputStream out)
+    {
+        _out = out;
+    }
+
+    @Override
+    public StreamingXMLExporter setReplacer (Replacer replacer)
+    {
+        super.setReplacer(replacer);
+        return this;
+    }
+
+    @Override
+    public void writeObject (Object object)
+        throws IOException
+    {
+        if (_writer != null) {
+            throw new IOException("Exporter has already been finished.");
+        }
+        _objects.add(object);
+    }
+
+    @Override
+    public void write (String name, boolean value)
+        throws IOException
+    {
+        setValue(name, Boolean.toString(value));
+    }
+
+    @Override
+    public void write (String name, byte value)
+        throws IOException
+    {
+        setValue(name, Byte.toString(value));
+    }
+
+    @Override
+    public void write (String name, char value)
+        throws IOException
+    {
+        setValue(name, Character.toString(value));
+    }
+
+    @Override
+    public void write (String name, double value)
+        throws IOException
+    {
+        setValue(name, Double.toString(value));
+    }
+
+    @Override
+    public void write (String name, float value)
+        throws IOException
+    {
+        setValue(name, Float.toString(value));
+    }
+
+    @Override
+    public void write (String name, int value)
+        throws IOException
+    {
+        setValue(name, Integer.toString(value));
+    }
+
+    @Override
+    public void write (String name, long value)
+        throws IOException
+    {
+        setValue(name, Long.toString(value));
+    }
+
+    @Override
+    public void write (String name, short value)
+        throws IOException
+    {
+        setValue(name, Short.toString(value));
+    }
+
+    @Override
+    public <T> void write (String name, T value, Class<T> clazz)
+        throws IOException
+    {
+        appendIndent();
+        writeElement(name, value, clazz);
+        appendln();
+    }
+
+    @Override
+    public void close ()
+        throws IOException
+    {
+        // finish up, then close the underlying stream
+        finish();
+        _out.write('\n');
+        _out.close();
+    }
+
+    @Override
+    public void finish ()
+        throws IOException
+    {
+        if (_writer != null) {
+            return;
+        }
+        // first find the objects that are referenced more than once
+        for (int ii = 0, nn = _objects.size(); ii < nn; ii++) {
+            write("object", _objects.get(ii), Object.class);
+        }
+
+        // then write everything out
+        try {
+            _writer = XMLOutputFactory.newInstance().createXMLStreamWriter(_out, "UTF-8");
+            _writer.writeStartDocument("UTF-8", "1.0");
+            _writer.writeStartElement("java");
+            _writer.writeAttribute("class", XMLImporter.class.getName());
+            _writer.writeAttribute("version", XMLExporter.VERSION);
+            appendln();
+            for (int ii = 0, nn = _objects.size(); ii < nn; ii++) {
+                write("object", _objects.get(ii), Object.class);
+            }
+            _writer.writeEndElement();
+            _writer.writeEndDocument();
+            _writer.flush();
+
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
+        } finally {
+            _objects.clear();
+            _info.clear();
+            _replacements.clear();
+        }
+    }
+
+    /**
+     * Writes an element containing the specified object.
+     */
+    protected void writeElement (String name, Object value, Class<?> clazz)
+        throws IOException
+    {
+        if (_replacer != null) {
+            Replacement repl = getReplacement(value, clazz);
+            if (repl != null) {
+                value = repl.value;
+                clazz = repl.clazz;
+            }
+        }
+
+        if (value == null) {
+            emptyElement(name, null, null);
+            return;
+        }
+
+        // to help readability, always write the values for certain (immutable) types
+        if (value instanceof Boolean || value instanceof Byte || value instanceof Character ||
+            value instanceof Class<?> || value instanceof Double || value instanceof Enum ||
+            value instanceof Float || value instanceof Integer || value instanceof Long ||
+            value instanceof Short || value instanceof String || value instanceof File) {
+            writeValue(name, value, clazz, null);
+            return;
+        }
+        ObjectInfo info = _info.get(value);
+        Integer depth = _depths.get(value);
+        if (_writer == null) {
+            // on the first pass, note references to objects already seen
+            if (info != null) {
+                if (depth != null) {
+                    info.depth = depth;
+                } else if (info.id == 0) {
+                    info.id = ++_lastObjectId;
+                }
+                return;
+            }
+            _info.put(value, info = new ObjectInfo());
+
+        } else if (info != null && info.written) {
+            if (depth != null) {
+                emptyElement(name, "rdepth", depth.toString());
+            } else {
+                emptyElement(name, "ref", Integer.toString(info.id));
+            }
+            return;
+
+        } else if (info == null) {
+            // the replacer returned an object that we didn't see on the first pass
+            _info.put(value, info = new ObjectInfo());
+        }
+        info.written = (_writer != null);
+        _depths.put(value, _depth++);
+        writeValue(name, value, clazz, info);
+        _depths.remove(value);
+        _depth--;
+    }
+
+    /**
+     * Returns the replacement for the specified value, if any.  On the first pass, this consults
+     * the replacer and records the result.  The second pass makes the same sequence of calls, so
+     * it reuses the recorded results in order, consulting the replacer again only if the value
+     * doesn't match the one recorded.
+     */
+    protected Replacement getReplacement (Object value, Class<?> clazz)
+    {
+        if (_writer == null) {
+            Replacement repl = _replacer.getReplacement(value, clazz);
+            _replacements.add(value);
+            _replacements.add(repl);
+            return repl;
+        }
+        int idx = _replacementIdx;
+        _replacementIdx += 2;
+        if (idx < _replacements.size()) {
+            Object ovalue = _replacements.get(idx);
+            if (ovalue == value || (value != null && value.equals(ovalue))) {
+                return (Replacement)_replacements.get(idx + 1);
+            }
+        }
+        return _replacer.getReplacement(value, clazz);
+    }
+
+    /**
+     * Writes an element containing the value of an object.
+     *
+     * @param info the reference information for the object, or <code>null</code> for immutable
+     * values.
+     */
+    protected void writeValue (String name, Object value, Class<?> clazz, ObjectInfo info)
+        throws IOException
+    {
+        // write the class unless we can determine that implicitly
+        Class<?> cclazz = getClass(value);
+        String cname = (cclazz == clazz) ? null : cclazz.getName();
+
+        // see if we can convert the value to a string
+        @SuppressWarnings("unchecked") Stringifier<Object> stringifier =
+            (Stringifier<Object>)Stringifier.getStringifier(cclazz);
+        if (stringifier != null) {
+            if (_writer != null) {
+                // because empty text nodes are removed, we must include a comment to
+                // signify an empty string
+                String str = stringifier.toString(value);
+                startElement(name, cname, info, null);
+                try {
+                    if (str.isEmpty()) {
+                        _writer.writeComment("empty");
+                    } else {
+                        writeText(str);
+                    }
+                    _writer.writeEndElement();
+                } catch (XMLStreamException e) {
+                    throw toIOException(e);
+                }
+            }
+            return;
+        }
+        String eclass = null;
+        if (value instanceof EnumSet) {
+            EnumSet<?> set = (EnumSet<?>)value;
+            EnumSet<?> typer = set.isEmpty() ? EnumSet.complementOf(set) : set;
+            eclass = typer.iterator().next().getDeclaringClass().getName();
+        }
+        startElement(name, cname, info, eclass);
+        String oindent = _indent;
+        _indent = _indent + "  ";
+        try {
+            appendln();
+            // write the outer class information, if applicable
+            if (!(value instanceof Collection) && !(value instanceof Map)) {
+                Object outer = ReflectionUtil.getOuter(value);
+                if (outer != null) {
+                    write("outer", outer, Object.class);
+                }
+            }
+            if (value instanceof Exportable) {
+                writeFields((Exportable)value);
+            } else if (value instanceof Object[]) {
+                @SuppressWarnings("unchecked") Class<Object> ctype =
+                    (Class<Object>)cclazz.getComponentType();
+                writeEntries((Object[])value, ctype);
+            } else if (value instanceof Collection) {
+                if (value instanceof Multiset) {
+                    writeEntries((Multiset)value);
+                } else {
+                    writeEntries((Collection)value);
+                }
+            } else if (value instanceof Map) {
+                writeEntries((Map)value);
+            } else {
+                throw new IOException("Value is not exportable [class=" + cclazz + "].");
+            }
+        } finally {
+            _indent = oindent;
+        }
+        appendIndent();
+        if (_writer != null) {
+            try {
+                _writer.writeEndElement();
+            } catch (XMLStreamException e) {
+                throw toIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes out the entries of an array.
+     */
+    protected <T> void writeEntries (T[] array, Class<T> ctype)
+        throws IOException
+    {
+        for (T entry : array) {
+            write("entry", entry, ctype);
+        }
+    }
+
+    /**
+     * Writes out the entries of a collection.
+     */
+    protected void writeEntries (Collection<?> collection)
+        throws IOException
+    {
+        for (Object entry : collection) {
+            write("entry", entry, Object.class);
+        }
+    }
+
+    /**
+     * Writes out the entries of a multiset.
+     */
+    protected void writeEntries (Multiset<?> multiset)
+        throws IOException
+    {
+        for (Multiset.Entry<?> entry : multiset.entrySet()) {
+            write("element", entry.getElement(), Object.class);
+            write("count", entry.getCount(), Integer.class);
+        }
+    }
+
+    /**
+     * Writes out the entries of a map.
+     */
+    protected void writeEntries (Map<?, ?> map)
+        throws IOException
+    {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            write("key", entry.getKey(), Object.class);
+            write("value", entry.getValue(), Object.class);
+        }
+    }
+
+    /**
+     * Writes a simple value element.
+     */
+    protected void setValue (String name, String value)
+        throws IOException
+    {
+        if (_writer == null) {
+            return;
+        }
+        try {
+            _writer.writeCharacters(_indent);
+            _writer.writeStartElement(name);
+            writeText(value);
+            _writer.writeEndElement();
+            _writer.writeCharacters("\n");
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
+        }
+    }
+
+    /**
+     * Writes the start of an element.  The attributes are written in alphabetical order, as the
+     * DOM serializer writes them.
+     */
+    protected void startElement (String name, String cname, ObjectInfo info, String eclass)
+        throws IOException
+    {
+        if (_writer == null) {
+            return;
+        }
+        try {
+            _writer.writeStartElement(name);
+            if (cname != null) {
+                _writer.writeAttribute("class", cname);
+            }
+            if (info != null && info.depth != -1) {
+                _writer.writeAttribute("depth", Integer.toString(info.depth));
+            }
+            if (eclass != null) {
+                _writer.writeAttribute("eclass", eclass);
+            }
+            if (info != null && info.id != 0) {
+                _writer.writeAttribute("id", Integer.toString(info.id));
+            }
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
+        }
+    }
+
+    /**
+     * Writes an element with no content.
+     */
+    protected void emptyElement (String name, String attr, String value)
+        throws IOException
+    {
+        if (_writer == null) {
+            return;
+        }
+        try {
+            _writer.writeEmptyElement(name);
+            if (attr != null) {
+                _writer.writeAttribute(attr, value);
+            }
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
+        }
+    }
+
+    /**
+     * Writes out a text node.  Control characters (including carriage returns, which would
+     * otherwise be normalized away when parsed) and supplementary characters are written as
+     * character references, as the DOM serializer writes them.
+     */
+    protected void writeText (String text)
+        throws XMLStreamException
+    {
+        int start = 0;
+        for (int ii = 0, nn = text.length(); ii < nn; ii++) {
+            char c = text.charAt(ii);
+            if ((c >= 0x20 || c == '\t' || c == '\n') && (c < 0x7F || c > 0x9F) &&
+                    !Character.isHighSurrogate(c)) {
+                continue;
+            }
+            _writer.writeCharacters(text.substring(start, ii));
+            int cp = text.codePointAt(ii);
+            _writer.writeEntityRef("#" + cp);
+            start = ii + Character.charCount(cp);
+            ii = start - 1;
+        }
+        _writer.writeCharacters(text.substring(start));
+    }
+
+    /**
+     * Writes out the current indentation.
+     */
+    protected void appendIndent ()
+        throws IOException
+    {
+        writeWhitespace(_indent);
+    }
+
+    /**
+     * Writes out a newline.
+     */
+    protected void appendln ()
+        throws IOException
+    {
+        writeWhitespace("\n");
+    }
+
+    /**
+     * Writes out whitespace between elements.
+     */
+    protected void writeWhitespace (String text)
+        throws IOException
+    {
+        if (_writer == null || text.isEmpty()) {
+            return;
+        }
+        try {
+            _writer.writeCharacters(text);
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
+        }
+    }
+
+    /**
+     * Wraps a StAX exception in an I/O exception.
+     */
+    protected static IOException toIOException (XMLStreamException e)
+    {
+        return (IOException)new IOException("Error writing XML [error=" + e + "].").initCause(e);
+    }
+
+    /**
+     * Reference information for an object.
+     */
+    protected static class ObjectInfo
+    {
+        /** The id assigned to the object, or zero if it is not referenced outside itself. */
+        public int id;
+
+        /** The depth of the object, or -1 if it does not contain references to itself. */
+        public int depth = -1;
+
+        /** Whether the object has been written out on the second pass. */
+        public boolean written;
+    }
+
+    /** The output stream. */
+    protected OutputStream _out;
+
+    /** The StAX writer, which is created for the second pass. */
+    protected XMLStreamWriter _writer;
+
+    /** The objects to write. */
+    protected List<Object> _objects = Lists.newArrayList();
+
+    /** Reference information for the objects exported. */
+    protected IdentityHashMap<Object, ObjectInfo> _info = new IdentityHashMap<Object, ObjectInfo>();
+
+    /** The values passed to the replacer on the first pass, each followed by its replacement
+     * (or <code>null</code> for none). */
+    protected List<Object> _replacements = Lists.newArrayList();
+
+    /** The index of the next recorded replacement to use on the second pass. */
+    protected int _replacementIdx;
+
+    /** The depths of the objects currently being written. */
+    protected IdentityHashMap<Object, Integer> _depths = new IdentityHashMap<Object, Integer>();
+
+    /** The current indentation string. */
+    protected String _indent = "";
+
+    /** The last object id assigned. */
+    protected int _lastObjectId;
+
+    /** The current depth of the element being written. */
+    protected int _depth;
+}
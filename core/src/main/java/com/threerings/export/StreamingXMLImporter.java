@@ -0,0 +1,895 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.lang.reflect.Array;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+
+import com.threerings.util.ReflectionUtil;
+
+import static com.threerings.export.Log.log;
+
+/**
+ * Imports from the XML format generated by {@link XMLExporter} and {@link StreamingXMLExporter},
+ * reading it incrementally with StAX rather than parsing the entire document into a DOM.
+ *
+ * <p>Fields are usually read in the order in which they were written, in which case nothing
+ * but the objects themselves is retained.  Elements skipped over while looking for a field are
+ * buffered until they are requested or their parent element is finished.  Arrays whose elements
+ * may refer back to them are buffered in their entirety, since they must be created before their
+ * entries are read.  As with the DOM importer, a field may be read more than once; the value of
+ * the first element with the field's name is retained while its object is being read.
+ */
+public class StreamingXMLImporter extends Importer
+{
+    /**
+     * Creates an importer to read from the specified stream.
+     */
+    public StreamingXMLImporter (InputStream in)
+    {
+        _in = in;
+    }
+
+    @Override
+    public Object readObject ()
+        throws IOException
+    {
+        if (_root == null) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+            EventSource source;
+            try {
+                source = new StreamSource(_reader = factory.createXMLEventReader(_in));
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to parse input [error=" + e + "].");
+            }
+            XMLEvent event = source.next();
+            while (!event.isStartElement()) {
+                event = source.next();
+            }
+            _element = _root = new Cursor(event.asStartElement(), source);
+            String name = _root.getName();
+            if (!name.equals("java")) {
+                throw new IOException("Invalid top-level element [name=" + name + "].");
+            }
+            String vstr = _root.getAttribute("version");
+            if (!vstr.equals(XMLExporter.VERSION)) {
+                throw new IOException("Invalid version [version=" + vstr + ", expected=" +
+                    XMLExporter.VERSION + "].");
+            }
+            String cstr = _root.getAttribute("class");
+            if (!cstr.equals(XMLImporter.class.getName())) {
+                throw new IOException("Invalid importer class [class=" + cstr + ", expected=" +
+                    XMLImporter.class.getName() + "].");
+            }
+        }
+        for (Cursor child; (child = _root.next()) != null; ) {
+            if (child.getName().equals("object")) {
+                return read(child, Object.class);
+            }
+            child.finish();
+        }
+        throw new EOFException();
+    }
+
+    @Override
+    public boolean read (String name, boolean defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        return (value == null) ? defvalue : Boolean.parseBoolean(value);
+    }
+
+    @Override
+    public byte read (String name, byte defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Byte.parseByte(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as byte [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public char read (String name, char defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        return (value == null) ? defvalue : value.charAt(0);
+    }
+
+    @Override
+    public double read (String name, double defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as double [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public float read (String name, float defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as float [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public int read (String name, int defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as int [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public long read (String name, long defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as long [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public short read (String name, short defvalue)
+        throws IOException
+    {
+        String value = getValue(name);
+        try {
+            return (value == null) ? defvalue : Short.parseShort(value);
+        } catch (NumberFormatException e) {
+            log.warning("Couldn't parse value as short [value=" + value + "].", e);
+            return defvalue;
+        }
+    }
+
+    @Override
+    public <T> T read (String name, T defvalue, Class<T> clazz)
+        throws IOException
+    {
+        // the element will have been consumed if the field was read before
+        if (_element.hasValue(name)) {
+            Object value = _element.getValue(name);
+            if (value == null || clazz.isInstance(value)) {
+                return clazz.cast(value);
+            }
+        }
+        Cursor child = _element.find(name);
+        if (child == null) {
+            return defvalue;
+        }
+        Object value = read(child, clazz);
+        _element.setValue(name, value);
+        return clazz.cast(value);
+    }
+
+    @Override
+    public void close ()
+        throws IOException
+    {
+        if (_reader != null) {
+            try {
+                _reader.close();
+            } catch (XMLStreamException e) {
+                // no matter; we're closing the stream anyway
+            }
+        }
+        _in.close();
+    }
+
+    /**
+     * Reads an object of the supplied type from the given element, consuming the element.
+     */
+    protected Object read (Cursor element, Class<?> clazz)
+        throws IOException
+    {
+        String ref = element.getAttribute("ref");
+        String rdepth = element.getAttribute("rdepth");
+        if (rdepth.length() > 0) {
+            element.finish();
+            return _depths.get(rdepth);
+        } else if (ref.length() > 0) {
+            element.finish();
+            return _objects.get(ref);
+        } else if (element.isEmpty()) {
+            element.finish();
+            return null;
+        } else {
+            return readValue(element, clazz);
+        }
+    }
+
+    /**
+     * Returns the named class, or null if not found.
+     */
+    protected Class<?> getClassByName (String cstr, Class<?> defval)
+    {
+        if (cstr.length() > 0) {
+            try {
+                return Class.forName(cstr);
+            } catch (ClassNotFoundException e) {
+                log.warning("Class not found.", e);
+                return null;
+            }
+        }
+        return defval;
+    }
+
+    /**
+     * Reads an object value of the specified class from the given element, consuming the
+     * element.
+     */
+    protected Object readValue (Cursor element, Class<?> clazz)
+        throws IOException
+    {
+        // see if we can read the value from a string
+        String id = element.getAttribute("id");
+        String depth = element.getAttribute("depth");
+        Class<?> cclazz = getClassByName(element.getAttribute("class"), clazz);
+        @SuppressWarnings("unchecked")
+        Stringifier<Object> stringifier = (Stringifier<Object>)Stringifier.getStringifier(cclazz);
+        if (stringifier != null) {
+            String string = element.getText();
+            if (string == null) {
+                string = "";
+            }
+            Object value = null;
+            try {
+                if ((value = stringifier.fromString(string)) == null) {
+                    log.warning("Failed to parse string.", "string", string, "class", cclazz);
+                }
+            } catch (Exception e) {
+                log.warning("Failed to parse string.", "string", string, "class", cclazz, e);
+            }
+            if (value != null) {
+                if (depth.length() > 0) {
+                    putObjectDepth(depth, value);
+                }
+                if (id.length() > 0) {
+                    putObject(id, value);
+                }
+            }
+            return value;
+        }
+        // otherwise, process the element
+        Cursor oelement = _element;
+        _element = element;
+        try {
+            Object value;
+            boolean wasRead = false;
+            if (cclazz.isArray()) {
+                Class<?> ctype = cclazz.getComponentType();
+                if (id.length() == 0 && depth.length() == 0) {
+                    // nothing can refer to the array, so we can read the entries before creating it
+                    List<Object> entries = readEntries(Lists.<Object>newArrayList(), ctype);
+                    return entries.toArray((Object[])Array.newInstance(ctype, entries.size()));
+                }
+                element.buffer();
+                value = Array.newInstance(ctype, element.countBuffered("entry"));
+
+            } else if (cclazz == ImmutableList.class) {
+                value = ImmutableList.copyOf(readEntries(Lists.newArrayList()));
+                wasRead = true;
+
+            } else if (cclazz == ImmutableSet.class) {
+                value = ImmutableSet.copyOf(readEntries(Lists.newArrayList()));
+                wasRead = true;
+
+            } else if (cclazz == ImmutableMap.class) {
+                value = ImmutableMap.copyOf(readEntries(Maps.newLinkedHashMap()));
+                wasRead = true;
+
+            } else if (cclazz == ImmutableMultiset.class) {
+                value = ImmutableMultiset.copyOf(readEntries(HashMultiset.create()));
+                wasRead = true;
+
+            } else if (EnumSet.class.isAssignableFrom(cclazz)) {
+                @SuppressWarnings("unchecked") Class<Exporter.DummyEnum> eclazz =
+                    (Class<Exporter.DummyEnum>)getClassByName(element.getAttribute("eclass"), null);
+                value = EnumSet.noneOf(eclazz);
+
+            } else {
+                value = ReflectionUtil.newInstance(cclazz,
+                    ReflectionUtil.isInner(cclazz) ? read("outer", null, Object.class) : null);
+            }
+            if (depth.length() > 0 && value != null) {
+                putObjectDepth(depth, value);
+            }
+            if (id.length() > 0) {
+                putObject(id, value);
+            }
+            if (wasRead) {
+                return value;
+            }
+            if (value instanceof Exportable) {
+                readFields((Exportable)value);
+            } else if (value instanceof Object[]) {
+                Object[] array = (Object[])value;
+                readEntries(Lists.<Object>newArrayList(), cclazz.getComponentType()).toArray(array);
+            } else if (value instanceof Collection) {
+                if (value instanceof Multiset) {
+                    @SuppressWarnings("unchecked") Multiset<Object> multiset =
+                        (Multiset<Object>)value;
+                    readEntries(multiset);
+                } else {
+                    @SuppressWarnings("unchecked") Collection<Object> collection =
+                        (Collection<Object>)value;
+                    readEntries(collection);
+                }
+            } else if (value instanceof Map) {
+                @SuppressWarnings("unchecked") Map<Object, Object> map =
+                    (Map<Object, Object>)value;
+                readEntries(map);
+            }
+            return value;
+
+        } finally {
+            element.finish();
+            _element = oelement;
+            if (depth.length() > 0) {
+                _depths.remove(depth);
+            }
+        }
+    }
+
+    /**
+     * Stores an object in the map, logging a warning if we overwrite an existing entry.
+     */
+    protected void putObject (String id, Object value)
+    {
+        Object ovalue = _objects.put(id, value);
+        if (ovalue != null) {
+            log.warning("Duplicate id detected.", "id", id, "ovalue", ovalue, "nvalue", value);
+        }
+    }
+
+    /**
+     * Stores an object in the map, logging a warning if we overwrite an existing entry.
+     */
+    protected void putObjectDepth (String depth, Object value)
+    {
+        Object ovalue = _depths.put(depth, value);
+        if (ovalue != null) {
+            log.warning("Duplicate depth detected.",
+                    "depth", depth, "ovalue", ovalue, "nvalue", value);
+        }
+    }
+
+    /**
+     * Adds the entries under the current element to the supplied list.
+     *
+     * @return a reference to the list passed, for chaining.
+     */
+    protected List<Object> readEntries (List<Object> list, Class<?> cclazz)
+        throws IOException
+    {
+        for (Cursor child; (child = _element.next()) != null; ) {
+            if (child.getName().equals("entry")) {
+                list.add(read(child, cclazz));
+            } else {
+                child.finish();
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Populates the supplied collection with the entries under the current element.
+     *
+     * @return a reference to the collection passed, for chaining.
+     */
+    protected Collection<Object> readEntries (Collection<Object> collection)
+        throws IOException
+    {
+        for (Cursor child; (child = _element.next()) != null; ) {
+            if (child.getName().equals("entry")) {
+                collection.add(read(child, Object.class));
+            } else {
+                child.finish();
+            }
+        }
+        return collection;
+    }
+
+    /**
+     * Populates the supplied multiset with the entries under the current element.
+     *
+     * @return a reference to the multiset passed, for chaining.
+     */
+    protected Multiset<Object> readEntries (Multiset<Object> multiset)
+        throws IOException
+    {
+        Object element = null;
+        boolean haveElement = false;
+        for (Cursor child; (child = _element.next()) != null; ) {
+            String name = child.getName();
+            if (!haveElement && name.equals("element")) {
+                element = read(child, Object.class);
+                haveElement = true;
+            } else if (haveElement && name.equals("count")) {
+                multiset.setCount(element, (Integer)read(child, Integer.class));
+                haveElement = false;
+            } else {
+                child.finish();
+            }
+        }
+        return multiset;
+    }
+
+    /**
+     * Populates the supplied map with the entries under the current element.
+     *
+     * @return a reference to the map passed, for chaining.
+     */
+    protected Map<Object, Object> readEntries (Map<Object, Object> map)
+        throws IOException
+    {
+        Object key = null;
+        boolean haveKey = false;
+        for (Cursor child; (child = _element.next()) != null; ) {
+            String name = child.getName();
+            if (!haveKey && name.equals("key")) {
+                key = read(child, Object.class);
+                haveKey = true;
+            } else if (haveKey && name.equals("value")) {
+                map.put(key, read(child, Object.class));
+                haveKey = false;
+            } else {
+                child.finish();
+            }
+        }
+        return map;
+    }
+
+    /**
+     * For simple text fields, retrieves the value from a child element.
+     */
+    protected String getValue (String name)
+        throws IOException
+    {
+        // the element will have been consumed if the field was read before
+        if (_element.hasValue(name)) {
+            Object value = _element.getValue(name);
+            if (value == null || value instanceof String) {
+                return (String)value;
+            }
+        }
+        Cursor child = _element.find(name);
+        if (child == null) {
+            return null;
+        }
+        String text = child.getText();
+        _element.setValue(name, text);
+        return text;
+    }
+
+    /**
+     * A source of parse events.
+     */
+    protected static abstract class EventSource
+    {
+        /**
+         * Returns the next event without consuming it.
+         */
+        public abstract XMLEvent peek ()
+            throws IOException;
+
+        /**
+         * Consumes and returns the next event.
+         */
+        public abstract XMLEvent next ()
+            throws IOException;
+    }
+
+    /**
+     * Reads events from the underlying parser.
+     */
+    protected static class StreamSource extends EventSource
+    {
+        /**
+         * Creates a new source reading from the supplied parser.
+         */
+        public StreamSource (XMLEventReader reader)
+        {
+            _reader = reader;
+        }
+
+        @Override
+        public XMLEvent peek ()
+            throws IOException
+        {
+            try {
+                XMLEvent event = _reader.peek();
+                if (event == null) {
+                    throw new EOFException("Unexpected end of document.");
+                }
+                return event;
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to parse input [error=" + e + "].");
+            }
+        }
+
+        @Override
+        public XMLEvent next ()
+            throws IOException
+        {
+            if (!_reader.hasNext()) {
+                throw new EOFException("Unexpected end of document.");
+            }
+            try {
+                return _reader.nextEvent();
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to parse input [error=" + e + "].");
+            }
+        }
+
+        /** The underlying parser. */
+        protected XMLEventReader _reader;
+    }
+
+    /**
+     * Replays events buffered from an element.
+     */
+    protected static class BufferedSource extends EventSource
+    {
+        /**
+         * Creates a new source that replays the supplied events, starting at the specified index.
+         */
+        public BufferedSource (List<XMLEvent> events, int idx)
+        {
+            _events = events;
+            _idx = idx;
+        }
+
+        @Override
+        public XMLEvent peek ()
+        {
+            return _events.get(_idx);
+        }
+
+        @Override
+        public XMLEvent next ()
+        {
+            return _events.get(_idx++);
+        }
+
+        /** The buffered events. */
+        protected List<XMLEvent> _events;
+
+        /** The index of the next event. */
+        protected int _idx;
+    }
+
+    /**
+     * Reads the children of an element.  While a child is being read, its parent must not be
+     * advanced.
+     */
+    protected static class Cursor
+    {
+        /**
+         * Creates a cursor for the element with the given start, whose remaining events will be
+         * read from the supplied source.
+         */
+        public Cursor (StartElement start, EventSource source)
+        {
+            _start = start;
+            _source = source;
+        }
+
+        /**
+         * Returns the name of the element.
+         */
+        public String getName ()
+        {
+            return _start.getName().getLocalPart();
+        }
+
+        /**
+         * Returns the value of the named attribute, or the empty string if it isn't present.
+         */
+        public String getAttribute (String name)
+        {
+            Attribute attr = _start.getAttributeByName(new QName(name));
+            return (attr == null) ? "" : attr.getValue();
+        }
+
+        /**
+         * Determines whether the element has no content.  Only valid before any children have
+         * been read.
+         */
+        public boolean isEmpty ()
+            throws IOException
+        {
+            return _skipped == null && _source.peek().isEndElement();
+        }
+
+        /**
+         * Finds the first unread child with the given name, buffering any others that we pass
+         * over.
+         *
+         * @return the child, or <code>null</code> if there is no such child.
+         */
+        public Cursor find (String name)
+            throws IOException
+        {
+            if (_skipped != null) {
+                for (Iterator<List<XMLEvent>> it = _skipped.iterator(); it.hasNext(); ) {
+                    List<XMLEvent> events = it.next();
+                    StartElement start = events.get(0).asStartElement();
+                    if (start.getName().getLocalPart().equals(name)) {
+                        it.remove();
+                        return new Cursor(start, new BufferedSource(events, 1));
+                    }
+                }
+            }
+            while (!_ended) {
+                XMLEvent event = _source.next();
+                if (event.isEndElement()) {
+                    _ended = true;
+                } else if (event.isStartElement()) {
+                    StartElement start = event.asStartElement();
+                    if (start.getName().getLocalPart().equals(name)) {
+                        return new Cursor(start, _source);
+                    }
+                    skip(start);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the next unread child in document order.
+         *
+         * @return the child, or <code>null</code> if there are no more children.
+         */
+        public Cursor next ()
+            throws IOException
+        {
+            if (_skipped != null && !_skipped.isEmpty()) {
+                List<XMLEvent> events = _skipped.remove(0);
+                return new Cursor(events.get(0).asStartElement(), new BufferedSource(events, 1));
+            }
+            while (!_ended) {
+                XMLEvent event = _source.next();
+                if (event.isEndElement()) {
+                    _ended = true;
+                } else if (event.isStartElement()) {
+                    return new Cursor(event.asStartElement(), _source);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Checks whether a value has been recorded for the named child.
+         */
+        public boolean hasValue (String name)
+        {
+            return _values != null && _values.containsKey(name);
+        }
+
+        /**
+         * Returns the value recorded for the named child.
+         */
+        public Object getValue (String name)
+        {
+            return _values.get(name);
+        }
+
+        /**
+         * Records the value read from the named child, so that it can be returned if the child
+         * is requested again.
+         */
+        public void setValue (String name, Object value)
+        {
+            if (_values == null) {
+                _values = Maps.newHashMap();
+            }
+            _values.put(name, value);
+        }
+
+        /**
+         * Buffers all of the remaining children.
+         */
+        public void buffer ()
+            throws IOException
+        {
+            while (!_ended) {
+                XMLEvent event = _source.next();
+                if (event.isEndElement()) {
+                    _ended = true;
+                } else if (event.isStartElement()) {
+                    skip(event.asStartElement());
+                }
+            }
+        }
+
+        /**
+         * Returns the number of buffered children with the given name.
+         */
+        public int countBuffered (String name)
+        {
+            int count = 0;
+            if (_skipped != null) {
+                for (List<XMLEvent> events : _skipped) {
+                    if (events.get(0).asStartElement().getName().getLocalPart().equals(name)) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Reads the remainder of the element, returning its text content.
+         *
+         * @return the text, or <code>null</code> if the element contains none.
+         */
+        public String getText ()
+            throws IOException
+        {
+            StringBuilder buf = null;
+            for (int depth = 0; !_ended; ) {
+                XMLEvent event = _source.next();
+                if (event.isCharacters()) {
+                    String data = event.asCharacters().getData();
+                    if (buf == null) {
+                        buf = new StringBuilder(data);
+                    } else {
+                        buf.append(data);
+                    }
+                } else if (event.isStartElement()) {
+                    depth++;
+                } else if (event.isEndElement() && depth-- == 0) {
+                    _ended = true;
+                }
+            }
+            return (buf == null) ? null : buf.toString();
+        }
+
+        /**
+         * Consumes the remainder of the element.
+         */
+        public void finish ()
+            throws IOException
+        {
+            _skipped = null;
+            for (int depth = 0; !_ended; ) {
+                XMLEvent event = _source.next();
+                if (event.isStartElement()) {
+                    depth++;
+                } else if (event.isEndElement() && depth-- == 0) {
+                    _ended = true;
+                }
+            }
+        }
+
+        /**
+         * Buffers the child with the given start.
+         */
+        protected void skip (StartElement start)
+            throws IOException
+        {
+            List<XMLEvent> events = Lists.newArrayList();
+            events.add(start);
+            for (int depth = 0; ; ) {
+                XMLEvent event = _source.next();
+                events.add(event);
+                if (event.isStartElement()) {
+                    depth++;
+                } else if (event.isEndElement() && depth-- == 0) {
+                    break;
+                }
+            }
+            if (_skipped == null) {
+                _skipped = Lists.newArrayList();
+            }
+            _skipped.add(events);
+        }
+
+        /** The start of the element. */
+        protected StartElement _start;
+
+        /** The source of the element's remaining events. */
+        protected EventSource _source;
+
+        /** Children buffered while searching for others, if any. */
+        protected List<List<XMLEvent>> _skipped;
+
+        /** The values read from children, mapped by name, if any. */
+        protected Map<String, Object> _values;
+
+        /** Set once we've consumed the end of the element. */
+        protected boolean _ended;
+    }
+
+    /** The source stream. */
+    protected InputStream _in;
+
+    /** The StAX parser. */
+    protected XMLEventReader _reader;
+
+    /** The top-level element. */
+    protected Cursor _root;
+
+    /** The element associated with the current object. */
+    protected Cursor _element;
+
+    /** Mappings from ids to referenced objects. */
+    protected HashMap<String, Object> _objects = new HashMap<String, Object>();
+    protected HashMap<String, Object> _depths = new HashMap<String, Object>();
+}
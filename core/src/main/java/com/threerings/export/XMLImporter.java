@@ -307,7 +307,7 @@ public class XMLImporter extends Importer
                 wasRead = true;
 
             } else if (cclazz == ImmutableMap.class) {
-                value = ImmutableMap.copyOf(readEntries(Maps.newHashMap()));
+                value = ImmutableMap.copyOf(readEntries(Maps.newLinkedHashMap()));
                 wasRead = true;
 
             } else if (cclazz == ImmutableMultiset.class) {
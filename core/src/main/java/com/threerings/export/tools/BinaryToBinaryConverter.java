@@ -26,21 +26,19 @@
 package com.threerings.export.tools;
 
 import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
 import java.util.List;
 
-import org.apache.tools.ant.DirectoryScanner;
-
 import com.google.common.collect.Lists;
 
 import com.samskivert.util.ArrayUtil;
 import com.threerings.export.BinaryExporter;
 import com.threerings.export.BinaryImporter;
-
-import static com.threerings.export.Log.log;
+import com.threerings.export.ExportCodec;
 
 /**
  * Converts binary export files into binary export files.
@@ -54,7 +52,9 @@ public class BinaryToBinaryConverter
         throws Exception
     {
         // consume the options
-        boolean compress = true;
+        ExportCodec codec = ExportCodec.DEFLATE;
+        File manifest = null;
+        int threads = 0;
         while (args.length > 0 && args[0].startsWith("-")) {
             String options = args[0];
             args = ArrayUtil.splice(args, 0, 1);
@@ -62,7 +62,31 @@ public class BinaryToBinaryConverter
                 char option = options.charAt(ii);
                 switch (option) {
                     case 'u':
-                        compress = false;
+                        codec = null;
+                        break;
+                    case 'c':
+                        if (args.length == 0) {
+                            System.err.println("Missing codec for -c");
+                            System.exit(1);
+                        }
+                        codec = ExportCodec.forName(args[0]);
+                        args = ArrayUtil.splice(args, 0, 1);
+                        break;
+                    case 'm':
+                        if (args.length == 0) {
+                            System.err.println("Missing manifest for -m");
+                            System.exit(1);
+                        }
+                        manifest = new File(args[0]);
+                        args = ArrayUtil.splice(args, 0, 1);
+                        break;
+                    case 'j':
+                        if (args.length == 0) {
+                            System.err.println("Missing thread count for -j");
+                            System.exit(1);
+                        }
+                        threads = Integer.parseInt(args[0]);
+                        args = ArrayUtil.splice(args, 0, 1);
                         break;
                     default:
                         System.err.println("Unrecognized option: -" + option);
@@ -72,9 +96,9 @@ public class BinaryToBinaryConverter
         }
 
         if (args.length == 2) {
-            convert(args[0], args[1], compress);
+            convert(args[0], args[1], codec);
         } else if (args.length == 1) {
-            convert(args[0], compress);
+            convert(args[0], codec, manifest, threads);
         } else {
             System.err.println(
                 "Usage: BinaryToBinaryConverter [-options] <binary input file> " +
@@ -86,6 +110,12 @@ public class BinaryToBinaryConverter
                 "where options include:");
             System.err.println(
                 "    -u            do not compress output");
+            System.err.println(
+                "    -c <codec>    compress with the named codec (lz, deflate, deflate:<level>)");
+            System.err.println(
+                "    -m <file>     skip files unchanged since they were recorded in the manifest");
+            System.err.println(
+                "    -j <threads>  convert on the given number of threads");
             return;
         }
     }
@@ -96,17 +126,56 @@ public class BinaryToBinaryConverter
     public static void convert (String pattern, boolean compress)
         throws IOException
     {
-        DirectoryScanner scanner = new DirectoryScanner();
-        scanner.setBasedir(".");
-        scanner.setIncludes(new String[] { pattern });
-        scanner.scan();
-        for (String source : scanner.getIncludedFiles()) {
-            try {
-                convert(source, source, compress);
-            } catch (IOException e) {
-                log.warning("Error converting file.", "file", source, e);
-            }
+        convert(pattern, compress ? ExportCodec.DEFLATE : null);
+    }
+
+    /**
+     * Converts the file(s) identified by the given pattern.
+     *
+     * @param codec the codec with which to compress the output, or <code>null</code> for none.
+     */
+    public static void convert (String pattern, ExportCodec codec)
+        throws IOException
+    {
+        convert(pattern, codec, null, 0);
+    }
+
+    /**
+     * Converts the file(s) identified by the given pattern in place, in parallel.
+     *
+     * @param codec the codec with which to compress the output, or <code>null</code> for none.
+     * @param manifest the manifest used to skip unchanged files, or <code>null</code> to convert
+     * all files.
+     * @param threads the number of threads on which to convert, or zero for the default.
+     */
+    public static BulkConverter.Result convert (
+        String pattern, ExportCodec codec, File manifest, int threads)
+        throws IOException
+    {
+        BulkConverter converter = createBulkConverter(codec);
+        converter.setManifest(manifest);
+        if (threads > 0) {
+            converter.setThreads(threads);
         }
+        converter.addPattern(pattern, null, null);
+        return converter.run();
+    }
+
+    /**
+     * Creates a bulk converter that rewrites binary files.
+     *
+     * @param codec the codec with which to compress the output, or <code>null</code> for none.
+     */
+    public static BulkConverter createBulkConverter (final ExportCodec codec)
+    {
+        return new BulkConverter(String.valueOf(codec)) {
+            @Override
+            protected void convert (File source, File dest)
+                throws IOException
+            {
+                BinaryToBinaryConverter.convert(source.getPath(), dest.getPath(), codec);
+            }
+        };
     }
 
     /**
@@ -114,6 +183,17 @@ public class BinaryToBinaryConverter
      */
     public static void convert (String source, String dest, boolean compress)
         throws IOException
+    {
+        convert(source, dest, compress ? ExportCodec.DEFLATE : null);
+    }
+
+    /**
+     * Performs the actual conversion.
+     *
+     * @param codec the codec with which to compress the output, or <code>null</code> for none.
+     */
+    public static void convert (String source, String dest, ExportCodec codec)
+        throws IOException
     {
         // source and dest may be the same, so we must read everything in...
         BinaryImporter in = new BinaryImporter(new FileInputStream(source));
@@ -129,7 +209,7 @@ public class BinaryToBinaryConverter
         }
 
         // ...then write it all out
-        BinaryExporter out = new BinaryExporter(new FileOutputStream(dest), compress);
+        BinaryExporter out = new BinaryExporter(new FileOutputStream(dest), codec);
         try {
             for (int ii = 0, nn = objects.size(); ii < nn; ii++) {
                 out.writeObject(objects.get(ii));
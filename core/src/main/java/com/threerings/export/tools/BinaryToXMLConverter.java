@@ -31,12 +31,10 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
-import org.apache.tools.ant.DirectoryScanner;
-
-import com.samskivert.util.FileUtil;
+import com.samskivert.util.ArrayUtil;
 
 import com.threerings.export.BinaryImporter;
-import com.threerings.export.XMLExporter;
+import com.threerings.export.StreamingXMLExporter;
 
 import static com.threerings.export.Log.log;
 
@@ -51,15 +49,54 @@ public class BinaryToXMLConverter
     public static void main (String[] args)
         throws Exception
     {
+        // consume the options
+        File manifest = null;
+        int threads = 0;
+        while (args.length > 0 && args[0].startsWith("-")) {
+            String options = args[0];
+            args = ArrayUtil.splice(args, 0, 1);
+            for (int ii = 1, nn = options.length(); ii < nn; ii++) {
+                char option = options.charAt(ii);
+                switch (option) {
+                    case 'm':
+                        if (args.length == 0) {
+                            System.err.println("Missing manifest for -m");
+                            System.exit(1);
+                        }
+                        manifest = new File(args[0]);
+                        args = ArrayUtil.splice(args, 0, 1);
+                        break;
+                    case 'j':
+                        if (args.length == 0) {
+                            System.err.println("Missing thread count for -j");
+                            System.exit(1);
+                        }
+                        threads = Integer.parseInt(args[0]);
+                        args = ArrayUtil.splice(args, 0, 1);
+                        break;
+                    default:
+                        System.err.println("Unrecognized option: -" + option);
+                        System.exit(1);
+                }
+            }
+        }
+
         if (args.length == 2) {
             convert(args[0], args[1]);
         } else if (args.length == 1) {
-            convert(args[0]);
+            convert(args[0], manifest, threads);
         } else {
             System.err.println(
-                "Usage: BinaryToXMLConverter <binary input file> <xml output file>");
+                "Usage: BinaryToXMLConverter [-options] <binary input file> <xml output file>");
+            System.err.println(
+                "   or  BinaryToXMLConverter [-options] <binary input file pattern>");
+            System.err.println();
             System.err.println(
-                "   or  BinaryToXMLConverter <binary input file pattern>");
+                "where options include:");
+            System.err.println(
+                "    -m <file>     skip files unchanged since they were recorded in the manifest");
+            System.err.println(
+                "    -j <threads>  convert on the given number of threads");
         }
     }
 
@@ -68,22 +105,43 @@ public class BinaryToXMLConverter
      */
     public static void convert (String pattern)
         throws IOException
+    {
+        convert(pattern, null, 0);
+    }
+
+    /**
+     * Converts the file(s) identified by the given pattern in parallel.
+     *
+     * @param manifest the manifest used to skip unchanged files, or <code>null</code> to convert
+     * all files.
+     * @param threads the number of threads on which to convert, or zero for the default.
+     */
+    public static BulkConverter.Result convert (String pattern, File manifest, int threads)
+        throws IOException
     {
         log.info("Starting conversion", "pattern", pattern, "pwd", new File(".").getCanonicalPath());
-        DirectoryScanner scanner = new DirectoryScanner();
-        scanner.setBasedir(".");
-        scanner.setIncludes(new String[] { pattern });
-        scanner.scan();
-        int count = 0;
-        for (String source : scanner.getIncludedFiles()) {
-            try {
-                convert(source, FileUtil.resuffix(new File(source), ".dat", ".xml"));
-                count++;
-            } catch (Exception e) {
-                log.warning("Error converting file.", "file", source, e);
-            }
+        BulkConverter converter = createBulkConverter();
+        converter.setManifest(manifest);
+        if (threads > 0) {
+            converter.setThreads(threads);
         }
-        log.info("Finished conversion", "count", count);
+        converter.addPattern(pattern, ".dat", ".xml");
+        return converter.run();
+    }
+
+    /**
+     * Creates a bulk converter that converts binary files into XML files.
+     */
+    public static BulkConverter createBulkConverter ()
+    {
+        return new BulkConverter("xml") {
+            @Override
+            protected void convert (File source, File dest)
+                throws IOException
+            {
+                BinaryToXMLConverter.convert(source.getPath(), dest.getPath());
+            }
+        };
     }
 
     /**
@@ -93,7 +151,7 @@ public class BinaryToXMLConverter
         throws IOException
     {
         BinaryImporter in = new BinaryImporter(new FileInputStream(source));
-        XMLExporter out = new XMLExporter(
+        StreamingXMLExporter out = new StreamingXMLExporter(
                 "-".equals(dest) ? System.out : new FileOutputStream(dest));
         try {
             while (true) {
@@ -0,0 +1,464 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.tools.ant.DirectoryScanner;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import com.samskivert.util.FileUtil;
+
+import com.threerings.export.BinaryExporter;
+
+import static com.threerings.export.Log.log;
+
+/**
+ * Converts a batch of files in parallel, optionally skipping those that haven't changed since
+ * the last run.  When a manifest file is provided, it records the SHA-1 hash of each source file
+ * along with the options used to convert it (qualified by the {@link #VERSION} of the converter
+ * and that of the binary format) and the size and modification time of the result; a file is
+ * reconverted only if its source has changed, the options have changed, or its result has been
+ * modified or removed.  Each result is written to a temporary file and renamed into
+ * place, so a failed or interrupted conversion never leaves a partial file behind.  The output
+ * of each conversion depends only on its source and options, so the results are the same
+ * regardless of the number of threads.
+ */
+public abstract class BulkConverter
+{
+    /**
+     * The outcome of a run.
+     */
+    public static class Result
+    {
+        /** The number of files converted. */
+        public int converted;
+
+        /** The number of files skipped because they were up to date. */
+        public int skipped;
+
+        /** The number of files that failed to convert. */
+        public int failed;
+
+        /** The total size of the converted source files. */
+        public long bytes;
+
+        /** The duration of the run in milliseconds. */
+        public long millis;
+
+        /**
+         * Returns the rate at which files were converted, in files per second.
+         */
+        public double getFilesPerSecond ()
+        {
+            return (millis == 0L) ? 0.0 : converted * 1000.0 / millis;
+        }
+
+        /**
+         * Returns the rate at which source data was converted, in megabytes per second.
+         */
+        public double getMegabytesPerSecond ()
+        {
+            return (millis == 0L) ? 0.0 : bytes * 1000.0 / (millis * 1024.0 * 1024.0);
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "[converted=" + converted + ", skipped=" + skipped + ", failed=" + failed +
+                ", millis=" + millis + ", files/s=" + (int)getFilesPerSecond() +
+                ", MB/s=" + (int)getMegabytesPerSecond() + "]";
+        }
+    }
+
+    /** The version of the conversion output.  This must be incremented whenever a change to the
+     * exporters or importers alters the output of a conversion without changing the version of
+     * the binary format, so that the files converted by earlier versions are reconverted. */
+    public static final int VERSION = 1;
+
+    /**
+     * Creates a new converter.
+     *
+     * @param options a description of the conversion options (such as the codec).  Files
+     * converted with different options, or by a different version of the converter, are always
+     * reconverted.
+     */
+    public BulkConverter (String options)
+    {
+        _options = VERSION + "/" + Integer.toHexString(BinaryExporter.VERSION) + "/" + options;
+    }
+
+    /**
+     * Sets the manifest file used to track the files that have already been converted.  If no
+     * manifest is set (the default), all files are converted.
+     */
+    public void setManifest (File manifest)
+    {
+        _manifest = manifest;
+    }
+
+    /**
+     * Sets the number of threads on which to convert (by default, the number of available
+     * processors).
+     */
+    public void setThreads (int threads)
+    {
+        _threads = Math.max(1, threads);
+    }
+
+    /**
+     * Adds a file to convert.
+     */
+    public void add (File source, File dest)
+    {
+        _jobs.add(new Job(source, dest));
+    }
+
+    /**
+     * Adds the files matching the given pattern (relative to the working directory), replacing
+     * the specified suffix to obtain the name of each destination file.
+     *
+     * @param suffix the suffix to replace, or <code>null</code> to convert the files in place.
+     */
+    public void addPattern (String pattern, String suffix, String newSuffix)
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(".");
+        scanner.setIncludes(new String[] { pattern });
+        scanner.scan();
+        for (String source : scanner.getIncludedFiles()) {
+            File file = new File(source);
+            add(file, (suffix == null) ?
+                file : new File(FileUtil.resuffix(file, suffix, newSuffix)));
+        }
+    }
+
+    /**
+     * Converts the files added since the last run, logging any failures.
+     */
+    public Result run ()
+        throws IOException
+    {
+        long start = System.currentTimeMillis();
+        Map<String, Entry> entries = (_manifest == null) ?
+            Maps.<String, Entry>newTreeMap() : readManifest(_manifest);
+        List<Job> jobs = _jobs;
+        _jobs = Lists.newArrayList();
+        for (Job job : jobs) {
+            job.entry = entries.get(job.dest.getPath());
+        }
+
+        Result result = new Result();
+        int threads = Math.min(_threads, jobs.size());
+        ExecutorService executor = (threads > 1) ?
+            Executors.newFixedThreadPool(threads, CONVERTER_THREAD_FACTORY) : null;
+        try {
+            List<Future<Entry>> results = Lists.newArrayListWithCapacity(jobs.size());
+            if (executor != null) {
+                for (Job job : jobs) {
+                    results.add(executor.submit(job));
+                }
+            }
+            // collect the results in order so that the log and manifest are deterministic
+            for (int ii = 0, nn = jobs.size(); ii < nn; ii++) {
+                Job job = jobs.get(ii);
+                Entry entry;
+                try {
+                    entry = (executor == null) ?
+                        job.call() : Uninterruptibles.getUninterruptibly(results.get(ii));
+                } catch (Exception e) {
+                    Throwable cause = (e instanceof ExecutionException) ? e.getCause() : e;
+                    if (cause instanceof Error) {
+                        throw (Error)cause;
+                    }
+                    log.warning("Error converting file.", "file", job.source, cause);
+                    entries.remove(job.dest.getPath());
+                    result.failed++;
+                    continue;
+                }
+                if (entry == job.entry) {
+                    result.skipped++;
+                } else {
+                    entries.put(job.dest.getPath(), entry);
+                    result.converted++;
+                    result.bytes += entry.sourceLength;
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        if (_manifest != null) {
+            writeManifest(_manifest, entries);
+        }
+        result.millis = System.currentTimeMillis() - start;
+        log.info("Finished conversion.", "converted", result.converted,
+            "skipped", result.skipped, "failed", result.failed, "threads", Math.max(1, threads),
+            "millis", result.millis, "files/s", (int)result.getFilesPerSecond(),
+            "MB/s", (int)result.getMegabytesPerSecond());
+        return result;
+    }
+
+    /**
+     * Converts a single file.  This will be called concurrently from multiple threads.
+     */
+    protected abstract void convert (File source, File dest)
+        throws IOException;
+
+    /**
+     * Computes the hash of a file's contents.
+     */
+    protected static String hash (File file)
+        throws IOException
+    {
+        return Files.hash(file, Hashing.sha1()).toString();
+    }
+
+    /**
+     * Reads the manifest, returning an empty map if it doesn't exist.
+     */
+    protected static Map<String, Entry> readManifest (File file)
+        throws IOException
+    {
+        Map<String, Entry> entries = Maps.newTreeMap();
+        BufferedReader in;
+        try {
+            in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), Charsets.UTF_8));
+        } catch (FileNotFoundException e) {
+            return entries;
+        }
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 7) {
+                    log.warning("Invalid manifest entry.", "file", file, "line", line);
+                    continue;
+                }
+                try {
+                    entries.put(fields[0], new Entry(fields[1], Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3]), fields[4], Long.parseLong(fields[5]),
+                        Long.parseLong(fields[6])));
+                } catch (NumberFormatException e) {
+                    log.warning("Invalid manifest entry.", "file", file, "line", line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the manifest, sorted by destination path.
+     */
+    protected void writeManifest (File file, Map<String, Entry> entries)
+        throws IOException
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory()) {
+            parent.mkdirs();
+        }
+        File temp = new File(parent, file.getName() + TEMP_SUFFIX);
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(
+            new FileOutputStream(temp), Charsets.UTF_8));
+        try {
+            for (Map.Entry<String, Entry> mentry : entries.entrySet()) {
+                Entry entry = mentry.getValue();
+                out.print(mentry.getKey() + "\t" + entry.sourceHash + "\t" + entry.sourceLength +
+                    "\t" + entry.sourceModified + "\t" + entry.options + "\t" +
+                    entry.destLength + "\t" + entry.destModified + "\n");
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Error writing manifest: " + temp);
+        }
+        rename(temp, file);
+    }
+
+    /**
+     * Replaces the destination file with the source.
+     */
+    protected static void rename (File source, File dest)
+        throws IOException
+    {
+        if (!source.renameTo(dest)) {
+            // some platforms won't rename over an existing file
+            dest.delete();
+            if (!source.renameTo(dest)) {
+                source.delete();
+                throw new IOException("Failed to rename " + source + " to " + dest);
+            }
+        }
+    }
+
+    /**
+     * A single file to convert.
+     */
+    protected class Job
+        implements Callable<Entry>
+    {
+        /** The source and destination files. */
+        public final File source, dest;
+
+        /** The manifest entry from the last run, if any. */
+        public Entry entry;
+
+        /**
+         * Creates a new job.
+         */
+        public Job (File source, File dest)
+        {
+            this.source = source;
+            this.dest = dest;
+        }
+
+        /**
+         * Converts the file if necessary.
+         *
+         * @return the new manifest entry, or the previous entry if the file was up to date.
+         */
+        public Entry call ()
+            throws IOException
+        {
+            // if the source's size and timestamp are unchanged, assume its contents are as well
+            long sourceLength = source.length(), sourceModified = source.lastModified();
+            String sourceHash = (entry != null && entry.sourceLength == sourceLength &&
+                    entry.sourceModified == sourceModified) ? entry.sourceHash : hash(source);
+            if (entry != null && entry.sourceHash.equals(sourceHash) &&
+                    entry.options.equals(_options) && entry.destLength == dest.length() &&
+                    entry.destModified == dest.lastModified()) {
+                return entry;
+            }
+
+            // convert to a temporary file and move it into place
+            File parent = dest.getAbsoluteFile().getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                throw new IOException("Failed to create directory " + parent);
+            }
+            File temp = new File(parent, dest.getName() + TEMP_SUFFIX);
+            try {
+                convert(source, temp);
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            } catch (RuntimeException e) {
+                temp.delete();
+                throw e;
+            }
+            rename(temp, dest);
+
+            // when converting in place, the source is now the result
+            if (source.equals(dest)) {
+                sourceLength = source.length();
+                sourceModified = source.lastModified();
+                sourceHash = hash(source);
+            }
+            return new Entry(sourceHash, sourceLength, sourceModified,
+                _options, dest.length(), dest.lastModified());
+        }
+    }
+
+    /**
+     * The manifest record for a converted file.
+     */
+    protected static class Entry
+    {
+        /** The hash of the source file. */
+        public final String sourceHash;
+
+        /** The size and modification time of the source file. */
+        public final long sourceLength, sourceModified;
+
+        /** The options used to convert the file. */
+        public final String options;
+
+        /** The size and modification time of the converted file. */
+        public final long destLength, destModified;
+
+        /**
+         * Creates a new entry.
+         */
+        public Entry (
+            String sourceHash, long sourceLength, long sourceModified, String options,
+            long destLength, long destModified)
+        {
+            this.sourceHash = sourceHash;
+            this.sourceLength = sourceLength;
+            this.sourceModified = sourceModified;
+            this.options = options;
+            this.destLength = destLength;
+            this.destModified = destModified;
+        }
+    }
+
+    /** A description of the conversion options, qualified by the converter and format versions. */
+    protected String _options;
+
+    /** The manifest file, if any. */
+    protected File _manifest;
+
+    /** The number of threads on which to convert. */
+    protected int _threads = Runtime.getRuntime().availableProcessors();
+
+    /** The files to convert. */
+    protected List<Job> _jobs = Lists.newArrayList();
+
+    /** The suffix appended to the names of files being written. */
+    protected static final String TEMP_SUFFIX = ".part";
+
+    /** Creates the converter threads. */
+    protected static final ThreadFactory CONVERTER_THREAD_FACTORY =
+        new ThreadFactoryBuilder().setNameFormat("bulk-converter-%d").setDaemon(true).build();
+}
@@ -31,15 +31,11 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
-import org.apache.tools.ant.DirectoryScanner;
-
 import com.samskivert.util.ArrayUtil;
-import com.samskivert.util.FileUtil;
 
 import com.threerings.export.BinaryExporter;
-import com.threerings.export.XMLImporter;
-
-import static com.threerings.export.Log.log;
+import com.threerings.export.ExportCodec;
+import com.threerings.export.StreamingXMLImporter;
 
 /**
  * Converts XML export files into binary export files.
@@ -53,7 +49,9 @@ public class XMLToBinaryConverter
         throws Exception
     {
         // consume the options
-        boolean compress = true;
+        ExportCodec codec = ExportCodec.DEFLATE;
+        File manifest = null;
+        int threads = 0;
         while (args.length > 0 && args[0].startsWith("-")) {
             String options = args[0];
             args = ArrayUtil.splice(args, 0, 1);
@@ -61,7 +59,31 @@ public class XMLToBinaryConverter
                 char option = options.charAt(ii);
                 switch (option) {
                     case 'u':
-                        compress = false;
+                        codec = null;
+                        break;
+                    case 'c':
+                        if (args.length == 0) {
+                            System.err.println("Missing codec for -c");
+                            System.exit(1);
+                        }
+                        codec = ExportCodec.forName(args[0]);
+                        args = ArrayUtil.splice(args, 0, 1);
+                        break;
+                    case 'm':
+                        if (args.length == 0) {
+                            System.err.println("Missing manifest for -m");
+                            System.exit(1);
+                        }
+                        manifest = new File(args[0]);
+                        args = ArrayUtil.splice(args, 0, 1);
+                        break;
+                    case 'j':
+                        if (args.length == 0) {
+                            System.err.println("Missing thread count for -j");
+                            System.exit(1);
+                        }
+                        threads = Integer.parseInt(args[0]);
+                        args = ArrayUtil.splice(args, 0, 1);
                         break;
                     default:
                         System.err.println("Unrecognized option: -" + option);
@@ -71,9 +93,9 @@ public class XMLToBinaryConverter
         }
 
         if (args.length == 2) {
-            convert(args[0], args[1], compress);
+            convert(args[0], args[1], codec);
         } else if (args.length == 1) {
-            convert(args[0], compress);
+            convert(args[0], codec, manifest, threads);
         } else {
             System.err.println(
                 "Usage: XMLToBinaryConverter [-options] <xml input file> <binary output file>");
@@ -84,6 +106,12 @@ public class XMLToBinaryConverter
                 "where options include:");
             System.err.println(
                 "    -u            do not compress output");
+            System.err.println(
+                "    -c <codec>    compress with the named codec (lz, deflate, deflate:<level>)");
+            System.err.println(
+                "    -m <file>     skip files unchanged since they were recorded in the manifest");
+            System.err.println(
+                "    -j <threads>  convert on the given number of threads");
         }
     }
 
@@ -93,17 +121,56 @@ public class XMLToBinaryConverter
     public static void convert (String pattern, boolean compress)
         throws IOException
     {
-        DirectoryScanner scanner = new DirectoryScanner();
-        scanner.setBasedir(".");
-        scanner.setIncludes(new String[] { pattern });
-        scanner.scan();
-        for (String source : scanner.getIncludedFiles()) {
-            try {
-                convert(source, FileUtil.resuffix(new File(source), ".xml", ".dat"), compress);
-            } catch (IOException e) {
-                log.warning("Error converting file.", "file", source, e);
-            }
+        convert(pattern, compress ? ExportCodec.DEFLATE : null);
+    }
+
+    /**
+     * Converts the file(s) identified by the given pattern.
+     *
+     * @param codec the codec with which to compress the output, or <code>null</code> for none.
+     */
+    public static void convert (String pattern, ExportCodec codec)
+        throws IOException
+    {
+        convert(pattern, codec, null, 0);
+    }
+
+    /**
+     * Converts the file(s) identified by the given pattern in parallel.
+     *
+     * @param codec the codec with which to compress the output, or <code>null</code> for none.
+     * @param manifest the manifest used to skip unchanged files, or <code>null</code> to convert
+     * all files.
+     * @param threads the number of threads on which to convert, or zero for the default.
+     */
+    public static BulkConverter.Result convert (
+        String pattern, ExportCodec codec, File manifest, int threads)
+        throws IOException
+    {
+        BulkConverter converter = createBulkConverter(codec);
+        converter.setManifest(manifest);
+        if (threads > 0) {
+            converter.setThreads(threads);
         }
+        converter.addPattern(pattern, ".xml", ".dat");
+        return converter.run();
+    }
+
+    /**
+     * Creates a bulk converter that converts XML files into binary files.
+     *
+     * @param codec the codec with which to compress the output, or <code>null</code> for none.
+     */
+    public static BulkConverter createBulkConverter (final ExportCodec codec)
+    {
+        return new BulkConverter(String.valueOf(codec)) {
+            @Override
+            protected void convert (File source, File dest)
+                throws IOException
+            {
+                XMLToBinaryConverter.convert(source.getPath(), dest.getPath(), codec);
+            }
+        };
     }
 
     /**
@@ -112,8 +179,19 @@ public class XMLToBinaryConverter
     public static void convert (String source, String dest, boolean compress)
         throws IOException
     {
-        XMLImporter in = new XMLImporter(new FileInputStream(source));
-        BinaryExporter out = new BinaryExporter(new FileOutputStream(dest), compress);
+        convert(source, dest, compress ? ExportCodec.DEFLATE : null);
+    }
+
+    /**
+     * Performs the actual conversion.
+     *
+     * @param codec the codec with which to compress the output, or <code>null</code> for none.
+     */
+    public static void convert (String source, String dest, ExportCodec codec)
+        throws IOException
+    {
+        StreamingXMLImporter in = new StreamingXMLImporter(new FileInputStream(source));
+        BinaryExporter out = new BinaryExporter(new FileOutputStream(dest), codec);
         try {
             while (true) {
                 out.writeObject(in.readObject());
@@ -35,6 +35,8 @@ import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.FileSet;
 
+import com.threerings.export.ExportCodec;
+
 /**
  * Converts XML export files into binary export files.
  */
@@ -53,7 +55,34 @@ public class XMLToBinaryTask extends Task
      */
     public void setCompress (boolean compress)
     {
-        _compress = compress;
+        _codec = compress ? ExportCodec.DEFLATE : null;
+    }
+
+    /**
+     * Sets the codec with which to compress the resulting files: "none", "lz", "deflate", or
+     * "deflate:&lt;level&gt;".
+     */
+    public void setCodec (String codec)
+    {
+        _codec = ExportCodec.forName(codec);
+    }
+
+    /**
+     * Sets the manifest file used to track converted files.  When a manifest is set, files are
+     * reconverted only when their contents (rather than their timestamps) have changed.
+     */
+    public void setManifest (File manifest)
+    {
+        _manifest = manifest;
+    }
+
+    /**
+     * Sets the number of threads on which to convert (by default, the number of available
+     * processors).
+     */
+    public void setThreads (int threads)
+    {
+        _threads = threads;
     }
 
     /**
@@ -68,54 +97,59 @@ public class XMLToBinaryTask extends Task
     public void execute ()
         throws BuildException
     {
+        BulkConverter converter = XMLToBinaryConverter.createBulkConverter(_codec);
+        converter.setManifest(_manifest);
+        if (_threads > 0) {
+            converter.setThreads(_threads);
+        }
         for (FileSet fs : _filesets) {
             DirectoryScanner ds = fs.getDirectoryScanner(getProject());
             File fromDir = fs.getDir(getProject());
             for (String file : ds.getIncludedFiles()) {
-                try {
-                    convert(fromDir, file);
-                } catch (Exception e) {
-                    System.err.println("Error converting " + new File(fromDir, file) + ": " + e);
-                }
+                add(converter, fromDir, file);
             }
         }
+        BulkConverter.Result result;
+        try {
+            result = converter.run();
+        } catch (IOException e) {
+            throw new BuildException("Error converting files.", e);
+        }
+        if (result.converted > 0 || result.failed > 0) {
+            System.out.println("Converted XML files " + result);
+        }
     }
 
     /**
-     * Converts a single file.
+     * Adds a single file to the converter.
      */
-    protected void convert (File sourceDir, String sourceName)
-        throws IOException
+    protected void add (BulkConverter converter, File sourceDir, String sourceName)
     {
         // find the path of the target file
         int didx = sourceName.lastIndexOf('.');
         String root = (didx == -1) ? sourceName : sourceName.substring(0, didx);
         File target = new File(_dest == null ? sourceDir : _dest, root + ".dat");
 
-        // no need to compile if nothing has been modified
+        // without a manifest, no need to compile if nothing has been modified
         File source = new File(sourceDir, sourceName);
-        long lastmod = target.lastModified();
-        if (source.lastModified() < lastmod) {
+        if (_manifest == null && source.lastModified() < target.lastModified()) {
             return;
         }
-        System.out.println("Converting " + source + " to " + target + "...");
-
-        // make sure the parent exists
-        File parent = target.getParentFile();
-        if (!parent.exists()) {
-            parent.mkdirs();
-        }
-
-        // perform the conversion
-        XMLToBinaryConverter.convert(source.getPath(), target.getPath(), _compress);
+        converter.add(source, target);
     }
 
     /** The directory in which we will generate our output (in a directory tree mirroring the
      * source files. */
     protected File _dest;
 
-    /** Whether or not to compress the output files. */
-    protected boolean _compress = true;
+    /** The codec with which to compress the output files, or null for none. */
+    protected ExportCodec _codec = ExportCodec.DEFLATE;
+
+    /** The manifest used to track converted files, if any. */
+    protected File _manifest;
+
+    /** The number of threads on which to convert, or zero for the default. */
+    protected int _threads;
 
     /** A list of filesets that contain XML exports. */
     protected ArrayList<FileSet> _filesets = new ArrayList<FileSet>();
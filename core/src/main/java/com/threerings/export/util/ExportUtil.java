@@ -31,6 +31,8 @@ import java.io.IOException;
 
 import com.threerings.export.BinaryExporter;
 import com.threerings.export.BinaryImporter;
+import com.threerings.export.ExportCodec;
+import com.threerings.export.ExportDictionary;
 import com.threerings.export.XMLExporter;
 import com.threerings.export.XMLImporter;
 
@@ -41,6 +43,20 @@ import static com.threerings.export.Log.log;
  */
 public class ExportUtil
 {
+    /**
+     * Sets the dictionary used by {@link #toBytes(Object)} and {@link #toBytes(Object, boolean)}
+     * to shorten their output, registering it so that the output can be read.
+     *
+     * @param dictionary the dictionary to use, or <code>null</code> for none.
+     */
+    public static void setDefaultDictionary (ExportDictionary dictionary)
+    {
+        if (dictionary != null) {
+            ExportDictionary.register(dictionary);
+        }
+        _defaultDictionary = dictionary;
+    }
+
     /**
      * Converts an exportable object to a string containing the exported XML representation of the
      * object.  If an error occurs, a warning will be logged and <code>null</code> will be
@@ -93,9 +109,50 @@ public class ExportUtil
      * be returned.
      */
     public static byte[] toBytes (Object object, boolean compress)
+    {
+        return toBytes(object, compress, _defaultDictionary);
+    }
+
+    /**
+     * Converts an exportable object to a byte array containing the exported binary representation
+     * of the object, using the supplied dictionary (which must be registered wherever the array
+     * is to be read).  If an error occurs, a warning will be logged and <code>null</code> will be
+     * returned.
+     *
+     * @param dictionary the dictionary to use, or <code>null</code> for none.
+     */
+    public static byte[] toBytes (Object object, boolean compress, ExportDictionary dictionary)
+    {
+        return toBytes(object, compress ? ExportCodec.DEFLATE : null, dictionary);
+    }
+
+    /**
+     * Converts an exportable object to a byte array containing the exported binary representation
+     * of the object, compressed with the supplied codec.  If an error occurs, a warning will be
+     * logged and <code>null</code> will be returned.
+     *
+     * @param codec the codec to use, or <code>null</code> to leave the output uncompressed.
+     */
+    public static byte[] toBytes (Object object, ExportCodec codec)
+    {
+        return toBytes(object, codec, _defaultDictionary);
+    }
+
+    /**
+     * Converts an exportable object to a byte array containing the exported binary representation
+     * of the object, compressed with the supplied codec and using the supplied dictionary.  If an
+     * error occurs, a warning will be logged and <code>null</code> will be returned.
+     *
+     * @param codec the codec to use, or <code>null</code> to leave the output uncompressed.
+     * @param dictionary the dictionary to use, or <code>null</code> for none.
+     */
+    public static byte[] toBytes (Object object, ExportCodec codec, ExportDictionary dictionary)
     {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        BinaryExporter out = new BinaryExporter(baos, compress);
+        BinaryExporter out = new BinaryExporter(baos, codec);
+        if (dictionary != null) {
+            out.setDictionary(dictionary);
+        }
         try {
             out.writeObject(object);
             out.close();
@@ -122,4 +179,7 @@ public class ExportUtil
             return null;
         }
     }
+
+    /** The dictionary used by default when converting objects to byte arrays. */
+    protected static volatile ExportDictionary _defaultDictionary;
 }
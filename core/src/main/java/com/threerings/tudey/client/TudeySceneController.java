@@ -79,6 +79,7 @@ import com.threerings.tudey.client.sprite.Sprite;
 import com.threerings.tudey.config.ClientActionConfig;
 import com.threerings.tudey.data.EntityKey;
 import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.data.PackedInputFrames;
 import com.threerings.tudey.data.TudeyBodyObject;
 import com.threerings.tudey.data.TudeyOccupantInfo;
 import com.threerings.tudey.data.TudeySceneConfig;
@@ -862,7 +863,8 @@ public class TudeySceneController extends SceneController
     protected InputFrame createInputFrame (
         int timestamp, float rotation, float direction, int flags)
     {
-        return new InputFrame(timestamp, rotation, direction, flags);
+        return new InputFrame(timestamp, PackedInputFrames.quantize(rotation),
+            PackedInputFrames.quantize(direction), flags);
     }
 
     /**
@@ -904,24 +906,19 @@ public class TudeySceneController extends SceneController
         // if we know we can't send datagrams, we know it will be received
         if (!_ctx.getClient().getTransmitDatagrams()) {
             _tsobj.tudeySceneService.enqueueInputReliable(
-                _lastDelta, smoothedTime, _input.toArray(new InputFrame[_input.size()]));
+                _lastDelta, smoothedTime, new PackedInputFrames(_input));
             _input.clear();
             return;
         }
 
-        // estimate the size of the transmission
-        int size = 64; // various headers
-        for (int ii = 0, nn = _input.size(); ii < nn; ii++) {
-            size += _input.get(ii).getApproximateSize();
-        }
-
-        // remove frames until it's small enough
+        // remove frames until the transmission is small enough
         int maxsize = (UPSTREAM_RATE_LIMIT * getTransmitInterval()) / 1000;
-        while (size > maxsize) {
-            size -= _input.remove(0).getApproximateSize();
+        PackedInputFrames frames = new PackedInputFrames(_input);
+        while (frames.getApproximateSize() + 64 > maxsize && !_input.isEmpty()) {
+            _input.remove(0);
+            frames = new PackedInputFrames(_input);
         }
-        _tsobj.tudeySceneService.enqueueInputUnreliable(
-            _lastDelta, smoothedTime, _input.toArray(new InputFrame[_input.size()]));
+        _tsobj.tudeySceneService.enqueueInputUnreliable(_lastDelta, smoothedTime, frames);
     }
 
     /**
@@ -31,7 +31,7 @@ import com.threerings.presents.data.ClientObject;
 import com.threerings.presents.net.Transport;
 
 import com.threerings.tudey.config.CameraConfig;
-import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.data.PackedInputFrames;
 
 /**
  * Provides services relating to Tudey scenes.
@@ -49,7 +49,8 @@ public interface TudeySceneService extends InvocationService<ClientObject>
      * @param acknowledge the timestamp of the last delta received by the client.
      * @param smoothedTime the client's smoothed server time estimate.
      */
-    public void enqueueInputReliable (int acknowledge, int smoothedTime, InputFrame[] frames);
+    public void enqueueInputReliable (
+        int acknowledge, int smoothedTime, PackedInputFrames frames);
 
     /**
      * Requests to enqueue a batch of input frames recorded on the client (unreliable version).
@@ -58,7 +59,8 @@ public interface TudeySceneService extends InvocationService<ClientObject>
      * @param smoothedTime the client's smoothed server time estimate.
      */
     @TransportHint(type=Transport.Type.UNRELIABLE_UNORDERED)
-    public void enqueueInputUnreliable (int acknowledge, int smoothedTime, InputFrame[] frames);
+    public void enqueueInputUnreliable (
+        int acknowledge, int smoothedTime, PackedInputFrames frames);
 
     /**
      * Requests to track the specified pawn.  This is only valid for clients that do not control
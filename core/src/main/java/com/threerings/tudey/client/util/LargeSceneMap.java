@@ -541,12 +541,7 @@ public class LargeSceneMap
 
     protected void updateQuad(float lx, float ly, float ux, float uy)
     {
-        _quad.getVertex(0).set(lx, ly);
-        _quad.getVertex(1).set(ux, ly);
-        _quad.getVertex(2).set(ux, uy);
-        _quad.getVertex(3).set(lx, uy);
-        _quad.getBounds().getMinimumExtent().set(lx, ly);
-        _quad.getBounds().getMaximumExtent().set(ux, uy);
+        _quad.setToRect(lx, ly, ux, uy);
     }
 
     protected boolean intersects (int x, int y, Shape shape)
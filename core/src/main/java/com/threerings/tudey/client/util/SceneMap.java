@@ -416,12 +416,7 @@ public class SceneMap
     protected void updateQuad (int x, int y)
     {
         float lx = x, ly = y, ux = lx + 1f, uy = ly + 1f;
-        _quad.getVertex(0).set(lx, ly);
-        _quad.getVertex(1).set(ux, ly);
-        _quad.getVertex(2).set(ux, uy);
-        _quad.getVertex(3).set(lx, uy);
-        _quad.getBounds().getMinimumExtent().set(lx, ly);
-        _quad.getBounds().getMaximumExtent().set(ux, uy);
+        _quad.setToRect(lx, ly, ux, uy);
     }
 
     /**
@@ -124,6 +124,16 @@ public class ActorConfig extends ParameterizedConfig
         @Editable(hgroup="s")
         public boolean isStatic = true;
 
+        /** The relative priority with which updates to the actor are transmitted to clients
+         * when the bandwidth budget doesn't allow for all of them. */
+        @Editable(min=0, step=0.01, hgroup="s")
+        public float transmitPriority = 1f;
+
+        /** Whether or not the actor's tick handlers and behavior may run at reduced rates (or
+         * not at all) when it's far from all clients' areas of interest. */
+        @Editable(hgroup="s")
+        public boolean reduceDistantActivity = true;
+
         /** Whether or not the actor should be used as a default entrance. */
         @Editable(hgroup="d")
         @Strippable
@@ -0,0 +1,354 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.data;
+
+import java.util.List;
+
+import com.threerings.io.Streamable;
+
+import com.threerings.math.FloatMath;
+
+/**
+ * A compact encoding of a window of input frames sent from the client to the server.  Each
+ * frame stores its timestamp as a varint delta from that of the previous frame and only those
+ * of its fields that differ from the previous frame, with angles quantized to sixteen bits.
+ * Runs of identical frames at regular intervals are collapsed into a single record.  Frames
+ * of subclasses of {@link InputFrame} (whose additional state the encoding does not cover) are
+ * sent as a plain array.
+ *
+ * <p>The frames are read back with a cursor ({@link #rewind}, {@link #next}) that allocates
+ * frame objects only when requested through {@link #getFrame}.
+ */
+public class PackedInputFrames
+    implements Streamable
+{
+    /**
+     * Quantizes the specified angle to the precision with which it will be transmitted.  Clients
+     * should quantize the angles of the frames that they apply locally so that their predictions
+     * match the server's.
+     */
+    public static float quantize (float angle)
+    {
+        return dequantizeAngle(quantizeAngle(angle));
+    }
+
+    /**
+     * Creates a new packed list containing the supplied frames.
+     */
+    public PackedInputFrames (List<InputFrame> frames)
+    {
+        _count = frames.size();
+        for (int ii = 0; ii < _count; ii++) {
+            InputFrame frame = frames.get(ii);
+            if (frame.getClass() != InputFrame.class ||
+                    (ii > 0 && frame.getTimestamp() < frames.get(ii - 1).getTimestamp())) {
+                _frames = frames.toArray(new InputFrame[_count]);
+                return;
+            }
+        }
+        _data = new byte[_count * 4 + 8];
+        int timestamp = 0, flags = 0;
+        short rotation = 0, direction = 0;
+        for (int ii = 0; ii < _count; ) {
+            InputFrame frame = frames.get(ii);
+            short nrotation = quantizeAngle(frame.getRotation());
+            short ndirection = quantizeAngle(frame.getDirection());
+            int nflags = frame.getFlags();
+            int header = (nrotation == rotation ? 0 : ROTATION) |
+                (ndirection == direction ? 0 : DIRECTION) | (nflags == flags ? 0 : FLAGS);
+
+            // check for a run of unchanged frames at a regular interval
+            if (header == 0 && ii > 0) {
+                int interval = frame.getTimestamp() - timestamp;
+                int run = 1;
+                while (ii + run < _count && isRepeat(frames.get(ii + run), nrotation,
+                        ndirection, nflags, timestamp + (run + 1) * interval)) {
+                    run++;
+                }
+                if (run > 1) {
+                    writeByte(RUN);
+                    writeVarInt(run);
+                    writeVarInt(interval);
+                    timestamp += run * interval;
+                    ii += run;
+                    continue;
+                }
+            }
+            writeByte(header);
+            writeVarInt(frame.getTimestamp() - timestamp);
+            if ((header & ROTATION) != 0) {
+                writeShort(nrotation);
+            }
+            if ((header & DIRECTION) != 0) {
+                writeShort(ndirection);
+            }
+            if ((header & FLAGS) != 0) {
+                writeVarInt(nflags);
+            }
+            timestamp = frame.getTimestamp();
+            rotation = nrotation;
+            direction = ndirection;
+            flags = nflags;
+            ii++;
+        }
+        if (_length < _data.length) {
+            byte[] ndata = new byte[_length];
+            System.arraycopy(_data, 0, ndata, 0, _length);
+            _data = ndata;
+        }
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public PackedInputFrames ()
+    {
+    }
+
+    /**
+     * Returns the number of frames in the list.
+     */
+    public int size ()
+    {
+        return _count;
+    }
+
+    /**
+     * Returns the approximate size of the encoded frames in bytes.
+     */
+    public int getApproximateSize ()
+    {
+        if (_data != null) {
+            return _data.length + 8;
+        }
+        int size = 8;
+        for (InputFrame frame : _frames) {
+            size += frame.getApproximateSize();
+        }
+        return size;
+    }
+
+    /**
+     * Resets the cursor to the position before the first frame.
+     */
+    public void rewind ()
+    {
+        _index = -1;
+        _position = 0;
+        _timestamp = _flags = 0;
+        _rotation = _direction = 0;
+        _remaining = _interval = 0;
+    }
+
+    /**
+     * Advances the cursor to the next frame.
+     *
+     * @return true if the cursor points to a frame, false if there are no more frames.
+     */
+    public boolean next ()
+    {
+        if (++_index >= _count) {
+            return false;
+        }
+        if (_frames != null) {
+            _timestamp = _frames[_index].getTimestamp();
+            return true;
+        }
+        if (_remaining > 0) {
+            _remaining--;
+            _timestamp += _interval;
+            return true;
+        }
+        int header = _data[_position++];
+        if (header == RUN) {
+            _remaining = readVarInt() - 1;
+            _interval = readVarInt();
+            _timestamp += _interval;
+            return true;
+        }
+        _timestamp += readVarInt();
+        if ((header & ROTATION) != 0) {
+            _rotation = readShort();
+        }
+        if ((header & DIRECTION) != 0) {
+            _direction = readShort();
+        }
+        if ((header & FLAGS) != 0) {
+            _flags = readVarInt();
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the cursor points to the last frame.
+     */
+    public boolean isLast ()
+    {
+        return _index == _count - 1;
+    }
+
+    /**
+     * Returns the timestamp of the frame at the cursor.
+     */
+    public int getTimestamp ()
+    {
+        return _timestamp;
+    }
+
+    /**
+     * Returns the frame at the cursor, creating it if necessary.
+     */
+    public InputFrame getFrame ()
+    {
+        return (_frames != null) ? _frames[_index] : new InputFrame(
+            _timestamp, dequantizeAngle(_rotation), dequantizeAngle(_direction), _flags);
+    }
+
+    /**
+     * Checks whether the specified frame repeats the given values at the given timestamp.
+     */
+    protected static boolean isRepeat (
+        InputFrame frame, short rotation, short direction, int flags, int timestamp)
+    {
+        return frame.getTimestamp() == timestamp && frame.getFlags() == flags &&
+            quantizeAngle(frame.getRotation()) == rotation &&
+            quantizeAngle(frame.getDirection()) == direction;
+    }
+
+    /**
+     * Writes a single byte to the encoded data.
+     */
+    protected void writeByte (int value)
+    {
+        if (_length == _data.length) {
+            byte[] ndata = new byte[_data.length * 2];
+            System.arraycopy(_data, 0, ndata, 0, _length);
+            _data = ndata;
+        }
+        _data[_length++] = (byte)value;
+    }
+
+    /**
+     * Writes a short to the encoded data.
+     */
+    protected void writeShort (short value)
+    {
+        writeByte(value >> 8);
+        writeByte(value);
+    }
+
+    /**
+     * Writes an int (treated as unsigned) to the encoded data in variable-length format.
+     */
+    protected void writeVarInt (int value)
+    {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    /**
+     * Reads a short from the encoded data.
+     */
+    protected short readShort ()
+    {
+        int high = _data[_position++];
+        return (short)((high << 8) | (_data[_position++] & 0xFF));
+    }
+
+    /**
+     * Reads a variable-length int from the encoded data.
+     */
+    protected int readVarInt ()
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int bite = _data[_position++];
+            value |= (bite & 0x7F) << shift;
+            if ((bite & 0x80) == 0) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Quantizes an angle to sixteen bits.
+     */
+    protected static short quantizeAngle (float angle)
+    {
+        return (short)Math.round(FloatMath.normalizeAngle(angle) * (32768f / FloatMath.PI));
+    }
+
+    /**
+     * Restores an angle quantized with {@link #quantizeAngle}.
+     */
+    protected static float dequantizeAngle (short value)
+    {
+        return value * (FloatMath.PI / 32768f);
+    }
+
+    /** The number of frames in the list. */
+    protected int _count;
+
+    /** The encoded frames, or <code>null</code> if the frames are stored in an array. */
+    protected byte[] _data;
+
+    /** The unencoded frames, or <code>null</code> if the frames are encoded. */
+    protected InputFrame[] _frames;
+
+    /** The length of the encoded data while encoding. */
+    protected transient int _length;
+
+    /** The index of the frame at the cursor. */
+    protected transient int _index = -1;
+
+    /** The position of the cursor in the encoded data. */
+    protected transient int _position;
+
+    /** The values of the frame at the cursor. */
+    protected transient int _timestamp, _flags;
+
+    /** The quantized angles of the frame at the cursor. */
+    protected transient short _rotation, _direction;
+
+    /** The number of frames remaining in the current run and the interval between them. */
+    protected transient int _remaining, _interval;
+
+    /** Header flag indicating that the rotation has changed. */
+    protected static final int ROTATION = (1 << 0);
+
+    /** Header flag indicating that the direction has changed. */
+    protected static final int DIRECTION = (1 << 1);
+
+    /** Header flag indicating that the flags have changed. */
+    protected static final int FLAGS = (1 << 2);
+
+    /** Header value indicating a run of unchanged frames. */
+    protected static final int RUN = (1 << 3);
+}
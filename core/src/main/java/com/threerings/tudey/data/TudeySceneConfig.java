@@ -61,6 +61,43 @@ public class TudeySceneConfig extends PlaceConfig
         return 100;
     }
 
+    /**
+     * Returns the approximate number of bytes that each scene delta may devote to actors added,
+     * updated, and removed since its reference.  Updates that don't fit are deferred to later
+     * deltas in order of their accumulated priority.
+     */
+    public int getDeltaBudget ()
+    {
+        return 1024;
+    }
+
+    /**
+     * Returns the distance from the nearest client's area of interest beyond which actors that
+     * allow it run their tick handlers and behavior evaluations at a reduced rate, or
+     * {@link Float#MAX_VALUE} to run all actors at full rate.
+     */
+    public float getReducedActivityDistance ()
+    {
+        return Float.MAX_VALUE;
+    }
+
+    /**
+     * Returns the distance from the nearest client's area of interest beyond which actors that
+     * allow it go entirely dormant, or {@link Float#MAX_VALUE} to never do so.
+     */
+    public float getDormantActivityDistance ()
+    {
+        return Float.MAX_VALUE;
+    }
+
+    /**
+     * Returns the rate (relative to the full rate) at which distant actors run.
+     */
+    public float getReducedActivityRate ()
+    {
+        return 0.25f;
+    }
+
     // documentation inherited from interface Copyable
     public Object copy (Object dest)
     {
@@ -50,7 +50,7 @@ public class TudeySceneMarshaller extends InvocationMarshaller<ClientObject>
     public static final int ENQUEUE_INPUT_RELIABLE = 1;
 
     // from interface TudeySceneService
-    public void enqueueInputReliable (int arg1, int arg2, InputFrame[] arg3)
+    public void enqueueInputReliable (int arg1, int arg2, PackedInputFrames arg3)
     {
         sendRequest(ENQUEUE_INPUT_RELIABLE, new Object[] {
             Integer.valueOf(arg1), Integer.valueOf(arg2), arg3
@@ -61,7 +61,7 @@ public class TudeySceneMarshaller extends InvocationMarshaller<ClientObject>
     public static final int ENQUEUE_INPUT_UNRELIABLE = 2;
 
     // from interface TudeySceneService
-    public void enqueueInputUnreliable (int arg1, int arg2, InputFrame[] arg3)
+    public void enqueueInputUnreliable (int arg1, int arg2, PackedInputFrames arg3)
     {
         sendRequest(ENQUEUE_INPUT_UNRELIABLE, new Object[] {
             Integer.valueOf(arg1), Integer.valueOf(arg2), arg3
@@ -2189,12 +2189,7 @@ public class TudeySceneModel extends SceneModel
                     continue;
                 }
                 float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-                _quad.getVertex(0).set(lx, ly);
-                _quad.getVertex(1).set(ux, ly);
-                _quad.getVertex(2).set(ux, uy);
-                _quad.getVertex(3).set(lx, uy);
-                _quad.getBounds().getMinimumExtent().set(lx, ly);
-                _quad.getBounds().getMaximumExtent().set(ux, uy);
+                _quad.setToRect(lx, ly, ux, uy);
                 if (_quad.intersects(shape)) {
                     return true;
                 }
@@ -2240,12 +2235,7 @@ public class TudeySceneModel extends SceneModel
                     continue;
                 }
                 float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-                _quad.getVertex(0).set(lx, ly);
-                _quad.getVertex(1).set(ux, ly);
-                _quad.getVertex(2).set(ux, uy);
-                _quad.getVertex(3).set(lx, uy);
-                _quad.getBounds().getMinimumExtent().set(lx, ly);
-                _quad.getBounds().getMaximumExtent().set(ux, uy);
+                _quad.setToRect(lx, ly, ux, uy);
                 if (_quad.intersects(shape)) {
                     return true;
                 }
@@ -2292,12 +2282,7 @@ public class TudeySceneModel extends SceneModel
                     continue;
                 }
                 float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-                _quad.getVertex(0).set(lx, ly);
-                _quad.getVertex(1).set(ux, ly);
-                _quad.getVertex(2).set(ux, uy);
-                _quad.getVertex(3).set(lx, uy);
-                _quad.getBounds().getMinimumExtent().set(lx, ly);
-                _quad.getBounds().getMaximumExtent().set(ux, uy);
+                _quad.setToRect(lx, ly, ux, uy);
                 if (_quad.intersects(shape)) {
                     _quad.getNearestPoint(origin, result);
                     float dist = result.distanceSquared(origin);
@@ -2339,38 +2324,12 @@ public class TudeySceneModel extends SceneModel
         if (mask == 0) {
             return false;
         }
-        // check against locations
-        Segment seg = new Segment(
-                ray.getOrigin(), ray.getOrigin().add(ray.getDirection().mult(length)));
-        Rect bounds = seg.getBounds();
-        Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+        // check against locations, then against the entries up to the closest location hit
+        float resultDist = getTileIntersection(ray, length, mask, intersection);
+        Vector2f origin = ray.getOrigin();
+        Segment seg = new Segment(origin, (resultDist < length * length) ?
+            intersection : origin.add(ray.getDirection().mult(length)));
         Vector2f result = new Vector2f();
-        float resultDist = length * length;
-        int minx = FloatMath.ifloor(min.x);
-        int maxx = FloatMath.ifloor(max.x);
-        int miny = FloatMath.ifloor(min.y);
-        int maxy = FloatMath.ifloor(max.y);
-        for (int yy = miny; yy <= maxy; yy++) {
-            for (int xx = minx; xx <= maxx; xx++) {
-                if ((_collisionFlags.get(xx, yy) & mask) == 0) {
-                    continue;
-                }
-                float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-                _quad.getVertex(0).set(lx, ly);
-                _quad.getVertex(1).set(ux, ly);
-                _quad.getVertex(2).set(ux, uy);
-                _quad.getVertex(3).set(lx, uy);
-                _quad.getBounds().getMinimumExtent().set(lx, ly);
-                _quad.getBounds().getMaximumExtent().set(ux, uy);
-                if (_quad.getIntersection(ray, result)) {
-                    float dist = result.distanceSquared(ray.getOrigin());
-                    if (resultDist > dist) {
-                        intersection.set(result);
-                        resultDist = dist;
-                    }
-                }
-            }
-        }
 
         // find intersecting elements
         _space.getIntersecting(seg, _intersecting);
@@ -2380,7 +2339,7 @@ public class TudeySceneModel extends SceneModel
                 Entry entry = (Entry)element.getUserObject();
                 if ((entry.getCollisionFlags(_cfgmgr) & mask) != 0 &&
                         element.getIntersection(ray, result)) {
-                    float dist = result.distanceSquared(ray.getOrigin());
+                    float dist = result.distanceSquared(origin);
                     if (resultDist > dist) {
                         intersection.set(result);
                         resultDist = dist;
@@ -2418,12 +2377,7 @@ public class TudeySceneModel extends SceneModel
                     continue;
                 }
                 float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-                _quad.getVertex(0).set(lx, ly);
-                _quad.getVertex(1).set(ux, ly);
-                _quad.getVertex(2).set(ux, uy);
-                _quad.getVertex(3).set(lx, uy);
-                _quad.getBounds().getMinimumExtent().set(lx, ly);
-                _quad.getBounds().getMaximumExtent().set(ux, uy);
+                _quad.setToRect(lx, ly, ux, uy);
                 if (_quad.intersects(shape)) {
                     _quad.getPenetration(shape, _penetration);
                     if (_penetration.lengthSquared() > result.lengthSquared()) {
@@ -2631,6 +2585,78 @@ public class TudeySceneModel extends SceneModel
         return oentry;
     }
 
+    /**
+     * Finds the closest intersection of the ray with the locations whose collision flags match
+     * the mask, visiting only the tiles that the ray passes through, in order.
+     *
+     * @return the squared distance to the intersection, or the squared length if none.
+     */
+    protected float getTileIntersection (
+        Ray2D ray, float length, int mask, Vector2f intersection)
+    {
+        Vector2f origin = ray.getOrigin(), dir = ray.getDirection();
+        float resultDist = length * length;
+        float scale = dir.lengthSquared();
+        int xdir = (dir.x > 0f) ? 1 : (dir.x < 0f ? -1 : 0);
+        int ydir = (dir.y > 0f) ? 1 : (dir.y < 0f ? -1 : 0);
+        int xx = FloatMath.ifloor(origin.x), yy = FloatMath.ifloor(origin.y);
+
+        // the ray parameters at which we cross the next vertical and horizontal lines
+        float xt = (xdir == 0) ? Float.MAX_VALUE : ((xx + (xdir > 0 ? 1 : 0)) - origin.x) / dir.x;
+        float yt = (ydir == 0) ? Float.MAX_VALUE : ((yy + (ydir > 0 ? 1 : 0)) - origin.y) / dir.y;
+        float xstep = (xdir == 0) ? 0f : xdir / dir.x;
+        float ystep = (ydir == 0) ? 0f : ydir / dir.y;
+        while (true) {
+            resultDist = getTileIntersection(xx, yy, ray, mask, resultDist, intersection);
+
+            // stop when the next tile lies beyond the end of the ray or the closest hit (the
+            // squared distance to the crossing is t^2 times the squared length of the direction)
+            float t = Math.min(xt, yt);
+            if (t == Float.MAX_VALUE || t*t*scale >= resultDist) {
+                return resultDist;
+            }
+            if (xt == t && yt == t) {
+                // passing through a corner; check the tiles on either side
+                resultDist = getTileIntersection(
+                    xx + xdir, yy, ray, mask, resultDist, intersection);
+                resultDist = getTileIntersection(
+                    xx, yy + ydir, ray, mask, resultDist, intersection);
+            }
+            if (xt == t) {
+                xx += xdir;
+                xt += xstep;
+            }
+            if (yt == t) {
+                yy += ydir;
+                yt += ystep;
+            }
+        }
+    }
+
+    /**
+     * Checks the ray against a single location if its collision flags match the mask.
+     *
+     * @return the new squared distance to the closest intersection.
+     */
+    protected float getTileIntersection (
+        int x, int y, Ray2D ray, int mask, float resultDist, Vector2f intersection)
+    {
+        if ((_collisionFlags.get(x, y) & mask) == 0) {
+            return resultDist;
+        }
+        float lx = x, ly = y, ux = lx + 1f, uy = ly + 1f;
+        _quad.setToRect(lx, ly, ux, uy);
+        if (!_quad.getIntersection(ray, _tileResult)) {
+            return resultDist;
+        }
+        float dist = _tileResult.distanceSquared(ray.getOrigin());
+        if (dist < resultDist) {
+            intersection.set(_tileResult);
+            return dist;
+        }
+        return resultDist;
+    }
+
     /**
      * Adds the entry's space element to the hash space and maps it by its tags.
      */
@@ -3107,6 +3133,10 @@ public class TudeySceneModel extends SceneModel
     @DeepOmit
     protected transient Polygon _quad = new Polygon(4);
 
+    /** Stores tile intersection results. */
+    @DeepOmit
+    protected transient Vector2f _tileResult = new Vector2f();
+
     /** (Re)used to store intersecting elements. */
     @DeepOmit
     protected transient ArrayList<SpaceElement> _intersecting = Lists.newArrayList();
@@ -65,6 +65,16 @@ public final class ActorDelta extends ReflectiveDelta
         return _id;
     }
 
+    /**
+     * Returns a rough estimate of the number of bytes that the delta will occupy when streamed.
+     */
+    public int getEstimatedSize ()
+    {
+        // the id, the class reference, the field mask, and the changed values
+        return 4 + 2 + (getClassMapping(_clazz).getMaskLength() + 7) / 8 +
+            _values.length * ESTIMATED_VALUE_SIZE;
+    }
+
     @Override
     public Delta merge (Delta other)
     {
@@ -96,4 +106,7 @@ public final class ActorDelta extends ReflectiveDelta
 
     /** The id of the affected actor. */
     protected int _id;
+
+    /** The estimated average size of a changed value. */
+    protected static final int ESTIMATED_VALUE_SIZE = 6;
 }
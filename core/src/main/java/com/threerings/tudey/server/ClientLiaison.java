@@ -25,12 +25,14 @@
 
 package com.threerings.tudey.server;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
+import com.samskivert.util.HashIntMap;
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
 
@@ -44,7 +46,7 @@ import com.threerings.math.Rect;
 import com.threerings.math.Vector2f;
 
 import com.threerings.tudey.config.CameraConfig;
-import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.data.PackedInputFrames;
 import com.threerings.tudey.data.TudeySceneConfig;
 import com.threerings.tudey.data.TudeySceneObject;
 import com.threerings.tudey.data.actor.Actor;
@@ -99,8 +101,8 @@ public class ClientLiaison
             // if they reconnect, they'll have to start again from the zero reference time
             _records.clear();
             _records.add(new TickRecord());
-            _previousVisibleActors.clear();
-            _visibleActors.clear();
+            _view = _spare = null;
+            _viewSince = 0;
             _receiving = false;
         }
     }
@@ -121,6 +123,14 @@ public class ClientLiaison
         return _target;
     }
 
+    /**
+     * Returns the client's area of interest in world coordinates as of the last delta.
+     */
+    public Rect getWorldInterest ()
+    {
+        return _worldInterest;
+    }
+
     /**
      * Sets the client's camera parameters.
      */
@@ -162,7 +172,7 @@ public class ClientLiaison
      *
      * @param ping the ping calculated from the current time and the client's time estimate.
      */
-    public void enqueueInput (int acknowledge, int ping, InputFrame[] frames)
+    public void enqueueInput (int acknowledge, int ping, PackedInputFrames frames)
     {
         // ignore input send after disconnect
         if (!_receiving) {
@@ -185,18 +195,17 @@ public class ClientLiaison
 
         // if we do not control the target, we do not process the input
         if (_controlled == null) {
-            if (frames.length > 0) {
+            if (frames.size() > 0) {
                 log.warning("Got input frames for non-controlled pawn.", "who", _bodyobj,
                     "actor", (_target == null) ? null : _target.getActor());
             }
             return;
         }
 
-        // enqueue input frames
+        // enqueue input frames, creating frame objects only for those we use
         int timestamp = _scenemgr.getTimestamp();
-        for (int ii = 0; ii < frames.length; ii++) {
-            InputFrame frame = frames[ii];
-            int input = frame.getTimestamp();
+        for (frames.rewind(); frames.next(); ) {
+            int input = frames.getTimestamp();
             if (input <= _lastInput) {
                 continue; // already processed
             }
@@ -204,10 +213,10 @@ public class ClientLiaison
 
             // discard any out of date frames except for the last one,
             // which we will interpret as the most recent
-            if (input > timestamp || ii == frames.length - 1) {
-                _controlled.enqueueInput(frame);
+            if (input > timestamp || frames.isLast()) {
+                _controlled.enqueueInput(frames.getFrame());
             } else {
-                log.debug("Discarding out-of-date frame.", "frame", frame);
+                log.debug("Discarding out-of-date frame.", "timestamp", input);
             }
         }
     }
@@ -237,10 +246,130 @@ public class ClientLiaison
         _localInterest.getMinimumExtent().add(translation, _worldInterest.getMinimumExtent());
         _localInterest.getMaximumExtent().add(translation, _worldInterest.getMaximumExtent());
 
+        // compute the view for this tick (or share one computed for another client)
+        TickRecord record = updateView();
+        _records.add(record);
+
+        // the last acknowledged tick is the reference; clients sharing the view since before the
+        // reference have identical records after it, and thus identical deltas (unless updates
+        // were deferred from the reference, since those depend on the client's history)
+        int timestamp = _scenemgr.getTimestamp();
+        int reference = _records.get(0).getTimestamp();
+        boolean cache = _view.shared && reference >= _viewSince && _records.get(0).deferred == null;
+        DeltaContents contents = cache ? _view.deltas.get(reference) : null;
+        if (contents == null) {
+            contents = mergeRecords(timestamp);
+            if (cache) {
+                _view.deltas.put(reference, contents);
+            }
+        }
+        record.deferred = contents.deferred;
+
+        // if we know that we can't transmit datagrams, we may as well send the delta as reliable
+        // and immediately consider it received
+        Transport transport = Transport.UNRELIABLE_UNORDERED;
+        if (_session == null || !_session.getTransmitDatagrams()) {
+            transport = Transport.RELIABLE_ORDERED;
+            _records.subList(0, _records.size() - 1).clear();
+        }
+
+        // create and post the event
+        record.event = new SceneDeltaEvent(
+            _bodyobj.getOid(), _tsobj.getOid(), _lastInput,
+            (short)_ping, reference, timestamp,
+            (short)(timestamp - _scenemgr.getPreviousTimestamp()),
+            contents.added, contents.updated, contents.removed, contents.fired);
+        record.event.setTransport(transport);
+        _bodyobj.postEvent(record.event);
+    }
+
+    /**
+     * Determines whether the client's view may be shared with other clients that have the same
+     * target and area of interest.  By default, only clients that don't control a pawn (such as
+     * spectators) share their views.
+     */
+    protected boolean canShareView ()
+    {
+        return _controlled == null;
+    }
+
+    /**
+     * Updates the client's view for the current tick, either by computing it or by finding a
+     * view computed for another client with the same previous view, target and interest.
+     *
+     * @return the record to add for the tick.
+     */
+    protected TickRecord updateView ()
+    {
+        View previous = _view;
+        if (!canShareView()) {
+            // reuse the view from two ticks ago if we own it
+            View view = (_spare == null) ? new View() : _spare;
+            _spare = (previous == null || previous.shared) ? null : previous;
+            computeView(previous, view);
+            _view = view;
+            return view.record;
+        }
+
+        // look for a view computed from the same previous one
+        List<View> views = _scenemgr.getSharedViews(_target);
+        for (int ii = 0, nn = views.size(); ii < nn; ii++) {
+            View view = views.get(ii);
+            if (view.previous == previous && view.interest.equals(_worldInterest)) {
+                useView(view);
+                return new TickRecord(view.record);
+            }
+        }
+
+        // compute our own, then check whether another client has arrived at the same state
+        View view = new View();
+        view.shared = true;
+        computeView(previous, view);
+        for (int ii = 0, nn = views.size(); ii < nn; ii++) {
+            View oview = views.get(ii);
+            if (oview.merged == null && oview.interest.equals(_worldInterest) &&
+                    oview.visible.equals(view.visible)) {
+                view.merged = oview;
+                break;
+            }
+        }
+        views.add(view);
+        _spare = null;
+        useView(view);
+        return view.record;
+    }
+
+    /**
+     * Switches to the specified shared view (or the one with which it was merged).
+     */
+    protected void useView (View view)
+    {
+        if (view.merged == null) {
+            _view = view;
+        } else {
+            _view = view.merged;
+            _viewSince = _scenemgr.getTimestamp();
+        }
+    }
+
+    /**
+     * Computes a view from the previous one using the current target and area of interest.
+     */
+    protected void computeView (View previous, View view)
+    {
+        view.clear();
+        view.previous = previous;
+        view.interest.set(_worldInterest);
+        Set<ActorLogic> pvisible = (previous == null) ? Collections.<ActorLogic>emptySet() :
+            previous.visible;
+        if (previous != null) {
+            previous.previous = null; // no longer needed for matching
+        }
+
         // find all currently visible actors and compare to previous set
-        populateVisibleActors();
-        for (ActorLogic actor : _visibleActors) {
-            if (_previousVisibleActors.remove(actor)) {
+        populateVisibleActors(view.visible);
+        for (ActorLogic actor : view.visible) {
+            if (pvisible.contains(actor)) {
                 ActorDelta delta = actor.getSnapshotDelta();
                 if (delta != null) {
                     _actorsUpdated.add(delta);
@@ -249,22 +378,16 @@ public class ClientLiaison
                 _actorsAdded.add(actor.getSnapshot());
             }
         }
-        for (ActorLogic actor : _previousVisibleActors) {
-            _actorsRemoved.add(actor.getPreviousSnapshot());
+        for (ActorLogic actor : pvisible) {
+            if (!view.visible.contains(actor)) {
+                _actorsRemoved.add(actor.getPreviousSnapshot());
+            }
         }
-        _previousVisibleActors.clear();
-
-        // swap the previous and current visible sets
-        Set<ActorLogic> visibleActors = _visibleActors;
-        _visibleActors = _previousVisibleActors;
-        _previousVisibleActors = visibleActors;
 
         // if this is the first recorded tick, we need to add the complete set of static
-        // actors; afterwards, just the delta
-        if (_records.get(_records.size() - 1).getTimestamp() == 0) {
-            for (ActorLogic actor : _scenemgr.getStaticActors()) {
-                _actorsAdded.add(actor.getSnapshot());
-            }
+        // actors (which the scene shares between all entering clients); afterwards, just the delta
+        if (previous == null) {
+            Collections.addAll(_actorsAdded, _scenemgr.getStaticActorSnapshots());
         } else {
             for (ActorLogic actor : _scenemgr.getStaticActorsAdded()) {
                 _actorsAdded.add(actor.getSnapshot());
@@ -281,20 +404,31 @@ public class ClientLiaison
         }
 
         // record the tick
-        int timestamp = _scenemgr.getTimestamp();
-        TickRecord record = new TickRecord(
-            timestamp,
+        view.record = new TickRecord(
+            _scenemgr.getTimestamp(),
             _actorsAdded.toArray(new Actor[_actorsAdded.size()]),
             _actorsUpdated.toArray(new ActorDelta[_actorsUpdated.size()]),
             _actorsRemoved.toArray(new Actor[_actorsRemoved.size()]),
             _scenemgr.getEffectsFired(_target, _worldInterest));
-        _records.add(record);
         _actorsAdded.clear();
         _actorsUpdated.clear();
         _actorsRemoved.clear();
+    }
 
-        // the last acknowledged tick is the reference
-        TickRecord reference = _records.get(0);
+    /**
+     * Merges the records after the reference (along with any updates deferred from the event
+     * posted for the reference) into the contents of a delta event, deferring the updates that
+     * don't fit in the budget.
+     */
+    protected DeltaContents mergeRecords (int timestamp)
+    {
+        // start with the updates that the client has yet to receive as of the reference
+        HashIntMap<PendingUpdate> carried = _records.get(0).deferred;
+        if (carried != null) {
+            for (PendingUpdate pending : carried.values()) {
+                _updated.put(pending.delta.getId(), pending.delta);
+            }
+        }
 
         // merge actor updates and get all effects fired (not expired)
         for (int ii = 1, nn = _records.size(); ii < nn; ii++) {
@@ -305,7 +439,13 @@ public class ClientLiaison
                 if (removed == null) {
                     _added.put(id, actor);
                 } else {
+                    // the client has the reference state, so include any updates made between
+                    // the reference and the removal
                     ActorDelta delta = new ActorDelta(removed, actor);
+                    ActorDelta odelta = _removedUpdates.remove(id);
+                    if (odelta != null) {
+                        delta = delta.isEmpty() ? odelta : (ActorDelta)odelta.merge(delta);
+                    }
                     if (!delta.isEmpty()) {
                         _updated.put(id, delta);
                     }
@@ -326,7 +466,10 @@ public class ClientLiaison
             for (Actor actor : orecord.getActorsRemoved()) {
                 int id = actor.getId();
                 if (_added.remove(id) == null) {
-                    _updated.remove(id);
+                    ActorDelta odelta = _updated.remove(id);
+                    if (odelta != null) {
+                        _removedUpdates.put(id, odelta);
+                    }
                     _removed.put(id, actor);
                 }
             }
@@ -336,43 +479,91 @@ public class ClientLiaison
                 }
             }
         }
-
-        // if we know that we can't transmit datagrams, we may as well send the delta as reliable
-        // and immediately consider it received
-        Transport transport = Transport.UNRELIABLE_UNORDERED;
-        if (_session == null || !_session.getTransmitDatagrams()) {
-            transport = Transport.RELIABLE_ORDERED;
-            _records.subList(0, _records.size() - 1).clear();
-        }
-
-        // create and post the event
+        HashIntMap<PendingUpdate> deferred = selectUpdates(carried);
         int nadded = _added.size();
         int nupdated = _updated.size();
         int nfired = _fired.size();
-        record.event = new SceneDeltaEvent(
-            _bodyobj.getOid(), _tsobj.getOid(), _lastInput,
-            (short)_ping, reference.getTimestamp(), timestamp,
-            (short)(timestamp - _scenemgr.getPreviousTimestamp()),
+        DeltaContents contents = new DeltaContents(
             (nadded == 0) ? null : _added.values().toArray(new Actor[nadded]),
             (nupdated == 0) ? null : _updated.values().toArray(new ActorDelta[nupdated]),
             _removed.isEmpty() ? null : _removed.intKeySet().toIntArray(),
-            (nfired == 0) ? null : _fired.toArray(new Effect[nfired]));
-        record.event.setTransport(transport);
-        _bodyobj.postEvent(record.event);
+            (nfired == 0) ? null : _fired.toArray(new Effect[nfired]), deferred);
 
         // clear the arrays
         _added.clear();
         _updated.clear();
         _removed.clear();
+        _removedUpdates.clear();
         _fired.clear();
+        return contents;
+    }
+
+    /**
+     * Removes from the merged updates those that don't fit in the delta budget once the
+     * mandatory additions, removals, and updates are accounted for, in order of accumulated
+     * priority.  The removed updates are transmitted (merged with any later changes) once the
+     * event is acknowledged, so that each event remains a valid delta from its reference.
+     *
+     * @param carried the updates deferred from the reference, or <code>null</code> for none.
+     * @return the deferred updates mapped by actor id, or <code>null</code> for none.
+     */
+    protected HashIntMap<PendingUpdate> selectUpdates (HashIntMap<PendingUpdate> carried)
+    {
+        if (_updated.isEmpty()) {
+            return null;
+        }
+
+        // accumulate the priorities, which decrease with distance from the target
+        Vector2f origin = (_target == null) ? null : _target.getActor().getTranslation();
+        float scale = Math.max(_worldInterest.getLongestEdge() * 0.5f, 1f);
+        for (ActorDelta delta : _updated.values()) {
+            PendingUpdate pending = new PendingUpdate(delta);
+            PendingUpdate opending = (carried == null) ? null : carried.get(delta.getId());
+            if (opending != null) {
+                pending.priority = opending.priority;
+            }
+            ActorLogic logic = _scenemgr.getActorLogic(delta.getId());
+            if (logic == null || logic.isStatic() || logic == _target ||
+                    logic == _controlled || logic.isDestroyed()) {
+                pending.forced = true;
+            } else {
+                float distance = (origin == null) ? 0f : origin.distance(logic.getTranslation());
+                pending.priority += logic.getTransmitPriority() / (1f + distance / scale);
+            }
+            _candidates.add(pending);
+        }
+        Collections.sort(_candidates);
+
+        // always transmit at least one unforced update so that nothing starves
+        int remaining = ((TudeySceneConfig)_scenemgr.getConfig()).getDeltaBudget() -
+            _added.size() * ESTIMATED_ADDED_SIZE - _removed.size() * ESTIMATED_REMOVED_SIZE;
+        HashIntMap<PendingUpdate> deferred = null;
+        boolean progressed = false;
+        for (int ii = 0, nn = _candidates.size(); ii < nn; ii++) {
+            PendingUpdate pending = _candidates.get(ii);
+            int size = pending.delta.getEstimatedSize();
+            if (pending.forced || size <= remaining || !progressed) {
+                remaining -= size;
+                progressed |= !pending.forced;
+            } else {
+                int id = pending.delta.getId();
+                _updated.remove(id);
+                if (deferred == null) {
+                    deferred = IntMaps.newHashIntMap();
+                }
+                deferred.put(id, pending);
+            }
+        }
+        _candidates.clear();
+        return deferred;
     }
 
     /**
      * Populates the set of visible actors.
      */
-    protected void populateVisibleActors ()
+    protected void populateVisibleActors (Set<ActorLogic> visible)
     {
-        _scenemgr.getVisibleActors(_target, _worldInterest, _visibleActors);
+        _scenemgr.getVisibleActors(_target, _worldInterest, visible);
     }
 
     /**
@@ -383,6 +574,10 @@ public class ClientLiaison
         /** A reference to the transmitted event. */
         public SceneDeltaEvent event;
 
+        /** The updates left out of the transmitted event for lack of space, mapped by actor id,
+         * or <code>null</code> for none. */
+        public HashIntMap<PendingUpdate> deferred;
+
         /**
          * Creates an empty reference record.
          */
@@ -391,6 +586,15 @@ public class ClientLiaison
             this(0, new Actor[0], new ActorDelta[0], new Actor[0], new Effect[0]);
         }
 
+        /**
+         * Creates a new record with the same contents as the specified other.
+         */
+        public TickRecord (TickRecord other)
+        {
+            this(other._timestamp, other._actorsAdded, other._actorsUpdated,
+                other._actorsRemoved, other._effectsFired);
+        }
+
         /**
          * Creates a new record.
          */
@@ -461,6 +665,113 @@ public class ClientLiaison
         protected Effect[] _effectsFired;
     }
 
+    /**
+     * An update to a visible actor that competes for the budget.
+     */
+    protected static class PendingUpdate
+        implements Comparable<PendingUpdate>
+    {
+        /** The delta from the client's state as of the reference to the current one. */
+        public final ActorDelta delta;
+
+        /** The priority accumulated while the update has been waiting. */
+        public float priority;
+
+        /** Whether the update must be transmitted regardless of the budget. */
+        public boolean forced;
+
+        /**
+         * Creates a new pending update.
+         */
+        public PendingUpdate (ActorDelta delta)
+        {
+            this.delta = delta;
+        }
+
+        // documentation inherited from interface Comparable
+        public int compareTo (PendingUpdate other)
+        {
+            if (forced != other.forced) {
+                return forced ? -1 : +1;
+            }
+            return Float.compare(other.priority, priority);
+        }
+    }
+
+    /**
+     * The state of a client's view of the scene on a single tick, which may be shared between
+     * clients with identical targets, areas of interest and histories.
+     */
+    protected static class View
+    {
+        /** Whether the view may be shared with other clients. */
+        public boolean shared;
+
+        /** The view from which this one was computed, used to match views on the current tick. */
+        public View previous;
+
+        /** The shared view with the same state that clients should use on subsequent ticks. */
+        public View merged;
+
+        /** The translated area of interest. */
+        public Rect interest = new Rect();
+
+        /** The actors in the area of interest. */
+        public Set<ActorLogic> visible = Sets.newHashSet();
+
+        /** The record of the tick. */
+        public TickRecord record;
+
+        /** The contents of the deltas computed for the view, mapped by reference timestamp. */
+        public HashIntMap<DeltaContents> deltas = IntMaps.newHashIntMap();
+
+        /**
+         * Clears the view in preparation for reuse.
+         */
+        public void clear ()
+        {
+            previous = merged = null;
+            visible.clear();
+            record = null;
+            deltas.clear();
+        }
+    }
+
+    /**
+     * The contents of a delta event, which may be shared between clients.
+     */
+    protected static class DeltaContents
+    {
+        /** The actors added since the reference. */
+        public final Actor[] added;
+
+        /** The deltas of the actors updated since the reference. */
+        public final ActorDelta[] updated;
+
+        /** The ids of the actors removed since the reference. */
+        public final int[] removed;
+
+        /** The effects fired since the reference. */
+        public final Effect[] fired;
+
+        /** The updates deferred for lack of space, or <code>null</code> for none. */
+        public final HashIntMap<PendingUpdate> deferred;
+
+        /**
+         * Creates a new set of contents.
+         */
+        public DeltaContents (
+            Actor[] added, ActorDelta[] updated, int[] removed, Effect[] fired,
+            HashIntMap<PendingUpdate> deferred)
+        {
+            this.added = added;
+            this.updated = updated;
+            this.removed = removed;
+            this.fired = fired;
+            this.deferred = deferred;
+        }
+    }
+
     /** The scene manager that created the liaison. */
     protected TudeySceneManager _scenemgr;
 
@@ -500,11 +811,14 @@ public class ClientLiaison
     /** The timestamp of the last input frame received from the client. */
     protected int _lastInput;
 
-    /** The actors in the area of interest at the last update. */
-    protected Set<ActorLogic> _previousVisibleActors = Sets.newHashSet();
+    /** The client's view as of the last update. */
+    protected View _view;
 
-    /** The actors in the area of interest on the current update. */
-    protected Set<ActorLogic> _visibleActors = Sets.newHashSet();
+    /** A view of our own that we may reuse on the next update. */
+    protected View _spare;
+
+    /** The timestamp after which the client's records match those of its shared view. */
+    protected int _viewSince;
 
     /** Holds actors added on the current tick. */
     protected List<Actor> _actorsAdded = Lists.newArrayList();
@@ -524,6 +838,18 @@ public class ClientLiaison
     /** Stores removed actor. */
     protected IntMap<Actor> _removed = IntMaps.newHashIntMap();
 
+    /** Stores the merged updates of actors removed while merging. */
+    protected IntMap<ActorDelta> _removedUpdates = IntMaps.newHashIntMap();
+
     /** Stores effects fired. */
     protected List<Effect> _fired = Lists.newArrayList();
+
+    /** Holds the updates competing for the budget of the current delta. */
+    protected List<PendingUpdate> _candidates = Lists.newArrayList();
+
+    /** The estimated size of an added actor. */
+    protected static final int ESTIMATED_ADDED_SIZE = 64;
+
+    /** The estimated size of a removed actor id. */
+    protected static final int ESTIMATED_REMOVED_SIZE = 4;
 }
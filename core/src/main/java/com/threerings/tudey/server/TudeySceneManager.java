@@ -25,12 +25,20 @@
 
 package com.threerings.tudey.server;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
@@ -38,20 +46,28 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.Files;
 
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import com.google.inject.Provider;
 
+import com.samskivert.util.ArrayIntSet;
 import com.samskivert.util.HashIntMap;
 import com.samskivert.util.Histogram;
 import com.samskivert.util.IntMaps;
 import com.samskivert.util.Interval;
+import com.samskivert.util.Invoker;
 import com.samskivert.util.ObserverList;
 import com.samskivert.util.Randoms;
 import com.samskivert.util.RunAnywhere;
 import com.samskivert.util.RunQueue;
 import com.samskivert.util.StringUtil;
 
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.presents.annotation.MainInvoker;
 import com.threerings.presents.data.ClientObject;
 import com.threerings.presents.server.ClientManager;
 import com.threerings.presents.server.PresentsSession;
@@ -65,6 +81,7 @@ import com.threerings.whirled.server.SceneManager;
 
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
+import com.threerings.math.FloatMath;
 import com.threerings.math.Ray2D;
 import com.threerings.math.Rect;
 import com.threerings.math.Transform2D;
@@ -74,7 +91,7 @@ import com.threerings.tudey.config.ActorConfig;
 import com.threerings.tudey.config.CameraConfig;
 import com.threerings.tudey.config.EffectConfig;
 import com.threerings.tudey.data.EntityKey;
-import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.data.PackedInputFrames;
 import com.threerings.tudey.data.TudeyBodyObject;
 import com.threerings.tudey.data.TudeyCodes;
 import com.threerings.tudey.data.TudeySceneConfig;
@@ -89,8 +106,10 @@ import com.threerings.tudey.server.logic.EffectLogic;
 import com.threerings.tudey.server.logic.EntryLogic;
 import com.threerings.tudey.server.logic.Logic;
 import com.threerings.tudey.server.logic.PawnLogic;
+import com.threerings.tudey.server.util.EffectGrid;
 import com.threerings.tudey.server.util.Pathfinder;
 import com.threerings.tudey.server.util.SceneTicker;
+import com.threerings.tudey.server.util.TimerWheel;
 import com.threerings.tudey.shape.Segment;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.shape.ShapeElement;
@@ -346,6 +365,14 @@ public class TudeySceneManager extends SceneManager
         return _timestamp;
     }
 
+    /**
+     * Returns a reference to the wheel used to schedule timers against the scene timestamp.
+     */
+    public TimerWheel getTimerWheel ()
+    {
+        return _timerWheel;
+    }
+
     /**
      * Returns the timestamp of the last tick.
      */
@@ -375,6 +402,7 @@ public class TudeySceneManager extends SceneManager
      */
     public List<Logic> getTagged (String tag)
     {
+        wake();
         List<Logic> list = _tagged.get(tag);
         return (list == null) ? ImmutableList.<Logic>of() : list;
     }
@@ -384,6 +412,7 @@ public class TudeySceneManager extends SceneManager
      */
     public <L extends Logic> List<L> getInstances (Class<L> clazz)
     {
+        wake();
         @SuppressWarnings("unchecked") // we ensure that only the right type are added
         List<L> list = (List<L>)_instances.get(clazz);
         return (list == null) ? ImmutableList.<L>of() : list;
@@ -429,6 +458,43 @@ public class TudeySceneManager extends SceneManager
         return _defaultLocalInterest;
     }
 
+    /**
+     * Returns the rate at which actors at the specified location should run their periodic
+     * activity, based on the distance to the nearest client's area of interest: one for full
+     * activity, the configured reduced rate for distant actors, or zero for dormant ones.
+     */
+    public float getActivityRate (Vector2f location)
+    {
+        TudeySceneConfig config = (TudeySceneConfig)_config;
+        float reduced = config.getReducedActivityDistance();
+        float dormant = config.getDormantActivityDistance();
+        if (reduced == Float.MAX_VALUE && dormant == Float.MAX_VALUE) {
+            return 1f;
+        }
+        float distance = getInterestDistance(location);
+        if (distance > dormant) {
+            return 0f;
+        }
+        return (distance > reduced) ? config.getReducedActivityRate() : 1f;
+    }
+
+    /**
+     * Returns the distance from the specified location to the nearest client's area of interest
+     * (zero if within an area), or {@link Float#MAX_VALUE} if there are no clients.
+     */
+    public float getInterestDistance (Vector2f location)
+    {
+        float closest = Float.MAX_VALUE;
+        for (int ii = 0, nn = _interests.size(); ii < nn; ii++) {
+            Rect interest = _interests.get(ii);
+            Vector2f min = interest.getMinimumExtent(), max = interest.getMaximumExtent();
+            float dx = Math.max(Math.max(min.x - location.x, location.x - max.x), 0f);
+            float dy = Math.max(Math.max(min.y - location.y, location.y - max.y), 0f);
+            closest = Math.min(closest, dx*dx + dy*dy);
+        }
+        return (closest == Float.MAX_VALUE) ? closest : FloatMath.sqrt(closest);
+    }
+
     /**
      * Checks whether we should show region debug effects.
      */
@@ -481,6 +547,9 @@ public class TudeySceneManager extends SceneManager
             return null;
         }
 
+        // restore the scene if it's hibernating
+        wake();
+
         // attempt to resolve the implementation
         ActorConfig config = _cfgmgr.getConfig(ActorConfig.class, ref);
         ActorConfig.Original original = (config == null) ? null : config.getOriginal(_cfgmgr);
@@ -505,6 +574,7 @@ public class TudeySceneManager extends SceneManager
         if (logic.isStatic()) {
             _staticActors.add(logic);
             _staticActorsAdded.add(logic);
+            invalidateStaticSnapshots();
         }
 
         // notify observers
@@ -556,6 +626,9 @@ public class TudeySceneManager extends SceneManager
             return null;
         }
 
+        // restore the scene if it's hibernating
+        wake();
+
         // attempt to resolve the implementation
         EffectConfig config = _cfgmgr.getConfig(EffectConfig.class, ref);
         EffectConfig.Original original = (config == null) ? null : config.getOriginal(_cfgmgr);
@@ -576,18 +649,25 @@ public class TudeySceneManager extends SceneManager
         // initialize the logic and add it to the list
         logic.init(this, ref, original, timestamp, target, translation, rotation);
         _effectsFired.add(logic);
+        _effectGrid.add(logic);
 
         return logic;
     }
 
     /**
      * Creates an instance of the logic object with the specified class name using the injector,
-     * logging a warning and returning <code>null</code> on error.
+     * logging a warning and returning <code>null</code> on error.  The resolved classes and
+     * providers are cached, since logic objects (including all of the handlers, actions, etc.
+     * that they create) are created at a high rate.
      */
     public Logic createLogic (String cname)
     {
         try {
-            return (Logic)_injector.getInstance(Class.forName(cname));
+            Provider<?> provider = _logicProviders.get(cname);
+            if (provider == null) {
+                _logicProviders.put(cname, provider = _injector.getProvider(getLogicClass(cname)));
+            }
+            return (Logic)provider.get();
         } catch (Exception e) {
             log.warning("Failed to instantiate logic.", "class", cname, e);
             return null;
@@ -613,6 +693,7 @@ public class TudeySceneManager extends SceneManager
      */
     public EntryLogic getEntryLogic (Object key)
     {
+        wake();
         return _entries.get(key);
     }
 
@@ -621,6 +702,7 @@ public class TudeySceneManager extends SceneManager
      */
     public ActorLogic getActorLogic (int id)
     {
+        wake();
         return _actors.get(id);
     }
 
@@ -640,6 +722,20 @@ public class TudeySceneManager extends SceneManager
         _elements.clear();
     }
 
+    /**
+     * Returns the list of shareable client views computed on the current tick for the specified
+     * target, which client liaisons use to share views (and the deltas computed from them) with
+     * clients that have identical targets, areas of interest and histories.
+     */
+    public List<ClientLiaison.View> getSharedViews (PawnLogic target)
+    {
+        List<ClientLiaison.View> views = _sharedViews.get(target);
+        if (views == null) {
+            _sharedViews.put(target, views = Lists.newArrayList());
+        }
+        return views;
+    }
+
     /**
      * Returns a reference to the set of static actors.
      */
@@ -648,6 +744,33 @@ public class TudeySceneManager extends SceneManager
         return _staticActors;
     }
 
+    /**
+     * Returns an array containing the current snapshots of all static actors.  The array is
+     * cached and shared between all clients that require the complete set (that is, those
+     * entering or reconnecting), and is patched incrementally as static actors are updated.  It
+     * must not be modified.
+     */
+    public Actor[] getStaticActorSnapshots ()
+    {
+        if (_staticSnapshots == null) {
+            _staticSnapshots = new Actor[_staticActors.size()];
+            int idx = 0;
+            for (ActorLogic logic : _staticActors) {
+                _staticSnapshotIndices.put(logic, idx);
+                _staticSnapshots[idx++] = logic.getSnapshot();
+            }
+        } else if (!_staticSnapshotsDirty.isEmpty()) {
+            // copy on write, since the previous array may be referenced by clients' records
+            Actor[] snapshots = _staticSnapshots.clone();
+            for (ActorLogic logic : _staticSnapshotsDirty) {
+                snapshots[_staticSnapshotIndices.get(logic)] = logic.getSnapshot();
+            }
+            _staticSnapshots = snapshots;
+        }
+        _staticSnapshotsDirty.clear();
+        return _staticSnapshots;
+    }
+
     /**
      * Returns a reference to the set of static actors added on the current tick.
      */
@@ -673,21 +796,14 @@ public class TudeySceneManager extends SceneManager
     }
 
     /**
-     * Returns an array containing all effects fired on the current tick whose influence regions
-     * intersect the provided bounds.
+     * Returns an array containing all effects fired on the current tick in the grid cells that
+     * the provided bounds overlap, in the order fired.  Because effects are selected by cell,
+     * the array may include effects whose bounds don't intersect the provided bounds.  The array
+     * may be shared between clients and must not be modified.
      */
     public Effect[] getEffectsFired (PawnLogic target, Rect bounds)
     {
-        for (int ii = 0, nn = _effectsFired.size(); ii < nn; ii++) {
-            EffectLogic logic = _effectsFired.get(ii);
-            if (logic.getShape().getBounds().intersects(bounds) &&
-                    (target == null || logic.isVisible(target))) {
-                _effects.add(logic.getEffect());
-            }
-        }
-        Effect[] array = _effects.toArray(new Effect[_effects.size()]);
-        _effects.clear();
-        return array;
+        return _effectGrid.get(target, bounds);
     }
 
     /**
@@ -719,6 +835,7 @@ public class TudeySceneManager extends SceneManager
                 _staticActorsUpdated.remove(logic);
                 _staticActorsRemoved.add(logic);
             }
+            invalidateStaticSnapshots();
         }
 
         // notify observers
@@ -933,6 +1050,9 @@ public class TudeySceneManager extends SceneManager
         if (!_staticActorsAdded.contains(logic)) {
             _staticActorsUpdated.add(logic);
         }
+        if (_staticSnapshots != null) {
+            _staticSnapshotsDirty.add(logic);
+        }
     }
 
     /**
@@ -954,6 +1074,9 @@ public class TudeySceneManager extends SceneManager
     @Override // from PlaceManager
     public void bodyWillEnter (BodyObject body)
     {
+        // restore the scene if it's hibernating
+        wake();
+
         // configure the client's message throttle to 1.5 times the absolute minimum
         PresentsSession client = _clmgr.getClient(body.username);
         if (client != null) {
@@ -1052,7 +1175,7 @@ public class TudeySceneManager extends SceneManager
 
     // documentation inherited from interface TudeySceneProvider
     public void enqueueInputReliable (
-        ClientObject caller, int acknowledge, int smoothedTime, InputFrame[] frames)
+        ClientObject caller, int acknowledge, int smoothedTime, PackedInputFrames frames)
     {
         // these are handled in exactly the same way; the methods are separate to provide different
         // transport options
@@ -1061,7 +1184,7 @@ public class TudeySceneManager extends SceneManager
 
     // documentation inherited from interface TudeySceneProvider
     public void enqueueInputUnreliable (
-        ClientObject caller, int acknowledge, int smoothedTime, InputFrame[] frames)
+        ClientObject caller, int acknowledge, int smoothedTime, PackedInputFrames frames)
     {
         // forward to client liaison
         ClientLiaison client = _clients.get(caller.getOid());
@@ -1080,6 +1203,9 @@ public class TudeySceneManager extends SceneManager
     // documentation inherited from interface TudeySceneProvider
     public void setTarget (ClientObject caller, int pawnId)
     {
+        // restore the scene if it's hibernating
+        wake();
+
         // get the client liaison
         int cloid = caller.getOid();
         ClientLiaison client = _clients.get(cloid);
@@ -1123,6 +1249,9 @@ public class TudeySceneManager extends SceneManager
     // documentation inherited from interface TudeySceneProvider
     public void submitActorRequest (ClientObject caller, int actorId, String name)
     {
+        // restore the scene if it's hibernating
+        wake();
+
         // get the client liaison
         int cloid = caller.getOid();
         ClientLiaison client = _clients.get(cloid);
@@ -1154,6 +1283,9 @@ public class TudeySceneManager extends SceneManager
     // documentation inherited from interface TudeySceneProvider
     public void submitEntryRequest (ClientObject caller, Object key, String name)
     {
+        // restore the scene if it's hibernating
+        wake();
+
         // get the client liaison
         int cloid = caller.getOid();
         ClientLiaison client = _clients.get(cloid);
@@ -1290,6 +1422,7 @@ public class TudeySceneManager extends SceneManager
         // create logic objects for scene entries and listen for changes
         createEntryLogics(sceneModel);
         sceneModel.addObserver(this);
+        _entryActorId = _lastActorId;
 
         // register and fill in our tudey scene service
         _tsobj.setTudeySceneService(addProvider(this, TudeySceneMarshaller.class));
@@ -1317,10 +1450,16 @@ public class TudeySceneManager extends SceneManager
         // stop listening to the scene model
         ((TudeySceneModel)_scene.getSceneModel()).removeObserver(this);
 
+        // discard any hibernated state
+        discardHibernatedState();
+
         // flag the spaces as disposed to avoid extra unnecessary removal computation
         _actorSpace.dispose();
         _sensorSpace.dispose();
 
+        // drop any outstanding timers
+        _timerWheel.clear();
+
         // destroy/remove all actors
         ActorLogic[] actors = _actors.values().toArray(new ActorLogic[_actors.size()]);
         int timestamp = getNextTimestamp();
@@ -1508,6 +1647,331 @@ public class TudeySceneManager extends SceneManager
         }
     }
 
+    /**
+     * Clears the cached array of static actor snapshots, forcing it to be rebuilt when next
+     * requested.
+     */
+    protected void invalidateStaticSnapshots ()
+    {
+        _staticSnapshots = null;
+        _staticSnapshotIndices.clear();
+        _staticSnapshotsDirty.clear();
+    }
+
+    /**
+     * Checks whether the scene is in the registry's warm pool.  Pooled scenes are never unloaded
+     * for being empty, and they return to their startup state (rather than hibernating) when
+     * they become idle.
+     */
+    public boolean isWarm ()
+    {
+        return getWarmPool().contains(_scene.getId());
+    }
+
+    /**
+     * Checks whether the scene is hibernating.
+     */
+    public boolean isHibernating ()
+    {
+        return _hibernating;
+    }
+
+    /**
+     * Reads the hibernated state of the scene (if it has been written out) on the invoker thread
+     * so that {@link #wake} needn't read it on the event thread.  The supplied runnable is called
+     * on the event thread once the state is in memory, or immediately if it already is.
+     */
+    public void loadHibernatedState (Runnable onLoaded)
+    {
+        if (!_hibernating || _hibernatedState != null) {
+            onLoaded.run();
+            return;
+        }
+        if (_loadWaiters != null) {
+            _loadWaiters.add(onLoaded);
+            return;
+        }
+        _loadWaiters = Lists.newArrayList(onLoaded);
+        final File file = _hibernationFile;
+        _invoker.postUnit(new Invoker.Unit("loadHibernatedState") {
+            @Override public boolean invoke () {
+                try {
+                    _state = Files.toByteArray(file);
+                } catch (IOException e) {
+                    log.warning("Failed to read hibernated scene.", "file", file, e);
+                }
+                return true;
+            }
+            @Override public void handleResult () {
+                if (_hibernating && _hibernationFile == file) {
+                    _hibernatedState = _state;
+                }
+                List<Runnable> waiters = _loadWaiters;
+                _loadWaiters = null;
+                for (Runnable waiter : waiters) {
+                    waiter.run();
+                }
+            }
+            protected byte[] _state;
+        });
+    }
+
+    /**
+     * Restores the state of the scene if it is hibernating.  Entry logics are recreated and
+     * given back their stored state, the actors they spawned are restored in place (or released,
+     * if they had since been removed) and the remaining actors are respawned from their stored
+     * snapshots and states.
+     */
+    public void wake ()
+    {
+        if (!_hibernating) {
+            return;
+        }
+        _hibernating = false;
+        byte[] state = _hibernatedState;
+        File file = _hibernationFile;
+        _hibernatedState = null;
+        _hibernationFile = null;
+        if (state == null) {
+            // the state wasn't preloaded by loadHibernatedState, so we must read it here
+            try {
+                state = Files.toByteArray(file);
+            } catch (IOException e) {
+                log.warning("Failed to read hibernated scene.", "where", where(),
+                    "file", file, e);
+            }
+        }
+        if (file != null) {
+            deleteHibernationFile(file);
+        }
+
+        // recreate the entry logics, assigning the same ids to their actors
+        restoreEntryLogics();
+        if (state != null) {
+            try {
+                restoreHibernatedState(state);
+            } catch (Exception e) {
+                log.warning("Failed to restore hibernated scene.", "where", where(), e);
+            }
+        }
+
+        // resume ticking so that the restored timers fire until the scene is idle again
+        if (!_ticker.contains(this)) {
+            _emptyTime = _lastTick = RunAnywhere.currentTimeMillis();
+            _ticker.add(this);
+        }
+    }
+
+    /**
+     * Stores the state of the scene's entries and actors and releases their logics.  The state
+     * is then written to a file in the hibernation directory on the invoker thread.  Does
+     * nothing if hibernation is disabled.
+     */
+    protected void hibernate ()
+    {
+        final File dir = getHibernationDirectory();
+        if (dir == null || _hibernating) {
+            return;
+        }
+
+        // store the state of the entries and of all surviving actors other than pawns
+        Object[] keys = _entries.keySet().toArray();
+        Object[] entryStates = new Object[keys.length];
+        for (int ii = 0; ii < keys.length; ii++) {
+            entryStates[ii] = _entries.get(keys[ii]).saveState();
+        }
+        List<Actor> actors = Lists.newArrayList();
+        List<Object> actorStates = Lists.newArrayList();
+        for (ActorLogic logic : _actors.values()) {
+            if (!(logic.isDestroyed() || logic instanceof PawnLogic)) {
+                actors.add(logic.getActor());
+                actorStates.add(logic.saveState());
+            }
+        }
+        final byte[] state;
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(new DeflaterOutputStream(bout));
+            out.writeInt(_lastActorId);
+            out.writeObject(keys);
+            out.writeObject(entryStates);
+            out.writeObject(actors.toArray(new Actor[actors.size()]));
+            out.writeObject(actorStates.toArray());
+            out.close();
+            state = bout.toByteArray();
+        } catch (Exception e) {
+            log.warning("Failed to hibernate scene.", "where", where(), e);
+            return;
+        }
+        releaseLogics();
+        _hibernating = true;
+        _hibernatedState = state;
+
+        // write the state out so that we needn't keep it in memory
+        final int sceneId = _scene.getId();
+        _invoker.postUnit(new Invoker.Unit("hibernate") {
+            @Override public boolean invoke () {
+                try {
+                    _file = File.createTempFile("scene" + sceneId + "-", ".dat", dir);
+                    Files.write(state, _file);
+                } catch (IOException e) {
+                    log.warning("Failed to write hibernated scene.", "file", _file, e);
+                    if (_file != null) {
+                        _file.delete();
+                        _file = null;
+                    }
+                }
+                return true;
+            }
+            @Override public void handleResult () {
+                if (_file == null) {
+                    return; // keep the state in memory
+                }
+                if (_hibernatedState == state) {
+                    _hibernationFile = _file;
+                    _hibernatedState = null;
+                } else {
+                    // the scene woke (or shut down) while we were writing
+                    deleteHibernationFile(_file);
+                }
+            }
+            protected File _file;
+        });
+    }
+
+    /**
+     * Restores the state stored by {@link #hibernate} once the entry logics have been recreated.
+     */
+    protected void restoreHibernatedState (byte[] state)
+        throws IOException, ClassNotFoundException
+    {
+        ObjectInputStream in = new ObjectInputStream(
+            new InflaterInputStream(new ByteArrayInputStream(state)));
+        int lastActorId = in.readInt();
+        Object[] keys = (Object[])in.readObject();
+        Object[] entryStates = (Object[])in.readObject();
+        Actor[] actors = (Actor[])in.readObject();
+        Object[] actorStates = (Object[])in.readObject();
+        in.close();
+
+        // restore the entry states
+        for (int ii = 0; ii < keys.length; ii++) {
+            EntryLogic logic = _entries.get(keys[ii]);
+            if (logic != null) {
+                logic.restoreState(entryStates[ii]);
+            }
+        }
+
+        // restore the actors spawned by the entries in place, respawn the rest
+        _lastActorId = Math.max(_lastActorId, lastActorId);
+        ArrayIntSet restored = new ArrayIntSet();
+        for (int ii = 0; ii < actors.length; ii++) {
+            Actor actor = actors[ii];
+            int id = actor.getId();
+            ActorLogic logic = _actors.get(id);
+            if (id <= _entryActorId) {
+                if (logic != null) {
+                    logic.restore(actor, actorStates[ii]);
+                    restored.add(id);
+                }
+                continue;
+            }
+            if (logic != null) {
+                log.warning("Hibernated actor id already in use.", "where", where(),
+                    "actor", actor);
+                continue;
+            }
+            logic = spawnActor(_timestamp, actor.getTranslation(), actor.getRotation(),
+                actor.getConfig(), actor);
+            if (logic != null) {
+                logic.restoreState(actorStates[ii]);
+            }
+        }
+
+        // release the recreated entry actors that had since been removed
+        for (ActorLogic logic : _actors.values().toArray(new ActorLogic[_actors.size()])) {
+            int id = logic.getActor().getId();
+            if (id <= _entryActorId && !restored.contains(id)) {
+                logic.release();
+            }
+        }
+    }
+
+    /**
+     * Returns the scene to its startup state, releasing all actors and recreating the entry
+     * logics.  Used to recycle pooled scenes once they become idle.
+     */
+    public void reset ()
+    {
+        if (_hibernating) {
+            discardHibernatedState();
+        } else {
+            releaseLogics();
+        }
+        restoreEntryLogics();
+    }
+
+    /**
+     * Releases the actor and entry logics without running their destruction handlers and stops
+     * listening to the scene model.
+     */
+    protected void releaseLogics ()
+    {
+        ((TudeySceneModel)_scene.getSceneModel()).removeObserver(this);
+        for (ActorLogic logic : _actors.values().toArray(new ActorLogic[_actors.size()])) {
+            logic.release();
+        }
+        for (Object key : _entries.keySet().toArray()) {
+            EntryLogic logic = _entries.remove(key);
+            removeMappings(logic);
+            logic.removed(true);
+        }
+        _timerWheel.clear();
+        _staticActorsAdded.clear();
+        _staticActorsUpdated.clear();
+        _staticActorsRemoved.clear();
+    }
+
+    /**
+     * Recreates the entry logics released by {@link #releaseLogics}, assigning their actors the
+     * same ids as they had at startup.
+     */
+    protected void restoreEntryLogics ()
+    {
+        TudeySceneModel sceneModel = (TudeySceneModel)_scene.getSceneModel();
+        _lastActorId = 0;
+        createEntryLogics(sceneModel);
+        sceneModel.addObserver(this);
+    }
+
+    /**
+     * Discards the hibernated state of the scene, if any.
+     */
+    protected void discardHibernatedState ()
+    {
+        if (_hibernationFile != null) {
+            deleteHibernationFile(_hibernationFile);
+        }
+        _hibernating = false;
+        _hibernatedState = null;
+        _hibernationFile = null;
+    }
+
+    /**
+     * Deletes a hibernation file on the invoker thread.
+     */
+    protected void deleteHibernationFile (final File file)
+    {
+        _invoker.postUnit(new Invoker.Unit("deleteHibernationFile") {
+            @Override public boolean invoke () {
+                if (!file.delete()) {
+                    log.warning("Failed to delete hibernated scene.", "file", file);
+                }
+                return false;
+            }
+        });
+    }
+
     /**
      * Updates the scene.
      */
@@ -1517,6 +1981,7 @@ public class TudeySceneManager extends SceneManager
         long now = RunAnywhere.currentTimeMillis();
         if (_plobj.occupants.size() == 0 && (now - _emptyTime) >= idleTickPeriod()) {
             _ticker.remove(this);
+            wentIdle();
             return;
         }
 
@@ -1525,6 +1990,12 @@ public class TudeySceneManager extends SceneManager
         _timestamp += (int)(now - _lastTick);
         _lastTick = now;
 
+        // note the clients' areas of interest as of the last tick
+        _interests.clear();
+        for (ClientLiaison client : _clients.values()) {
+            _interests.add(client.getWorldInterest());
+        }
+
         // copy the runnables into another list and clear
         synchronized (_runnables) {
             _runlist.addAll(_runnables);
@@ -1536,6 +2007,9 @@ public class TudeySceneManager extends SceneManager
             _profileTickOp.init(_timestamp);
             _tickParticipants.apply(_profileTickOp);
 
+            // fire the expired timers
+            _timerWheel.advance(_timestamp);
+
             // process the runnables in the list
             for (int ii = 0, nn = _runlist.size(); ii < nn; ii++) {
                 Runnable runnable = _runlist.get(ii);
@@ -1574,6 +2048,9 @@ public class TudeySceneManager extends SceneManager
             _tickOp.init(_timestamp);
             _tickParticipants.apply(_tickOp);
 
+            // fire the expired timers
+            _timerWheel.advance(_timestamp);
+
             // process the runnables in the list
             for (int ii = 0, nn = _runlist.size(); ii < nn; ii++) {
                 Runnable runnable = _runlist.get(ii);
@@ -1603,6 +2080,8 @@ public class TudeySceneManager extends SceneManager
         _staticActorsUpdated.clear();
         _staticActorsRemoved.clear();
         _effectsFired.clear();
+        _effectGrid.clear();
+        _sharedViews.clear();
 
         // note how long the tick took
         _tickDuration = (RunAnywhere.currentTimeMillis() - _lastTick);
@@ -1626,6 +2105,42 @@ public class TudeySceneManager extends SceneManager
         return 5 * 1000L;
     }
 
+    @Override // from PlaceManager
+    protected long idleUnloadPeriod ()
+    {
+        // pooled scenes are reset when idle rather than unloaded
+        return isWarm() ? 0L : super.idleUnloadPeriod();
+    }
+
+    /**
+     * Called when the scene stops ticking for lack of occupants.
+     */
+    protected void wentIdle ()
+    {
+        if (isWarm()) {
+            getWarmPool().checkin(this);
+        } else {
+            hibernate();
+        }
+    }
+
+    /**
+     * Returns the registry's pool of warm scenes.
+     */
+    protected WarmScenePool getWarmPool ()
+    {
+        return ((TudeySceneRegistry)_screg).getWarmPool();
+    }
+
+    /**
+     * Returns the directory in which to store the state of idle scenes, or <code>null</code> to
+     * keep idle scenes resident.
+     */
+    protected File getHibernationDirectory ()
+    {
+        return null;
+    }
+
     /**
      * Returns the ticker with which to tick the scene.
      */
@@ -1634,6 +2149,19 @@ public class TudeySceneManager extends SceneManager
         return ((TudeySceneRegistry)_screg).getDefaultTicker();
     }
 
+    /**
+     * Returns the logic class with the specified name, resolving it if necessary.
+     */
+    protected static Class<?> getLogicClass (String cname)
+        throws ClassNotFoundException
+    {
+        Class<?> clazz = _logicClasses.get(cname);
+        if (clazz == null) {
+            _logicClasses.put(cname, clazz = Class.forName(cname));
+        }
+        return clazz;
+    }
+
     /**
      * Updates the tick profile for the specified participant.
      */
@@ -1753,6 +2281,12 @@ public class TudeySceneManager extends SceneManager
     /** The client manager. */
     @Inject protected ClientManager _clmgr;
 
+    /** The invoker on which we read and write hibernated state. */
+    @Inject @MainInvoker protected Invoker _invoker;
+
+    /** Providers for logic objects, mapped by class name. */
+    protected HashMap<String, Provider<?>> _logicProviders = Maps.newHashMap();
+
     /** A casted reference to the Tudey scene object. */
     protected TudeySceneObject _tsobj;
 
@@ -1777,6 +2311,22 @@ public class TudeySceneManager extends SceneManager
     /** The last actor id assigned. */
     protected int _lastActorId;
 
+    /** The last actor id assigned when the entry logics were created. */
+    protected int _entryActorId;
+
+    /** Whether the scene is hibernating. */
+    protected boolean _hibernating;
+
+    /** The stored state of the hibernating scene while it's in memory (before it has been
+     * written out or after it has been preloaded). */
+    protected byte[] _hibernatedState;
+
+    /** The file containing the state of the hibernating scene, once written out. */
+    protected File _hibernationFile;
+
+    /** The runnables waiting for the hibernated state to be read in, if it's being read. */
+    protected List<Runnable> _loadWaiters;
+
     /** Maps oids of entering bodies to the keys of the portals through which they're entering. */
     protected HashIntMap<Object> _entering = IntMaps.newHashIntMap();
 
@@ -1822,6 +2372,15 @@ public class TudeySceneManager extends SceneManager
     /** The pathfinder used for path computation. */
     protected Pathfinder _pathfinder;
 
+    /** The cached snapshots of the static actors, or null if they must be rebuilt. */
+    protected Actor[] _staticSnapshots;
+
+    /** The indices of the static actors within the snapshot array. */
+    protected Map<ActorLogic, Integer> _staticSnapshotIndices = Maps.newHashMap();
+
+    /** Static actors whose cached snapshots must be refreshed. */
+    protected Set<ActorLogic> _staticSnapshotsDirty = Sets.newHashSet();
+
     /** The logic for static actors added on the current tick. */
     protected Set<ActorLogic> _staticActorsAdded = Sets.newHashSet();
 
@@ -1834,18 +2393,27 @@ public class TudeySceneManager extends SceneManager
     /** The logic for effects fired on the current tick. */
     protected ArrayList<EffectLogic> _effectsFired = Lists.newArrayList();
 
+    /** The effects fired on the current tick, bucketed by location. */
+    protected EffectGrid _effectGrid = new EffectGrid(EFFECT_CELL_SIZE);
+
+    /** The shareable client views computed on the current tick, mapped by target. */
+    protected HashMap<PawnLogic, List<ClientLiaison.View>> _sharedViews = Maps.newHashMap();
+
+    /** Schedules timers against the scene timestamp. */
+    protected TimerWheel _timerWheel = new TimerWheel(TIMER_RESOLUTION, TIMER_SLOTS);
+
     /** Runnables enqueued for the next tick. */
     protected List<Runnable> _runnables = Lists.newArrayList();
 
     /** The default local interest region. */
     protected Rect _defaultLocalInterest = TudeySceneMetrics.getDefaultLocalInterest();
 
+    /** The clients' areas of interest as of the last tick. */
+    protected ArrayList<Rect> _interests = Lists.newArrayList();
+
     /** Holds collected elements during queries. */
     protected ArrayList<SpaceElement> _elements = Lists.newArrayList();
 
-    /** Holds collected effects during queries. */
-    protected ArrayList<Effect> _effects = Lists.newArrayList();
-
     /** Holds runnables during tick. */
     protected List<Runnable> _runlist = Lists.newArrayList();
 
@@ -1858,12 +2426,24 @@ public class TudeySceneManager extends SceneManager
     /** Stores penetration vector during queries. */
     protected Vector2f _penetration = new Vector2f();
 
+    /** The size of the cells in which we bucket fired effects. */
+    protected static final float EFFECT_CELL_SIZE = 16f;
+
+    /** The interval (in milliseconds) covered by each slot of the timer wheel. */
+    protected static final int TIMER_RESOLUTION = 32;
+
+    /** The number of slots in the timer wheel. */
+    protected static final int TIMER_SLOTS = 512;
+
     /** Whether or not we're profiling tick participants. */
     protected static boolean _tickProfEnabled;
 
     /** The frequency at which we take tick samples. */
     protected static int _tickProfInterval = 100;
 
+    /** Resolved logic classes, mapped by name (shared between all scene managers). */
+    protected static ConcurrentMap<String, Class<?>> _logicClasses = Maps.newConcurrentMap();
+
     /** Used to profile our tick participants. */
     protected static Map<String, TickProfile> _profiles = Maps.newHashMap();
 
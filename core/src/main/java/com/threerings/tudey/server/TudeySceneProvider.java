@@ -33,7 +33,7 @@ import com.threerings.presents.server.InvocationProvider;
 
 import com.threerings.tudey.client.TudeySceneService;
 import com.threerings.tudey.config.CameraConfig;
-import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.data.PackedInputFrames;
 
 /**
  * Defines the server-side of the {@link TudeySceneService}.
@@ -45,12 +45,12 @@ public interface TudeySceneProvider extends InvocationProvider
     /**
      * Handles a {@link TudeySceneService#enqueueInputReliable} request.
      */
-    void enqueueInputReliable (ClientObject caller, int arg1, int arg2, InputFrame[] arg3);
+    void enqueueInputReliable (ClientObject caller, int arg1, int arg2, PackedInputFrames arg3);
 
     /**
      * Handles a {@link TudeySceneService#enqueueInputUnreliable} request.
      */
-    void enqueueInputUnreliable (ClientObject caller, int arg1, int arg2, InputFrame[] arg3);
+    void enqueueInputUnreliable (ClientObject caller, int arg1, int arg2, PackedInputFrames arg3);
 
     /**
      * Handles a {@link TudeySceneService#enteredPlace} request.
@@ -44,6 +44,7 @@ import com.threerings.crowd.data.BodyObject;
 
 import com.threerings.whirled.client.SceneService;
 import com.threerings.whirled.data.SceneModel;
+import com.threerings.whirled.server.SceneManager;
 import com.threerings.whirled.server.SceneMoveHandler;
 import com.threerings.whirled.server.SceneRegistry;
 import com.threerings.whirled.util.UpdateList;
@@ -69,6 +70,7 @@ public class TudeySceneRegistry extends SceneRegistry
     {
         super(invmgr);
         _omgr = omgr;
+        _warmPool = createWarmPool();
 
         lifecycle.addComponent(new Lifecycle.InitComponent() {
             public void init () {
@@ -81,10 +83,53 @@ public class TudeySceneRegistry extends SceneRegistry
                         prunePortalMappings();
                     }
                 }.schedule(PORTAL_PRUNE_INTERVAL, true);
+
+                // start warming the configured scenes
+                for (int sceneId : getWarmSceneIds()) {
+                    addWarmScene(sceneId);
+                }
             }
         });
     }
 
+    /**
+     * Adds a scene to the warm pool.  Pooled scenes are resolved ahead of any moves so that
+     * entering bodies find them ready.  Their managers are never unloaded for being empty; they
+     * return to their startup state (rather than hibernating) when they become idle and are
+     * resolved again only if they shut down for some other reason.
+     *
+     * @return true if the scene was added, false if it was already pooled or the pool is full.
+     */
+    public boolean addWarmScene (int sceneId)
+    {
+        return _warmPool.add(sceneId);
+    }
+
+    /**
+     * Removes a scene from the warm pool.  The scene's manager, if resolved, is left to shut
+     * down normally, once it next becomes empty.
+     */
+    public void removeWarmScene (int sceneId)
+    {
+        _warmPool.remove(sceneId);
+    }
+
+    /**
+     * Checks whether the identified scene is in the warm pool.
+     */
+    public boolean isWarmScene (int sceneId)
+    {
+        return _warmPool.contains(sceneId);
+    }
+
+    /**
+     * Returns a reference to the warm scene pool.
+     */
+    public WarmScenePool getWarmPool ()
+    {
+        return _warmPool;
+    }
+
     /**
      * Forcibly moves a player to a new scene.
      *
@@ -98,11 +143,25 @@ public class TudeySceneRegistry extends SceneRegistry
     }
 
     /**
-     * Resolves a scene for the specified caller.
+     * Resolves a scene for the specified caller, checking out the pooled manager if the scene is
+     * warm.  If the scene is hibernating, its stored state is read in on the invoker thread
+     * before the listener is notified, so that waking it doesn't block the event thread.
      */
-    public void resolveScene (ClientObject caller, int sceneId, ResolutionListener listener)
+    public void resolveScene (
+        ClientObject caller, int sceneId, final ResolutionListener listener)
     {
-        resolveScene(sceneId, listener);
+        _warmPool.resolve(sceneId, new ResolutionListener() {
+            public void sceneWasResolved (final SceneManager scmgr) {
+                ((TudeySceneManager)scmgr).loadHibernatedState(new Runnable() {
+                    public void run () {
+                        listener.sceneWasResolved(scmgr);
+                    }
+                });
+            }
+            public void sceneFailedToResolve (int sceneId, Exception reason) {
+                listener.sceneFailedToResolve(sceneId, reason);
+            }
+        });
     }
 
     /**
@@ -147,6 +206,41 @@ public class TudeySceneRegistry extends SceneRegistry
         return new SceneTicker.EventThread(_omgr, DEFAULT_TICK_INTERVAL);
     }
 
+    /**
+     * Returns the ids of the scenes to add to the warm pool on startup.
+     */
+    protected int[] getWarmSceneIds ()
+    {
+        return new int[0];
+    }
+
+    /**
+     * Returns the maximum number of scenes that may be kept in the warm pool.
+     */
+    protected int getWarmPoolCapacity ()
+    {
+        return DEFAULT_WARM_POOL_CAPACITY;
+    }
+
+    /**
+     * Creates the warm scene pool, which resolves scenes through this registry.
+     */
+    protected WarmScenePool createWarmPool ()
+    {
+        return new WarmScenePool(getWarmPoolCapacity()) {
+            protected void resolveScene (int sceneId, ResolutionListener listener) {
+                TudeySceneRegistry.this.resolveScene(sceneId, listener);
+            }
+            protected void scheduleRewarm (final int sceneId) {
+                new Interval(_omgr) {
+                    public void expired () {
+                        rewarm(sceneId);
+                    }
+                }.schedule(WARM_RESOLVE_DELAY);
+            }
+        };
+    }
+
     /**
      * Adds a portal mapping.
      */
@@ -244,9 +338,18 @@ public class TudeySceneRegistry extends SceneRegistry
     /** The default scene ticker. */
     protected SceneTicker _defaultTicker;
 
+    /** The pool of scenes kept resolved ahead of moves. */
+    protected WarmScenePool _warmPool;
+
     /** The interval after which portal mappings expire. */
     protected static final long PORTAL_MAPPING_LIFESPAN = 30 * 1000L;
 
     /** The interval at which we prune expired portal mappings. */
     protected static final long PORTAL_PRUNE_INTERVAL = 5 * 60 * 1000L;
+
+    /** The default maximum number of pooled scenes. */
+    protected static final int DEFAULT_WARM_POOL_CAPACITY = 16;
+
+    /** The delay before resolving a pooled scene that has shut down. */
+    protected static final long WARM_RESOLVE_DELAY = 5 * 1000L;
 }
@@ -0,0 +1,250 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server;
+
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntMaps;
+
+import com.threerings.whirled.server.SceneManager;
+import com.threerings.whirled.server.SceneRegistry.ResolutionListener;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * Keeps a limited number of scenes resolved ahead of the moves that enter them.  A move to a
+ * pooled scene checks out its ready manager without waiting for resolution; when the scene
+ * becomes idle, the manager is returned, which resets it to its startup state.  Moves to other
+ * scenes (and to pooled scenes that are still resolving) fall back to normal resolution.
+ * Whirled maps one manager to each scene id, so the pool holds one manager per pooled id rather
+ * than a queue of interchangeable instances.
+ */
+public abstract class WarmScenePool
+{
+    /**
+     * Creates a new pool.
+     *
+     * @param capacity the maximum number of scenes that may be pooled at once.
+     */
+    public WarmScenePool (int capacity)
+    {
+        _capacity = capacity;
+    }
+
+    /**
+     * Returns the maximum number of scenes that may be pooled at once.
+     */
+    public int getCapacity ()
+    {
+        return _capacity;
+    }
+
+    /**
+     * Returns the number of scenes in the pool.
+     */
+    public int size ()
+    {
+        return _entries.size();
+    }
+
+    /**
+     * Checks whether the identified scene is in the pool.
+     */
+    public boolean contains (int sceneId)
+    {
+        return _entries.containsKey(sceneId);
+    }
+
+    /**
+     * Checks whether the identified scene is in the pool, resolved, and not checked out.
+     */
+    public boolean isReady (int sceneId)
+    {
+        Entry entry = _entries.get(sceneId);
+        return entry != null && entry.scmgr != null && !entry.checkedOut;
+    }
+
+    /**
+     * Adds a scene to the pool and starts resolving it.
+     *
+     * @return true if the scene was added, false if it was already pooled or the pool is full.
+     */
+    public boolean add (int sceneId)
+    {
+        if (_entries.containsKey(sceneId)) {
+            return false;
+        }
+        if (_entries.size() >= _capacity) {
+            log.warning("Warm scene pool is full.", "sceneId", sceneId, "capacity", _capacity);
+            return false;
+        }
+        Entry entry = new Entry(sceneId);
+        _entries.put(sceneId, entry);
+        warm(entry);
+        return true;
+    }
+
+    /**
+     * Removes a scene from the pool.  The scene's manager, if resolved, is left to shut down
+     * normally, once it next becomes empty.
+     *
+     * @return true if the scene was removed, false if it wasn't pooled.
+     */
+    public boolean remove (int sceneId)
+    {
+        Entry entry = _entries.remove(sceneId);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.scmgr != null) {
+            entry.scmgr.removeShutdownObserver(entry);
+        }
+        return true;
+    }
+
+    /**
+     * Resolves a scene for a move, checking out the pooled manager if it's ready and otherwise
+     * falling back to normal resolution.
+     */
+    public void resolve (int sceneId, final ResolutionListener listener)
+    {
+        final Entry entry = _entries.get(sceneId);
+        if (entry == null) {
+            resolveScene(sceneId, listener);
+            return;
+        }
+        if (entry.scmgr != null) {
+            entry.checkedOut = true;
+            listener.sceneWasResolved(entry.scmgr);
+            return;
+        }
+        // the scene is still resolving; join the pending resolution
+        resolveScene(sceneId, new ResolutionListener() {
+            public void sceneWasResolved (SceneManager scmgr) {
+                if (_entries.get(entry.sceneId) == entry) {
+                    entry.checkedOut = true;
+                }
+                listener.sceneWasResolved(scmgr);
+            }
+            public void sceneFailedToResolve (int sceneId, Exception reason) {
+                listener.sceneFailedToResolve(sceneId, reason);
+            }
+        });
+    }
+
+    /**
+     * Returns an idle manager to the pool, resetting it to its startup state.
+     */
+    public void checkin (TudeySceneManager scmgr)
+    {
+        scmgr.reset();
+        for (Entry entry : _entries.values()) {
+            if (entry.scmgr == scmgr) {
+                entry.checkedOut = false;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Resolves a pooled scene again after its manager has shut down.
+     */
+    public void rewarm (int sceneId)
+    {
+        Entry entry = _entries.get(sceneId);
+        if (entry != null && entry.scmgr == null) {
+            warm(entry);
+        }
+    }
+
+    /**
+     * Resolves the scene through the registry.
+     */
+    protected abstract void resolveScene (int sceneId, ResolutionListener listener);
+
+    /**
+     * Arranges for {@link #rewarm} to be called for the identified scene after a delay.
+     */
+    protected abstract void scheduleRewarm (int sceneId);
+
+    /**
+     * Resolves a pooled scene and records its manager.
+     */
+    protected void warm (final Entry entry)
+    {
+        resolveScene(entry.sceneId, new ResolutionListener() {
+            public void sceneWasResolved (SceneManager scmgr) {
+                if (_entries.get(entry.sceneId) != entry || entry.scmgr == scmgr) {
+                    return;
+                }
+                entry.scmgr = (TudeySceneManager)scmgr;
+                entry.scmgr.addShutdownObserver(entry);
+            }
+            public void sceneFailedToResolve (int sceneId, Exception reason) {
+                log.warning("Failed to warm scene.", "sceneId", sceneId, reason);
+            }
+        });
+    }
+
+    /**
+     * The state of a pooled scene.
+     */
+    protected class Entry
+        implements TudeySceneManager.ShutdownObserver
+    {
+        /** The id of the scene. */
+        public final int sceneId;
+
+        /** The scene's manager, or null if not yet resolved. */
+        public TudeySceneManager scmgr;
+
+        /** Whether the manager has been handed out since it was resolved or last returned. */
+        public boolean checkedOut;
+
+        /**
+         * Creates a new entry for the identified scene.
+         */
+        public Entry (int sceneId)
+        {
+            this.sceneId = sceneId;
+        }
+
+        // documentation inherited from interface TudeySceneManager.ShutdownObserver
+        public void didShutdown ()
+        {
+            scmgr = null;
+            checkedOut = false;
+            if (_entries.get(sceneId) == this) {
+                scheduleRewarm(sceneId);
+            }
+        }
+    }
+
+    /** The maximum number of pooled scenes. */
+    protected int _capacity;
+
+    /** The pooled scenes, mapped by id. */
+    protected HashIntMap<Entry> _entries = IntMaps.newHashIntMap();
+}
@@ -37,7 +37,6 @@ import com.google.common.collect.Sets;
 
 import com.google.inject.Inject;
 
-import com.samskivert.util.Interval;
 import com.samskivert.util.Randoms;
 import com.samskivert.util.RandomUtil;
 
@@ -62,6 +61,7 @@ import com.threerings.tudey.data.TudeyOccupantInfo;
 import com.threerings.tudey.data.TudeySceneObject;
 import com.threerings.tudey.server.TudeySceneManager;
 import com.threerings.tudey.server.TudeySceneRegistry;
+import com.threerings.tudey.server.util.TimerWheel;
 import com.threerings.tudey.shape.Segment;
 
 import static com.threerings.tudey.Log.log;
@@ -652,6 +652,20 @@ public abstract class ActionLogic extends Logic
             }
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), saveStates(_action, _elseAction) };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            restoreStates(array[1], _action, _elseAction);
+        }
+
         @Override
         protected void didInit ()
         {
@@ -717,6 +731,22 @@ public abstract class ActionLogic extends Logic
             }
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] {
+                super.saveState(), saveStates(_actions), saveStates(_defaultAction) };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            restoreStates(array[1], _actions);
+            restoreStates(array[2], _defaultAction);
+        }
+
         @Override
         protected void didInit ()
         {
@@ -788,6 +818,22 @@ public abstract class ActionLogic extends Logic
             }
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] {
+                super.saveState(), saveStates(_actions), saveStates(_defaultAction) };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            restoreStates(array[1], _actions);
+            restoreStates(array[2], _defaultAction);
+        }
+
         @Override
         protected void didInit ()
         {
@@ -869,6 +915,20 @@ public abstract class ActionLogic extends Logic
             }
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), saveStates(_actions) };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            restoreStates(array[1], _actions);
+        }
+
         @Override
         protected void didInit ()
         {
@@ -921,6 +981,20 @@ public abstract class ActionLogic extends Logic
             }
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), saveStates(_actions) };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            restoreStates(array[1], _actions);
+        }
+
         @Override
         protected void didInit ()
         {
@@ -988,6 +1062,30 @@ public abstract class ActionLogic extends Logic
             }
         }
 
+        @Override
+        public Object saveState ()
+        {
+            int[] stamps = new int[_intervals.size()];
+            int idx = 0;
+            for (ActionInterval ai : _intervals) {
+                stamps[idx++] = ai.executionStamp;
+            }
+            return new Object[] { super.saveState(), _action.saveState(), stamps };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            _action.restoreState(array[1]);
+
+            // the activators of pending executions aren't saved, so use our source instead
+            for (int stamp : (int[])array[2]) {
+                new ActionInterval(stamp, _source);
+            }
+        }
+
         @Override
         protected void didInit ()
         {
@@ -1016,7 +1114,7 @@ public abstract class ActionLogic extends Logic
          * An interval that knows its intended exection time in the scene, so that
          * a clone can be created when transferring.
          */
-        protected class ActionInterval extends Interval
+        protected class ActionInterval extends TimerWheel.Timer
         {
             /** The scene timestamp at which we should be executing. */
             public final int executionStamp;
@@ -1029,7 +1127,6 @@ public abstract class ActionLogic extends Logic
              */
             public ActionInterval (int executionStamp, Logic activator)
             {
-                super(_scenemgr);
 //                log.info("Scheduling actionInterval",
 //                        "scenemgr", System.identityHashCode(_scenemgr),
 //                        "exectionStamp", executionStamp,
@@ -1037,17 +1134,12 @@ public abstract class ActionLogic extends Logic
                 this.executionStamp = executionStamp;
                 this.activator = activator;
                 _intervals.add(this);
-                schedule(Math.max(0, executionStamp - _scenemgr.getTimestamp()));
+                _scenemgr.getTimerWheel().schedule(this, executionStamp);
             }
 
-            @Override public void expired () {
-                _intervals.remove(this);
-                _action.execute(_scenemgr.getTimestamp(), activator);
-            }
-
-            @Override protected void noteRejected () {
-                // it's ok: the scene has ended. (we could execute a failure action here)
+            @Override public void expired (int timestamp) {
                 _intervals.remove(this);
+                _action.execute(timestamp, activator);
             }
         }
     }
@@ -1183,6 +1275,20 @@ public abstract class ActionLogic extends Logic
             _action = createAction(((ActionConfig.TargetedAction)_config).action, _source);
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), _action.saveState() };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            _action.restoreState(array[1]);
+        }
+
         @Override
         protected void wasRemoved ()
         {
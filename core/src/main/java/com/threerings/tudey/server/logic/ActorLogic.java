@@ -49,6 +49,7 @@ import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.actor.HasActor;
 import com.threerings.tudey.dobj.ActorDelta;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.TimerWheel;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.shape.ShapeElement;
 
@@ -87,6 +88,7 @@ public class ActorLogic extends Logic
             _actor.init(scenemgr.getConfigManager());
         } else {
             _actor = (Actor)actor.clone();
+            _actor.init(scenemgr.getConfigManager());
         }
         _shape = new ShapeElement(config.getShape(scenemgr.getConfigManager()));
         _shape.setUserObject(this);
@@ -135,6 +137,28 @@ public class ActorLogic extends Logic
         return _config.isStatic;
     }
 
+    /**
+     * Returns the relative priority with which updates to the actor are transmitted to clients.
+     */
+    public float getTransmitPriority ()
+    {
+        return _config.transmitPriority;
+    }
+
+    @Override
+    public float getActivityRate ()
+    {
+        if (!_config.reduceDistantActivity) {
+            return 1f;
+        }
+        int timestamp = _scenemgr.getTimestamp();
+        if (_activityTimestamp != timestamp) {
+            _activityRate = _scenemgr.getActivityRate(getTranslation());
+            _activityTimestamp = timestamp;
+        }
+        return _activityRate;
+    }
+
     /**
      * Sets the reference to the entity that spawned the actor.
      */
@@ -524,17 +548,88 @@ public class ActorLogic extends Logic
         }
     }
 
+    @Override
+    public Object saveState ()
+    {
+        return new Object[] { super.saveState(), saveStates(_handlers) };
+    }
+
+    /**
+     * Restores the state of an actor respawned from its hibernated snapshot, whose handlers have
+     * not been started.  If the actor's handlers changed while the scene was hibernating, they
+     * are started afresh.
+     */
+    @Override
+    public void restoreState (Object state)
+    {
+        Object[] array = (Object[])state;
+        super.restoreState(array[0]);
+        if (!restoreStates(array[1], _handlers)) {
+            log.warning("Actor handlers changed while hibernating.", "actor", _actor);
+            int timestamp = _scenemgr.getTimestamp();
+            for (HandlerLogic handler : _handlers) {
+                handler.startup(timestamp);
+            }
+        }
+    }
+
+    /**
+     * Restores the hibernated snapshot and state of an actor that was recreated (and started) along
+     * with the entry that spawned it.  If the actor's handlers changed while the scene was
+     * hibernating, the actor is left as recreated.
+     */
+    public void restore (Actor snapshot, Object state)
+    {
+        Object[] array = (Object[])state;
+        if (((Object[])array[1]).length != _handlers.length) {
+            log.warning("Actor handlers changed while hibernating.", "actor", _actor);
+            return;
+        }
+
+        // quietly shut down the handlers started on recreation
+        int timestamp = _scenemgr.getTimestamp();
+        for (HandlerLogic handler : _handlers) {
+            handler.shutdown(timestamp, this, true);
+        }
+
+        // bring the actor back to its stored state
+        snapshot.copy(_actor);
+        _actor.init(_scenemgr.getConfigManager());
+        updateShape();
+        updateCollisionFlags();
+        _previousSnapshot = _snapshot = (Actor)_actor.clone();
+        wasUpdated();
+
+        restoreState(state);
+    }
+
     /**
-     * Adds a tick participant to remove the actor.
+     * Releases the actor when the scene hibernates.  Unlike {@link #destroy}, this doesn't run
+     * the shutdown actions or mark the actor object as destroyed.
+     */
+    public void release ()
+    {
+        if (!_destroyed) {
+            _destroyed = true;
+            int timestamp = _scenemgr.getTimestamp();
+            for (HandlerLogic handler : _handlers) {
+                handler.shutdown(timestamp, this, true);
+            }
+            wasDestroyed();
+        }
+        remove();
+    }
+
+    /**
+     * Schedules a timer to remove the actor on the next tick.
      */
     protected void removeOnNextTick ()
     {
-        _scenemgr.addTickParticipant(new TudeySceneManager.TickParticipant() {
-            public boolean tick (int timestamp) {
+        _scenemgr.getTimerWheel().schedule(new TimerWheel.Timer() {
+            public void expired (int timestamp) {
                 remove();
-                return false;
             }
-        });
+        }, _scenemgr.getTimestamp() + 1);
     }
 
     /**
@@ -783,6 +878,12 @@ public class ActorLogic extends Logic
     /** Set when the actor has been destroyed. */
     protected boolean _destroyed;
 
+    /** The activity rate computed on the tick identified by the activity timestamp. */
+    protected float _activityRate = 1f;
+
+    /** The timestamp at which the activity rate was computed. */
+    protected int _activityTimestamp;
+
     /** Used to notify observers when the shape is about to change. */
     protected ObserverList.ObserverOp<ShapeObserver> _shapeWillChangeOp =
         new ObserverList.ObserverOp<ShapeObserver>() {
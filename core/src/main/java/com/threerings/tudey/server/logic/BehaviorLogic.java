@@ -81,8 +81,9 @@ public abstract class BehaviorLogic extends Logic
         @Override
         public void tick (int timestamp)
         {
-            // if scheduled to do so, evaluate
-            if (_agent.canThink() && timestamp >= _nextEvaluation) {
+            // if scheduled to do so (and not dormant), evaluate
+            if (_agent.canThink() && timestamp >= _nextEvaluation &&
+                    _agent.getActivityRate() > 0f) {
                 evaluate();
             }
         }
@@ -107,8 +108,13 @@ public abstract class BehaviorLogic extends Logic
          */
         protected void scheduleNextEvaluation ()
         {
-            _nextEvaluation = _scenemgr.getTimestamp() +
-                (int)(((BehaviorConfig.Evaluating)_config).evaluationInterval.getValue() * 1000f);
+            // evaluate less frequently when running at a reduced rate
+            float interval = ((BehaviorConfig.Evaluating)_config).evaluationInterval.getValue();
+            float rate = _agent.getActivityRate();
+            if (rate > 0f && rate < 1f) {
+                interval /= rate;
+            }
+            _nextEvaluation = _scenemgr.getTimestamp() + (int)(interval * 1000f);
         }
 
         /**
@@ -301,10 +301,11 @@ public abstract class ConditionLogic extends Logic
         protected boolean withinSecond (Vector2f t1)
         {
             ConditionConfig.DistanceWithin config = (ConditionConfig.DistanceWithin)_config;
+            float min2 = config.minimum * config.minimum;
+            float max2 = config.maximum * config.maximum;
             for (int ii = 0, nn = _seconds.size(); ii < nn; ii++) {
                 Vector2f t2 = _seconds.get(ii).getTranslation();
-                if (FloatMath.isWithin(t1.distance(t2), config.minimum, config.maximum) !=
-                        config.allSecond) {
+                if (FloatMath.isWithin(t1.distanceSquared(t2), min2, max2) != config.allSecond) {
                     return !config.allSecond;
                 }
             }
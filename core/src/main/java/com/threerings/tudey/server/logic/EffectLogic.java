@@ -101,6 +101,16 @@ public class EffectLogic extends Logic
         return !_config.targetOnly || _target == pawn;
     }
 
+    /**
+     * Determines whether the effect is visible to all pawns, in which case it may be shared
+     * between clients without consulting {@link #isVisible}.  Subclasses that override
+     * {@link #isVisible} should override this method as well.
+     */
+    public boolean isVisibleToAll ()
+    {
+        return !_config.targetOnly;
+    }
+
     @Override
     public Vector2f getTranslation ()
     {
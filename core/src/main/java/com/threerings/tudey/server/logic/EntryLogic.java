@@ -45,6 +45,8 @@ import com.threerings.tudey.server.TudeySceneManager;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.util.TudeySceneMetrics;
 
+import static com.threerings.tudey.Log.log;
+
 /**
  * A logic object associated with a scene entry.
  */
@@ -273,6 +275,33 @@ public class EntryLogic extends Logic
         }
     }
 
+    @Override
+    public Object saveState ()
+    {
+        return new Object[] { super.saveState(), saveStates(_handlers) };
+    }
+
+    /**
+     * Restores the entry's hibernated state.  The entry's handlers have already been started by
+     * {@link #added}, so they're quietly shut down before their states are restored.  If they
+     * changed while the scene was hibernating, they're left as started.
+     */
+    @Override
+    public void restoreState (Object state)
+    {
+        Object[] array = (Object[])state;
+        super.restoreState(array[0]);
+        if (((Object[])array[1]).length != _handlers.length) {
+            log.warning("Entry handlers changed while hibernating.", "entry", _entry.getKey());
+            return;
+        }
+        int timestamp = _scenemgr.getTimestamp();
+        for (HandlerLogic handler : _handlers) {
+            handler.shutdown(timestamp, this, true);
+        }
+        restoreStates(array[1], _handlers);
+    }
+
     /**
      * Override to perform custom initialization.
      */
@@ -33,8 +33,6 @@ import java.util.Map;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
-import com.samskivert.util.Interval;
-
 import com.threerings.presents.dobj.EntryAddedEvent;
 import com.threerings.presents.dobj.EntryRemovedEvent;
 import com.threerings.presents.dobj.NamedSetAdapter;
@@ -51,6 +49,7 @@ import com.threerings.tudey.config.ParameterizedHandlerConfig;
 import com.threerings.tudey.data.EntityKey;
 import com.threerings.tudey.data.TudeyOccupantInfo;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.TimerWheel;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.shape.ShapeElement;
 
@@ -124,6 +123,25 @@ public abstract class HandlerLogic extends Logic
             }
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), saveStates(getHandlers()) };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            HandlerLogic[] handlers = getHandlers();
+            if (!restoreStates(array[1], handlers)) {
+                for (HandlerLogic handler : handlers) {
+                    handler.startup(_scenemgr.getTimestamp());
+                }
+            }
+        }
+
         @Override
         protected void didInit ()
         {
@@ -151,6 +169,14 @@ public abstract class HandlerLogic extends Logic
             }
         }
 
+        /**
+         * Returns the referred handlers as an array.
+         */
+        protected HandlerLogic[] getHandlers ()
+        {
+            return _handlers.toArray(new HandlerLogic[_handlers.size()]);
+        }
+
         /** Our referred handler. */
         protected List<HandlerLogic> _handlers;
     }
@@ -164,6 +190,13 @@ public abstract class HandlerLogic extends Logic
         // documentation inherited from interface TudeySceneManager.TickParticipant
         public boolean tick (int timestamp)
         {
+            // skip ticks if the source is running at a reduced rate
+            float rate = _source.getActivityRate();
+            if (rate < 1f && (rate <= 0f ||
+                    timestamp - _lastExecuted < _scenemgr.getTickInterval() / rate)) {
+                return true;
+            }
+            _lastExecuted = timestamp;
             execute(timestamp);
             return true;
         }
@@ -181,11 +214,29 @@ public abstract class HandlerLogic extends Logic
             _scenemgr.addTickParticipant(this);
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), _lastExecuted };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            _lastExecuted = (Integer)array[1];
+            _scenemgr.addTickParticipant(this);
+        }
+
         @Override
         public void shutdown (int timestamp, Logic activator, boolean endScene)
         {
             _scenemgr.removeTickParticipant(this);
         }
+
+        /** The timestamp at which we last executed the action. */
+        protected int _lastExecuted;
     }
 
     /**
@@ -196,25 +247,22 @@ public abstract class HandlerLogic extends Logic
         @Override
         public void startup (int timestamp)
         {
-            final HandlerConfig.Timer config = (HandlerConfig.Timer)_config;
+            HandlerConfig.Timer config = (HandlerConfig.Timer)_config;
             _limit = (config.limit == 0) ? Integer.MAX_VALUE : config.limit;
             // offset -> initialDelay: makes offset 0 behave as before and effects negative offsets.
             float initialDelay = Math.max(0f, config.interval + config.offset);
-            (_interval = new Interval(_scenemgr) {
-                public void expired () {
-                    execute(_scenemgr.getTimestamp());
-                    if (--_limit > 0 && _interval != null) {
-                        schedule((long)(config.interval * 1000f));
-                    }
-                }
-            }).schedule((long)(initialDelay * 1000f));
+            _interval = createInterval();
+            _scenemgr.getTimerWheel().schedule(
+                _interval, _scenemgr.getTimestamp() + (int)(initialDelay * 1000f));
         }
 
         @Override
         public void shutdown (int timestamp, Logic activator, boolean endScene)
         {
-            _interval.cancel();
-            _interval = null;
+            if (_interval != null) {
+                _interval.cancel();
+                _interval = null;
+            }
         }
 
         @Override
@@ -226,11 +274,50 @@ public abstract class HandlerLogic extends Logic
             _limit = ((Timer)source)._limit;
         }
 
+        @Override
+        public Object saveState ()
+        {
+            // the expiry is stored as a scene timestamp, which doesn't advance while hibernating
+            Integer expiry = (_interval != null && _interval.isScheduled()) ?
+                _interval.getExpiry() : null;
+            return new Object[] { super.saveState(), _limit, expiry };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            _limit = (Integer)array[1];
+            if (array[2] != null) {
+                _interval = createInterval();
+                _scenemgr.getTimerWheel().schedule(_interval, (Integer)array[2]);
+            }
+        }
+
+        /**
+         * Creates the timer that executes the action and reschedules itself until the limit is
+         * reached.
+         */
+        protected TimerWheel.Timer createInterval ()
+        {
+            final HandlerConfig.Timer config = (HandlerConfig.Timer)_config;
+            return new TimerWheel.Timer() {
+                public void expired (int timestamp) {
+                    execute(timestamp);
+                    if (--_limit > 0 && _interval == this) {
+                        _scenemgr.getTimerWheel().schedule(
+                            this, timestamp + (int)(config.interval * 1000f));
+                    }
+                }
+            };
+        }
+
         /** The number of times remaining to fire. */
         protected int _limit;
 
         /** The timer interval. */
-        protected Interval _interval;
+        protected TimerWheel.Timer _interval;
     }
 
     /**
@@ -242,20 +329,15 @@ public abstract class HandlerLogic extends Logic
         public void startup (int timestamp)
         {
             super.startup(timestamp);
-            final HandlerConfig.WarnTimer config = (HandlerConfig.WarnTimer)_config;
+            HandlerConfig.WarnTimer config = (HandlerConfig.WarnTimer)_config;
             // offset -> initialDelay: makes offset 0 behave as before and effects negative offsets.
             if (config.warn == 0 || config.warn > config.interval) {
                 return;
             }
             float initialDelay = config.interval - config.warn + config.offset;
-            (_warnInterval = new Interval(_scenemgr) {
-                public void expired () {
-                    _warnAction.execute(_scenemgr.getTimestamp(), _source);
-                    if (_limit > 1 && _warnInterval != null) {
-                        schedule((long)(config.interval * 1000f));
-                    }
-                }
-            }).schedule((long)(initialDelay * 1000f));
+            _warnInterval = createWarnInterval();
+            _scenemgr.getTimerWheel().schedule(
+                _warnInterval, _scenemgr.getTimestamp() + (int)(initialDelay * 1000f));
         }
 
         @Override
@@ -277,6 +359,26 @@ public abstract class HandlerLogic extends Logic
             }
         }
 
+        @Override
+        public Object saveState ()
+        {
+            Integer expiry = (_warnInterval != null && _warnInterval.isScheduled()) ?
+                _warnInterval.getExpiry() : null;
+            return new Object[] { super.saveState(), saveStates(_warnAction), expiry };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            restoreStates(array[1], _warnAction);
+            if (array[2] != null) {
+                _warnInterval = createWarnInterval();
+                _scenemgr.getTimerWheel().schedule(_warnInterval, (Integer)array[2]);
+            }
+        }
+
         @Override
         protected void didInit ()
         {
@@ -287,11 +389,28 @@ public abstract class HandlerLogic extends Logic
             }
         }
 
+        /**
+         * Creates the timer that executes the warning action ahead of each interval.
+         */
+        protected TimerWheel.Timer createWarnInterval ()
+        {
+            final HandlerConfig.WarnTimer config = (HandlerConfig.WarnTimer)_config;
+            return new TimerWheel.Timer() {
+                public void expired (int timestamp) {
+                    _warnAction.execute(timestamp, _source);
+                    if (_limit > 1 && _warnInterval == this) {
+                        _scenemgr.getTimerWheel().schedule(
+                            this, timestamp + (int)(config.interval * 1000f));
+                    }
+                }
+            };
+        }
+
         /** The warning action. */
         protected ActionLogic _warnAction;
 
         /** The warning interval. */
-        protected Interval _warnInterval;
+        protected TimerWheel.Timer _warnInterval;
     }
 
     /**
@@ -316,6 +435,20 @@ public abstract class HandlerLogic extends Logic
             _minTimestamp = ((Signal)source)._minTimestamp;
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), _minTimestamp };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            _minTimestamp = (Integer)array[1];
+        }
+
         /** The earliest time at which we may execute. */
         protected int _minTimestamp;
     }
@@ -481,6 +614,13 @@ public abstract class HandlerLogic extends Logic
             startup(0);
         }
 
+        @Override
+        public void restoreState (Object state)
+        {
+            super.restoreState(state);
+            startup(0);
+        }
+
         @Override
         public void shutdown (int timestamp, Logic activator, boolean endScene)
         {
@@ -534,6 +674,20 @@ public abstract class HandlerLogic extends Logic
             _minTimestamp = ((Intersection)source)._minTimestamp;
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), _minTimestamp };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            _minTimestamp = (Integer)array[1];
+        }
+
         /** The earliest time at which we may execute. */
         protected int _minTimestamp;
     }
@@ -643,6 +797,20 @@ public abstract class HandlerLogic extends Logic
             _lastCount = bsource._lastCount;
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), _lastCount };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            _lastCount = (Integer)array[1];
+        }
+
         @Override
         protected void didInit ()
         {
@@ -677,6 +845,20 @@ public abstract class HandlerLogic extends Logic
             }
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), saveStates(_underAction) };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            restoreStates(array[1], _underAction);
+        }
+
         @Override
         protected void didInit ()
         {
@@ -769,6 +951,13 @@ public abstract class HandlerLogic extends Logic
             startup(0);
         }
 
+        @Override
+        public void restoreState (Object state)
+        {
+            super.restoreState(state);
+            startup(0);
+        }
+
         @Override
         public void shutdown (int timestamp, Logic activator, boolean endScene)
         {
@@ -852,6 +1041,13 @@ public abstract class HandlerLogic extends Logic
             startup(0);
         }
 
+        @Override
+        public void restoreState (Object state)
+        {
+            super.restoreState(state);
+            startup(0);
+        }
+
         @Override
         public void shutdown (int timestamp, Logic activator, boolean endScene)
         {
@@ -940,6 +1136,20 @@ public abstract class HandlerLogic extends Logic
             _action.transfer(((ActionHandlerLogic)source)._action, refs);
         }
 
+        @Override
+        public Object saveState ()
+        {
+            return new Object[] { super.saveState(), _action.saveState() };
+        }
+
+        @Override
+        public void restoreState (Object state)
+        {
+            Object[] array = (Object[])state;
+            super.restoreState(array[0]);
+            _action.restoreState(array[1]);
+        }
+
         @Override
         protected void didInit ()
         {
@@ -110,6 +110,15 @@ public abstract class Logic extends ShallowObject
         return true;
     }
 
+    /**
+     * Returns the rate at which this logic's periodic activity (tick handlers, behavior
+     * evaluation) should run relative to the full rate: one for full activity, zero for none.
+     */
+    public float getActivityRate ()
+    {
+        return 1f;
+    }
+
     /**
      * Determines whether this logic object is "visible" to the specified pawn.
      */
@@ -270,6 +279,76 @@ public abstract class Logic extends ShallowObject
         _variables = (source._variables == null) ? null : Maps.newHashMap(source._variables);
     }
 
+    /**
+     * Returns the state to store while the scene hibernates, or <code>null</code> if there is
+     * none.  The state may contain only objects that the scene can stream: boxed primitives,
+     * strings, arrays and streamable objects.
+     */
+    public Object saveState ()
+    {
+        if (_variables == null || _variables.isEmpty()) {
+            return null;
+        }
+        String[] names = _variables.keySet().toArray(new String[_variables.size()]);
+        Object[] values = new Object[names.length];
+        for (int ii = 0; ii < names.length; ii++) {
+            values[ii] = _variables.get(names[ii]);
+        }
+        return new Object[] { names, values };
+    }
+
+    /**
+     * Restores the state returned by {@link #saveState} when the scene wakes from hibernation.
+     * As with {@link #transfer}, this also takes the place of addition/startup notification
+     * where relevant.
+     */
+    public void restoreState (Object state)
+    {
+        if (state == null) {
+            _variables = null;
+            return;
+        }
+        Object[] array = (Object[])state;
+        String[] names = (String[])array[0];
+        Object[] values = (Object[])array[1];
+        _variables = Maps.newHashMap();
+        for (int ii = 0; ii < names.length; ii++) {
+            _variables.put(names[ii], values[ii]);
+        }
+    }
+
+    /**
+     * Returns the states of the supplied logics (any of which may be <code>null</code>).
+     */
+    protected static Object[] saveStates (Logic... logics)
+    {
+        Object[] states = new Object[logics.length];
+        for (int ii = 0; ii < logics.length; ii++) {
+            states[ii] = (logics[ii] == null) ? null : logics[ii].saveState();
+        }
+        return states;
+    }
+
+    /**
+     * Restores the states returned by {@link #saveStates}.
+     *
+     * @return false if the number of states doesn't match the number of logics (because the
+     * configuration changed while the scene was hibernating), in which case nothing is restored.
+     */
+    protected static boolean restoreStates (Object states, Logic... logics)
+    {
+        Object[] array = (Object[])states;
+        if (array.length != logics.length) {
+            return false;
+        }
+        for (int ii = 0; ii < logics.length; ii++) {
+            if (logics[ii] != null) {
+                logics[ii].restoreState(array[ii]);
+            }
+        }
+        return true;
+    }
+
     /**
      * Creates a handler with the supplied configuration and source.
      */
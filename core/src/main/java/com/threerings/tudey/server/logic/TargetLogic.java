@@ -28,13 +28,11 @@ package com.threerings.tudey.server.logic;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Map;
 
 import com.google.common.collect.Lists;
 
 import com.samskivert.util.CollectionUtil;
-import com.samskivert.util.QuickSort;
 import com.samskivert.util.Randoms;
 
 import com.threerings.math.Vector2f;
@@ -283,7 +281,6 @@ public abstract class TargetLogic extends Logic
      * Superclass of the distance-based subsets.
      */
     public static abstract class DistanceSubset extends Subset
-        implements Comparator<Logic>
     {
         @Override
         protected void didInit ()
@@ -302,6 +299,10 @@ public abstract class TargetLogic extends Logic
         @Override
         protected void selectSubset (int size, Logic activator, Collection<Logic> results)
         {
+            if (size <= 0) {
+                return;
+            }
+
             // average the locations
             _location.resolve(activator, _locations);
             int nlocs = _locations.size();
@@ -312,11 +313,84 @@ public abstract class TargetLogic extends Logic
             _reference.multLocal(1f / nlocs);
             _locations.clear();
 
-            // sort
-            QuickSort.sort(_targets, this);
+            // keep the best candidates in a heap whose root is the worst of them, so that each
+            // remaining target need only be compared against the root
+            int ntargets = _targets.size();
+            if (_keys.length < size) {
+                _keys = new float[Math.max(size, _keys.length * 2)];
+                _heap = new Logic[_keys.length];
+            }
+            float sign = getSign();
+            for (int ii = 0; ii < ntargets; ii++) {
+                Logic target = _targets.get(ii);
+                float key = sign * target.getTranslation().distanceSquared(_reference);
+                if (ii < size) {
+                    siftUp(ii, target, key);
+                } else if (key < _keys[0]) {
+                    siftDown(size, target, key);
+                }
+            }
 
-            // add first size elements
-            results.addAll(_targets.subList(0, size));
+            // sort the heap in place and add the selected targets in order
+            for (int ii = size - 1; ii > 0; ii--) {
+                Logic target = _heap[0];
+                float key = _keys[0];
+                siftDown(ii, _heap[ii], _keys[ii]);
+                _heap[ii] = target;
+                _keys[ii] = key;
+            }
+            for (int ii = 0; ii < size; ii++) {
+                results.add(_heap[ii]);
+                _heap[ii] = null;
+            }
+        }
+
+        /**
+         * Returns the sign to apply to squared distances such that smaller keys are preferred.
+         */
+        protected abstract float getSign ();
+
+        /**
+         * Adds a target to the end of the heap and moves it up to its proper position.
+         */
+        protected void siftUp (int idx, Logic target, float key)
+        {
+            while (idx > 0) {
+                int parent = (idx - 1) / 2;
+                if (_keys[parent] >= key) {
+                    break;
+                }
+                _keys[idx] = _keys[parent];
+                _heap[idx] = _heap[parent];
+                idx = parent;
+            }
+            _keys[idx] = key;
+            _heap[idx] = target;
+        }
+
+        /**
+         * Replaces the root of the heap and moves the new target down to its proper position.
+         */
+        protected void siftDown (int size, Logic target, float key)
+        {
+            int idx = 0;
+            while (true) {
+                int child = idx*2 + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && _keys[child + 1] > _keys[child]) {
+                    child++;
+                }
+                if (_keys[child] <= key) {
+                    break;
+                }
+                _keys[idx] = _keys[child];
+                _heap[idx] = _heap[child];
+                idx = child;
+            }
+            _keys[idx] = key;
+            _heap[idx] = target;
         }
 
         /** The reference location. */
@@ -327,6 +401,12 @@ public abstract class TargetLogic extends Logic
 
         /** Holds the reference point. */
         protected Vector2f _reference = new Vector2f();
+
+        /** The keys of the targets in the selection heap. */
+        protected float[] _keys = new float[4];
+
+        /** The selection heap. */
+        protected Logic[] _heap = new Logic[4];
     }
 
     /**
@@ -334,12 +414,10 @@ public abstract class TargetLogic extends Logic
      */
     public static class NearestSubset extends DistanceSubset
     {
-        // documentation inherited from interface Comparator
-        public int compare (Logic l1, Logic l2)
+        @Override
+        protected float getSign ()
         {
-            return Float.compare(
-                l1.getTranslation().distance(_reference),
-                l2.getTranslation().distance(_reference));
+            return 1f;
         }
     }
 
@@ -348,12 +426,10 @@ public abstract class TargetLogic extends Logic
      */
     public static class FarthestSubset extends DistanceSubset
     {
-        // documentation inherited from interface Comparator
-        public int compare (Logic l1, Logic l2)
+        @Override
+        protected float getSign ()
         {
-            return Float.compare(
-                l2.getTranslation().distance(_reference),
-                l1.getTranslation().distance(_reference));
+            return -1f;
         }
     }
 
@@ -0,0 +1,352 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntMaps;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Rect;
+
+import com.threerings.tudey.data.effect.Effect;
+import com.threerings.tudey.server.logic.EffectLogic;
+import com.threerings.tudey.server.logic.PawnLogic;
+import com.threerings.tudey.util.Coord;
+
+/**
+ * Buckets the effects fired on a single tick into a coarse grid so that clients need only
+ * consider the effects in the cells that their areas of interest overlap.  Effects visible to
+ * all pawns are shared between clients: each cell (and each distinct range of cells) maps to a
+ * single array that is returned to every client whose bounds cover the same cells.  Effects
+ * visible only to specific pawns and effects too large to bucket are kept aside and tested
+ * individually.  Since the shared effects are selected by cell, the results may include effects
+ * that don't quite intersect the query bounds, but they're always in the order fired.
+ */
+public class EffectGrid
+{
+    /**
+     * Creates a new grid with the specified cell size.
+     */
+    public EffectGrid (float cellSize)
+    {
+        _cellSize = cellSize;
+    }
+
+    /**
+     * Adds an effect to the grid.
+     */
+    public void add (EffectLogic logic)
+    {
+        int index = _fired.size();
+        _fired.add(logic.getEffect());
+        Rect bounds = logic.getShape().getBounds();
+        int minx = getCell(bounds.getMinimumExtent().x);
+        int miny = getCell(bounds.getMinimumExtent().y);
+        int maxx = getCell(bounds.getMaximumExtent().x);
+        int maxy = getCell(bounds.getMaximumExtent().y);
+        if (!logic.isVisibleToAll() ||
+                (long)(maxx - minx + 1) * (maxy - miny + 1) > MAX_EFFECT_CELLS) {
+            int icount = _individual.size();
+            if (icount == _individualIndices.length) {
+                _individualIndices = Arrays.copyOf(_individualIndices, icount * 2);
+            }
+            _individualIndices[icount] = index;
+            _individual.add(logic);
+            return;
+        }
+        for (int yy = miny; yy <= maxy; yy++) {
+            for (int xx = minx; xx <= maxx; xx++) {
+                int key = Coord.encode(xx, yy);
+                Cell cell = _cells.get(key);
+                if (cell == null) {
+                    _cells.put(key, cell = new Cell(xx, yy));
+                    _cellList.add(cell);
+                }
+                cell.add(index);
+            }
+        }
+        _bucketed = true;
+        _ranges.clear();
+    }
+
+    /**
+     * Returns an array containing all effects in the cells overlapping the provided bounds that
+     * are visible to the specified target, in the order in which they were added.  The returned
+     * array may be shared with other callers and must not be modified.
+     */
+    public Effect[] get (PawnLogic target, Rect bounds)
+    {
+        int minx = getCell(bounds.getMinimumExtent().x);
+        int miny = getCell(bounds.getMinimumExtent().y);
+        int maxx = getCell(bounds.getMaximumExtent().x);
+        int maxy = getCell(bounds.getMaximumExtent().y);
+        Shared shared = getShared(minx, miny, maxx, maxy);
+
+        // find any individual effects that apply to this client
+        int count = 0;
+        for (int ii = 0, nn = _individual.size(); ii < nn; ii++) {
+            EffectLogic logic = _individual.get(ii);
+            if (logic.getShape().getBounds().intersects(bounds) &&
+                    (target == null || logic.isVisible(target))) {
+                if (count == _matched.length) {
+                    _matched = Arrays.copyOf(_matched, count * 2);
+                }
+                _matched[count++] = _individualIndices[ii];
+            }
+        }
+        if (count == 0) {
+            return shared.effects;
+        }
+
+        // merge them with the shared effects in the order fired
+        int[] indices = shared.indices;
+        Effect[] array = new Effect[indices.length + count];
+        for (int ii = 0, sidx = 0, midx = 0; ii < array.length; ii++) {
+            array[ii] = (midx == count || (sidx < indices.length && indices[sidx] < _matched[midx]))
+                ? shared.effects[sidx++]
+                : _fired.get(_matched[midx++]);
+        }
+        return array;
+    }
+
+    /**
+     * Clears the grid in preparation for the next tick.
+     */
+    public void clear ()
+    {
+        _fired.clear();
+        _cells.clear();
+        _cellList.clear();
+        _ranges.clear();
+        _individual.clear();
+        _bucketed = false;
+    }
+
+    /**
+     * Returns the shared effects in the specified range of cells.
+     */
+    protected Shared getShared (int minx, int miny, int maxx, int maxy)
+    {
+        if (!_bucketed) {
+            return NO_SHARED;
+        }
+        if (minx == maxx && miny == maxy) {
+            Cell cell = _cells.get(Coord.encode(minx, miny));
+            return (cell == null) ? NO_SHARED : cell.getShared(_fired);
+        }
+        Long rkey = ((long)Coord.encode(minx, miny) << 32) |
+            (Coord.encode(maxx, maxy) & 0xFFFFFFFFL);
+        Shared shared = _ranges.get(rkey);
+        if (shared != null) {
+            return shared;
+        }
+
+        // merge the cells' contents, skipping effects that we've already added; if the range
+        // covers more cells than are occupied, it's cheaper to check the occupied cells
+        if (_added.length < _fired.size()) {
+            _added = new boolean[Math.max(_fired.size(), _added.length * 2)];
+        }
+        int count = 0;
+        if ((long)(maxx - minx + 1) * (maxy - miny + 1) > _cellList.size()) {
+            for (int ii = 0, nn = _cellList.size(); ii < nn; ii++) {
+                Cell cell = _cellList.get(ii);
+                if (cell.x >= minx && cell.x <= maxx && cell.y >= miny && cell.y <= maxy) {
+                    count = merge(cell, count);
+                }
+            }
+        } else {
+            for (int yy = miny; yy <= maxy; yy++) {
+                for (int xx = minx; xx <= maxx; xx++) {
+                    Cell cell = _cells.get(Coord.encode(xx, yy));
+                    if (cell != null) {
+                        count = merge(cell, count);
+                    }
+                }
+            }
+        }
+        for (int ii = 0; ii < count; ii++) {
+            _added[_merged[ii]] = false;
+        }
+
+        // restore the order in which the effects were fired
+        Arrays.sort(_merged, 0, count);
+        _ranges.put(rkey, shared = (count == 0) ? NO_SHARED : new Shared(
+            Arrays.copyOf(_merged, count), _fired));
+        return shared;
+    }
+
+    /**
+     * Adds the indices of the effects in the specified cell that haven't yet been added to the
+     * merged list.
+     *
+     * @return the new number of merged indices.
+     */
+    protected int merge (Cell cell, int count)
+    {
+        for (int ii = 0; ii < cell.count; ii++) {
+            int index = cell.indices[ii];
+            if (!_added[index]) {
+                _added[index] = true;
+                if (count == _merged.length) {
+                    _merged = Arrays.copyOf(_merged, count * 2);
+                }
+                _merged[count++] = index;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the cell coordinate corresponding to the given world coordinate, clamped to the
+     * range that can be encoded in a {@link Coord} so that distant and unbounded extents neither
+     * alias other cells nor overflow.
+     */
+    protected int getCell (float value)
+    {
+        return (int)FloatMath.clamp(
+            FloatMath.floor(value / _cellSize), Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    /**
+     * A shared array of effects along with their indices in the fired list.
+     */
+    protected static class Shared
+    {
+        /** The indices of the effects, in ascending order. */
+        public final int[] indices;
+
+        /** The effects themselves. */
+        public final Effect[] effects;
+
+        /**
+         * Creates a new shared array for the specified indices.
+         */
+        public Shared (int[] indices, List<Effect> fired)
+        {
+            this.indices = indices;
+            effects = new Effect[indices.length];
+            for (int ii = 0; ii < indices.length; ii++) {
+                effects[ii] = fired.get(indices[ii]);
+            }
+        }
+    }
+
+    /**
+     * The contents of a single cell.
+     */
+    protected static class Cell
+    {
+        /** The coordinates of the cell. */
+        public final int x, y;
+
+        /** The indices of the effects in the cell, in the order added. */
+        public int[] indices = new int[4];
+
+        /** The number of effects in the cell. */
+        public int count;
+
+        /**
+         * Creates a new cell at the specified coordinates.
+         */
+        public Cell (int x, int y)
+        {
+            this.x = x;
+            this.y = y;
+        }
+
+        /**
+         * Adds an effect to the cell.
+         */
+        public void add (int index)
+        {
+            if (count == indices.length) {
+                indices = Arrays.copyOf(indices, count * 2);
+            }
+            indices[count++] = index;
+            _shared = null;
+        }
+
+        /**
+         * Returns the shared effects in the cell.
+         */
+        public Shared getShared (List<Effect> fired)
+        {
+            if (_shared == null) {
+                _shared = new Shared(Arrays.copyOf(indices, count), fired);
+            }
+            return _shared;
+        }
+
+        /** The shared effects, created on demand. */
+        protected Shared _shared;
+    }
+
+    /** The size of the grid cells. */
+    protected float _cellSize;
+
+    /** All effects added since the last clear, in order. */
+    protected List<Effect> _fired = Lists.newArrayList();
+
+    /** The cells containing effects, mapped by encoded coordinates. */
+    protected HashIntMap<Cell> _cells = IntMaps.newHashIntMap();
+
+    /** The occupied cells in order of creation. */
+    protected List<Cell> _cellList = Lists.newArrayList();
+
+    /** Shared effects for ranges of more than one cell, mapped by encoded corners. */
+    protected HashMap<Long, Shared> _ranges = Maps.newHashMap();
+
+    /** Effects tested individually for each query. */
+    protected List<EffectLogic> _individual = Lists.newArrayList();
+
+    /** The indices of the individual effects in the fired list. */
+    protected int[] _individualIndices = new int[16];
+
+    /** Whether any effects have been added to the cells. */
+    protected boolean _bucketed;
+
+    /** Flags effects already merged into a range. */
+    protected boolean[] _added = new boolean[16];
+
+    /** Holds the indices of merged effects during range queries. */
+    protected int[] _merged = new int[16];
+
+    /** Holds the indices of matching individual effects during queries. */
+    protected int[] _matched = new int[16];
+
+    /** The maximum number of cells that a bucketed effect may cover. */
+    protected static final int MAX_EFFECT_CELLS = 64;
+
+    /** The shared result when there are no effects. */
+    protected static final Shared NO_SHARED = new Shared(new int[0], null);
+}
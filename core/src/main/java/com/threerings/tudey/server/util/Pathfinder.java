@@ -27,9 +27,14 @@ package com.threerings.tudey.server.util;
 
 import java.awt.Point;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
@@ -182,7 +187,7 @@ public class Pathfinder
     // documentation inherited from interface TudeySceneManager.ActorObserver
     public void actorAdded (ActorLogic logic)
     {
-        addFlags(logic);
+        _dirtyActors.add(logic);
         logic.addShapeObserver(this);
         logic.addCollisionFlagObserver(this);
     }
@@ -190,7 +195,11 @@ public class Pathfinder
     // documentation inherited from interface TudeySceneManager.ActorObserver
     public void actorRemoved (ActorLogic logic)
     {
-        removeFlags(logic);
+        _dirtyActors.remove(logic);
+        Footprint footprint = _footprints.remove(logic);
+        if (footprint != null) {
+            removeFootprint(footprint);
+        }
         logic.removeShapeObserver(this);
         logic.removeCollisionFlagObserver(this);
     }
@@ -198,66 +207,47 @@ public class Pathfinder
     // documentation inherited from Logic.ShapeObserver
     public void shapeWillChange (Logic logic)
     {
-        removeFlags((ActorLogic)logic);
+        // the applied footprint is retained until the actor flags are next updated
     }
 
     // documentation inherited from Logic.ShapeObserver
     public void shapeDidChange (Logic logic)
     {
-        addFlags((ActorLogic)logic);
+        _dirtyActors.add((ActorLogic)logic);
     }
 
     // documentation inherited from interface ActorLogic.CollisionFlagObserver
     public void collisionFlagsChanged (ActorLogic logic, int oflags)
     {
-        int nflags = logic.getCollisionFlags();
-        Shape shape = logic.getShape();
-        Rect bounds = shape.getBounds();
-        Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
-        int minx = FloatMath.ifloor(min.x);
-        int maxx = FloatMath.ifloor(max.x);
-        int miny = FloatMath.ifloor(min.y);
-        int maxy = FloatMath.ifloor(max.y);
-        for (int yy = miny; yy <= maxy; yy++) {
-            for (int xx = minx; xx <= maxx; xx++) {
-                for (int ys = 0; ys < SUBDIVISION; ys++) {
-                    for (int xs = 0; xs < SUBDIVISION; xs++) {
-                        updateQuadSubdivision(xx, yy, xs, ys);
-                        if (shape.intersects(_quad)) {
-                            // remove an entry from the flag list
-                            int sx = xx * SUBDIVISION + xs;
-                            int sy = yy * SUBDIVISION + ys;
-                            int coord = Coord.encode(sx, sy);
-                            List<Integer> list = _actorFlagLists.get(coord);
-                            if (oflags != 0 && list != null) {
-                                list.remove((Integer)oflags);
-                            }
-                            if (nflags != 0) {
-                                if (list == null) {
-                                    _actorFlagLists.put(coord,
-                                        list = Lists.newArrayListWithCapacity(1));
-                                }
-                                list.add(nflags);
-                            }
-                            if (list == null) {
-                                continue;
-                            }
-                            int nsize = list.size();
-                            if (nsize == 0) {
-                                _actorFlagLists.remove(coord);
-                                _actorFlags.remove(sx, sy);
-                                continue;
-                            }
-                            int combined = 0;
-                            for (int ii = 0; ii < nsize; ii++) {
-                                combined |= list.get(ii);
-                            }
-                            _actorFlags.put(sx, sy, combined);
-                        }
-                    }
-                }
+        _dirtyActors.add(logic);
+    }
+
+    /**
+     * Brings the actor flags up to date by replacing the footprints of all actors whose shapes
+     * or flags have changed since the last update.  This is called automatically before
+     * computing paths that consider actors, so that an actor moving several times between
+     * queries is only rasterized once.
+     */
+    public void updateActorFlags ()
+    {
+        if (_dirtyActors.isEmpty()) {
+            return;
+        }
+        for (ActorLogic logic : _dirtyActors) {
+            Footprint footprint = _footprints.remove(logic);
+            if (footprint != null) {
+                removeFootprint(footprint);
+            }
+            if (logic.isRemoved()) {
+                continue;
+            }
+            footprint = createFootprint(logic.getShape(), logic.getCollisionFlags());
+            if (footprint != null) {
+                addFootprint(footprint);
+                _footprints.put(logic, footprint);
             }
         }
+        _dirtyActors.clear();
     }
 
     /**
@@ -360,10 +350,15 @@ public class Pathfinder
 
         // if the actor is in the space and can collide with its own flags,
         // remove them before we compute the path
-        boolean remove = (!logic.isRemoved() && collideActor &&
-            actor.canCollide(logic.getCollisionFlags()));
-        if (remove) {
-            removeFlags(logic);
+        Footprint footprint = null;
+        if (collideActor) {
+            updateActorFlags();
+            if (!logic.isRemoved() && actor.canCollide(logic.getCollisionFlags())) {
+                footprint = _footprints.get(logic);
+            }
+        }
+        if (footprint != null) {
+            removeFootprint(footprint);
         }
 
         // compute the path
@@ -372,8 +367,8 @@ public class Pathfinder
             Math.round(bx - xoff), Math.round(by - yoff), partial);
 
         // add the flags back if we removed them
-        if (remove) {
-            addFlags(logic);
+        if (footprint != null) {
+            addFootprint(footprint);
         }
 
         // convert to fractional coordinates
@@ -432,7 +427,7 @@ public class Pathfinder
             ConfigManager cfgmgr = _scenemgr.getConfigManager();
             Shape shape = entry.createShape(cfgmgr);
             if (shape != null) {
-                addFlags(shape, entry.getCollisionFlags(cfgmgr), true);
+                addFlags(shape, entry.getCollisionFlags(cfgmgr));
             }
             return;
         }
@@ -458,7 +453,7 @@ public class Pathfinder
             ConfigManager cfgmgr = _scenemgr.getConfigManager();
             Shape shape = entry.createShape(cfgmgr);
             if (shape != null) {
-                removeFlags(shape, entry.getCollisionFlags(cfgmgr), true, null);
+                removeFlags(shape, entry.getCollisionFlags(cfgmgr), null);
             }
             return;
         }
@@ -477,25 +472,33 @@ public class Pathfinder
     }
 
     /**
-     * Adds the flags for the specified actor.
-     */
-    protected void addFlags (ActorLogic logic)
-    {
-        addFlags(logic.getShape(), logic.getCollisionFlags(), false);
-    }
-
-    /**
-     * Removes the flags for the specified actor.
+     * Adds the specified entry flags to the flag map.
      */
-    protected void removeFlags (ActorLogic logic)
+    protected void addFlags (Shape shape, int flags)
     {
-        removeFlags(logic.getShape(), logic.getCollisionFlags(), false, logic.getShapeElement());
+        if (flags == 0) {
+            return; // nothing to do
+        }
+        Rect bounds = shape.getBounds();
+        Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+        int minx = FloatMath.ifloor(min.x);
+        int maxx = FloatMath.ifloor(max.x);
+        int miny = FloatMath.ifloor(min.y);
+        int maxy = FloatMath.ifloor(max.y);
+        for (int yy = miny; yy <= maxy; yy++) {
+            for (int xx = minx; xx <= maxx; xx++) {
+                updateQuad(xx, yy);
+                if (shape.intersects(_quad)) {
+                    _entryFlags.setBits(xx, yy, flags);
+                }
+            }
+        }
     }
 
     /**
-     * Adds the specified flags to the flag map(s).
+     * Removes the entry flags for the specified shape.
      */
-    protected void addFlags (Shape shape, int flags, boolean entry)
+    protected void removeFlags (Shape shape, int flags, SpaceElement skip)
     {
         if (flags == 0) {
             return; // nothing to do
@@ -508,44 +511,23 @@ public class Pathfinder
         int maxy = FloatMath.ifloor(max.y);
         for (int yy = miny; yy <= maxy; yy++) {
             for (int xx = minx; xx <= maxx; xx++) {
-                if (entry) {
-                    updateQuad(xx, yy);
-                    if (shape.intersects(_quad)) {
-                        _entryFlags.setBits(xx, yy, flags);
-                    }
-                } else {
-                    for (int ys = 0; ys < SUBDIVISION; ys++) {
-                        for (int xs = 0; xs < SUBDIVISION; xs++) {
-                            updateQuadSubdivision(xx, yy, xs, ys);
-                            if (shape.intersects(_quad)) {
-                                // set the bits in the combined flags
-                                int sx = xx * SUBDIVISION + xs;
-                                int sy = yy * SUBDIVISION + ys;
-                                _actorFlags.setBits(sx, sy, flags);
-
-                                // add an entry to the list of separate flags
-                                int coord = Coord.encode(sx, sy);
-                                List<Integer> list = _actorFlagLists.get(coord);
-                                if (list == null) {
-                                    _actorFlagLists.put(coord,
-                                        list = Lists.newArrayListWithCapacity(1));
-                                }
-                                list.add(flags);
-                            }
-                        }
-                    }
+                updateQuad(xx, yy);
+                if (shape.intersects(_quad)) {
+                    updateEntryFlags(xx, yy, skip);
                 }
             }
         }
     }
 
     /**
-     * Removes the flags for the specified shape.
+     * Rasterizes the specified actor shape into the subdivided cells that it covers.
+     *
+     * @return the new footprint, or null if the flags are empty.
      */
-    protected void removeFlags (Shape shape, int flags, boolean entry, SpaceElement skip)
+    protected Footprint createFootprint (Shape shape, int flags)
     {
         if (flags == 0) {
-            return; // nothing to do
+            return null;
         }
         Rect bounds = shape.getBounds();
         Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
@@ -553,44 +535,97 @@ public class Pathfinder
         int maxx = FloatMath.ifloor(max.x);
         int miny = FloatMath.ifloor(min.y);
         int maxy = FloatMath.ifloor(max.y);
+        int count = 0;
         for (int yy = miny; yy <= maxy; yy++) {
             for (int xx = minx; xx <= maxx; xx++) {
-                if (entry) {
-                    updateQuad(xx, yy);
-                    if (shape.intersects(_quad)) {
-                        updateEntryFlags(xx, yy, skip);
-                    }
-                } else {
-                    for (int ys = 0; ys < SUBDIVISION; ys++) {
-                        for (int xs = 0; xs < SUBDIVISION; xs++) {
-                            updateQuadSubdivision(xx, yy, xs, ys);
-                            if (shape.intersects(_quad)) {
-                                // remove an entry from the flag list
-                                int sx = xx * SUBDIVISION + xs;
-                                int sy = yy * SUBDIVISION + ys;
-                                int coord = Coord.encode(sx, sy);
-                                List<Integer> list = _actorFlagLists.get(coord);
-                                if (list == null) {
-                                    continue;
-                                }
-                                list.remove((Integer)flags);
-                                int nsize = list.size();
-                                if (nsize == 0) {
-                                    _actorFlagLists.remove(coord);
-                                    _actorFlags.remove(sx, sy);
-                                    continue;
-                                }
-                                int combined = 0;
-                                for (int ii = 0; ii < nsize; ii++) {
-                                    combined |= list.get(ii);
-                                }
-                                _actorFlags.put(sx, sy, combined);
+                for (int ys = 0; ys < SUBDIVISION; ys++) {
+                    for (int xs = 0; xs < SUBDIVISION; xs++) {
+                        updateQuadSubdivision(xx, yy, xs, ys);
+                        if (shape.intersects(_quad)) {
+                            if (count == _cells.length) {
+                                _cells = Arrays.copyOf(_cells, count * 2);
                             }
+                            _cells[count++] = Coord.encode(
+                                xx * SUBDIVISION + xs, yy * SUBDIVISION + ys);
                         }
                     }
                 }
             }
         }
+        return new Footprint(flags, Arrays.copyOf(_cells, count));
+    }
+
+    /**
+     * Adds a footprint's flags to the actor flags.
+     */
+    protected void addFootprint (Footprint footprint)
+    {
+        int flags = footprint.flags;
+        for (int coord : footprint.cells) {
+            int[] counts = _actorFlagCounts.get(coord);
+            if (counts == null) {
+                _actorFlagCounts.put(coord, new int[] { flags, 1 });
+            } else {
+                int idx = getCountIndex(counts, flags);
+                if (idx == -1) {
+                    counts = Arrays.copyOf(counts, counts.length + 2);
+                    counts[counts.length - 2] = flags;
+                    counts[counts.length - 1] = 1;
+                    _actorFlagCounts.put(coord, counts);
+                } else {
+                    counts[idx + 1]++;
+                }
+            }
+            _actorFlags.setBits(Coord.decodeX(coord), Coord.decodeY(coord), flags);
+        }
+    }
+
+    /**
+     * Removes a footprint's flags from the actor flags.
+     */
+    protected void removeFootprint (Footprint footprint)
+    {
+        int flags = footprint.flags;
+        for (int coord : footprint.cells) {
+            int[] counts = _actorFlagCounts.get(coord);
+            int idx = (counts == null) ? -1 : getCountIndex(counts, flags);
+            if (idx == -1) {
+                continue;
+            }
+            int sx = Coord.decodeX(coord), sy = Coord.decodeY(coord);
+            if (--counts[idx + 1] > 0) {
+                continue;
+            }
+            if (counts.length == 2) {
+                _actorFlagCounts.remove(coord);
+                _actorFlags.remove(sx, sy);
+                continue;
+            }
+            // remove the pair and recombine the remaining flags
+            int[] ncounts = new int[counts.length - 2];
+            System.arraycopy(counts, 0, ncounts, 0, idx);
+            System.arraycopy(counts, idx + 2, ncounts, idx, ncounts.length - idx);
+            _actorFlagCounts.put(coord, ncounts);
+            int combined = 0;
+            for (int ii = 0; ii < ncounts.length; ii += 2) {
+                combined |= ncounts[ii];
+            }
+            _actorFlags.put(sx, sy, combined);
+        }
+    }
+
+    /**
+     * Returns the index of the specified flags in the given array of flag/count pairs, or -1 if
+     * not present.
+     */
+    protected static int getCountIndex (int[] counts, int flags)
+    {
+        for (int ii = 0; ii < counts.length; ii += 2) {
+            if (counts[ii] == flags) {
+                return ii;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -621,12 +656,7 @@ public class Pathfinder
         ly += FloatMath.EPSILON * 2;
         ux -= FloatMath.EPSILON * 2;
         uy -= FloatMath.EPSILON * 2;
-        _quad.getVertex(0).set(lx, ly);
-        _quad.getVertex(1).set(ux, ly);
-        _quad.getVertex(2).set(ux, uy);
-        _quad.getVertex(3).set(lx, uy);
-        _quad.getBounds().getMinimumExtent().set(lx, ly);
-        _quad.getBounds().getMaximumExtent().set(ux, uy);
+        _quad.setToRect(lx, ly, ux, uy);
     }
 
     /**
@@ -653,6 +683,24 @@ public class Pathfinder
         _entryFlags.put(x, y, flags);
     }
 
+    /**
+     * The set of subdivided cells covered by an actor, as applied to the actor flags.
+     */
+    protected static class Footprint
+    {
+        /** The actor's collision flags. */
+        public final int flags;
+
+        /** The encoded coordinates of the covered cells. */
+        public final int[] cells;
+
+        public Footprint (int flags, int[] cells)
+        {
+            this.flags = flags;
+            this.cells = cells;
+        }
+    }
+
     /** The owning scene manager. */
     protected TudeySceneManager _scenemgr;
 
@@ -662,8 +710,17 @@ public class Pathfinder
     /** The collision flags corresponding to the scene entries and the actors. */
     protected CoordIntMap _actorFlags = new CoordIntMap(3, 0);
 
-    /** Maps encoded coordinates to lists of separate sets of actor flags. */
-    protected IntMap<List<Integer>> _actorFlagLists = IntMaps.newHashIntMap();
+    /** Maps encoded coordinates to pairs of distinct actor flags and their reference counts. */
+    protected IntMap<int[]> _actorFlagCounts = IntMaps.newHashIntMap();
+
+    /** The footprints currently applied to the actor flags. */
+    protected Map<ActorLogic, Footprint> _footprints = Maps.newHashMap();
+
+    /** Actors whose footprints must be updated before the actor flags are next used. */
+    protected Set<ActorLogic> _dirtyActors = Sets.newHashSet();
+
+    /** Holds cell coordinates during rasterization. */
+    protected int[] _cells = new int[16];
 
     /** Used to store tile shapes for intersecting testing. */
     protected Polygon _quad = new Polygon(4);
@@ -0,0 +1,231 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * A hashed timing wheel that schedules timers against scene timestamps.  Timers are stored in
+ * doubly linked lists hashed by expiry time, so scheduling and cancellation take constant time,
+ * and advancing the wheel only examines the slots covering the elapsed interval.  Timers whose
+ * expiry lies more than one revolution ahead simply remain in their slots until their time
+ * comes around.
+ */
+public class TimerWheel
+{
+    /**
+     * Base class for timers.
+     */
+    public static abstract class Timer
+    {
+        /**
+         * Checks whether the timer is currently scheduled.
+         */
+        public boolean isScheduled ()
+        {
+            return _wheel != null;
+        }
+
+        /**
+         * Returns the timestamp at which the timer is (or was last) scheduled to expire.
+         */
+        public int getExpiry ()
+        {
+            return _expiry;
+        }
+
+        /**
+         * Cancels the timer, if it is scheduled or has expired but has yet to fire.
+         */
+        public void cancel ()
+        {
+            if (_wheel != null) {
+                _wheel.remove(this);
+            }
+            _cancelled = true;
+        }
+
+        /**
+         * Called when the timer expires.
+         *
+         * @param timestamp the timestamp of the tick on which the timer expired.
+         */
+        public abstract void expired (int timestamp);
+
+        /** The wheel in which the timer is scheduled, if any. */
+        protected TimerWheel _wheel;
+
+        /** The slot in which the timer is stored. */
+        protected int _slot;
+
+        /** The scheduled expiry time. */
+        protected int _expiry;
+
+        /** The previous and next timers in the slot. */
+        protected Timer _prev, _next;
+
+        /** Set when the timer is cancelled after expiring but before firing. */
+        protected boolean _cancelled;
+    }
+
+    /**
+     * Creates a new wheel.
+     *
+     * @param resolution the interval (in milliseconds) covered by each slot.
+     * @param slots the number of slots, which must be a power of two.
+     */
+    public TimerWheel (int resolution, int slots)
+    {
+        _resolution = resolution;
+        _slots = new Timer[slots];
+        _mask = slots - 1;
+    }
+
+    /**
+     * Schedules a timer to expire on the first call to {@link #advance} with a timestamp at or
+     * after the specified expiry, rescheduling it if it is already scheduled.
+     */
+    public void schedule (Timer timer, int expiry)
+    {
+        if (timer._wheel != null) {
+            timer._wheel.remove(timer);
+        }
+        timer._wheel = this;
+        timer._expiry = expiry;
+        int slot = timer._slot = (Math.max(expiry, _time) / _resolution) & _mask;
+        Timer head = _slots[slot];
+        timer._prev = null;
+        timer._next = head;
+        if (head != null) {
+            head._prev = timer;
+        }
+        _slots[slot] = timer;
+        _size++;
+    }
+
+    /**
+     * Returns the number of timers currently scheduled.
+     */
+    public int size ()
+    {
+        return _size;
+    }
+
+    /**
+     * Advances the wheel to the specified timestamp, firing all timers that have expired.
+     */
+    public void advance (int timestamp)
+    {
+        int target = timestamp / _resolution;
+        int count = Math.min(target - _current + 1, _slots.length);
+        _time = timestamp;
+        for (int ii = 0; ii < count && _size > 0; ii++) {
+            // collect the expired timers before firing any, since firing may reschedule
+            int slot = (_current + ii) & _mask;
+            for (Timer timer = _slots[slot], next; timer != null; timer = next) {
+                next = timer._next;
+                if (timer._expiry <= timestamp) {
+                    remove(timer);
+                    timer._cancelled = false;
+                    _expired.add(timer);
+                }
+            }
+            for (int jj = 0, nn = _expired.size(); jj < nn; jj++) {
+                // skip any timers cancelled or rescheduled by those fired before them
+                Timer timer = _expired.get(jj);
+                if (timer._cancelled || timer._wheel != null) {
+                    continue;
+                }
+                try {
+                    timer.expired(timestamp);
+                } catch (Throwable t) {
+                    log.warning("Caught throwable firing timer.", "timer", timer, t);
+                }
+            }
+            _expired.clear();
+        }
+        _current = target;
+    }
+
+    /**
+     * Removes all timers from the wheel.
+     */
+    public void clear ()
+    {
+        for (int ii = 0; ii < _slots.length; ii++) {
+            for (Timer timer = _slots[ii], next; timer != null; timer = next) {
+                next = timer._next;
+                timer._wheel = null;
+                timer._prev = timer._next = null;
+            }
+            _slots[ii] = null;
+        }
+        _size = 0;
+    }
+
+    /**
+     * Unlinks a timer from its slot.
+     */
+    protected void remove (Timer timer)
+    {
+        if (timer._prev == null) {
+            _slots[timer._slot] = timer._next;
+        } else {
+            timer._prev._next = timer._next;
+        }
+        if (timer._next != null) {
+            timer._next._prev = timer._prev;
+        }
+        timer._wheel = null;
+        timer._prev = timer._next = null;
+        _size--;
+    }
+
+    /** The interval covered by each slot. */
+    protected int _resolution;
+
+    /** The heads of the slots' timer lists. */
+    protected Timer[] _slots;
+
+    /** The mask used to map slot numbers to indices. */
+    protected int _mask;
+
+    /** The timestamp to which the wheel was last advanced. */
+    protected int _time;
+
+    /** The slot number corresponding to the last advance. */
+    protected int _current;
+
+    /** The number of timers scheduled. */
+    protected int _size;
+
+    /** Holds expired timers while firing. */
+    protected List<Timer> _expired = Lists.newArrayList();
+}
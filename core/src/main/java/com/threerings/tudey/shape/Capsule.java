@@ -93,22 +93,19 @@ public class Capsule extends Shape
     {
         // see if the point lies before the start (this also handles the case where start and
         // end are equal)
-        float a = _end.x - _start.x, b = _end.y - _start.y;
-        float dp = a*x + b*y;
-        if (dp <= a*_start.x + b*_start.y) {
+        float dp = _axis.x*x + _axis.y*y;
+        if (dp <= _startProjection) {
             float dx = x - _start.x, dy = y - _start.y;
             return dx*dx + dy*dy <= radius*radius;
         }
         // now see if it lies after the end
-        if (dp >= a*_end.x + b*_end.y) {
+        if (dp >= _endProjection) {
             float dx = x - _end.x, dy = y - _end.y;
             return dx*dx + dy*dy <= radius*radius;
         }
         // it's in the middle, so check the distance to the line
-        a = _start.y - _end.y;
-        b = _end.x - _start.x;
-        float d = a*(x - _start.x) + b*(y - _start.y);
-        return d*d <= radius*radius * (a*a + b*b);
+        float d = _axis.x*(y - _start.y) - _axis.y*(x - _start.x);
+        return d*d <= radius*radius * _lengthSquared;
     }
 
     @Override
@@ -118,6 +115,14 @@ public class Capsule extends Shape
         _bounds.addLocal(_start);
         _bounds.addLocal(_end);
         _bounds.expandLocal(radius, radius);
+
+        // update the derived values used by the intersection tests
+        _end.subtract(_start, _axis);
+        _lengthSquared = _axis.lengthSquared();
+        _startProjection = _axis.dot(_start);
+        _endProjection = _axis.dot(_end);
+        getCenter(_center);
+        _boundingRadius = FloatMath.sqrt(_lengthSquared)*0.5f + radius;
     }
 
     @Override
@@ -198,7 +203,7 @@ public class Capsule extends Shape
             return IntersectionType.INTERSECTS;
         }
         // handle non-corner cases
-        float dx = _end.x - _start.x, dy = _end.y - _start.y;
+        float dx = _axis.x, dy = _axis.y;
         if (_start.x <= min.x) { // left
             if (intersectsLeft(rect, dx, dy)) {
                 return IntersectionType.INTERSECTS;
@@ -251,17 +256,21 @@ public class Capsule extends Shape
         // a circle with the same center as the parameter and a radius equal to the sum of
         // the capsule radius and the circle radius
 
-        // see if we start or end inside the circle
+        // rule out distant circles using the bounding circle
         Vector2f center = circle.getCenter();
+        float br = _boundingRadius + circle.radius;
+        if (_center.distanceSquared(center) > br*br) {
+            return false;
+        }
+        // see if we start or end inside the circle
         float r = circle.radius + radius, r2 = r*r;
         if (_start.distanceSquared(center) <= r2 || _end.distanceSquared(center) <= r2) {
             return true;
         }
         // then if we intersect the circle
         float ax = _start.x - center.x, ay = _start.y - center.y;
-        float dx = _end.x - _start.x, dy = _end.y - _start.y;
-        float a = dx*dx + dy*dy;
-        float b = 2f*(dx*ax + dy*ay);
+        float a = _lengthSquared;
+        float b = 2f*(_axis.x*ax + _axis.y*ay);
         float c = ax*ax + ay*ay - r2;
         float radicand = b*b - 4f*a*c;
         if (radicand < 0f) {
@@ -274,6 +283,11 @@ public class Capsule extends Shape
     @Override
     public boolean intersects (Capsule capsule)
     {
+        // rule out distant capsules using the bounding circles
+        float br = _boundingRadius + capsule._boundingRadius;
+        if (_center.distanceSquared(capsule._center) > br*br) {
+            return false;
+        }
         return intersects(
             _start, _end, radius + capsule.radius, capsule.getStart(), capsule.getEnd());
     }
@@ -321,10 +335,9 @@ public class Capsule extends Shape
     {
         Vector2f center = circle.getCenter();
         Vector2f D = center.subtract(_start);
-        Vector2f axis = _end.subtract(_start);
-        float d = D.dot(axis);
+        float d = (_lengthSquared == 0f) ? 0f : D.dot(_axis) / _lengthSquared;
         d = FloatMath.clamp(d, 0, 1);
-        _start.add(axis.multLocal(d), D);
+        _start.addScaled(_axis, d, D);
         float dist = center.distance(D);
         return (dist == 0f) ? result.set(Vector2f.ZERO) :
             center.subtract(D, result).multLocal((circle.radius + radius) / dist - 1f);
@@ -486,4 +499,19 @@ public class Capsule extends Shape
 
     /** The start and end vertices of the capsule. */
     protected Vector2f _start = new Vector2f(), _end = new Vector2f();
+
+    /** The vector from the start vertex to the end vertex. */
+    protected Vector2f _axis = new Vector2f();
+
+    /** The squared length of the axis. */
+    protected float _lengthSquared;
+
+    /** The projections of the start and end vertices onto the axis. */
+    protected float _startProjection, _endProjection;
+
+    /** The center of the bounding circle. */
+    protected Vector2f _center = new Vector2f();
+
+    /** The radius of the bounding circle. */
+    protected float _boundingRadius;
 }
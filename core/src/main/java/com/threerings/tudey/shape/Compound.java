@@ -25,6 +25,9 @@
 
 package com.threerings.tudey.shape;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 import com.samskivert.util.StringUtil;
 
 import com.threerings.math.FloatMath;
@@ -90,6 +93,15 @@ public class Compound extends Shape
             shape.updateBounds();
             _bounds.addLocal(shape.getBounds());
         }
+        // the shapes keep their positions in the array, so the hierarchy can be refit to their
+        // new bounds rather than rebuilt
+        if (_tree != null) {
+            if (_tree.getShapeCount() == _shapes.length) {
+                _tree.refit(_shapes);
+            } else {
+                _tree = null;
+            }
+        }
     }
 
     @Override
@@ -215,85 +227,37 @@ public class Compound extends Shape
     @Override
     public boolean intersects (Point point)
     {
-        if (!point.getBounds().intersects(_bounds)) {
-            return false;
-        }
-        for (Shape shape : _shapes) {
-            if (shape.intersects(point)) {
-                return true;
-            }
-        }
-        return false;
+        return intersectsAny(point);
     }
 
     @Override
     public boolean intersects (Segment segment)
     {
-        if (!segment.getBounds().intersects(_bounds)) {
-            return false;
-        }
-        for (Shape shape : _shapes) {
-            if (shape.intersects(segment)) {
-                return true;
-            }
-        }
-        return false;
+        return intersectsAny(segment);
     }
 
     @Override
     public boolean intersects (Circle circle)
     {
-        if (!circle.getBounds().intersects(_bounds)) {
-            return false;
-        }
-        for (Shape shape : _shapes) {
-            if (shape.intersects(circle)) {
-                return true;
-            }
-        }
-        return false;
+        return intersectsAny(circle);
     }
 
     @Override
     public boolean intersects (Capsule capsule)
     {
-        if (!capsule.getBounds().intersects(_bounds)) {
-            return false;
-        }
-        for (Shape shape : _shapes) {
-            if (shape.intersects(capsule)) {
-                return true;
-            }
-        }
-        return false;
+        return intersectsAny(capsule);
     }
 
     @Override
     public boolean intersects (Polygon polygon)
     {
-        if (!polygon.getBounds().intersects(_bounds)) {
-            return false;
-        }
-        for (Shape shape : _shapes) {
-            if (shape.intersects(polygon)) {
-                return true;
-            }
-        }
-        return false;
+        return intersectsAny(polygon);
     }
 
     @Override
     public boolean intersects (Compound compound)
     {
-        if (!compound.getBounds().intersects(_bounds)) {
-            return false;
-        }
-        for (Shape shape : _shapes) {
-            if (compound.intersects(shape)) {
-                return true;
-            }
-        }
-        return false;
+        return intersectsAny(compound);
     }
 
     @Override
@@ -365,6 +329,34 @@ public class Compound extends Shape
         return "Comp:(" + StringUtil.join(_shapes) + ")";
     }
 
+    /**
+     * Determines whether any of the shapes in the compound intersect the specified shape,
+     * testing only those whose bounds intersect the shape's bounds.
+     */
+    protected boolean intersectsAny (Shape shape)
+    {
+        Rect bounds = shape.getBounds();
+        if (!bounds.intersects(_bounds)) {
+            return false;
+        }
+        if (_shapes.length >= MIN_TREE_SHAPES) {
+            if (_tree == null) {
+                Integer[] indices = new Integer[_shapes.length];
+                for (int ii = 0; ii < indices.length; ii++) {
+                    indices[ii] = ii;
+                }
+                _tree = new TreeNode(_shapes, indices, 0, indices.length);
+            }
+            return _tree.intersects(_shapes, shape, bounds);
+        }
+        for (Shape cshape : _shapes) {
+            if (cshape.getBounds().intersects(bounds) && cshape.intersects(shape)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Performs a simple penetration test against all shapes in the compound.
      */
@@ -386,6 +378,122 @@ public class Compound extends Shape
         return result;
     }
 
+    /**
+     * A node in the bounding volume hierarchy built over the shapes of larger compounds.  The
+     * nodes refer to the shapes by their indices in the compound, so that the hierarchy remains
+     * valid when the shapes are replaced by transformed versions.
+     */
+    protected static class TreeNode
+    {
+        /**
+         * Builds a node for the specified range of shape indices, reordering them in order to
+         * split them at the median of the longest axis of their bounds.
+         */
+        public TreeNode (final Shape[] shapes, Integer[] indices, int start, int end)
+        {
+            _count = end - start;
+            for (int ii = start; ii < end; ii++) {
+                _bounds.addLocal(shapes[indices[ii]].getBounds());
+            }
+            if (_count <= MAX_LEAF_SHAPES) {
+                _indices = new int[_count];
+                for (int ii = 0; ii < _count; ii++) {
+                    _indices[ii] = indices[start + ii];
+                }
+                return;
+            }
+            // sort the range along the longest axis of the bounds and split it in half
+            final boolean xaxis = _bounds.getWidth() >= _bounds.getHeight();
+            Arrays.sort(indices, start, end, new Comparator<Integer>() {
+                public int compare (Integer i1, Integer i2) {
+                    return Float.compare(
+                        getMidpoint(shapes[i1], xaxis), getMidpoint(shapes[i2], xaxis));
+                }
+            });
+            int mid = (start + end) / 2;
+            _left = new TreeNode(shapes, indices, start, mid);
+            _right = new TreeNode(shapes, indices, mid, end);
+        }
+
+        /**
+         * Returns the number of shapes under this node.
+         */
+        public int getShapeCount ()
+        {
+            return _count;
+        }
+
+        /**
+         * Recomputes the bounds of this node and its descendants from the current bounds of
+         * the shapes.
+         */
+        public void refit (Shape[] shapes)
+        {
+            _bounds.setToEmpty();
+            if (_indices == null) {
+                _left.refit(shapes);
+                _right.refit(shapes);
+                _bounds.addLocal(_left._bounds).addLocal(_right._bounds);
+                return;
+            }
+            for (int idx : _indices) {
+                _bounds.addLocal(shapes[idx].getBounds());
+            }
+        }
+
+        /**
+         * Determines whether any of the shapes under this node intersect the given shape.
+         */
+        public boolean intersects (Shape[] shapes, Shape shape, Rect bounds)
+        {
+            if (!_bounds.intersects(bounds)) {
+                return false;
+            }
+            if (_indices == null) {
+                return _left.intersects(shapes, shape, bounds) ||
+                    _right.intersects(shapes, shape, bounds);
+            }
+            for (int idx : _indices) {
+                Shape cshape = shapes[idx];
+                if (cshape.getBounds().intersects(bounds) && cshape.intersects(shape)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the midpoint of the shape's bounds on the specified axis.
+         */
+        protected static float getMidpoint (Shape shape, boolean xaxis)
+        {
+            Rect bounds = shape.getBounds();
+            Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+            return xaxis ? (min.x + max.x) : (min.y + max.y);
+        }
+
+        /** The combined bounds of the shapes under the node. */
+        protected Rect _bounds = new Rect();
+
+        /** The number of shapes under the node. */
+        protected int _count;
+
+        /** The child nodes, if this is an internal node. */
+        protected TreeNode _left, _right;
+
+        /** The indices of the shapes, if this is a leaf node. */
+        protected int[] _indices;
+    }
+
     /** The shapes of which this shape is composed. */
     protected Shape[] _shapes;
+
+    /** The bounding volume hierarchy, built on demand for compounds with many shapes. */
+    protected TreeNode _tree;
+
+    /** The number of shapes at which we start building a bounding volume hierarchy. */
+    protected static final int MIN_TREE_SHAPES = 8;
+
+    /** The maximum number of shapes in a leaf of the hierarchy. */
+    protected static final int MAX_LEAF_SHAPES = 4;
 }
@@ -79,6 +79,26 @@ public class Polygon extends Shape
         return _vertices[idx];
     }
 
+    /**
+     * Sets this polygon to the specified axis-aligned rectangle.
+     *
+     * @return a reference to this polygon, for chaining.
+     */
+    public Polygon setToRect (float minx, float miny, float maxx, float maxy)
+    {
+        if (_vertices.length != 4) {
+            initVertices(4);
+        }
+        _vertices[0].set(minx, miny);
+        _vertices[1].set(maxx, miny);
+        _vertices[2].set(maxx, maxy);
+        _vertices[3].set(minx, maxy);
+        _bounds.getMinimumExtent().set(minx, miny);
+        _bounds.getMaximumExtent().set(maxx, maxy);
+        updateEdges();
+        return this;
+    }
+
     /**
      * Checks whether the polygon contains the specified point.
      */
@@ -93,11 +113,9 @@ public class Polygon extends Shape
     public boolean contains (float x, float y)
     {
         // check the point against each edge
-        for (int ii = 0; ii < _vertices.length; ii++) {
-            Vector2f start = _vertices[ii], end = _vertices[(ii + 1) % _vertices.length];
-            float a = start.y - end.y;
-            float b = end.x - start.x;
-            if (a*x + b*y < a*start.x + b*start.y) {
+        float[] edges = _edges;
+        for (int ii = 0; ii < edges.length; ii += 3) {
+            if (edges[ii]*x + edges[ii + 1]*y < edges[ii + 2]) {
                 return false;
             }
         }
@@ -108,6 +126,7 @@ public class Polygon extends Shape
     public void updateBounds ()
     {
         _bounds.fromPoints(_vertices);
+        updateEdges();
     }
 
     @Override
@@ -225,6 +244,7 @@ public class Polygon extends Shape
         Polygon poly = (result instanceof Polygon) ? (Polygon)result : null;
         if (poly != null) {
             poly._vertices = vertices;
+            poly.updateBounds();
         } else {
             poly = new Polygon(vertices);
         }
@@ -301,11 +321,9 @@ public class Polygon extends Shape
         // consider each edge of this polygon as a potential separating axis
         int ccount = 0;
         Vector2f rmin = rect.getMinimumExtent(), rmax = rect.getMaximumExtent();
-        for (int ii = 0; ii < _vertices.length; ii++) {
-            Vector2f start = _vertices[ii], end = _vertices[(ii + 1) % _vertices.length];
-            float a = start.y - end.y;
-            float b = end.x - start.x;
-            float c = a*start.x + b*start.y;
+        float[] edges = _edges;
+        for (int ii = 0; ii < edges.length; ii += 3) {
+            float a = edges[ii], b = edges[ii + 1], c = edges[ii + 2];
 
             // determine how many vertices fall inside/outside the edge
             int inside =
@@ -365,32 +383,34 @@ public class Polygon extends Shape
     @Override
     public boolean intersects (Circle circle)
     {
-        // look for edges that the circle's center is outside
+        // rule out distant circles using the bounding circle
         Vector2f center = circle.getCenter();
-        for (int ii = 0; ii < _vertices.length; ii++) {
-            Vector2f start = _vertices[ii], end = _vertices[(ii + 1) % _vertices.length];
-            float a = start.y - end.y;
-            float b = end.x - start.x;
-            float l2 = a*a + b*b;
-            float d = a*center.x + b*center.y - a*start.x - b*start.y;
+        float[] edges = _edges;
+        float r = _radius + circle.radius;
+        if (center.distanceSquared(_center) > r*r) {
+            return false;
+        }
+        // look for edges that the circle's center is outside
+        int vcount = _vertices.length;
+        for (int ii = 0; ii < vcount; ii++) {
+            int eidx = ii*3;
+            float a = edges[eidx], b = edges[eidx + 1];
+            float d = a*center.x + b*center.y - edges[eidx + 2];
             if (d >= 0f) {
                 continue;
             }
             // look at the next edge
-            Vector2f next = _vertices[(ii + 2) % _vertices.length];
-            a = end.y - next.y;
-            b = next.x - end.x;
-            if (a*center.x + b*center.y <= a*end.x + b*end.y) {
+            int nidx = ((ii + 1) % vcount)*3;
+            if (edges[nidx]*center.x + edges[nidx + 1]*center.y <= edges[nidx + 2]) {
                 // outside next edge; closest feature is end vertex
+                Vector2f end = _vertices[(ii + 1) % vcount];
                 return end.distanceSquared(center) <= circle.radius*circle.radius;
             }
             // check the previous edge
-            Vector2f previous = _vertices[(ii + _vertices.length - 1) % _vertices.length];
-            a = previous.y - start.y;
-            b = start.x - previous.x;
-            if (a*center.x + b*center.y >= a*previous.x + b*previous.y) {
+            int pidx = ((ii + vcount - 1) % vcount)*3;
+            if (edges[pidx]*center.x + edges[pidx + 1]*center.y >= edges[pidx + 2]) {
                 // inside previous edge; closest feature is edge
-                return d*d <= l2*circle.radius*circle.radius;
+                return d*d <= (a*a + b*b)*circle.radius*circle.radius;
             }
         }
         return true; // center is inside all edges
@@ -399,32 +419,46 @@ public class Polygon extends Shape
     @Override
     public boolean intersects (Capsule capsule)
     {
-        // find the first edge that the origin is outside
+        // rule out distant capsules using the bounding circles, then the distance from our
+        // center to the capsule's axis
+        float br = _radius + capsule._boundingRadius;
+        if (_center.distanceSquared(capsule._center) > br*br) {
+            return false;
+        }
         Vector2f origin = capsule.getStart(), terminus = capsule.getEnd();
-        for (int ii = 0; ii < _vertices.length; ii++) {
-            Vector2f start = _vertices[ii], end = _vertices[(ii + 1) % _vertices.length];
-            float a = start.y - end.y;
-            float b = end.x - start.x;
-            float d = a*origin.x + b*origin.y - a*start.x - b*start.y;
+        float[] edges = _edges;
+        float dx = capsule._axis.x, dy = capsule._axis.y;
+        float l2 = capsule._lengthSquared;
+        float t = (l2 == 0f) ? 0f : FloatMath.clamp(
+            ((_center.x - origin.x)*dx + (_center.y - origin.y)*dy) / l2, 0f, 1f);
+        float nx = origin.x + t*dx - _center.x, ny = origin.y + t*dy - _center.y;
+        float r = _radius + capsule.radius;
+        if (nx*nx + ny*ny > r*r) {
+            return false;
+        }
+        // find the first edge that the origin is outside
+        int vcount = _vertices.length;
+        for (int ii = 0; ii < vcount; ii++) {
+            int eidx = ii*3;
+            float d = edges[eidx]*origin.x + edges[eidx + 1]*origin.y - edges[eidx + 2];
             if (d >= 0f) {
                 continue;
             }
             // check against the edge itself
+            Vector2f start = _vertices[ii], end = _vertices[(ii + 1) % vcount];
             if (intersects(start, end, capsule.radius, origin, terminus)) {
                 return true;
             }
             // now classify with respect to the adjacent edges
-            Vector2f previous = _vertices[(ii + _vertices.length - 1) % _vertices.length];
-            a = previous.y - start.y;
-            b = start.x - previous.x;
-            if (a*origin.x + b*origin.y <= a*previous.x + b*previous.y) {
+            int pidx = ((ii + vcount - 1) % vcount)*3;
+            if (edges[pidx]*origin.x + edges[pidx + 1]*origin.y <= edges[pidx + 2]) {
                 // left: check against previous edge
+                Vector2f previous = _vertices[(ii + vcount - 1) % vcount];
                 return intersects(previous, start, capsule.radius, origin, terminus);
             }
-            Vector2f next = _vertices[(ii + 2) % _vertices.length];
-            a = end.y - next.y;
-            b = next.x - end.x;
-            if (a*origin.x + b*origin.y > a*end.x + b*end.y) {
+            Vector2f next = _vertices[(ii + 2) % vcount];
+            int nidx = ((ii + 1) % vcount)*3;
+            if (edges[nidx]*origin.x + edges[nidx + 1]*origin.y > edges[nidx + 2]) {
                 // middle: no dice
                 return false;
             } else {
@@ -438,6 +472,11 @@ public class Polygon extends Shape
     @Override
     public boolean intersects (Polygon polygon)
     {
+        // rule out distant polygons using the bounding circles
+        float r = _radius + polygon._radius;
+        if (_center.distanceSquared(polygon._center) > r*r) {
+            return false;
+        }
         return intersectsOnAxes(polygon) && polygon.intersectsOnAxes(this);
     }
 
@@ -475,14 +514,15 @@ public class Polygon extends Shape
     {
         // look for edges that the circle's center is outside
         Vector2f center = circle.getCenter();
+        float[] edges = _edges;
         float mind = Float.MAX_VALUE;
         int midx = 0;
         for (int ii = 0; ii < _vertices.length; ii++) {
             Vector2f start = _vertices[ii], end = _vertices[(ii + 1) % _vertices.length];
-            float a = start.y - end.y;
-            float b = end.x - start.x;
+            int eidx = ii*3;
+            float a = edges[eidx], b = edges[eidx + 1];
             float l2 = a*a + b*b;
-            float d = a*center.x + b*center.y - a*start.x - b*start.y;
+            float d = a*center.x + b*center.y - edges[eidx + 2];
             if (d >= 0f) {
                 // keep track of the closest edge
                 float nd = d / FloatMath.sqrt(l2);
@@ -585,6 +625,35 @@ public class Polygon extends Shape
         for (int ii = 0; ii < vcount; ii++) {
             _vertices[ii] = new Vector2f();
         }
+        updateEdges();
+    }
+
+    /**
+     * Recomputes the edge equations of the polygon and its bounding circle.  Each edge occupies
+     * three elements: the coefficients a, b and c such that points inside the edge satisfy
+     * a*x + b*y &gt;= c.  Called whenever the vertices change, so that queries only ever read
+     * the cached values.
+     */
+    protected void updateEdges ()
+    {
+        int vcount = _vertices.length;
+        if (_edges.length != vcount*3) {
+            _edges = new float[vcount*3];
+        }
+        for (int ii = 0; ii < vcount; ii++) {
+            Vector2f start = _vertices[ii], end = _vertices[(ii + 1) % vcount];
+            float a = start.y - end.y;
+            float b = end.x - start.x;
+            _edges[ii*3] = a;
+            _edges[ii*3 + 1] = b;
+            _edges[ii*3 + 2] = a*start.x + b*start.y;
+        }
+        getCenter(_center);
+        float r2 = 0f;
+        for (Vector2f vertex : _vertices) {
+            r2 = Math.max(r2, vertex.distanceSquared(_center));
+        }
+        _radius = FloatMath.sqrt(r2);
     }
 
     /**
@@ -597,12 +666,10 @@ public class Polygon extends Shape
     protected boolean intersectsOnAxes (Polygon other)
     {
         // consider each edge of this polygon as a potential separating axis
+        float[] edges = _edges;
     OUTER:
-        for (int ii = 0; ii < _vertices.length; ii++) {
-            Vector2f start = _vertices[ii], end = _vertices[(ii + 1) % _vertices.length];
-            float a = start.y - end.y;
-            float b = end.x - start.x;
-            float c = a*start.x + b*start.y;
+        for (int ii = 0; ii < edges.length; ii += 3) {
+            float a = edges[ii], b = edges[ii + 1], c = edges[ii + 2];
 
             // if all vertices fall outside the edge, the polygons are disjoint
             for (Vector2f vertex : other._vertices) {
@@ -617,4 +684,16 @@ public class Polygon extends Shape
 
     /** The vertices of the polygon. */
     protected Vector2f[] _vertices;
+
+    /** The cached edge equations. */
+    protected float[] _edges = NO_EDGES;
+
+    /** The center of the bounding circle. */
+    protected Vector2f _center = new Vector2f();
+
+    /** The radius of the bounding circle. */
+    protected float _radius;
+
+    /** An empty array of edge equations. */
+    protected static final float[] NO_EDGES = new float[0];
 }
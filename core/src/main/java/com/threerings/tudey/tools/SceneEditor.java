@@ -115,8 +115,8 @@ import com.threerings.editor.tools.BatchValidateDialog;
 import com.threerings.editor.util.Validator;
 import com.threerings.export.BinaryExporter;
 import com.threerings.export.BinaryImporter;
-import com.threerings.export.XMLExporter;
-import com.threerings.export.XMLImporter;
+import com.threerings.export.StreamingXMLExporter;
+import com.threerings.export.StreamingXMLImporter;
 import com.threerings.expr.Scoped;
 import com.threerings.math.FloatMath;
 import com.threerings.math.Ray3D;
@@ -1500,7 +1500,7 @@ public class SceneEditor extends TudeyTool
         if (_exportChooser.showOpenDialog(_frame) == JFileChooser.APPROVE_OPTION) {
             File file = _exportChooser.getSelectedFile();
             try {
-                XMLImporter in = new XMLImporter(new FileInputStream(file));
+                StreamingXMLImporter in = new StreamingXMLImporter(new FileInputStream(file));
                 setScene((TudeySceneModel)in.readObject());
                 in.close();
                 setFile(null);
@@ -1553,7 +1553,7 @@ public class SceneEditor extends TudeyTool
         if (_exportChooser.showSaveDialog(_frame) == JFileChooser.APPROVE_OPTION) {
             File file = _exportChooser.getSelectedFile();
             try {
-                XMLExporter out = new XMLExporter(new FileOutputStream(file));
+                StreamingXMLExporter out = new StreamingXMLExporter(new FileOutputStream(file));
                 out.writeObject(_scene);
                 out.close();
             } catch (IOException e) {
@@ -34,6 +34,7 @@ import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableCollection;
@@ -209,13 +210,40 @@ public class DeepUtil
             } else if (clazz.isArray()) {
                 handler = ARRAY_OBJECT_HANDLER;
             } else {
-                handler = new ReflectiveObjectHandler(clazz);
+                handler = new ReflectiveObjectHandler(clazz, !GENERIC_HANDLERS);
+            }
+            // if another thread beat us to it, use its handler
+            ObjectHandler<?> ohandler = _objectHandlers.putIfAbsent(clazz, handler);
+            if (ohandler != null) {
+                handler = ohandler;
             }
-            _objectHandlers.put(clazz, handler);
         }
         return handler;
     }
 
+    /**
+     * Retrieves the handler for an array element of the supplied class.
+     */
+    protected static ObjectHandler<Object> getElementHandler (Class<?> clazz)
+    {
+        @SuppressWarnings("unchecked") ObjectHandler<Object> handler =
+            (ObjectHandler<Object>)getObjectHandler(clazz);
+        return handler;
+    }
+
+    /**
+     * Determines whether the named public method of the supplied class is the one implemented by
+     * {@link DeepObject} (meaning that it simply calls through to this class).
+     */
+    protected static boolean isDeepObjectMethod (Class<?> clazz, String name, Class<?>... types)
+    {
+        try {
+            return clazz.getMethod(name, types).getDeclaringClass() == DeepObject.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     /**
      * Populates the supplied list with the copyable/comparable fields of the given class.
      */
@@ -269,14 +297,88 @@ public class DeepUtil
         {
             return StringUtil.toString(object);
         }
+
+        /**
+         * Copies a (non-null) value as {@link DeepUtil#copy} would, given its current
+         * counterpart, which may be of any type.
+         */
+        public T deepCopy (T source, Object dest, Object outer)
+            throws IllegalAccessException
+        {
+            @SuppressWarnings("unchecked") T tdest =
+                (dest != null && dest.getClass() == source.getClass()) ? (T)dest : null;
+            return copy(source, tdest, outer);
+        }
+
+        /**
+         * Compares a (non-null) value to another as {@link DeepUtil#equals} would.
+         */
+        public boolean deepEquals (T v1, Object v2)
+            throws IllegalAccessException
+        {
+            if (v1 == v2) {
+                return true;
+            }
+            if (v2 == null || v2.getClass() != v1.getClass()) {
+                return false;
+            }
+            @SuppressWarnings("unchecked") T tv2 = (T)v2;
+            return equals(v1, tv2);
+        }
+
+        /**
+         * Copies a (non-null) value stored in an ordinary object field: through its
+         * {@link Copyable} implementation, if any, or else as {@link DeepUtil#copy} would.
+         */
+        public Object copyValue (T source, Object dest, Object outer)
+            throws IllegalAccessException
+        {
+            return (source instanceof Copyable) ?
+                ((Copyable)source).copy(dest, outer) : deepCopy(source, dest, outer);
+        }
+
+        /**
+         * Compares a (non-null) value stored in an ordinary object field to another: deeply if
+         * it's an array, otherwise using its {@link Object#equals} method.
+         */
+        public boolean equalsValue (T v1, Object v2)
+            throws IllegalAccessException
+        {
+            return v1.getClass().isArray() ? deepEquals(v1, v2) : v1.equals(v2);
+        }
+
+        /**
+         * Computes the hash code of a (non-null) value stored in an ordinary object field: deeply
+         * if it's an array, otherwise using its {@link Object#hashCode} method.
+         */
+        public int hashCodeValue (T value)
+            throws IllegalAccessException
+        {
+            return value.getClass().isArray() ? hashCode(value) : value.hashCode();
+        }
     }
 
     /**
-     * Handles an object according to its reflected fields.
+     * Handles an object according to its reflected fields.  By default, the handler is
+     * specialized for its class: each object field gets its own handler that caches the object
+     * handler for the class of the field's value, and values whose {@link Copyable} and
+     * {@link Object} methods are those of {@link DeepObject} are handled directly rather than
+     * through those methods.
      */
     protected static class ReflectiveObjectHandler extends ObjectHandler<Object>
     {
         public ReflectiveObjectHandler (Class<?> clazz)
+        {
+            this(clazz, true);
+        }
+
+        /**
+         * Creates a handler for the specified class.
+         *
+         * @param specialize if false, use the generic field handlers, which look up the handler
+         * for each value and call its methods.
+         */
+        public ReflectiveObjectHandler (Class<?> clazz, boolean specialize)
         {
             ArrayList<Field> fields = new ArrayList<Field>();
             getInstanceFields(clazz, fields);
@@ -288,13 +390,18 @@ public class DeepUtil
                 if (type.isPrimitive()) {
                     _handlers[ii] = PRIMITIVE_FIELD_HANDLERS.get(type);
                 } else if (field.getAnnotation(Deep.class) != null) {
-                    _handlers[ii] = DEEP_OBJECT_FIELD_HANDLER;
+                    _handlers[ii] = specialize ?
+                        new CachingObjectFieldHandler(true) : DEEP_OBJECT_FIELD_HANDLER;
                 } else if (field.getAnnotation(Shallow.class) != null) {
                     _handlers[ii] = SHALLOW_OBJECT_FIELD_HANDLER;
                 } else {
-                    _handlers[ii] = DEFAULT_OBJECT_FIELD_HANDLER;
+                    _handlers[ii] = specialize ?
+                        new CachingObjectFieldHandler(false) : DEFAULT_OBJECT_FIELD_HANDLER;
                 }
             }
+            _copyDirect = isDeepObjectMethod(clazz, "copy", Object.class, Object.class);
+            _equalsDirect = isDeepObjectMethod(clazz, "equals", Object.class);
+            _hashCodeDirect = isDeepObjectMethod(clazz, "hashCode");
         }
 
         @Override
@@ -353,6 +460,28 @@ public class DeepUtil
             return tsh.toString();
         }
 
+        @Override
+        public Object copyValue (Object source, Object dest, Object outer)
+            throws IllegalAccessException
+        {
+            return _copyDirect ?
+                deepCopy(source, dest, outer) : super.copyValue(source, dest, outer);
+        }
+
+        @Override
+        public boolean equalsValue (Object v1, Object v2)
+            throws IllegalAccessException
+        {
+            return _equalsDirect ? deepEquals(v1, v2) : v1.equals(v2);
+        }
+
+        @Override
+        public int hashCodeValue (Object value)
+            throws IllegalAccessException
+        {
+            return _hashCodeDirect ? hashCode(value) : value.hashCode();
+        }
+
         /**
          * Sanitize a field name for toStringing.
          */
@@ -366,6 +495,107 @@ public class DeepUtil
 
         /** The handlers for each field. */
         protected FieldHandler[] _handlers;
+
+        /** Whether the class's copy, equals, and hashCode methods simply call DeepUtil. */
+        protected boolean _copyDirect, _equalsDirect, _hashCodeDirect;
+    }
+
+    /**
+     * Handles an object field (with or without the {@link Deep} annotation) of a single class,
+     * caching the handler for the class of the last value encountered.
+     */
+    protected static class CachingObjectFieldHandler extends FieldHandler
+    {
+        /**
+         * Creates a new handler.
+         *
+         * @param deep whether the field has the {@link Deep} annotation.
+         */
+        public CachingObjectFieldHandler (boolean deep)
+        {
+            _deep = deep;
+        }
+
+        @Override
+        public void copy (Field field, Object source, Object dest)
+            throws IllegalAccessException
+        {
+            Object v1 = field.get(source);
+            if (v1 == null) {
+                field.set(dest, null);
+                return;
+            }
+            ObjectHandler<Object> handler = getHandler(v1.getClass());
+            Object v2 = field.get(dest);
+            field.set(dest, _deep ?
+                handler.deepCopy(v1, v2, dest) : handler.copyValue(v1, v2, dest));
+        }
+
+        @Override
+        public boolean equals (Field field, Object o1, Object o2)
+            throws IllegalAccessException
+        {
+            Object v1 = field.get(o1), v2 = field.get(o2);
+            if (v1 == null) {
+                return v2 == null;
+            }
+            ObjectHandler<Object> handler = getHandler(v1.getClass());
+            return _deep ? handler.deepEquals(v1, v2) : handler.equalsValue(v1, v2);
+        }
+
+        @Override
+        public int hashCode (Field field, Object object)
+            throws IllegalAccessException
+        {
+            Object value = field.get(object);
+            if (value == null) {
+                return 0;
+            }
+            ObjectHandler<Object> handler = getHandler(value.getClass());
+            return _deep ? handler.hashCode(value) : handler.hashCodeValue(value);
+        }
+
+        /**
+         * Returns the handler for the specified class, using the cached handler if possible.
+         */
+        protected ObjectHandler<Object> getHandler (Class<?> clazz)
+        {
+            // the cache entry is immutable, so it's safe to share between threads unsynchronized
+            CachedHandler cached = _cached;
+            if (cached == null || cached.clazz != clazz) {
+                @SuppressWarnings("unchecked") ObjectHandler<Object> handler =
+                    (ObjectHandler<Object>)getObjectHandler(clazz);
+                _cached = cached = new CachedHandler(clazz, handler);
+            }
+            return cached.handler;
+        }
+
+        /** Whether the field has the {@link Deep} annotation. */
+        protected boolean _deep;
+
+        /** The handler for the class of the last value encountered. */
+        protected CachedHandler _cached;
+    }
+
+    /**
+     * A class and its handler.
+     */
+    protected static class CachedHandler
+    {
+        /** The class. */
+        public final Class<?> clazz;
+
+        /** The handler for the class. */
+        public final ObjectHandler<Object> handler;
+
+        /**
+         * Creates a new entry.
+         */
+        public CachedHandler (Class<?> clazz, ObjectHandler<Object> handler)
+        {
+            this.clazz = clazz;
+            this.handler = handler;
+        }
     }
 
     /**
@@ -422,8 +652,12 @@ public class DeepUtil
         }
     };
 
+    /** If set, object handlers use the generic reflective field handlers (for comparison). */
+    protected static final boolean GENERIC_HANDLERS =
+        Boolean.getBoolean("com.threerings.util.deep_generic");
+
     /** Object handlers mapped by class. */
-    protected static final Map<Class<?>, ObjectHandler<?>> _objectHandlers =
+    protected static final ConcurrentMap<Class<?>, ObjectHandler<?>> _objectHandlers =
             Maps.newConcurrentMap();
     static {
         _objectHandlers.put(boolean[].class, new ObjectHandler<boolean[]>() {
@@ -608,8 +842,19 @@ public class DeepUtil
                 dest = (Object[])Array.newInstance(
                     source.getClass().getComponentType(), source.length);
             }
+            // elements are usually of the same class, so we look up the handler only on change
+            Class<?> lclazz = null;
+            ObjectHandler<Object> handler = null;
             for (int ii = 0; ii < source.length; ii++) {
-                dest[ii] = DeepUtil.copy(source[ii], dest[ii], outer);
+                Object element = source[ii];
+                if (element == null) {
+                    dest[ii] = null;
+                    continue;
+                }
+                if (element.getClass() != lclazz) {
+                    handler = getElementHandler(lclazz = element.getClass());
+                }
+                dest[ii] = handler.deepCopy(element, dest[ii], outer);
             }
             return dest;
         }
@@ -618,8 +863,20 @@ public class DeepUtil
             if (o1.length != o2.length) {
                 return false;
             }
+            Class<?> lclazz = null;
+            ObjectHandler<Object> handler = null;
             for (int ii = 0; ii < o1.length; ii++) {
-                if (!DeepUtil.equals(o1[ii], o2[ii])) {
+                Object e1 = o1[ii], e2 = o2[ii];
+                if (e1 == null) {
+                    if (e2 != null) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (e1.getClass() != lclazz) {
+                    handler = getElementHandler(lclazz = e1.getClass());
+                }
+                if (!handler.deepEquals(e1, e2)) {
                     return false;
                 }
             }
@@ -628,8 +885,17 @@ public class DeepUtil
         public int hashCode (Object[] object)
             throws IllegalAccessException {
             int hash = 1;
+            Class<?> lclazz = null;
+            ObjectHandler<Object> handler = null;
             for (Object element : object) {
-                hash = 31*hash + DeepUtil.hashCode(element);
+                if (element == null) {
+                    hash = 31*hash;
+                    continue;
+                }
+                if (element.getClass() != lclazz) {
+                    handler = getElementHandler(lclazz = element.getClass());
+                }
+                hash = 31*hash + handler.hashCode(element);
             }
             return hash;
         }
@@ -29,7 +29,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.threerings.ClydeLog.log;
 
@@ -181,8 +181,9 @@ public class ReflectionUtil
                         break;
                     }
                 }
-            } else {
-                oclazz = Void.class;
+            }
+            if (oclazz == null) {
+                oclazz = Void.class; // the map can't hold nulls
             }
             _oclasses.put(clazz, oclazz);
         }
@@ -211,12 +212,14 @@ public class ReflectionUtil
     }
 
     /** Maps inner classes to their outer class reference fields. */
-    protected static HashMap<Class<?>, Field> _outers = new HashMap<Class<?>, Field>();
+    protected static ConcurrentHashMap<Class<?>, Field> _outers =
+            new ConcurrentHashMap<Class<?>, Field>();
 
     /** Maps classes to their outer classes, or to {@link Void} if they are not inner classes. */
-    protected static HashMap<Class<?>, Class<?>> _oclasses = new HashMap<Class<?>, Class<?>>();
+    protected static ConcurrentHashMap<Class<?>, Class<?>> _oclasses =
+            new ConcurrentHashMap<Class<?>, Class<?>>();
 
     /** Maps classes to their default constructors. */
-    protected static HashMap<Class<?>, Constructor<?>> _ctors =
-            new HashMap<Class<?>, Constructor<?>>();
+    protected static ConcurrentHashMap<Class<?>, Constructor<?>> _ctors =
+            new ConcurrentHashMap<Class<?>, Constructor<?>>();
 }
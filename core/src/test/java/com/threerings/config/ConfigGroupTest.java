@@ -0,0 +1,213 @@
+//
+// $Id$
+
+package com.threerings.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.CountDownLatch;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+
+import junit.framework.TestCase;
+
+import com.threerings.export.StreamingXMLImporter;
+
+import com.threerings.opengl.compositor.config.RenderQueueConfig;
+
+/**
+ * Tests the decoding of configs from a {@link ConfigArchive} as they're requested.
+ */
+public class ConfigGroupTest extends TestCase
+{
+    public ConfigGroupTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUp ()
+        throws IOException
+    {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(
+            "rsrc/config/render_queue.xml");
+        StreamingXMLImporter importer = new StreamingXMLImporter(in);
+        _configs = (RenderQueueConfig[])importer.readObject();
+        importer.close();
+
+        _file = File.createTempFile("render_queue", ConfigArchive.EXTENSION);
+        ConfigArchive.write(_file, Arrays.asList(_configs), null);
+    }
+
+    @Override
+    protected void tearDown ()
+    {
+        _file.delete();
+    }
+
+    public void testLazyLookup ()
+        throws IOException
+    {
+        TestGroup group = new TestGroup(_file);
+        assertTrue(group.decoded.isEmpty());
+
+        ManagedConfig config = group.getRawConfig("Overlay");
+        assertEquals(getConfig("Overlay"), config);
+        assertEquals(ImmutableList.of("Overlay"), group.decoded);
+
+        // subsequent lookups return the same instance without decoding again
+        assertSame(config, group.getRawConfig("Overlay"));
+        assertSame(config, group.getConfig("Overlay"));
+        assertNull(group.getRawConfig("Missing"));
+        assertEquals(ImmutableList.of("Overlay"), group.decoded);
+    }
+
+    public void testGetRawConfigs ()
+        throws IOException
+    {
+        TestGroup group = new TestGroup(_file);
+        ManagedConfig config = group.getRawConfig("Opaque");
+
+        List<ManagedConfig> configs = Lists.newArrayList(group.getRawConfigs());
+        assertEquals(_configs.length, configs.size());
+        assertTrue(configs.contains(config));
+        for (RenderQueueConfig expected : _configs) {
+            assertTrue(configs.contains(expected));
+        }
+        assertEquals(_configs.length, group.decoded.size());
+        assertEquals(_configs.length, HashMultiset.create(group.decoded).elementSet().size());
+
+        // nothing remains to be decoded
+        assertEquals(_configs.length, Iterables.size(group.getRawConfigs()));
+        assertEquals(_configs.length, group.decoded.size());
+    }
+
+    public void testAddPending ()
+        throws IOException
+    {
+        TestGroup group = new TestGroup(_file);
+        RenderQueueConfig added = (RenderQueueConfig)getConfig("Transparent").clone();
+        added.priority = 50;
+        group.addConfig(added);
+
+        // the added config replaces the archived one, which is never decoded
+        assertSame(added, group.getRawConfig("Transparent"));
+        assertEquals(_configs.length, Iterables.size(group.getRawConfigs()));
+        assertSame(added, group.getRawConfig("Transparent"));
+        assertFalse(group.decoded.contains("Transparent"));
+    }
+
+    public void testRemovePending ()
+        throws IOException
+    {
+        TestGroup group = new TestGroup(_file);
+        group.removeConfig(getConfig("Overlay"));
+
+        // the removed config is never decoded
+        assertNull(group.getRawConfig("Overlay"));
+        assertEquals(_configs.length - 1, Iterables.size(group.getRawConfigs()));
+        assertFalse(group.decoded.contains("Overlay"));
+    }
+
+    public void testConcurrentLookup ()
+        throws Exception
+    {
+        final TestGroup group = new TestGroup(_file);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ManagedConfig[][] results = new ManagedConfig[8][];
+        Thread[] threads = new Thread[results.length];
+        for (int ii = 0; ii < threads.length; ii++) {
+            final int idx = ii;
+            threads[ii] = new Thread() {
+                public void run () {
+                    ManagedConfig[] configs = new ManagedConfig[_configs.length];
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int jj = 0; jj < configs.length; jj++) {
+                        // start with a different config in each thread
+                        int cidx = (idx + jj) % configs.length;
+                        configs[cidx] = group.getRawConfig(_configs[cidx].getName());
+                    }
+                    results[idx] = configs;
+                }
+            };
+            threads[ii].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // each config was decoded exactly once and every thread got the same instance
+        Multiset<String> decoded = HashMultiset.create(group.decoded);
+        for (int ii = 0; ii < _configs.length; ii++) {
+            String name = _configs[ii].getName();
+            assertEquals(name, 1, decoded.count(name));
+            ManagedConfig config = group.getRawConfig(name);
+            assertEquals(_configs[ii], config);
+            for (ManagedConfig[] configs : results) {
+                assertNotNull(configs);
+                assertSame(config, configs[ii]);
+            }
+        }
+    }
+
+    /**
+     * Returns the named config as read from the XML.
+     */
+    protected RenderQueueConfig getConfig (String name)
+    {
+        for (RenderQueueConfig config : _configs) {
+            if (config.getName().equals(name)) {
+                return config;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A group that reads its configs from an archive file and records which it decodes.
+     */
+    protected static class TestGroup extends ConfigGroup<RenderQueueConfig>
+    {
+        /** The names of the configs decoded, in order. */
+        public List<String> decoded = Collections.synchronizedList(Lists.<String>newArrayList());
+
+        /**
+         * Creates a group for the specified archive.
+         */
+        public TestGroup (File file)
+            throws IOException
+        {
+            super(RenderQueueConfig.class);
+            _archive = new ConfigArchive(file);
+            initPending();
+        }
+
+        @Override
+        protected ManagedConfig decodeArchived (String name)
+        {
+            decoded.add(name);
+            return super.decodeArchived(name);
+        }
+    }
+
+    /** The configs read from the test resources. */
+    protected RenderQueueConfig[] _configs;
+
+    /** The archive file written from the configs. */
+    protected File _file;
+}
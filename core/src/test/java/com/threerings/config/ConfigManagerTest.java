@@ -0,0 +1,258 @@
+//
+// $Id$
+
+package com.threerings.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import java.util.concurrent.CountDownLatch;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+import junit.framework.TestCase;
+
+import com.threerings.expr.DynamicScope;
+import com.threerings.export.StreamingXMLImporter;
+
+import com.threerings.opengl.compositor.config.RenderQueueConfig;
+
+/**
+ * Tests the caching of config instances in the {@link ConfigManager}.
+ */
+public class ConfigManagerTest extends TestCase
+{
+    public ConfigManagerTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUp ()
+        throws IOException
+    {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(
+            "rsrc/config/render_queue.xml");
+        StreamingXMLImporter importer = new StreamingXMLImporter(in);
+        _configs = (RenderQueueConfig[])importer.readObject();
+        importer.close();
+
+        _cfgmgr = new TestManager();
+        _group = new ConfigGroup<RenderQueueConfig>(RenderQueueConfig.class);
+        _cfgmgr.addGroup(_group, _configs);
+    }
+
+    public void testHitsAndMisses ()
+    {
+        RenderQueueConfig config = getConfig(_cfgmgr, "Opaque");
+        assertSame(_group.getConfig("Opaque"), config);
+        assertSame(config, getConfig(_cfgmgr, "Opaque"));
+        assertEquals(1L, _cfgmgr.getInstanceCacheHits());
+        assertEquals(1L, _cfgmgr.getInstanceCacheMisses());
+        assertEquals(1, _cfgmgr.getInstanceCacheSize());
+
+        // missing configs and scoped lookups aren't cached
+        assertNull(getConfig(_cfgmgr, "Missing"));
+        assertSame(config, _cfgmgr.getConfig(
+            RenderQueueConfig.class, "Opaque", new DynamicScope("test"), null));
+        assertEquals(1, _cfgmgr.getInstanceCacheSize());
+
+        _cfgmgr.resetInstanceCacheStats();
+        assertEquals(0L, _cfgmgr.getInstanceCacheHits());
+        assertEquals(0L, _cfgmgr.getInstanceCacheMisses());
+    }
+
+    public void testUpdateInvalidation ()
+    {
+        RenderQueueConfig config = getConfig(_cfgmgr, "Opaque");
+        getConfig(_cfgmgr, "Overlay");
+        assertEquals(2, _cfgmgr.getInstanceCacheSize());
+
+        // only the updated config is dropped
+        config.wasUpdated();
+        assertEquals(1, _cfgmgr.getInstanceCacheSize());
+        _cfgmgr.resetInstanceCacheStats();
+        assertSame(config, getConfig(_cfgmgr, "Opaque"));
+        getConfig(_cfgmgr, "Overlay");
+        assertEquals(1L, _cfgmgr.getInstanceCacheHits());
+        assertEquals(1L, _cfgmgr.getInstanceCacheMisses());
+    }
+
+    public void testReplaceInvalidation ()
+    {
+        // replacing a config drops its instances whether or not events are fired
+        for (boolean fireEvents : new boolean[] { true, false }) {
+            getConfig(_cfgmgr, "Transparent");
+            RenderQueueConfig replacement = createReplacement("Transparent");
+            _group.addConfig(replacement, fireEvents);
+            assertSame(replacement, getConfig(_cfgmgr, "Transparent"));
+        }
+    }
+
+    public void testRemoveInvalidation ()
+    {
+        RenderQueueConfig config = getConfig(_cfgmgr, "Overlay");
+        _group.removeConfig(config);
+        assertNull(getConfig(_cfgmgr, "Overlay"));
+        assertEquals(0, _cfgmgr.getInstanceCacheSize());
+
+        // adding it back makes it available again
+        _group.addConfig(config, false);
+        assertSame(config, getConfig(_cfgmgr, "Overlay"));
+    }
+
+    public void testParentForwarding ()
+    {
+        ConfigManager child = new ConfigManager();
+        child.init("scene", _cfgmgr);
+        ConfigGroup<RenderQueueConfig> cgroup = child.getGroup(RenderQueueConfig.class);
+        assertNotNull(cgroup);
+
+        // configs found in the parent are cached there
+        RenderQueueConfig config = getConfig(child, "Opaque");
+        assertSame(_group.getConfig("Opaque"), config);
+        assertSame(config, getConfig(child, "Opaque"));
+        assertEquals(0, child.getInstanceCacheSize());
+        assertEquals(1, _cfgmgr.getInstanceCacheSize());
+        assertEquals(1L, _cfgmgr.getInstanceCacheHits());
+
+        // a replacement in the parent is seen through the child
+        RenderQueueConfig replacement = createReplacement("Opaque");
+        _group.addConfig(replacement, false);
+        assertSame(replacement, getConfig(child, "Opaque"));
+
+        // a config added to the child takes precedence until it's removed
+        RenderQueueConfig local = createReplacement("Opaque");
+        cgroup.addConfig(local);
+        assertSame(local, getConfig(child, "Opaque"));
+        assertSame(local, getConfig(child, "Opaque"));
+        assertEquals(1, child.getInstanceCacheSize());
+        cgroup.removeConfig(local);
+        assertSame(replacement, getConfig(child, "Opaque"));
+        assertEquals(0, child.getInstanceCacheSize());
+    }
+
+    public void testConcurrentMisses ()
+        throws Exception
+    {
+        File file = File.createTempFile("render_queue", ConfigArchive.EXTENSION);
+        try {
+            ConfigArchive.write(file, Arrays.asList(_configs), null);
+            final TestManager cfgmgr = new TestManager();
+            ConfigGroupTest.TestGroup group = new ConfigGroupTest.TestGroup(file);
+            cfgmgr.addGroup(group, null);
+
+            final CountDownLatch start = new CountDownLatch(1);
+            final RenderQueueConfig[][] results = new RenderQueueConfig[8][];
+            Thread[] threads = new Thread[results.length];
+            for (int ii = 0; ii < threads.length; ii++) {
+                final int idx = ii;
+                threads[ii] = new Thread() {
+                    public void run () {
+                        RenderQueueConfig[] configs = new RenderQueueConfig[_configs.length];
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int jj = 0; jj < LOOKUPS; jj++) {
+                            int cidx = (idx + jj) % configs.length;
+                            configs[cidx] = getConfig(cfgmgr, _configs[cidx].getName());
+                        }
+                        results[idx] = configs;
+                    }
+                };
+                threads[ii].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // each config was decoded once, and every lookup returned the same instance
+            Multiset<String> decoded = HashMultiset.create(group.decoded);
+            for (int ii = 0; ii < _configs.length; ii++) {
+                String name = _configs[ii].getName();
+                assertEquals(name, 1, decoded.count(name));
+                RenderQueueConfig config = getConfig(cfgmgr, name);
+                assertEquals(_configs[ii], config);
+                for (RenderQueueConfig[] configs : results) {
+                    assertNotNull(configs);
+                    assertSame(config, configs[ii]);
+                }
+            }
+            assertEquals(threads.length * LOOKUPS + _configs.length,
+                cfgmgr.getInstanceCacheHits() + cfgmgr.getInstanceCacheMisses());
+            assertEquals(_configs.length, cfgmgr.getInstanceCacheSize());
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Looks up an unscoped render queue config with no arguments.
+     */
+    protected static RenderQueueConfig getConfig (ConfigManager cfgmgr, String name)
+    {
+        return cfgmgr.getConfig(RenderQueueConfig.class, name);
+    }
+
+    /**
+     * Creates a modified copy of the named config as read from the XML.
+     */
+    protected RenderQueueConfig createReplacement (String name)
+    {
+        for (RenderQueueConfig config : _configs) {
+            if (config.getName().equals(name)) {
+                RenderQueueConfig replacement = (RenderQueueConfig)config.clone();
+                replacement.priority += 100;
+                return replacement;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A root manager whose groups are supplied directly rather than loaded.
+     */
+    protected static class TestManager extends ConfigManager
+    {
+        /**
+         * Creates a manager with no resource configs and a child type containing render queues.
+         */
+        public TestManager ()
+        {
+            _classes = new HashMap<String, Class<?>[]>();
+            _classes.put("resource", new Class<?>[0]);
+            _classes.put("scene", new Class<?>[] { RenderQueueConfig.class });
+        }
+
+        /**
+         * Initializes and registers a group with the supplied configs.
+         */
+        public void addGroup (ConfigGroup<?> group, ManagedConfig[] configs)
+        {
+            group.init(this, configs);
+            _groups.put(group.getConfigClass(), group);
+            clearInstances();
+        }
+    }
+
+    /** The configs read from the test resources. */
+    protected RenderQueueConfig[] _configs;
+
+    /** The manager under test. */
+    protected TestManager _cfgmgr;
+
+    /** The manager's render queue group. */
+    protected ConfigGroup<RenderQueueConfig> _group;
+
+    /** The number of lookups made by each thread in the concurrent test. */
+    protected static final int LOOKUPS = 30;
+}
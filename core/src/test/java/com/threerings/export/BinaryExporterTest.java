@@ -0,0 +1,621 @@
+//
+// $Id$
+
+package com.threerings.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests round trips through the binary exporter and importer.
+ */
+public class BinaryExporterTest extends TestCase
+{
+    public static class Sample
+        implements Exportable
+    {
+        public int count = 5;
+
+        public float scale = 1f;
+
+        public long stamp;
+
+        public String label = "default";
+
+        public int[] values = new int[0];
+
+        public Sample child;
+    }
+
+    public static class Primitives
+        implements Exportable
+    {
+        public boolean flag = true;
+
+        public byte b = 1;
+
+        public char c = 'c';
+
+        public short s = 2;
+
+        public int i = 3;
+
+        public long l = 4L;
+
+        public float f = 5f;
+
+        public double d = 6.0;
+
+        public String text = "text";
+
+        public int[] array = { 1, 2 };
+
+        public Primitives next;
+    }
+
+    public static class Writer
+        implements Exportable
+    {
+        public int count = 1;
+
+        public String extra = "extra";
+
+        public String scale = "scale";
+
+        public int level = 2;
+
+        public int flag = 3;
+    }
+
+    public static class Direct
+        implements Exportable
+    {
+        public int count = 1;
+
+        public float scale = 2f;
+
+        public long level = 3L;
+
+        public boolean flag = true;
+
+        public String missing = "missing";
+
+        public int absent = 4;
+    }
+
+    public static class Mapped
+        implements Exportable
+    {
+        public int count = 1;
+
+        public float scale = 2f;
+
+        public long level = 3L;
+
+        public boolean flag = true;
+
+        public String missing = "missing";
+
+        public int absent = 4;
+
+        public void readFields (Importer in)
+            throws IOException
+        {
+            // a custom reader makes the importer use its field map
+            in.defaultReadFields();
+        }
+    }
+
+    public BinaryExporterTest (String name)
+    {
+        super(name);
+    }
+
+    public void testRoundTrip ()
+        throws IOException
+    {
+        Sample sample = createSample();
+        assertSampleEquals(sample, (Sample)read(write(sample, null)));
+    }
+
+    public void testReadBaselineStreams ()
+        throws IOException
+    {
+        assertSampleEquals(createSample(), (Sample)read(fromHex(BASELINE_SAMPLE)));
+        assertPrimitivesEqual(new Primitives(), (Primitives)read(fromHex(BASELINE_DEFAULTS)));
+        assertPrimitivesEqual(createPrimitives(), (Primitives)read(fromHex(BASELINE_PRIMITIVES)));
+    }
+
+    public void testSkipDefaults ()
+        throws IOException
+    {
+        // an object equal to its prototype writes no fields at all
+        assertTrue(Arrays.equals(fromHex(BASELINE_DEFAULTS), write(new Primitives(), null)));
+
+        // the fields may be written in a different order, but exactly the same ones are written
+        assertEquals(fromHex(BASELINE_SAMPLE).length, write(createSample(), null).length);
+        byte[] bytes = write(createPrimitives(), null);
+        assertEquals(fromHex(BASELINE_PRIMITIVES).length, bytes.length);
+        assertPrimitivesEqual(createPrimitives(), (Primitives)read(bytes));
+    }
+
+    public void testPrimitives ()
+        throws IOException
+    {
+        // each primitive type differing from the prototype on its own
+        for (int ii = 0; ii < 8; ii++) {
+            Primitives prims = new Primitives();
+            switch (ii) {
+                case 0: prims.flag = false; break;
+                case 1: prims.b = Byte.MIN_VALUE; break;
+                case 2: prims.c = Character.MAX_VALUE; break;
+                case 3: prims.s = -1; break;
+                case 4: prims.i = Integer.MAX_VALUE; break;
+                case 5: prims.l = -1L; break;
+                case 6: prims.f = Float.NEGATIVE_INFINITY; break;
+                case 7: prims.d = Double.MIN_VALUE; break;
+            }
+            byte[] bytes = write(prims, null);
+            assertTrue(bytes.length > fromHex(BASELINE_DEFAULTS).length);
+            assertPrimitivesEqual(prims, (Primitives)read(bytes));
+        }
+    }
+
+    public void testReplacer ()
+        throws IOException
+    {
+        // a replacer forces the field map path, which must agree with the direct path
+        Exporter.Replacer identity = new Exporter.Replacer() {
+            public Exporter.Replacement getReplacement (Object value, Class<?> clazz) {
+                return null;
+            }
+        };
+        byte[] direct = write(createPrimitives(), null);
+        byte[] mapped = writeReplaced(createPrimitives(), identity);
+        assertEquals(direct.length, mapped.length);
+        assertPrimitivesEqual(createPrimitives(), (Primitives)read(mapped));
+
+        // replacements apply to the fields of default-marshalled objects
+        Exporter.Replacer upper = new Exporter.Replacer() {
+            public Exporter.Replacement getReplacement (Object value, Class<?> clazz) {
+                return (value instanceof String) ?
+                    new Exporter.Replacement(((String)value).toUpperCase(), clazz) : null;
+            }
+        };
+        Sample sample = (Sample)read(writeReplaced(createSample(), upper));
+        assertEquals("PARENT", sample.label);
+        assertNull(sample.child.label);
+
+        // values equal to the prototype's are skipped before any replacement
+        Primitives prims = (Primitives)read(writeReplaced(createPrimitives(), upper));
+        assertEquals("text", prims.text);
+        assertNull(prims.next.text);
+    }
+
+    public void testVersionedFields ()
+        throws IOException
+    {
+        Writer writer = new Writer();
+        writer.count = 10;
+        writer.extra = "unknown";
+        writer.scale = "mistyped";
+        writer.level = 20;
+        writer.flag = 30;
+        byte[] bytes = write(writer, null);
+
+        // read the stream as classes with different fields, through both importer paths
+        Direct direct = (Direct)read(rename(bytes, "$Writer", "$Direct"));
+        Mapped mapped = (Mapped)read(rename(bytes, "$Writer", "$Mapped"));
+
+        // matching fields are assigned and convertible numbers are converted
+        assertEquals(10, direct.count);
+        assertEquals(20L, direct.level);
+
+        // unknown fields are skipped, mistyped and missing fields keep the prototype's values
+        assertEquals(2f, direct.scale);
+        assertTrue(direct.flag);
+        assertEquals("missing", direct.missing);
+        assertEquals(4, direct.absent);
+
+        assertEquals(mapped.count, direct.count);
+        assertEquals(mapped.scale, direct.scale);
+        assertEquals(mapped.level, direct.level);
+        assertEquals(mapped.flag, direct.flag);
+        assertEquals(mapped.missing, direct.missing);
+        assertEquals(mapped.absent, direct.absent);
+    }
+
+    public void testDictionary ()
+        throws IOException
+    {
+        ExportDictionary dictionary = ExportDictionary.create(
+            0x7E57, new Class<?>[] { Sample.class, int[].class }, new String[] { "child" });
+        ExportDictionary.register(dictionary);
+        try {
+            Sample sample = createSample();
+            byte[] plain = write(sample, null);
+            byte[] compact = write(sample, dictionary);
+            assertTrue(compact.length < plain.length);
+            assertSampleEquals(sample, (Sample)read(compact));
+        } finally {
+            ExportDictionary.unregister(dictionary);
+        }
+        assertNull(ExportDictionary.get(0x7E57));
+    }
+
+    public void testSerializedDictionary ()
+        throws IOException
+    {
+        ExportDictionary dictionary = ExportDictionary.create(
+            0x7E58, new Class<?>[] { Sample.class, int[].class }, new String[] { "child" });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dictionary.write(out);
+        byte[] bytes = out.toByteArray();
+
+        ExportDictionary read = ExportDictionary.read(new ByteArrayInputStream(bytes));
+        assertEquals(dictionary.getId(), read.getId());
+        assertEquals(dictionary.getChecksum(), read.getChecksum());
+        assertEquals(dictionary.getStrings(), read.getStrings());
+        assertEquals(Sample.class, read.getClasses().get(0).clazz);
+        assertEquals(dictionary.getFields(Sample.class.getName()).size(),
+            read.getFields(Sample.class.getName()).size());
+
+        // the checksum stored with the contents must match them
+        byte[] corrupt = rename(bytes, "child", "chilt");
+        try {
+            ExportDictionary.read(new ByteArrayInputStream(corrupt));
+            fail("Read dictionary with mismatched checksum.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testPinnedDictionary ()
+        throws IOException
+    {
+        // a dictionary recorded when Sample had a since removed field, and including a class
+        // that no longer exists: the checksum depends only on the recorded contents, and the
+        // ids of the missing class and field are reserved rather than reused
+        ExportDictionary.ClassEntry missing =
+            new ExportDictionary.ClassEntry("com.threerings.export.Missing", (byte)0);
+        assertNull(missing.clazz);
+        List<ExportDictionary.FieldEntry> fields = ImmutableList.of(
+            new ExportDictionary.FieldEntry("removed", missing),
+            new ExportDictionary.FieldEntry("count", new ExportDictionary.ClassEntry(int.class)),
+            new ExportDictionary.FieldEntry(
+                "label", new ExportDictionary.ClassEntry(String.class)));
+        ExportDictionary dictionary = new ExportDictionary(0x7E59,
+            ImmutableList.of(missing, new ExportDictionary.ClassEntry(Sample.class)),
+            ImmutableMap.of(Sample.class.getName(), fields), ImmutableList.<String>of());
+        ExportDictionary copy = new ExportDictionary(0x7E59,
+            ImmutableList.of(missing, new ExportDictionary.ClassEntry(Sample.class)),
+            ImmutableMap.of(Sample.class.getName(), fields), ImmutableList.<String>of());
+        assertEquals(dictionary.getChecksum(), copy.getChecksum());
+        assertFalse(dictionary.getChecksum() == ExportDictionary.create(0x7E59,
+            new Class<?>[] { Sample.class }, new String[0]).getChecksum());
+
+        ExportDictionary.register(dictionary);
+        try {
+            // registering the same contents again is harmless
+            ExportDictionary.register(copy);
+            Sample sample = createSample();
+            byte[] compact = write(sample, dictionary);
+            assertTrue(compact.length < write(sample, null).length);
+            assertSampleEquals(sample, (Sample)read(compact));
+        } finally {
+            ExportDictionary.unregister(dictionary);
+        }
+    }
+
+    public void testCodecs ()
+        throws IOException
+    {
+        Sample sample = createSample();
+        sample.values = new int[100000];
+        for (int ii = 0; ii < sample.values.length; ii++) {
+            sample.values[ii] = ii % 100;
+        }
+        for (ExportCodec codec : new ExportCodec[] {
+                ExportCodec.DEFLATE, ExportCodec.deflate(1), ExportCodec.LZ }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BinaryExporter exporter = new BinaryExporter(out, codec);
+            exporter.writeObject(sample);
+            exporter.close();
+            byte[] bytes = out.toByteArray();
+            assertTrue(bytes.length < sample.values.length);
+            assertSampleEquals(sample, (Sample)read(bytes));
+        }
+
+        // a conflicting registration is rejected without replacing the registered codec
+        ExportCodec conflict = new ExportCodec() {
+            public int getId () {
+                return ExportCodec.LZ.getId();
+            }
+            public CompressedOutputStream compress (OutputStream out) {
+                throw new UnsupportedOperationException();
+            }
+            public InputStream decompress (InputStream in) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        try {
+            ExportCodec.register(conflict);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertSame(ExportCodec.LZ, ExportCodec.getCodec(ExportCodec.LZ.getId()));
+    }
+
+    public void testBufferStreams ()
+        throws IOException
+    {
+        Sample sample = createSample();
+        sample.values = new int[100000];
+        for (int ii = 0; ii < sample.values.length; ii++) {
+            sample.values[ii] = ii * 31;
+        }
+        BufferDataOutputStream out = new BufferDataOutputStream();
+        BinaryExporter exporter = new BinaryExporter(out, (ExportCodec)null);
+        exporter.writeObject(sample);
+        exporter.finish();
+        ByteBuffer buf = out.getOutput();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        assertTrue(Arrays.equals(write(sample, null), bytes));
+
+        BinaryImporter importer = new BinaryImporter(buf);
+        assertSampleEquals(sample, (Sample)importer.readObject());
+        assertFalse(buf.hasRemaining());
+    }
+
+    public void testLittleEndianBuffers ()
+        throws IOException
+    {
+        Sample sample = createSample();
+        sample.values = new int[10000];
+        for (int ii = 0; ii < sample.values.length; ii++) {
+            sample.values[ii] = ii * 0x01020304;
+        }
+        byte[] expected = write(sample, null);
+
+        // the supplied buffer is too small, so the stream must grow it
+        BufferDataOutputStream out = new BufferDataOutputStream(
+            null, ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN));
+        BinaryExporter exporter = new BinaryExporter(out, (ExportCodec)null);
+        exporter.writeObject(sample);
+        exporter.finish();
+        ByteBuffer buf = out.getOutput();
+        assertEquals(expected.length, buf.remaining());
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        assertTrue(Arrays.equals(expected, bytes));
+
+        // likewise when draining a small buffer into a channel
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        out = new BufferDataOutputStream(Channels.newChannel(bout),
+            ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN));
+        exporter = new BinaryExporter(out, (ExportCodec)null);
+        exporter.writeObject(sample);
+        exporter.close();
+        assertTrue(Arrays.equals(expected, bout.toByteArray()));
+
+        // and reading from a little-endian buffer
+        ByteBuffer input = ByteBuffer.wrap(expected).order(ByteOrder.LITTLE_ENDIAN);
+        BinaryImporter importer = new BinaryImporter(input);
+        assertSampleEquals(sample, (Sample)importer.readObject());
+        assertFalse(input.hasRemaining());
+    }
+
+    public void testChannels ()
+        throws IOException
+    {
+        Sample sample = createSample();
+        sample.values = new int[100000];
+        for (int ii = 0; ii < sample.values.length; ii++) {
+            sample.values[ii] = ii * 17;
+        }
+        for (ExportCodec codec : new ExportCodec[] { null, ExportCodec.DEFLATE }) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            BinaryExporter exporter = new BinaryExporter(expected, codec);
+            exporter.writeObject(sample);
+            exporter.close();
+
+            // the channel output matches that of the stream
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            exporter = new BinaryExporter(Channels.newChannel(out), codec);
+            exporter.writeObject(sample);
+            exporter.close();
+            assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+
+            // write to a file and read it back through a mapped buffer
+            File file = File.createTempFile("sample", ".dat");
+            try {
+                exporter = new BinaryExporter(new FileOutputStream(file).getChannel(), codec);
+                exporter.writeObject(sample);
+                exporter.close();
+                assertEquals(out.size(), file.length());
+
+                BufferDataInputStream in = BufferDataInputStream.map(file);
+                BinaryImporter importer = new BinaryImporter(in.getBuffer());
+                assertSampleEquals(sample, (Sample)importer.readObject());
+                if (codec == null) {
+                    assertFalse(in.getBuffer().hasRemaining());
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    protected static Sample createSample ()
+    {
+        Sample sample = new Sample();
+        sample.count = 42;
+        sample.stamp = Long.MAX_VALUE;
+        sample.label = "parent";
+        sample.values = new int[] { 1, 2, 3 };
+        sample.child = new Sample();
+        sample.child.scale = 0.5f;
+        sample.child.label = null;
+        return sample;
+    }
+
+    protected static Primitives createPrimitives ()
+    {
+        Primitives prims = new Primitives();
+        prims.flag = false;
+        prims.c = '\u20ac';
+        prims.i = -1;
+        prims.f = Float.NaN;
+        prims.d = -0.5;
+        prims.array = new int[] { 1, 2, 3 };
+        prims.next = new Primitives();
+        prims.next.b = -128;
+        prims.next.s = Short.MIN_VALUE;
+        prims.next.l = Long.MIN_VALUE;
+        prims.next.text = null;
+        return prims;
+    }
+
+    protected static byte[] write (Object object, ExportDictionary dictionary)
+        throws IOException
+    {
+        return write(object, dictionary, null);
+    }
+
+    protected static byte[] writeReplaced (Object object, Exporter.Replacer replacer)
+        throws IOException
+    {
+        return write(object, null, replacer);
+    }
+
+    protected static byte[] write (
+        Object object, ExportDictionary dictionary, Exporter.Replacer replacer)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryExporter exporter = new BinaryExporter(out, false);
+        if (dictionary != null) {
+            exporter.setDictionary(dictionary);
+        }
+        if (replacer != null) {
+            exporter.setReplacer(replacer);
+        }
+        exporter.writeObject(object);
+        exporter.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Replaces the name of the class written in the stream with another of the same length so
+     * that the stream will be read as an instance of the other class.
+     */
+    protected static byte[] rename (byte[] bytes, String from, String to)
+    {
+        byte[] fbytes = from.getBytes(), tbytes = to.getBytes();
+        assertEquals(fbytes.length, tbytes.length);
+        byte[] renamed = bytes.clone();
+        for (int ii = 0; ii <= renamed.length - fbytes.length; ii++) {
+            if (Arrays.equals(fbytes, Arrays.copyOfRange(renamed, ii, ii + fbytes.length))) {
+                System.arraycopy(tbytes, 0, renamed, ii, tbytes.length);
+                return renamed;
+            }
+        }
+        fail("Class name not found: " + from);
+        return null;
+    }
+
+    protected static byte[] fromHex (String hex)
+    {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int ii = 0; ii < bytes.length; ii++) {
+            bytes[ii] = (byte)Integer.parseInt(hex.substring(ii * 2, ii * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    protected static Object read (byte[] bytes)
+        throws IOException
+    {
+        BinaryImporter importer = new BinaryImporter(new ByteArrayInputStream(bytes));
+        Object object = importer.readObject();
+        importer.close();
+        return object;
+    }
+
+    protected static void assertSampleEquals (Sample expected, Sample actual)
+    {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.count, actual.count);
+        assertEquals(expected.scale, actual.scale);
+        assertEquals(expected.stamp, actual.stamp);
+        assertEquals(expected.label, actual.label);
+        assertTrue(Arrays.equals(expected.values, actual.values));
+        assertSampleEquals(expected.child, actual.child);
+    }
+
+    protected static void assertPrimitivesEqual (Primitives expected, Primitives actual)
+    {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.flag, actual.flag);
+        assertEquals(expected.b, actual.b);
+        assertEquals(expected.c, actual.c);
+        assertEquals(expected.s, actual.s);
+        assertEquals(expected.i, actual.i);
+        assertEquals(expected.l, actual.l);
+        assertEquals(Float.floatToIntBits(expected.f), Float.floatToIntBits(actual.f));
+        assertEquals(Double.doubleToLongBits(expected.d), Double.doubleToLongBits(actual.d));
+        assertEquals(expected.text, actual.text);
+        assertTrue(Arrays.equals(expected.array, actual.array));
+        assertPrimitivesEqual(expected.next, actual.next);
+    }
+
+    /** {@link #createSample} as written by the exporter before fields were written directly. */
+    protected static final String BASELINE_SAMPLE =
+        "faceaf0e100200000109002f636f6d2e746872656572696e67732e6578706f72742e42696e61" +
+        "72794578706f72746572546573742453616d706c6500050002000676616c7565730a00025b49" +
+        "01030000000300000001000000020000000301040005636f756e74060000002a020500057374" +
+        "616d70077fffffffffffffff030600056c6162656c0b00106a6176612e6c616e672e53747269" +
+        "6e6701070006706172656e74040800056368696c6409090902050a00057363616c65053f0000" +
+        "000300";
+
+    /** A default {@link Primitives} as written by the exporter before fields were written
+     * directly. */
+    protected static final String BASELINE_DEFAULTS =
+        "faceaf0e1002000001090033636f6d2e746872656572696e67732e6578706f72742e42696e61" +
+        "72794578706f7274657254657374245072696d6974697665730000";
+
+    /** {@link #createPrimitives} as written by the exporter before fields were written
+     * directly. */
+    protected static final String BASELINE_PRIMITIVES =
+        "faceaf0e1002000001090033636f6d2e746872656572696e67732e6578706f72742e42696e61" +
+        "72794578706f7274657254657374245072696d6974697665730007000200046e657874090309" +
+        "0401040001620280020500017308800003060004746578740a00106a6176612e6c616e672e53" +
+        "7472696e670100040700016c07800000000000000005080004666c6167010006090001630320" +
+        "ac070a00016404bfe0000000000000080b000561727261790b00025b49010c00000003000000" +
+        "010000000200000003090d000166057fc000000a0e00016906ffffffff";
+}
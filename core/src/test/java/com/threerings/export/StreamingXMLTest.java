@@ -0,0 +1,447 @@
+//
+// $Id$
+
+package com.threerings.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.io.ByteStreams;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the streaming XML exporter and importer are interchangeable with the DOM versions.
+ */
+public class StreamingXMLTest extends TestCase
+{
+    public enum Color
+    {
+        RED, GREEN, BLUE
+    }
+
+    public static class Node
+        implements Exportable
+    {
+        public String name = "";
+
+        public Node next;
+
+        public Object any;
+
+        public List<Object> list = Lists.newArrayList();
+
+        public Map<String, Object> map = Maps.newHashMap();
+    }
+
+    public static class Primitives
+        implements Exportable
+    {
+        public boolean flag = true;
+
+        public byte b = 1;
+
+        public char c = 'c';
+
+        public short s = 2;
+
+        public int i = 3;
+
+        public long l = 4L;
+
+        public float f = 5f;
+
+        public double d = 6.0;
+
+        public boolean[] flags;
+
+        public byte[] bytes;
+
+        public char[] chars;
+
+        public short[] shorts;
+
+        public int[] ints = { 1, 2 };
+
+        public long[] longs;
+
+        public float[] floats;
+
+        public double[] doubles;
+
+        public String[] strings;
+
+        public Class<?> type = Object.class;
+
+        public File file;
+    }
+
+    public static class Containers
+        implements Exportable
+    {
+        public Color color = Color.RED;
+
+        public Object anyColor;
+
+        public EnumSet<Color> colors = EnumSet.noneOf(Color.class);
+
+        public EnumSet<Color> none = EnumSet.allOf(Color.class);
+
+        public Multiset<Object> multiset = HashMultiset.create();
+
+        public List<Object> list = ImmutableList.of();
+
+        public Set<Object> set = ImmutableSet.of();
+
+        public Map<Object, Object> map = ImmutableMap.of();
+
+        public Multiset<Object> imultiset = ImmutableMultiset.of();
+    }
+
+    public static class Outer
+        implements Exportable
+    {
+        public class Inner
+            implements Exportable
+        {
+            public int value;
+
+            public Outer getOuter ()
+            {
+                return Outer.this;
+            }
+        }
+
+        public String name = "";
+
+        public Inner inner;
+
+        public Inner[] inners = new Inner[0];
+    }
+
+    public static class Custom
+        implements Exportable
+    {
+        public int[] values = new int[0];
+
+        public String label = "";
+
+        public transient int count;
+
+        public void writeFields (Exporter out)
+            throws IOException
+        {
+            out.write("count", values.length);
+            out.write("label", label, "", String.class);
+            out.write("values", values, int[].class);
+        }
+
+        public void readFields (Importer in)
+            throws IOException
+        {
+            values = in.read("values", new int[0], int[].class);
+            label = in.read("label", "", String.class);
+            count = in.read("count", -1);
+
+            // reading a field again yields the same value, as with the DOM importer
+            assertEquals(count, in.read("count", -2));
+            assertTrue(Arrays.equals(values, in.read("values", null, int[].class)));
+        }
+    }
+
+    public StreamingXMLTest (String name)
+    {
+        super(name);
+    }
+
+    public void testIdenticalOutput ()
+        throws IOException
+    {
+        Object graph = createGraph();
+        assertEquals(
+            new String(writeDOM(graph), "UTF-8"), new String(writeStreaming(graph), "UTF-8"));
+    }
+
+    public void testRoundTrip ()
+        throws IOException
+    {
+        byte[] bytes = writeDOM(createGraph());
+        StreamingXMLImporter in = new StreamingXMLImporter(new ByteArrayInputStream(bytes));
+        Object[] graph = (Object[])in.readObject();
+        in.close();
+
+        Node first = (Node)graph[0], second = (Node)graph[1];
+        assertEquals("a & <b>\r\n\uD83D\uDE00", first.name);
+        assertSame(second, first.next);
+        assertSame(first, second.next);
+        assertSame(graph, first.any);
+        assertEquals(Lists.newArrayList(second, "x", null), first.list);
+        assertSame(second, first.map.get("k"));
+        assertEquals("", second.name);
+        assertSame(graph[0], graph[2]);
+        assertEquals(new String(bytes, "UTF-8"), new String(writeDOM(graph), "UTF-8"));
+    }
+
+    public void testPrimitives ()
+        throws IOException
+    {
+        Primitives prims = new Primitives();
+        prims.b = -128;
+        prims.c = '\u20ac';
+        prims.f = Float.NaN;
+        prims.d = -0.5;
+        prims.flags = new boolean[] { true, false };
+        prims.bytes = new byte[] { -1, 0, 1 };
+        prims.chars = new char[] { 'a', '<', '\u00e9' };
+        prims.shorts = new short[] { Short.MIN_VALUE };
+        prims.ints = new int[0];
+        prims.longs = new long[] { Long.MAX_VALUE };
+        prims.floats = new float[] { 0.25f };
+        prims.doubles = new double[] { 1e100 };
+        prims.strings = new String[] { "one", "", "three" };
+        prims.type = Primitives.class;
+        prims.file = new File("dir", "name");
+
+        String xml = assertIdenticalOutput(prims);
+        // fields with their default values are skipped
+        assertFalse(xml.contains("<flag>"));
+        assertFalse(xml.contains("<s>"));
+        assertFalse(xml.contains("<l>"));
+        assertTrue(xml.contains("<b>-128</b>"));
+
+        Primitives read = (Primitives)readStreaming(xml.getBytes("UTF-8"));
+        assertEquals(prims.flag, read.flag);
+        assertEquals(prims.b, read.b);
+        assertEquals(prims.c, read.c);
+        assertEquals(prims.s, read.s);
+        assertEquals(prims.i, read.i);
+        assertEquals(prims.l, read.l);
+        assertTrue(Float.isNaN(read.f));
+        assertEquals(prims.d, read.d);
+        assertTrue(Arrays.equals(prims.flags, read.flags));
+        assertTrue(Arrays.equals(prims.bytes, read.bytes));
+        assertTrue(Arrays.equals(prims.chars, read.chars));
+        assertTrue(Arrays.equals(prims.shorts, read.shorts));
+        assertTrue(Arrays.equals(prims.ints, read.ints));
+        assertTrue(Arrays.equals(prims.longs, read.longs));
+        assertTrue(Arrays.equals(prims.floats, read.floats));
+        assertTrue(Arrays.equals(prims.doubles, read.doubles));
+        assertTrue(Arrays.equals(prims.strings, read.strings));
+        assertEquals(prims.type, read.type);
+        assertEquals(prims.file, read.file);
+        assertEquals(xml, new String(writeStreaming(read), "UTF-8"));
+    }
+
+    public void testCollections ()
+        throws IOException
+    {
+        Containers colls = new Containers();
+        colls.color = Color.BLUE;
+        colls.anyColor = Color.GREEN;
+        colls.colors = EnumSet.of(Color.RED, Color.BLUE);
+        colls.none = EnumSet.noneOf(Color.class);
+        colls.multiset.add("a", 3);
+        colls.multiset.add(Color.RED);
+        colls.list = ImmutableList.<Object>of("x", 1, Color.GREEN);
+        colls.set = ImmutableSet.<Object>of("y", 2L);
+        colls.map = ImmutableMap.<Object, Object>of("k", "v", 3, ImmutableList.of());
+        colls.imultiset = ImmutableMultiset.<Object>of("b", "b", "c");
+
+        String xml = assertIdenticalOutput(colls);
+        Containers read = (Containers)readStreaming(xml.getBytes("UTF-8"));
+        assertEquals(colls.color, read.color);
+        assertEquals(colls.anyColor, read.anyColor);
+        assertEquals(colls.colors, read.colors);
+        assertEquals(colls.none, read.none);
+        assertEquals(colls.multiset, read.multiset);
+        assertEquals(colls.list, read.list);
+        assertTrue(read.list instanceof ImmutableList);
+        assertEquals(colls.set, read.set);
+        assertTrue(read.set instanceof ImmutableSet);
+        assertEquals(colls.map, read.map);
+        assertTrue(read.map instanceof ImmutableMap);
+        assertEquals(colls.imultiset, read.imultiset);
+        assertTrue(read.imultiset instanceof ImmutableMultiset);
+        assertEquals(xml, new String(writeStreaming(read), "UTF-8"));
+    }
+
+    public void testInnerObjects ()
+        throws IOException
+    {
+        Outer outer = new Outer();
+        outer.name = "outer";
+        outer.inner = outer.new Inner();
+        outer.inner.value = 1;
+        Outer.Inner second = outer.new Inner();
+        second.value = 2;
+        outer.inners = new Outer.Inner[] { second, outer.inner };
+
+        String xml = assertIdenticalOutput(outer);
+        Outer read = (Outer)readStreaming(xml.getBytes("UTF-8"));
+        assertEquals("outer", read.name);
+        assertEquals(1, read.inner.value);
+        assertSame(read, read.inner.getOuter());
+        assertEquals(2, read.inners.length);
+        assertEquals(2, read.inners[0].value);
+        assertSame(read, read.inners[0].getOuter());
+        assertSame(read.inner, read.inners[1]);
+    }
+
+    public void testCustomFields ()
+        throws IOException
+    {
+        Custom custom = new Custom();
+        custom.values = new int[] { 4, 5, 6 };
+        custom.label = "custom";
+
+        String xml = assertIdenticalOutput(custom);
+        Custom read = (Custom)readStreaming(xml.getBytes("UTF-8"));
+        assertTrue(Arrays.equals(custom.values, read.values));
+        assertEquals("custom", read.label);
+        assertEquals(3, read.count);
+    }
+
+    public void testReplacer ()
+        throws IOException
+    {
+        // the streaming exporter consults the replacer as often as the DOM exporter does
+        CountingReplacer dom = new CountingReplacer(), streaming = new CountingReplacer();
+        Object graph = createGraph();
+        ByteArrayOutputStream dout = new ByteArrayOutputStream();
+        XMLExporter dexporter = new XMLExporter(dout);
+        dexporter.setReplacer(dom);
+        dexporter.writeObject(graph);
+        dexporter.close();
+
+        ByteArrayOutputStream sout = new ByteArrayOutputStream();
+        StreamingXMLExporter sexporter = new StreamingXMLExporter(sout);
+        sexporter.setReplacer(streaming);
+        sexporter.writeObject(graph);
+        sexporter.close();
+
+        assertTrue(dom.calls > 0);
+        assertEquals(dom.calls, streaming.calls);
+        String xml = new String(sout.toByteArray(), "UTF-8");
+        assertEquals(new String(dout.toByteArray(), "UTF-8"), xml);
+        assertTrue(xml.contains(">X</entry>"));
+    }
+
+    public void testConfig ()
+        throws IOException
+    {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(
+            "rsrc/config/material.xml");
+        byte[] bytes = ByteStreams.toByteArray(in);
+        in.close();
+
+        XMLImporter dimporter = new XMLImporter(new ByteArrayInputStream(bytes));
+        Object[] dconfigs = (Object[])dimporter.readObject();
+        dimporter.close();
+        Object[] sconfigs = (Object[])readStreaming(bytes);
+        assertTrue(sconfigs.length > 0);
+        assertTrue(Arrays.equals(dconfigs, sconfigs));
+
+        String xml = new String(writeDOM(dconfigs), "UTF-8");
+        assertEquals(xml, new String(writeStreaming(dconfigs), "UTF-8"));
+        assertEquals(xml, new String(writeStreaming(sconfigs), "UTF-8"));
+    }
+
+    /**
+     * Counts calls and replaces the string "x" with "X".
+     */
+    protected static class CountingReplacer
+        implements Exporter.Replacer
+    {
+        /** The number of times the replacer has been called. */
+        public int calls;
+
+        // documentation inherited from interface Exporter.Replacer
+        public Exporter.Replacement getReplacement (Object value, Class<?> clazz)
+        {
+            calls++;
+            return "x".equals(value) ? new Exporter.Replacement("X", clazz) : null;
+        }
+    }
+
+    /**
+     * Writes the object with both exporters, checks that their output is identical and that the
+     * DOM importer reads the same object as the streaming importer.
+     *
+     * @return the output.
+     */
+    protected static String assertIdenticalOutput (Object object)
+        throws IOException
+    {
+        byte[] bytes = writeDOM(object);
+        String xml = new String(bytes, "UTF-8");
+        assertEquals(xml, new String(writeStreaming(object), "UTF-8"));
+
+        XMLImporter importer = new XMLImporter(new ByteArrayInputStream(bytes));
+        Object dread = importer.readObject();
+        importer.close();
+        assertEquals(xml, new String(writeStreaming(dread), "UTF-8"));
+        assertEquals(xml, new String(writeStreaming(readStreaming(bytes)), "UTF-8"));
+        return xml;
+    }
+
+    protected static Object[] createGraph ()
+    {
+        Node first = new Node(), second = new Node();
+        first.name = "a & <b>\r\n\uD83D\uDE00";
+        first.next = second;
+        second.next = first;
+        first.list.add(second);
+        first.list.add("x");
+        first.list.add(null);
+        first.map.put("k", second);
+        Object[] graph = new Object[] { first, second, first };
+        first.any = graph;
+        return graph;
+    }
+
+    protected static Object readStreaming (byte[] bytes)
+        throws IOException
+    {
+        StreamingXMLImporter importer = new StreamingXMLImporter(new ByteArrayInputStream(bytes));
+        Object object = importer.readObject();
+        importer.close();
+        return object;
+    }
+
+    protected static byte[] writeDOM (Object object)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLExporter exporter = new XMLExporter(out);
+        exporter.writeObject(object);
+        exporter.close();
+        return out.toByteArray();
+    }
+
+    protected static byte[] writeStreaming (Object object)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingXMLExporter exporter = new StreamingXMLExporter(out);
+        exporter.writeObject(object);
+        exporter.close();
+        return out.toByteArray();
+    }
+}
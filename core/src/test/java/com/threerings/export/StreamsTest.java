@@ -3,9 +3,24 @@
 
 package com.threerings.export;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.Channels;
+
+import java.util.Arrays;
 import java.util.List;
 
 import com.google.common.collect.ImmutableList;
@@ -58,4 +73,104 @@ public class StreamsTest extends TestCase
         // try one more read: we should get -1
         assertEquals(-1L, Streams.readVarLong(in));
     }
+
+    public void testBulkStreamers ()
+        throws Exception
+    {
+        // enough elements to overflow both the scratch buffer and the default stream buffer
+        int length = 70000;
+        boolean[] booleans = new boolean[length];
+        byte[] bytes = new byte[length];
+        char[] chars = new char[length];
+        double[] doubles = new double[length];
+        float[] floats = new float[length];
+        int[] ints = new int[length];
+        long[] longs = new long[length];
+        short[] shorts = new short[length];
+        for (int ii = 0; ii < length; ii++) {
+            booleans[ii] = (ii % 3 == 0);
+            bytes[ii] = (byte)ii;
+            chars[ii] = (char)(ii * 7);
+            doubles[ii] = ii * 0.25;
+            floats[ii] = -ii * 0.5f;
+            ints[ii] = ii * 31;
+            longs[ii] = (long)ii << 40;
+            shorts[ii] = (short)(ii * 3);
+        }
+        Object[] values = {
+            booleans, bytes, chars, doubles, floats, ints, longs, shorts,
+            ByteBuffer.wrap(bytes), CharBuffer.wrap(chars), DoubleBuffer.wrap(doubles),
+            FloatBuffer.wrap(floats), IntBuffer.wrap(ints), LongBuffer.wrap(longs),
+            ShortBuffer.wrap(shorts) };
+        Class<?>[] classes = {
+            boolean[].class, byte[].class, char[].class, double[].class, float[].class,
+            int[].class, long[].class, short[].class, ByteBuffer.class, CharBuffer.class,
+            DoubleBuffer.class, FloatBuffer.class, IntBuffer.class, LongBuffer.class,
+            ShortBuffer.class };
+
+        for (int ii = 0; ii < values.length; ii++) {
+            @SuppressWarnings("unchecked") Streamer<Object> streamer =
+                (Streamer<Object>)Streamer.getStreamer(classes[ii]);
+
+            // write through a plain stream
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bout);
+            streamer.write(values[ii], out);
+            byte[] expected = bout.toByteArray();
+            assertEquals(expected.length, out.size());
+
+            // write into a buffer that grows
+            BufferDataOutputStream mout = new BufferDataOutputStream();
+            streamer.write(values[ii], mout);
+            ByteBuffer output = mout.getOutput();
+            byte[] actual = new byte[output.remaining()];
+            output.duplicate().get(actual);
+            assertTrue(Arrays.equals(expected, actual));
+            assertEquals(expected.length, mout.size());
+
+            // write into a buffer that is flushed to a channel
+            bout = new ByteArrayOutputStream();
+            BufferDataOutputStream cout = new BufferDataOutputStream(Channels.newChannel(bout));
+            streamer.write(values[ii], cout);
+            cout.close();
+            assertTrue(Arrays.equals(expected, bout.toByteArray()));
+            assertEquals(expected.length, cout.size());
+
+            // read back through a plain stream and from the buffer
+            assertValueEquals(values[ii], streamer.read(
+                new DataInputStream(new ByteArrayInputStream(expected))));
+            BufferDataInputStream in = new BufferDataInputStream(output);
+            assertValueEquals(values[ii], streamer.read(in));
+            assertFalse(output.hasRemaining());
+        }
+    }
+
+    protected static void assertValueEquals (Object expected, Object actual)
+    {
+        if (expected instanceof Buffer) {
+            Buffer buffer = (Buffer)actual;
+            assertEquals(0, buffer.position());
+            assertEquals(((Buffer)expected).limit(), buffer.limit());
+            assertEquals(expected, actual);
+            return;
+        }
+        assertEquals(expected.getClass(), actual.getClass());
+        if (expected instanceof boolean[]) {
+            assertTrue(Arrays.equals((boolean[])expected, (boolean[])actual));
+        } else if (expected instanceof byte[]) {
+            assertTrue(Arrays.equals((byte[])expected, (byte[])actual));
+        } else if (expected instanceof char[]) {
+            assertTrue(Arrays.equals((char[])expected, (char[])actual));
+        } else if (expected instanceof double[]) {
+            assertTrue(Arrays.equals((double[])expected, (double[])actual));
+        } else if (expected instanceof float[]) {
+            assertTrue(Arrays.equals((float[])expected, (float[])actual));
+        } else if (expected instanceof int[]) {
+            assertTrue(Arrays.equals((int[])expected, (int[])actual));
+        } else if (expected instanceof long[]) {
+            assertTrue(Arrays.equals((long[])expected, (long[])actual));
+        } else {
+            assertTrue(Arrays.equals((short[])expected, (short[])actual));
+        }
+    }
 }
@@ -0,0 +1,146 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import java.util.Arrays;
+
+import com.google.common.io.ByteStreams;
+
+import com.samskivert.util.ArrayUtil;
+
+import static com.threerings.export.Log.log;
+
+/**
+ * Compares the time and peak heap usage of the DOM and streaming XML importers and exporters on a
+ * set of XML export files, and checks that the two exporters produce identical output.
+ */
+public class XMLBenchmark
+{
+    /**
+     * Program entry point.
+     */
+    public static void main (String[] args)
+        throws Exception
+    {
+        int iterations = 5;
+        if (args.length > 1 && args[0].equals("-n")) {
+            iterations = Integer.parseInt(args[1]);
+            args = ArrayUtil.splice(args, 0, 2);
+        }
+        if (args.length == 0) {
+            System.err.println("Usage: XMLBenchmark [-n <iterations>] <xml file> ...");
+            return;
+        }
+        for (String file : args) {
+            benchmark(new File(file), iterations);
+        }
+    }
+
+    /**
+     * Benchmarks the importers and exporters on a single file.
+     */
+    public static void benchmark (File file, int iterations)
+        throws IOException
+    {
+        byte[] bytes = ByteStreams.toByteArray(new FileInputStream(file));
+        Object object = null;
+        for (boolean streaming : new boolean[] { false, true }) {
+            long time = 0L, heap = 0L;
+            for (int ii = 0; ii < iterations; ii++) {
+                resetPeakUsage();
+                long start = System.nanoTime();
+                InputStream in = new ByteArrayInputStream(bytes);
+                Importer importer = streaming ? new StreamingXMLImporter(in) : new XMLImporter(in);
+                object = importer.readObject();
+                importer.close();
+                time += System.nanoTime() - start;
+                heap = Math.max(heap, getPeakUsage());
+            }
+            log.info("Read file.", "file", file, "streaming", streaming,
+                "millis", time / iterations / 1000000L, "peakHeapMB", heap >> 20);
+        }
+
+        byte[][] output = new byte[2][];
+        for (int idx = 0; idx < 2; idx++) {
+            boolean streaming = (idx == 1);
+            long time = 0L, heap = 0L;
+            for (int ii = 0; ii < iterations; ii++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+                resetPeakUsage();
+                long start = System.nanoTime();
+                Exporter exporter = streaming ? new StreamingXMLExporter(out) : new XMLExporter(out);
+                exporter.writeObject(object);
+                exporter.close();
+                time += System.nanoTime() - start;
+                heap = Math.max(heap, getPeakUsage());
+                output[idx] = out.toByteArray();
+            }
+            log.info("Wrote file.", "file", file, "streaming", streaming,
+                "millis", time / iterations / 1000000L, "peakHeapMB", heap >> 20);
+        }
+        if (!Arrays.equals(output[0], output[1])) {
+            log.warning("Exporters produced different output!", "file", file);
+        }
+    }
+
+    /**
+     * Collects garbage and resets the peak usage of the heap memory pools.
+     */
+    protected static void resetPeakUsage ()
+    {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the peak usage of the heap memory pools.
+     */
+    protected static long getPeakUsage ()
+    {
+        long total = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                total += pool.getPeakUsage().getUsed();
+            }
+        }
+        return total;
+    }
+}
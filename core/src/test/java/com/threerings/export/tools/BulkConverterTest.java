@@ -0,0 +1,230 @@
+//
+// $Id$
+
+package com.threerings.export.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import com.threerings.export.ExportCodec;
+import com.threerings.export.Exportable;
+import com.threerings.export.StreamingXMLExporter;
+
+/**
+ * Tests the incremental, parallel conversion of files.
+ */
+public class BulkConverterTest extends TestCase
+{
+    public static class Sample
+        implements Exportable
+    {
+        public String name;
+
+        public int[] values;
+
+        public Map<String, Float> weights = Maps.newTreeMap();
+
+        public Sample child;
+    }
+
+    public BulkConverterTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUp ()
+        throws IOException
+    {
+        _dir = Files.createTempDir();
+        _sources = Lists.newArrayList();
+        for (int ii = 0; ii < SOURCE_COUNT; ii++) {
+            File source = new File(_dir, "source" + ii + ".xml");
+            writeSample(source, ii);
+            _sources.add(source);
+        }
+    }
+
+    @Override
+    protected void tearDown ()
+        throws IOException
+    {
+        delete(_dir);
+    }
+
+    public void testDeterministic ()
+        throws IOException
+    {
+        for (ExportCodec codec : new ExportCodec[] { null, ExportCodec.DEFLATE }) {
+            // the output is the same regardless of the number of threads
+            List<byte[]> expected = convert(codec, 1, "single");
+            for (int threads : new int[] { 2, 8 }) {
+                List<byte[]> actual = convert(codec, threads, "multi" + threads);
+                for (int ii = 0; ii < SOURCE_COUNT; ii++) {
+                    assertTrue(Arrays.equals(expected.get(ii), actual.get(ii)));
+                }
+            }
+
+            // and across runs
+            List<byte[]> again = convert(codec, 8, "again");
+            for (int ii = 0; ii < SOURCE_COUNT; ii++) {
+                assertTrue(Arrays.equals(expected.get(ii), again.get(ii)));
+            }
+        }
+    }
+
+    public void testManifest ()
+        throws IOException
+    {
+        File manifest = new File(_dir, "manifest.txt");
+        BulkConverter.Result result = run(XMLToBinaryConverter.createBulkConverter(null),
+            manifest, 4, "out");
+        assertEquals(SOURCE_COUNT, result.converted);
+        assertEquals(0, result.skipped);
+        assertEquals(0, result.failed);
+        String contents = Files.toString(manifest, Charsets.UTF_8);
+
+        // nothing has changed, so nothing is converted and the manifest is the same
+        result = run(XMLToBinaryConverter.createBulkConverter(null), manifest, 4, "out");
+        assertEquals(0, result.converted);
+        assertEquals(SOURCE_COUNT, result.skipped);
+        assertEquals(contents, Files.toString(manifest, Charsets.UTF_8));
+
+        // touching a source doesn't reconvert it, but changing it does
+        File source = _sources.get(3);
+        assertTrue(source.setLastModified(source.lastModified() - 10000L));
+        writeSample(_sources.get(5), -1);
+        result = run(XMLToBinaryConverter.createBulkConverter(null), manifest, 4, "out");
+        assertEquals(1, result.converted);
+        assertEquals(SOURCE_COUNT - 1, result.skipped);
+
+        // as does removing an output
+        assertTrue(getDest("out", 7).delete());
+        result = run(XMLToBinaryConverter.createBulkConverter(null), manifest, 4, "out");
+        assertEquals(1, result.converted);
+        assertTrue(getDest("out", 7).exists());
+
+        // changing the options reconverts everything
+        result = run(XMLToBinaryConverter.createBulkConverter(ExportCodec.DEFLATE),
+            manifest, 4, "out");
+        assertEquals(SOURCE_COUNT, result.converted);
+        assertEquals(0, result.skipped);
+    }
+
+    public void testVersion ()
+        throws IOException
+    {
+        File manifest = new File(_dir, "manifest.txt");
+        run(XMLToBinaryConverter.createBulkConverter(null), manifest, 4, "out");
+
+        // files recorded without the current version are reconverted
+        String contents = Files.toString(manifest, Charsets.UTF_8);
+        String prefix = BulkConverter.VERSION + "/";
+        assertTrue(contents.contains("\t" + prefix));
+        Files.write(contents.replace("\t" + prefix, "\t0/"), manifest, Charsets.UTF_8);
+        BulkConverter.Result result = run(
+            XMLToBinaryConverter.createBulkConverter(null), manifest, 4, "out");
+        assertEquals(SOURCE_COUNT, result.converted);
+        assertEquals(contents.length(), Files.toString(manifest, Charsets.UTF_8).length());
+    }
+
+    /**
+     * Converts the sources into the named subdirectory and returns the contents of the results.
+     */
+    protected List<byte[]> convert (ExportCodec codec, int threads, String subdir)
+        throws IOException
+    {
+        BulkConverter.Result result = run(
+            XMLToBinaryConverter.createBulkConverter(codec), null, threads, subdir);
+        assertEquals(SOURCE_COUNT, result.converted);
+        assertEquals(0, result.failed);
+        List<byte[]> contents = Lists.newArrayList();
+        for (int ii = 0; ii < SOURCE_COUNT; ii++) {
+            contents.add(Files.toByteArray(getDest(subdir, ii)));
+        }
+        return contents;
+    }
+
+    /**
+     * Runs the supplied converter on the sources, writing the results into the named
+     * subdirectory.
+     */
+    protected BulkConverter.Result run (
+        BulkConverter converter, File manifest, int threads, String subdir)
+        throws IOException
+    {
+        if (manifest != null) {
+            converter.setManifest(manifest);
+        }
+        converter.setThreads(threads);
+        for (int ii = 0; ii < SOURCE_COUNT; ii++) {
+            converter.add(_sources.get(ii), getDest(subdir, ii));
+        }
+        return converter.run();
+    }
+
+    /**
+     * Returns the destination of the identified source in the named subdirectory.
+     */
+    protected File getDest (String subdir, int idx)
+    {
+        return new File(new File(_dir, subdir), "source" + idx + ".dat");
+    }
+
+    /**
+     * Writes a sample object, varying with the supplied seed, to the specified file.
+     */
+    protected static void writeSample (File file, int seed)
+        throws IOException
+    {
+        Sample sample = new Sample();
+        sample.name = "sample" + seed;
+        sample.values = new int[1000 + seed * 100];
+        for (int ii = 0; ii < sample.values.length; ii++) {
+            sample.values[ii] = ii * seed;
+        }
+        for (int ii = 0; ii < 10; ii++) {
+            sample.weights.put("weight" + ii, ii * 0.5f + seed);
+        }
+        sample.child = new Sample();
+        sample.child.name = "child";
+        StreamingXMLExporter out = new StreamingXMLExporter(new FileOutputStream(file));
+        out.writeObject(sample);
+        out.close();
+    }
+
+    /**
+     * Deletes a file or directory and all of its contents.
+     */
+    protected static void delete (File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** The directory containing the test files. */
+    protected File _dir;
+
+    /** The source files. */
+    protected List<File> _sources;
+
+    /** The number of source files to convert. */
+    protected static final int SOURCE_COUNT = 24;
+}
@@ -0,0 +1,92 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import com.threerings.tudey.server.logic.Logic;
+
+/**
+ * Measures the rate at which {@link TudeySceneManager#createLogic} creates the logic objects
+ * for a typical projectile (an actor with a few handlers, targets, and conditions), compared to
+ * resolving each class and getting the instance from the injector directly.
+ */
+public class LogicSpawnBenchmark
+{
+    /**
+     * Program entry point.
+     */
+    public static void main (String[] args)
+        throws Exception
+    {
+        int spawns = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        Injector injector = Guice.createInjector();
+        TudeySceneManager scenemgr = new TudeySceneManager();
+        scenemgr._injector = injector;
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int created = 0;
+            for (int ii = 0; ii < spawns; ii++) {
+                for (String cname : LOGIC_CLASSES) {
+                    Logic logic = (Logic)injector.getInstance(Class.forName(cname));
+                    created += (logic == null) ? 0 : 1;
+                }
+            }
+            long uncached = System.nanoTime();
+            for (int ii = 0; ii < spawns; ii++) {
+                for (String cname : LOGIC_CLASSES) {
+                    Logic logic = scenemgr.createLogic(cname);
+                    created += (logic == null) ? 0 : 1;
+                }
+            }
+            long cached = System.nanoTime();
+            System.out.println("Round " + round + ": uncached " +
+                getRate(spawns, uncached - start) + " spawns/s, cached " +
+                getRate(spawns, cached - uncached) + " spawns/s [created=" + created + "]");
+        }
+    }
+
+    /**
+     * Returns the number of spawns per second.
+     */
+    protected static long getRate (int spawns, long nanos)
+    {
+        return Math.round(spawns * 1e9 / nanos);
+    }
+
+    /** The logic classes created for each spawn. */
+    protected static final String[] LOGIC_CLASSES = {
+        "com.threerings.tudey.server.logic.ActorLogic",
+        "com.threerings.tudey.server.logic.HandlerLogic$Startup",
+        "com.threerings.tudey.server.logic.HandlerLogic$Tick",
+        "com.threerings.tudey.server.logic.HandlerLogic$Timer",
+        "com.threerings.tudey.server.logic.HandlerLogic$IntersectionStart",
+        "com.threerings.tudey.server.logic.TargetLogic$Source",
+        "com.threerings.tudey.server.logic.TargetLogic$Intersecting",
+        "com.threerings.tudey.server.logic.ConditionLogic$Tagged" };
+}
@@ -0,0 +1,135 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the handling of idle {@link TudeySceneManager}s.
+ */
+public class TudeySceneManagerTest extends TestCase
+{
+    public TudeySceneManagerTest (String name)
+    {
+        super(name);
+    }
+
+    public void testWarmSceneNeverUnloads ()
+    {
+        TestSceneManager scenemgr = new TestSceneManager(true);
+        assertEquals(0L, scenemgr.idleUnloadPeriod());
+    }
+
+    public void testColdSceneUnloads ()
+    {
+        TestSceneManager scenemgr = new TestSceneManager(false);
+        assertTrue(scenemgr.idleUnloadPeriod() > 0L);
+    }
+
+    public void testIdleWarmSceneResets ()
+    {
+        TestSceneManager scenemgr = new TestSceneManager(true);
+        scenemgr.wentIdle();
+        scenemgr.wentIdle();
+        assertEquals(2, scenemgr.resets);
+        assertEquals(0, scenemgr.hibernations);
+    }
+
+    public void testIdleColdSceneHibernates ()
+    {
+        TestSceneManager scenemgr = new TestSceneManager(false);
+        scenemgr.wentIdle();
+        assertEquals(0, scenemgr.resets);
+        assertEquals(1, scenemgr.hibernations);
+    }
+
+    /**
+     * Records resets and hibernations rather than performing them.
+     */
+    protected static class TestSceneManager extends TudeySceneManager
+    {
+        /** The number of times the scene was reset. */
+        public int resets;
+
+        /** The number of times the scene was hibernated. */
+        public int hibernations;
+
+        /**
+         * Creates a manager for a scene that is or isn't in the warm pool.
+         */
+        public TestSceneManager (boolean warm)
+        {
+            this(warm, new WarmScenePoolTest.TestPool(1));
+        }
+
+        /**
+         * Creates a manager for a scene that is or isn't in the supplied pool.
+         */
+        public TestSceneManager (boolean warm, WarmScenePool pool)
+        {
+            _warm = warm;
+            _pool = pool;
+        }
+
+        /**
+         * Notifies the shutdown observers as if the manager had shut down.
+         */
+        public void simulateShutdown ()
+        {
+            _shutdownObservers.apply(_shutdownOp);
+        }
+
+        @Override
+        public boolean isWarm ()
+        {
+            return _warm;
+        }
+
+        @Override
+        public void reset ()
+        {
+            resets++;
+        }
+
+        @Override
+        protected void hibernate ()
+        {
+            hibernations++;
+        }
+
+        @Override
+        protected WarmScenePool getWarmPool ()
+        {
+            return _pool;
+        }
+
+        /** Whether the scene is in the warm pool. */
+        protected boolean _warm;
+
+        /** The pool to which the scene is returned when idle. */
+        protected WarmScenePool _pool;
+    }
+}
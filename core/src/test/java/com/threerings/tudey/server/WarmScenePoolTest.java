@@ -0,0 +1,252 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server;
+
+import java.util.List;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import com.threerings.whirled.server.SceneManager;
+import com.threerings.whirled.server.SceneRegistry.ResolutionListener;
+
+import com.threerings.tudey.server.TudeySceneManagerTest.TestSceneManager;
+
+/**
+ * Tests the {@link WarmScenePool} used by the {@link TudeySceneRegistry}.
+ */
+public class WarmScenePoolTest extends TestCase
+{
+    public WarmScenePoolTest (String name)
+    {
+        super(name);
+    }
+
+    public void testCheckoutOnMove ()
+    {
+        TestPool pool = new TestPool(4);
+        assertTrue(pool.add(1));
+        assertFalse(pool.isReady(1));
+        TestSceneManager scmgr = pool.complete(1);
+        assertTrue(pool.isReady(1));
+
+        // a move hands over the ready manager without resolving the scene again
+        TestListener listener = new TestListener();
+        pool.resolve(1, listener);
+        assertSame(scmgr, listener.scmgr);
+        assertTrue(pool.pending.isEmpty());
+        assertFalse(pool.isReady(1));
+
+        // later moves share the same manager
+        listener = new TestListener();
+        pool.resolve(1, listener);
+        assertSame(scmgr, listener.scmgr);
+        assertTrue(pool.pending.isEmpty());
+    }
+
+    public void testReturnAndReset ()
+    {
+        TestPool pool = new TestPool(4);
+        pool.add(1);
+        TestSceneManager scmgr = pool.complete(1);
+        pool.resolve(1, new TestListener());
+        assertFalse(pool.isReady(1));
+
+        // going idle resets the manager and makes it ready again
+        scmgr.wentIdle();
+        assertEquals(1, scmgr.resets);
+        assertEquals(0, scmgr.hibernations);
+        assertTrue(pool.isReady(1));
+
+        TestListener listener = new TestListener();
+        pool.resolve(1, listener);
+        assertSame(scmgr, listener.scmgr);
+        assertTrue(pool.pending.isEmpty());
+    }
+
+    public void testCapacity ()
+    {
+        TestPool pool = new TestPool(2);
+        assertEquals(2, pool.getCapacity());
+        assertTrue(pool.add(1));
+        assertTrue(pool.add(2));
+        assertFalse(pool.add(1));
+        assertFalse(pool.add(3));
+        assertFalse(pool.contains(3));
+        assertEquals(2, pool.size());
+        assertEquals(2, pool.pending.keySet().size());
+
+        // removing a scene makes room for another
+        assertTrue(pool.remove(1));
+        assertFalse(pool.remove(1));
+        assertTrue(pool.add(3));
+        assertEquals(2, pool.size());
+        assertTrue(pool.contains(3));
+        assertFalse(pool.contains(1));
+
+        // the resolution of a removed scene isn't recorded
+        pool.complete(1);
+        assertFalse(pool.isReady(1));
+    }
+
+    public void testColdMiss ()
+    {
+        TestPool pool = new TestPool(4);
+        pool.add(1);
+
+        // a move to a scene outside the pool falls back to normal resolution
+        TestListener listener = new TestListener();
+        pool.resolve(2, listener);
+        assertEquals(1, pool.pending.get(2).size());
+        assertNull(listener.scmgr);
+        TestSceneManager scmgr = pool.complete(2);
+        assertSame(scmgr, listener.scmgr);
+        assertFalse(pool.contains(2));
+
+        // as does a move to a pooled scene that's still resolving, which checks it out
+        listener = new TestListener();
+        pool.resolve(1, listener);
+        assertEquals(2, pool.pending.get(1).size());
+        scmgr = pool.complete(1);
+        assertSame(scmgr, listener.scmgr);
+        assertFalse(pool.isReady(1));
+        scmgr.wentIdle();
+        assertTrue(pool.isReady(1));
+
+        // failures are passed on
+        listener = new TestListener();
+        pool.resolve(3, listener);
+        pool.fail(3);
+        assertTrue(listener.failed);
+    }
+
+    public void testShutdownRewarms ()
+    {
+        TestPool pool = new TestPool(4);
+        pool.add(1);
+        TestSceneManager scmgr = pool.complete(1);
+
+        // a manager that shuts down is resolved again after a delay
+        scmgr.simulateShutdown();
+        assertFalse(pool.isReady(1));
+        assertEquals(Lists.newArrayList(1), pool.rewarms);
+        assertTrue(pool.pending.isEmpty());
+        pool.rewarm(1);
+        TestSceneManager nscmgr = pool.complete(1);
+        assertNotSame(scmgr, nscmgr);
+        assertTrue(pool.isReady(1));
+
+        // unless it has been removed from the pool
+        pool.remove(1);
+        nscmgr.simulateShutdown();
+        assertEquals(1, pool.rewarms.size());
+        pool.rewarm(1);
+        assertTrue(pool.pending.isEmpty());
+    }
+
+    /**
+     * A pool that records resolution requests for the test to complete.
+     */
+    protected static class TestPool extends WarmScenePool
+    {
+        /** The listeners awaiting resolution, mapped by scene id. */
+        public ListMultimap<Integer, ResolutionListener> pending = ArrayListMultimap.create();
+
+        /** The ids of the scenes scheduled to be warmed again. */
+        public List<Integer> rewarms = Lists.newArrayList();
+
+        /**
+         * Creates a new pool with the specified capacity.
+         */
+        public TestPool (int capacity)
+        {
+            super(capacity);
+        }
+
+        /**
+         * Resolves the identified scene with a new manager, notifying the pending listeners.
+         */
+        public TestSceneManager complete (int sceneId)
+        {
+            TestSceneManager scmgr = new TestSceneManager(true, this);
+            for (ResolutionListener listener : pending.removeAll(sceneId)) {
+                listener.sceneWasResolved(scmgr);
+            }
+            return scmgr;
+        }
+
+        /**
+         * Fails to resolve the identified scene, notifying the pending listeners.
+         */
+        public void fail (int sceneId)
+        {
+            Exception reason = new Exception("Failed to resolve.");
+            for (ResolutionListener listener : pending.removeAll(sceneId)) {
+                listener.sceneFailedToResolve(sceneId, reason);
+            }
+        }
+
+        @Override
+        protected void resolveScene (int sceneId, ResolutionListener listener)
+        {
+            pending.put(sceneId, listener);
+        }
+
+        @Override
+        protected void scheduleRewarm (int sceneId)
+        {
+            rewarms.add(sceneId);
+        }
+    }
+
+    /**
+     * Records the result of a resolution.
+     */
+    protected static class TestListener
+        implements ResolutionListener
+    {
+        /** The resolved manager, if any. */
+        public SceneManager scmgr;
+
+        /** Whether the resolution failed. */
+        public boolean failed;
+
+        // documentation inherited from interface ResolutionListener
+        public void sceneWasResolved (SceneManager scmgr)
+        {
+            this.scmgr = scmgr;
+        }
+
+        // documentation inherited from interface ResolutionListener
+        public void sceneFailedToResolve (int sceneId, Exception reason)
+        {
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+//
+// $Id$
+
+package com.threerings.tudey.server.util;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import junit.framework.TestCase;
+
+import com.threerings.math.Rect;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.data.effect.Effect;
+import com.threerings.tudey.server.logic.EffectLogic;
+import com.threerings.tudey.server.logic.PawnLogic;
+import com.threerings.tudey.shape.Polygon;
+
+/**
+ * Tests the {@link EffectGrid} against a linear filter of the effects fired.
+ */
+public class EffectGridTest extends TestCase
+{
+    public EffectGridTest (String name)
+    {
+        super(name);
+    }
+
+    public void testRandom ()
+    {
+        Random rand = new Random(1234L);
+        PawnLogic[] pawns = { new PawnLogic(), new PawnLogic() };
+        EffectGrid grid = new EffectGrid(CELL_SIZE);
+        for (int tick = 0; tick < 50; tick++) {
+            List<EffectLogic> fired = Lists.newArrayList();
+            for (int ii = 0, nn = rand.nextInt(60); ii < nn; ii++) {
+                PawnLogic viewer = (rand.nextInt(4) == 0) ? pawns[rand.nextInt(2)] : null;
+                fired.add(new TestEffectLogic(createBounds(rand), viewer));
+            }
+            checkQueries(grid, fired, pawns, rand);
+            grid.clear();
+        }
+    }
+
+    public void testCellBoundaries ()
+    {
+        // effects lying on and spanning the cell edges
+        List<EffectLogic> fired = Lists.newArrayList();
+        for (int ii = -2; ii <= 2; ii++) {
+            float edge = ii * CELL_SIZE;
+            fired.add(new TestEffectLogic(new Rect(
+                new Vector2f(edge, edge), new Vector2f(edge, edge)), null));
+            fired.add(new TestEffectLogic(new Rect(
+                new Vector2f(edge - 1f, edge - 1f), new Vector2f(edge + 1f, edge + 1f)), null));
+            fired.add(new TestEffectLogic(new Rect(
+                new Vector2f(edge - CELL_SIZE * 2f, edge), new Vector2f(edge, edge + 0.5f)), null));
+        }
+        EffectGrid grid = new EffectGrid(CELL_SIZE);
+        for (EffectLogic logic : fired) {
+            grid.add(logic);
+        }
+        for (int ii = -3; ii <= 3; ii++) {
+            float edge = ii * CELL_SIZE;
+            checkQuery(grid, fired, null, new Rect(
+                new Vector2f(edge, edge), new Vector2f(edge, edge)));
+            checkQuery(grid, fired, null, new Rect(
+                new Vector2f(edge - 0.01f, edge), new Vector2f(edge + CELL_SIZE, edge + 0.01f)));
+        }
+    }
+
+    public void testEmptyAndHugeBounds ()
+    {
+        List<EffectLogic> fired = Lists.newArrayList();
+        fired.add(new TestEffectLogic(new Rect(
+            new Vector2f(1f, 1f), new Vector2f(2f, 2f)), null));
+        fired.add(new TestEffectLogic(Rect.EMPTY, null));
+        fired.add(new TestEffectLogic(Rect.MAX_VALUE, null));
+        fired.add(new TestEffectLogic(new Rect(
+            new Vector2f(-1e30f, -1e30f), new Vector2f(-1e30f, -1e30f)), null));
+        fired.add(new TestEffectLogic(new Rect(
+            new Vector2f(1e30f, 1e30f), new Vector2f(1e30f, 1e30f)), null));
+        fired.add(new TestEffectLogic(new Rect(
+            new Vector2f(-CELL_SIZE, -CELL_SIZE), new Vector2f(CELL_SIZE, CELL_SIZE)), null));
+        EffectGrid grid = new EffectGrid(CELL_SIZE);
+        for (EffectLogic logic : fired) {
+            grid.add(logic);
+        }
+        checkQuery(grid, fired, null, Rect.EMPTY);
+        checkQuery(grid, fired, null, Rect.MAX_VALUE);
+
+        // everything intersects the unbounded rect (even the empty one, by Rect's reckoning)
+        assertEquals(fired.size(), grid.get(null, Rect.MAX_VALUE).length);
+        checkQuery(grid, fired, null, new Rect(
+            new Vector2f(0f, 0f), new Vector2f(0f, 0f)));
+        checkQuery(grid, fired, null, new Rect(
+            new Vector2f(1e30f, 1e30f), new Vector2f(2e30f, 2e30f)));
+        checkQuery(grid, fired, null, new Rect(
+            new Vector2f(-1e30f, -1e30f), new Vector2f(1e30f, 1e30f)));
+    }
+
+    /**
+     * Adds the fired effects to the grid and checks a number of random queries against them.
+     */
+    protected void checkQueries (
+        EffectGrid grid, List<EffectLogic> fired, PawnLogic[] pawns, Random rand)
+    {
+        for (EffectLogic logic : fired) {
+            grid.add(logic);
+        }
+        List<Rect> queries = Lists.newArrayList();
+        for (int ii = 0; ii < 20; ii++) {
+            queries.add(createBounds(rand));
+        }
+        // repeat the queries to check the shared results
+        for (int ii = 0; ii < 2; ii++) {
+            for (Rect bounds : queries) {
+                checkQuery(grid, fired, null, bounds);
+                for (PawnLogic pawn : pawns) {
+                    checkQuery(grid, fired, pawn, bounds);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the results of a single query against a linear filter of the fired effects.  The
+     * grid may return effects that don't intersect the bounds, but only those within a cell of
+     * them, and it must return them in the order fired.
+     */
+    protected void checkQuery (
+        EffectGrid grid, List<EffectLogic> fired, PawnLogic target, Rect bounds)
+    {
+        IdentityHashMap<Effect, Integer> results = Maps.newIdentityHashMap();
+        Effect[] effects = grid.get(target, bounds);
+        for (int ii = 0; ii < effects.length; ii++) {
+            assertNull(results.put(effects[ii], ii));
+        }
+        Rect expanded = bounds.expand(CELL_SIZE, CELL_SIZE);
+        int last = -1;
+        for (EffectLogic logic : fired) {
+            Rect ebounds = logic.getShape().getBounds();
+            boolean visible = (target == null || logic.isVisible(target));
+            Integer idx = results.remove(logic.getEffect());
+            if (ebounds.intersects(bounds) && visible) {
+                assertNotNull(idx);
+            }
+            if (idx != null) {
+                assertTrue(visible);
+                assertTrue(ebounds.intersects(expanded));
+                assertTrue(idx > last);
+                last = idx;
+            }
+        }
+        assertTrue(results.isEmpty());
+    }
+
+    /**
+     * Creates a random set of bounds, occasionally empty or unbounded.
+     */
+    protected static Rect createBounds (Random rand)
+    {
+        switch (rand.nextInt(20)) {
+            case 0: return Rect.EMPTY;
+            case 1: return Rect.MAX_VALUE;
+        }
+        float size = (rand.nextInt(10) == 0) ? CELL_SIZE * 10f : CELL_SIZE;
+        Vector2f min = new Vector2f(
+            (rand.nextFloat() - 0.5f) * CELL_SIZE * 20f,
+            (rand.nextFloat() - 0.5f) * CELL_SIZE * 20f);
+        return new Rect(min, min.add(rand.nextFloat() * size, rand.nextFloat() * size));
+    }
+
+    /**
+     * An effect with fixed bounds, visible either to all pawns or to a single one.
+     */
+    protected static class TestEffectLogic extends EffectLogic
+    {
+        /**
+         * Creates a new effect.
+         *
+         * @param viewer the pawn to which the effect is visible, or null if visible to all.
+         */
+        public TestEffectLogic (Rect bounds, PawnLogic viewer)
+        {
+            // an empty polygon has empty bounds
+            _shape = bounds.isEmpty() ? new Polygon() : new Polygon(
+                bounds.getMinimumExtent(),
+                new Vector2f(bounds.getMaximumExtent().x, bounds.getMinimumExtent().y),
+                bounds.getMaximumExtent(),
+                new Vector2f(bounds.getMinimumExtent().x, bounds.getMaximumExtent().y));
+            _effect = new Effect();
+            _viewer = viewer;
+        }
+
+        @Override
+        public boolean isVisible (PawnLogic pawn)
+        {
+            return _viewer == null || _viewer == pawn;
+        }
+
+        @Override
+        public boolean isVisibleToAll ()
+        {
+            return _viewer == null;
+        }
+
+        /** The pawn to which the effect is visible, or null for all. */
+        protected PawnLogic _viewer;
+    }
+
+    /** The size of the grid cells. */
+    protected static final float CELL_SIZE = 8f;
+}
@@ -0,0 +1,133 @@
+//
+// $Id$
+
+package com.threerings.tudey.server.util;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link TimerWheel}.
+ */
+public class TimerWheelTest extends TestCase
+{
+    public TimerWheelTest (String name)
+    {
+        super(name);
+    }
+
+    public void testExpiry ()
+    {
+        TimerWheel wheel = new TimerWheel(10, 8);
+        TestTimer early = new TestTimer(), late = new TestTimer(), distant = new TestTimer();
+        wheel.schedule(early, 15);
+        wheel.schedule(late, 35);
+        wheel.schedule(distant, 500); // more than one revolution ahead
+        assertEquals(3, wheel.size());
+
+        wheel.advance(10);
+        assertEquals(0, early.fired.size());
+        wheel.advance(20);
+        assertEquals(1, early.fired.size());
+        assertEquals(20, (int)early.fired.get(0));
+        assertFalse(early.isScheduled());
+        assertEquals(0, late.fired.size());
+
+        for (int time = 30; time < 500; time += 10) {
+            wheel.advance(time);
+        }
+        assertEquals(1, late.fired.size());
+        assertEquals(0, distant.fired.size());
+        wheel.advance(500);
+        assertEquals(1, distant.fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    public void testCancel ()
+    {
+        TimerWheel wheel = new TimerWheel(10, 8);
+        TestTimer timer = new TestTimer();
+        wheel.schedule(timer, 15);
+        timer.cancel();
+        assertFalse(timer.isScheduled());
+        assertEquals(0, wheel.size());
+        wheel.advance(20);
+        assertEquals(0, timer.fired.size());
+    }
+
+    public void testCancelOnSameTick ()
+    {
+        // whichever of the two fires first cancels the other
+        TimerWheel wheel = new TimerWheel(10, 8);
+        TestTimer first = new TestTimer(), second = new TestTimer();
+        first.other = second;
+        second.other = first;
+        wheel.schedule(first, 12);
+        wheel.schedule(second, 14);
+        wheel.advance(20);
+        assertEquals(1, first.fired.size() + second.fired.size());
+        assertEquals(0, wheel.size());
+
+        // the cancelled timer may be scheduled again
+        TestTimer cancelled = first.fired.isEmpty() ? first : second;
+        cancelled.other = null;
+        wheel.schedule(cancelled, 25);
+        wheel.advance(30);
+        assertEquals(1, cancelled.fired.size());
+    }
+
+    public void testRescheduleOnSameTick ()
+    {
+        // whichever of the two fires first reschedules the other
+        TimerWheel wheel = new TimerWheel(10, 8);
+        TestTimer first = new TestTimer(), second = new TestTimer();
+        first.other = second;
+        second.other = first;
+        first.wheel = second.wheel = wheel;
+        wheel.schedule(first, 12);
+        wheel.schedule(second, 14);
+        wheel.advance(20);
+        assertEquals(1, first.fired.size() + second.fired.size());
+        assertEquals(1, wheel.size());
+
+        TestTimer rescheduled = first.fired.isEmpty() ? first : second;
+        assertEquals(45, rescheduled.getExpiry());
+        rescheduled.other = null;
+        wheel.advance(50);
+        assertEquals(1, first.fired.size());
+        assertEquals(1, second.fired.size());
+        assertEquals(50, (int)rescheduled.fired.get(0));
+    }
+
+    /**
+     * Records the times at which it fires and cancels or reschedules another timer when it does.
+     */
+    protected static class TestTimer extends TimerWheel.Timer
+    {
+        /** The timestamps at which the timer fired. */
+        public List<Integer> fired = Lists.newArrayList();
+
+        /** A timer to cancel or reschedule on firing, if any. */
+        public TestTimer other;
+
+        /** The wheel in which to reschedule the other timer, or null to cancel it instead. */
+        public TimerWheel wheel;
+
+        @Override
+        public void expired (int timestamp)
+        {
+            fired.add(timestamp);
+            if (other == null) {
+                return;
+            }
+            if (wheel != null) {
+                wheel.schedule(other, 45);
+            } else {
+                other.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.shape;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Transform2D;
+import com.threerings.math.Vector2f;
+
+/**
+ * Tests the bounding volume hierarchy of large {@link Compound}s.
+ */
+public class CompoundTest extends TestCase
+{
+    public CompoundTest (String name)
+    {
+        super(name);
+    }
+
+    public void testMovingCompound ()
+    {
+        Random rand = new Random(5678L);
+        Shape[] shapes = new Shape[32];
+        for (int ii = 0; ii < shapes.length; ii++) {
+            shapes[ii] = new Circle(new Vector2f(
+                rand.nextFloat() * 40f - 20f, rand.nextFloat() * 40f - 20f), 0.5f);
+        }
+        Compound compound = new Compound(shapes);
+
+        // transform into the same result repeatedly, as moving actors do, so that the
+        // hierarchy built by the first query is refit on each update
+        Compound moved = null;
+        for (int ii = 0; ii < 50; ii++) {
+            Transform2D transform = new Transform2D(
+                new Vector2f(rand.nextFloat() * 20f - 10f, rand.nextFloat() * 20f - 10f),
+                rand.nextFloat() * FloatMath.TWO_PI);
+            moved = (Compound)compound.transform(transform, moved);
+            for (int jj = 0; jj < 20; jj++) {
+                Circle circle = new Circle(new Vector2f(
+                    rand.nextFloat() * 60f - 30f, rand.nextFloat() * 60f - 30f),
+                    rand.nextFloat() * 3f);
+                assertEquals(intersectsAny(moved, circle), moved.intersects(circle));
+            }
+        }
+    }
+
+    /**
+     * Tests the shape against each of the compound's shapes in turn.
+     */
+    protected static boolean intersectsAny (Compound compound, Shape shape)
+    {
+        for (Shape cshape : compound.getShapes()) {
+            if (cshape.intersects(shape)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
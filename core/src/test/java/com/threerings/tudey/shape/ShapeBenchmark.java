@@ -0,0 +1,118 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package com.threerings.tudey.shape;
+
+import java.util.Random;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Transform2D;
+import com.threerings.math.Vector2f;
+
+/**
+ * Measures the rate of the intersection and penetration tests for the shape pairs most
+ * commonly tested against one another in scenes: circle-polygon, capsule-polygon and
+ * polygon-polygon.  The shapes are packed closely enough that many of the pairs intersect, in
+ * which case the penetration is computed as well.
+ */
+public class ShapeBenchmark
+{
+    /**
+     * Program entry point.
+     */
+    public static void main (String[] args)
+    {
+        int tests = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        Random random = new Random(1L);
+        Shape[] circles = new Shape[SHAPE_COUNT];
+        Shape[] capsules = new Shape[SHAPE_COUNT];
+        Shape[] polygons = new Shape[SHAPE_COUNT];
+        for (int ii = 0; ii < SHAPE_COUNT; ii++) {
+            circles[ii] = new Circle(new Vector2f(), 0.5f).transform(
+                createTransform(random), null);
+            capsules[ii] = new Capsule(new Vector2f(-0.5f, 0f), new Vector2f(0.5f, 0f), 0.5f)
+                .transform(createTransform(random), null);
+            polygons[ii] = createPolygon(3 + random.nextInt(6)).transform(
+                createTransform(random), null);
+        }
+        for (int round = 0; round < 5; round++) {
+            System.out.println("Round " + round + ": " +
+                run("circle-polygon", circles, polygons, tests) + ", " +
+                run("capsule-polygon", capsules, polygons, tests) + ", " +
+                run("polygon-polygon", polygons, polygons, tests));
+        }
+    }
+
+    /**
+     * Tests the specified number of pairs drawn from the two arrays, returning a description of
+     * the rate of the tests.
+     */
+    protected static String run (String name, Shape[] s1, Shape[] s2, int tests)
+    {
+        Vector2f penetration = new Vector2f();
+        int hits = 0;
+        long start = System.nanoTime();
+        for (int ii = 0; ii < tests; ii++) {
+            Shape first = s1[ii % SHAPE_COUNT];
+            Shape second = s2[(ii * 7 + ii / SHAPE_COUNT) % SHAPE_COUNT];
+            if (first.intersects(second)) {
+                first.getPenetration(second, penetration);
+                hits++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        return name + " " + Math.round(tests * 1e9 / nanos) + " tests/s [hits=" + hits + "]";
+    }
+
+    /**
+     * Creates a random transform placing a shape within the test area.
+     */
+    protected static Transform2D createTransform (Random random)
+    {
+        return new Transform2D(
+            new Vector2f(random.nextFloat() * AREA_SIZE, random.nextFloat() * AREA_SIZE),
+            random.nextFloat() * FloatMath.TWO_PI);
+    }
+
+    /**
+     * Creates a regular polygon with the specified number of vertices and unit radius.
+     */
+    protected static Polygon createPolygon (int vcount)
+    {
+        Vector2f[] vertices = new Vector2f[vcount];
+        for (int ii = 0; ii < vcount; ii++) {
+            float angle = ii * FloatMath.TWO_PI / vcount;
+            vertices[ii] = new Vector2f(FloatMath.cos(angle), FloatMath.sin(angle));
+        }
+        return new Polygon(vertices);
+    }
+
+    /** The number of shapes of each type. */
+    protected static final int SHAPE_COUNT = 1024;
+
+    /** The size of the area over which the shapes are scattered. */
+    protected static final float AREA_SIZE = 4f;
+}
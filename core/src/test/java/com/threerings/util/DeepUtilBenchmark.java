@@ -0,0 +1,121 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the performance of {@link DeepUtil} on a config-like object graph.  Run once normally
+ * and once with <code>-Dcom.threerings.util.deep_generic=true</code> to compare the specialized
+ * handlers to the generic reflective ones.
+ */
+public class DeepUtilBenchmark
+{
+    public enum Mode
+    {
+        FIRST, SECOND
+    }
+
+    public static class Vector extends DeepObject
+    {
+        public float x, y, z;
+    }
+
+    public static class Leaf extends DeepObject
+    {
+        public int id;
+        public float weight = 1f;
+        public String name = "leaf";
+        public boolean enabled;
+        public Vector offset = new Vector();
+        public Mode mode = Mode.SECOND;
+        public double scale = 2.0;
+    }
+
+    public static class Root extends DeepObject
+    {
+        public String name = "root";
+        public int count = 3;
+        public long stamp = 42L;
+        public float[] values = new float[16];
+        public Leaf[] leaves = new Leaf[8];
+        public Leaf main = new Leaf();
+        public List<String> tags = new ArrayList<String>();
+
+        @Shallow
+        public Object shared = new Object();
+
+        @DeepOmit
+        public Object transientState;
+
+        protected short _flags = 7;
+
+        public Root ()
+        {
+            for (int ii = 0; ii < leaves.length; ii++) {
+                leaves[ii] = new Leaf();
+                leaves[ii].id = ii;
+            }
+            tags.add("first");
+            tags.add("second");
+        }
+    }
+
+    /**
+     * Program entry point.
+     */
+    public static void main (String[] args)
+    {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        Root root = new Root();
+        Root other = (Root)root.clone();
+        System.out.println(
+            "Generic handlers: " + Boolean.getBoolean("com.threerings.util.deep_generic"));
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int ii = 0; ii < iterations; ii++) {
+                other = (Root)root.clone();
+            }
+            long cloned = System.nanoTime();
+            int equal = 0;
+            for (int ii = 0; ii < iterations; ii++) {
+                if (root.equals(other)) {
+                    equal++;
+                }
+            }
+            long compared = System.nanoTime();
+            int hash = 0;
+            for (int ii = 0; ii < iterations; ii++) {
+                hash += root.hashCode();
+            }
+            long hashed = System.nanoTime();
+            System.out.println("Round " + round + ": clone " + (cloned - start) / iterations +
+                " ns, equals " + (compared - cloned) / iterations + " ns, hashCode " +
+                (hashed - compared) / iterations + " ns [equal=" + equal + ", hash=" + hash + "]");
+        }
+    }
+}
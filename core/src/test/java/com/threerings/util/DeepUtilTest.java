@@ -26,6 +26,7 @@
 package com.threerings.util;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -46,6 +47,7 @@ public class DeepUtilTest extends TestCase
     {
         // use a fixed seed so that our results are reproducible
         RandomUtil.rand.setSeed(1199325877849L);
+        _rand.setSeed(FIELDS_SEED);
     }
 
     public void testCopy ()
@@ -134,6 +136,80 @@ public class DeepUtilTest extends TestCase
         assertEquals(false, DeepUtil.hashCode(c1) == DeepUtil.hashCode(c2));
     }
 
+    public void testSpecializedHandlers ()
+        throws Exception
+    {
+        // the specialized handlers must give the same results as the generic ones
+        DeepUtil.ObjectHandler<Object> generic =
+            new DeepUtil.ReflectiveObjectHandler(Fields.class, false);
+        DeepUtil.ObjectHandler<Object> specialized =
+            new DeepUtil.ReflectiveObjectHandler(Fields.class, true);
+        for (int ii = 0; ii < 100; ii++) {
+            Fields f1 = new Fields();
+            f1.randomize();
+            assertEquals(generic.hashCode(f1), specialized.hashCode(f1));
+
+            Fields c1 = (Fields)generic.copy(f1, null, null);
+            Fields c2 = (Fields)specialized.copy(f1, null, null);
+            assertEquals(true, generic.equals(c1, c2));
+            assertEquals(true, specialized.equals(c1, c2));
+            assertEquals(generic.hashCode(c1), generic.hashCode(c2));
+            assertEquals(generic.hashCode(c2), specialized.hashCode(c2));
+            assertSame(f1.shallow, c2.shallow);
+            assertEquals(null, c2.omit);
+            assertEquals(false, f1.values != null && f1.values == c2.values);
+            assertEquals(false, f1.other != null && f1.other == c2.other);
+
+            // copy into an existing object
+            Fields c3 = new Fields();
+            c3.randomize();
+            assertSame(c3, specialized.copy(f1, c3, null));
+            assertEquals(true, generic.equals(c2, c3));
+
+            // compare against a variety of changes
+            Fields f2 = (Fields)generic.copy(f1, null, null);
+            f2.mutate();
+            assertEquals(generic.equals(f1, f2), specialized.equals(f1, f2));
+            assertEquals(generic.equals(f2, f1), specialized.equals(f2, f1));
+            assertEquals(generic.hashCode(f2), specialized.hashCode(f2));
+        }
+    }
+
+    public void testConcurrentAccess ()
+        throws Exception
+    {
+        final Fields[] fields = new Fields[50];
+        for (int ii = 0; ii < fields.length; ii++) {
+            fields[ii] = new Fields();
+            fields[ii].randomize();
+        }
+        final int[] hashes = new int[fields.length];
+        for (int ii = 0; ii < fields.length; ii++) {
+            hashes[ii] = DeepUtil.hashCode(fields[ii]);
+        }
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int ii = 0; ii < threads.length; ii++) {
+            threads[ii] = new Thread() {
+                public void run () {
+                    for (int jj = 0; jj < 1000; jj++) {
+                        int idx = jj % fields.length;
+                        Fields copy = DeepUtil.copy(fields[idx]);
+                        if (!DeepUtil.equals(fields[idx], copy) ||
+                                DeepUtil.hashCode(copy) != hashes[idx]) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            };
+            threads[ii].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(false, failed[0]);
+    }
+
     protected abstract class Parent
     {
         public byte v1;
@@ -217,5 +293,127 @@ public class DeepUtilTest extends TestCase
             Other oother = (Other)other;
             return v1 == oother.v1 && v2 == oother.v2;
         }
+
+        public int hashCode ()
+        {
+            return 31*Float.floatToIntBits(v1) + (int)(v2 ^ (v2 >>> 32));
+        }
+    }
+
+    protected enum Mode
+    {
+        FIRST, SECOND
+    }
+
+    protected static class Fields extends DeepObject
+    {
+        public boolean z;
+        public byte b;
+        public char c;
+        public short s;
+        public int i;
+        public long l;
+        public float f;
+        public double d;
+        public volatile int v;
+        public String str;
+        public Mode mode;
+        public float[] values;
+        public Other other;
+        public Other[] others;
+        public Object any;
+        public Fields child;
+
+        @Deep
+        public Object deep;
+
+        @Shallow
+        public Object shallow;
+
+        @DeepOmit
+        public Object omit;
+
+        public void randomize ()
+        {
+            z = _rand.nextBoolean();
+            b = (byte)_rand.nextInt();
+            c = (char)_rand.nextInt();
+            s = (short)_rand.nextInt();
+            i = _rand.nextInt();
+            l = _rand.nextLong();
+            f = _rand.nextBoolean() ? 0f : _rand.nextFloat();
+            d = _rand.nextBoolean() ? -0.0 : _rand.nextDouble();
+            v = _rand.nextInt();
+            str = _rand.nextBoolean() ? null : "str" + _rand.nextInt(3);
+            mode = _rand.nextBoolean() ? Mode.FIRST : Mode.SECOND;
+            values = _rand.nextBoolean() ? null : new float[_rand.nextInt(4)];
+            other = _rand.nextBoolean() ? null : new Other();
+            if (other != null) {
+                other.randomize();
+            }
+            others = new Other[] { other, null, new Other() };
+            any = randomObject();
+            deep = randomObject();
+            shallow = randomObject();
+            omit = new Object();
+            if (_rand.nextInt(3) == 0) {
+                child = new Fields();
+                child.randomize();
+            }
+        }
+
+        public void mutate ()
+        {
+            switch (_rand.nextInt(8)) {
+                case 0:
+                    z = !z;
+                    break;
+                case 1:
+                    f = (f == 0f) ? -0f : Float.NaN;
+                    break;
+                case 2:
+                    d = (d == 0.0) ? 0.0 : -d;
+                    break;
+                case 3:
+                    str = (str == null) ? "other" : null;
+                    break;
+                case 4:
+                    any = randomObject();
+                    break;
+                case 5:
+                    deep = randomObject();
+                    break;
+                case 6:
+                    shallow = new Object();
+                    break;
+                default:
+                    omit = null;
+                    break;
+            }
+        }
+
+        protected static Object randomObject ()
+        {
+            switch (_rand.nextInt(5)) {
+                case 0:
+                    return null;
+                case 1:
+                    return _rand.nextInt(3);
+                case 2:
+                    return new int[] { _rand.nextInt(2) };
+                case 3:
+                    return new Object[] { _rand.nextInt(2), null, "x" };
+                default:
+                    Other other = new Other();
+                    other.v2 = _rand.nextInt(2);
+                    return other;
+            }
+        }
     }
+
+    /** The random number generator used to populate {@link Fields}. */
+    protected static Random _rand = new Random();
+
+    /** The seed for {@link #_rand}, fixed so that failures can be reproduced. */
+    protected static final long FIELDS_SEED = 1199325877849L;
 }